@@ -8,8 +8,16 @@ import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Result;
+import repositories.AddonRepository;
+import repositories.CatalogChanges;
+import repositories.CatalogFilter;
+import repositories.CatalogPage;
 
+import javax.inject.Inject;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * This class controls the flow of Addon game data
@@ -18,47 +26,108 @@ import java.util.List;
  */
 public class AddonController extends Controller {
 
+    private final AddonRepository addonRepository;
+
+    @Inject
+    public AddonController(final AddonRepository addonRepository) {
+        this.addonRepository = addonRepository;
+    }
+
     /**
-     * HTTP Get request that returns all addons in database
+     * HTTP Get request that returns all addons in database,
+     * or only those of the types and name prefixes given with type and name,
+     * or one page of them when limit or after is given,
+     * or streams them from the database as newline delimited Json when stream=true is given
      *
      * @return Result Json list of addons
      */
-    public Result getAllAddons() {
-        List<Addon> addons = Addon.find.all();
-        if(addons.size() > 0) {
-            Logger.info("Returning list of Addons with {} elements", addons.size());
-            return ok(Json.toJson(addons));
+    public CompletionStage<Result> getAllAddons() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllAddons");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
         }
-        Logger.info("No Addons to return");
-        return noContent();
+        final CatalogFilter filter;
+        try {
+            filter = CatalogResults.filter(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getAllAddons");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        if(CatalogResults.wantsStream(request())) {
+            Logger.info("Streaming Addons");
+            // Read from the database as it is sent, so no ETag describes the body
+            return CompletableFuture.completedFuture(CatalogResults.ndjson(addonRepository.stream(filter)));
+        }
+        final String matched = CatalogResults.matchingETag(request(), addonRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
+        }
+        if(paging != null) {
+            return addonRepository.snapshot().thenApply(addons -> CatalogResults.tagged(
+                    page(addons.page(addons.filter(filter), paging.after, paging.limit)), addonRepository.etag(addons)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return addonRepository.snapshot().thenApply(addons -> {
+            final String tag = addonRepository.etag(addons);
+            final List<Addon> filtered = addons.filter(filter);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Addons with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(addons.filterJson(filter), gzip), tag);
+            }
+            Logger.info("No Addons to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
-     * HTTP Get request that returns all addons of a type
+     * HTTP Get request that returns all addons of a type,
+     * or one page of them when limit or after is given
      *
      * @return Result Json list of addons
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result getAllAddonsType() {
-        List<Addon> addons;
+    public CompletionStage<Result> getAllAddonsType() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllAddonsType");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
+        }
         final JsonNode json = request().body().asJson();
         if(!json.has("type")) {
             Logger.info("No type given for getAllAddonsType");
-            return badRequest("No type given");
+            return CompletableFuture.completedFuture(badRequest("No type given"));
         }
+        final CharacterType type;
         try {
-            CharacterType type = CharacterType.valueOf(json.get("type").textValue());
-            addons = Addon.find.query().where().eq("type", type).findList();
+            type = CharacterType.valueOf(json.get("type").textValue());
         }catch(Exception e) {
             Logger.info("Invalid type given");
-            return badRequest("Invalid type given");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
         }
-        if(addons.size() > 0) {
-            Logger.info("Returning list of Addons with {} elements", addons.size());
-            return ok(Json.toJson(addons));
+        final String matched = CatalogResults.matchingETag(request(), addonRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        Logger.info("No Addons to return");
-        return noContent();
+        if(paging != null) {
+            return addonRepository.snapshot().thenApply(addons -> CatalogResults.tagged(
+                    page(addons.page(addons.ofType(type), paging.after, paging.limit)), addonRepository.etag(addons)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return addonRepository.snapshot().thenApply(addons -> {
+            final String tag = addonRepository.etag(addons);
+            final List<Addon> filtered = addons.ofType(type);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Addons with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(addons.ofTypeJson(type), gzip), tag);
+            }
+            Logger.info("No Addons to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
@@ -67,12 +136,19 @@ public class AddonController extends Controller {
      * @param id The unique ID of a Addon
      * @return Result Json of a addon
      */
-    public Result getAddon(final long id) {
-        Addon addon = Addon.find.byId(id);
-        if(addon == null) {
-            return noContent();
+    public CompletionStage<Result> getAddon(final long id) {
+        final String matched = CatalogResults.matchingETag(request(), addonRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        return ok(Json.toJson(addon));
+        return addonRepository.snapshot().thenApply(addons -> {
+            final String tag = addonRepository.etag(addons);
+            final Optional<Addon> addon = addons.get(id);
+            if(!addon.isPresent()) {
+                return CatalogResults.tagged(noContent(), tag);
+            }
+            return CatalogResults.tagged(ok(Json.toJson(addon.get())), tag);
+        });
     }
 
     /**
@@ -81,61 +157,80 @@ public class AddonController extends Controller {
      * @return Result Json of a addon
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result createAddon() {
+    public CompletionStage<Result> createAddon() {
         final JsonNode body = request().body().asJson();
         if(!body.has("name") || !body.has("description") || !body.has("type")) {
-            return badRequest("Some data missing from request.");
+            return CompletableFuture.completedFuture(badRequest("Some data missing from request."));
         }
         final String name = body.get("name").textValue();
         final String description = body.get("description").textValue();
         final String type = body.get("type").textValue();
-        if(Addon.find.query().where().eq("name", name).findUnique() != null) {
-            return badRequest("A addon already exists with the name, "+name);
-        }
+        final CharacterType characterType;
         try {
-            final CharacterType characterType = CharacterType.valueOf(type);
-            final Addon addon = new Addon(characterType, name, description);
-            addon.save();
-            return ok(Json.toJson(addon));
+            characterType = CharacterType.valueOf(type);
         }catch(Exception e) {
             Logger.info("An invalid CharacterType was supplied for updateAddon");
-            return badRequest("The CharacterType supplied was invalid");
+            return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
+        }
+        final Addon newAddon = new Addon(characterType, name, description);
+        try {
+            CatalogResults.readAttributes(body, newAddon);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid attributes given for createAddon");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
         }
+        return addonRepository.insert(newAddon).thenApply(addon -> {
+            if(!addon.isPresent()) {
+                return badRequest("A addon already exists with the name, "+name);
+            }
+            return ok(Json.toJson(addon.get()));
+        });
+    }
+
+    /**
+     * HTTP Post request that creates many new Addons in a single transaction
+     *
+     * @return Result Json list with the outcome for each addon
+     */
+    @BodyParser.Of(BatchJsonParser.class)
+    public CompletionStage<Result> createAddons() {
+        return CatalogBatch.createAll(request().body().asJson(), addonRepository, "addon");
     }
 
     /**
-     * HTTP Put request that updates an existing Addon
+     * HTTP Put request that updates an existing Addon,
+     * only the fields given in the request are changed
      *
      * @param id The Unique ID of a Addon
      * @return Result Json of a addon
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result updateAddon(final long id) {
-        Addon addon = Addon.find.byId(id);
-        if(addon == null) {
-            return badRequest("There is no addon with id, "+id);
-        }
-        JsonNode body = request().body().asJson();
-        String newName = body.findPath("name").textValue();
-        if(newName != null) {
-            addon.setName(newName);
-        }
-        String newDescription = body.findPath("description").textValue();
-        if(newDescription != null) {
-            addon.setDescription(newDescription);
-        }
-        String newType = body.findPath("type").textValue();
-        if(newName != null) {
+    public CompletionStage<Result> updateAddon(final long id) {
+        final JsonNode body = request().body().asJson();
+        final CatalogChanges changes = new CatalogChanges()
+                .name(body.findPath("name").textValue())
+                .description(body.findPath("description").textValue());
+        final String newType = body.findPath("type").textValue();
+        if(newType != null) {
             try{
-                CharacterType newCharacterType = CharacterType.valueOf(newType);
-                addon.setType(newCharacterType);
+                changes.type(CharacterType.valueOf(newType));
             } catch(Exception e) {
                 Logger.info("An invalid CharacterType was supplied for updateAddon");
-                return badRequest("The CharacterType supplied was invalid");
+                return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
             }
         }
-        addon.save();
-        return ok(Json.toJson(addon));
+        try {
+            CatalogResults.readAttributes(body, changes);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid attributes given for updateAddon");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return addonRepository.update(id, changes).thenApply(addon -> {
+            if(!addon.isPresent()) {
+                return badRequest("There is no addon with id, "+id);
+            }
+            return ok(Json.toJson(addon.get()));
+        });
     }
 
     /**
@@ -144,12 +239,21 @@ public class AddonController extends Controller {
      * @param id The Unique ID of a Addon
      * @return Result Json of a addon
      */
-    public Result deleteAddon(final long id) {
-        Addon addon = Addon.find.byId(id);
-        if(addon == null) {
-            return badRequest("There is no addon with id, "+id);
+    public CompletionStage<Result> deleteAddon(final long id) {
+        return addonRepository.delete(id).thenApply(addon -> {
+            if(!addon.isPresent()) {
+                return badRequest("There is no addon with id, "+id);
+            }
+            return ok(Json.toJson(addon.get()));
+        });
+    }
+
+    private static Result page(final CatalogPage<Addon> page) {
+        if(page.getItems().size() > 0) {
+            Logger.info("Returning page of Addons with {} elements", page.getItems().size());
+            return ok(Json.toJson(page));
         }
-        addon.delete();
-        return ok(Json.toJson(addon));
+        Logger.info("No Addons to return");
+        return noContent();
     }
 }
@@ -0,0 +1,21 @@
+package controllers;
+
+import play.http.HttpErrorHandler;
+import play.mvc.BodyParser;
+
+import javax.inject.Inject;
+
+/**
+ * Json body parser for bulk requests, which are allowed to be larger than the default limit
+ *
+ * @author Lowell Buttorff
+ */
+public class BatchJsonParser extends BodyParser.Json {
+
+    static final long MAX_LENGTH = 16 * 1024 * 1024;
+
+    @Inject
+    public BatchJsonParser(final HttpErrorHandler errorHandler) {
+        super(MAX_LENGTH, errorHandler);
+    }
+}
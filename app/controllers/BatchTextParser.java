@@ -0,0 +1,20 @@
+package controllers;
+
+import play.http.HttpErrorHandler;
+import play.mvc.BodyParser;
+
+import javax.inject.Inject;
+
+/**
+ * Text body parser for bulk requests in any format, such as newline delimited Json,
+ * which are allowed to be larger than the default limit
+ *
+ * @author Lowell Buttorff
+ */
+public class BatchTextParser extends BodyParser.TolerantText {
+
+    @Inject
+    public BatchTextParser(final HttpErrorHandler errorHandler) {
+        super(BatchJsonParser.MAX_LENGTH, errorHandler);
+    }
+}
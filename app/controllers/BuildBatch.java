@@ -0,0 +1,106 @@
+package controllers;
+
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.Logger;
+import play.libs.Json;
+import play.mvc.Result;
+import services.BuildCatalog;
+import services.BuildValidator;
+import services.BuildVerdict;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+import static play.mvc.Results.badRequest;
+
+/**
+ * Bulk validation of builds, for re-checking every saved loadout after the game data changes
+ *
+ * @author Lowell Buttorff
+ */
+final class BuildBatch {
+
+    // Builds validated per task on the fork-join pool
+    static final int VALIDATION_CHUNK_SIZE = 1024;
+
+    private BuildBatch() {
+    }
+
+    /**
+     * Validates a list of loadouts against one BuildCatalog, in chunks spread over the executor.
+     * Verdicts are streamed back as newline delimited Json in the order of the request, i.e.
+     * {"index": 0, "valid": false, "errors": ["There is no perk with id, 42"]}
+     *
+     * @param body A Json list of loadouts, or one loadout per line if ndjson is set
+     * @param ndjson Whether the body is newline delimited Json
+     * @param validator The BuildValidator of the current game data
+     * @param executor The fork-join executor to validate on
+     * @return CompletionStage of the Result streaming the verdicts
+     */
+    static CompletionStage<Result> validateAll(final String body, final boolean ndjson,
+                                               final BuildValidator validator, final Executor executor) {
+        final IntFunction<JsonNode> rows;
+        final int count;
+        if(ndjson) {
+            final List<String> lines = new ArrayList<>();
+            for(String line : body.split("\n")) {
+                if(!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            rows = index -> parse(lines.get(index));
+            count = lines.size();
+        } else {
+            final JsonNode list = parse(body);
+            if(list == null || !list.isArray()) {
+                Logger.info("No list of builds given for validateBuilds");
+                return CompletableFuture.completedFuture(badRequest("Expected a Json list of builds"));
+            }
+            rows = list::get;
+            count = list.size();
+        }
+        Logger.info("Validating {} Builds", count);
+        final List<Integer> chunks = new ArrayList<>();
+        for(int start = 0; start < count; start += VALIDATION_CHUNK_SIZE) {
+            chunks.add(start);
+        }
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        return validator.catalog().thenApply(catalog -> CatalogResults.ndjson(Source.from(chunks)
+                .mapAsync(parallelism, start -> CompletableFuture.supplyAsync(
+                        () -> verdicts(catalog, rows, start, Math.min(start + VALIDATION_CHUNK_SIZE, count)), executor))
+                .mapConcat(verdicts -> verdicts)));
+    }
+
+    private static List<ObjectNode> verdicts(final BuildCatalog catalog, final IntFunction<JsonNode> rows,
+                                             final int start, final int end) {
+        final List<ObjectNode> verdicts = new ArrayList<>(end - start);
+        for(int index = start; index < end; index++) {
+            BuildVerdict verdict;
+            try {
+                verdict = catalog.validate(BuildJson.loadout(rows.apply(index), null));
+            } catch(IllegalArgumentException e) {
+                verdict = BuildVerdict.rejected(e.getMessage());
+            }
+            final ObjectNode result = Json.newObject();
+            result.put("index", index);
+            result.put("valid", verdict.isValid());
+            result.set("errors", Json.toJson(verdict.getErrors()));
+            verdicts.add(result);
+        }
+        return verdicts;
+    }
+
+    private static JsonNode parse(final String json) {
+        try {
+            return Json.parse(json);
+        } catch(RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package controllers;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import models.Build;
+import play.Logger;
+import play.libs.Json;
+import play.mvc.BodyParser;
+import play.mvc.Controller;
+import play.mvc.Http;
+import play.mvc.Result;
+import repositories.BuildRepository;
+import services.AttributeWeights;
+import services.BuildCatalog;
+import services.BuildCode;
+import services.BuildIndex;
+import services.BuildMatches;
+import services.BuildOptimizer;
+import services.BuildQuery;
+import services.BuildSpace;
+import services.BuildValidator;
+import services.BuildVerdict;
+import services.Loadout;
+import services.OptimizerQuery;
+import services.PackedCatalog;
+import services.ScoredBuild;
+import services.TrendingBuilds;
+import services.UniqueViewers;
+import services.ValidationExecutionContext;
+import services.VoteCounters;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * This class controls the flow of Builds, which are validated against the game data before they are saved
+ *
+ * @author Lowell Buttorff
+ */
+public class BuildController extends Controller {
+
+    // Most ranks of a part split off a BuildSpace, each part is enumerated by one task on the validation pool
+    static final int ENUMERATION_CHUNK_SIZE = 4096;
+    // Matching builds read from the database per step of a streamed search
+    static final int SEARCH_CHUNK_SIZE = 256;
+    // Identifies a viewer counted by UniqueViewers, the remote address is used without it
+    static final String VIEWER_HEADER = "X-Viewer-Id";
+
+    private final BuildRepository buildRepository;
+    private final BuildValidator buildValidator;
+    private final ValidationExecutionContext validationExecutionContext;
+    private final BuildOptimizer buildOptimizer;
+    private final BuildIndex buildIndex;
+    private final VoteCounters voteCounters;
+    private final TrendingBuilds trendingBuilds;
+    private final UniqueViewers uniqueViewers;
+
+    @Inject
+    public BuildController(final BuildRepository buildRepository, final BuildValidator buildValidator,
+                           final ValidationExecutionContext validationExecutionContext,
+                           final BuildOptimizer buildOptimizer, final BuildIndex buildIndex,
+                           final VoteCounters voteCounters, final TrendingBuilds trendingBuilds,
+                           final UniqueViewers uniqueViewers) {
+        this.buildRepository = buildRepository;
+        this.buildValidator = buildValidator;
+        this.validationExecutionContext = validationExecutionContext;
+        this.buildOptimizer = buildOptimizer;
+        this.buildIndex = buildIndex;
+        this.voteCounters = voteCounters;
+        this.trendingBuilds = trendingBuilds;
+        this.uniqueViewers = uniqueViewers;
+    }
+
+    /**
+     * HTTP Get request that returns one page of builds in id order,
+     * the size and position of the page are given with limit and after.
+     * With expand=all every build has its full character, perks, item and addons in place of their ids,
+     * read from the game data in memory, so the page takes a single query
+     *
+     * @return Result Json page of builds
+     */
+    public CompletionStage<Result> getAllBuilds() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
+        }
+        final boolean expand;
+        try {
+            expand = expand(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid expand given for getAllBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid expand given"));
+        }
+        final long after = paging == null ? 0 : paging.after;
+        final int limit = paging == null ? CatalogResults.DEFAULT_PAGE_LIMIT : paging.limit;
+        final CompletableFuture<BuildCatalog> catalog = expand
+                ? buildValidator.catalog().toCompletableFuture() : CompletableFuture.completedFuture(null);
+        return buildRepository.page(after, limit).thenCombine(catalog, (page, current) -> {
+            if(page.getItems().size() > 0) {
+                Logger.info("Returning page of Builds with {} elements", page.getItems().size());
+                if(!expand) {
+                    return ok(Json.toJson(page));
+                }
+                final ObjectNode json = Json.newObject();
+                final ArrayNode items = json.putArray("items");
+                for(Build build : page.getItems()) {
+                    items.add(BuildJson.expand(build, current));
+                }
+                json.set("next", Json.toJson(page.getNext()));
+                return ok(json);
+            }
+            Logger.info("No Builds to return");
+            return noContent();
+        });
+    }
+
+    /**
+     * HTTP Get request that returns a build from the database with its estimated unique viewers,
+     * and counts a view of it for trending builds and unique viewers. The viewer is identified by the
+     * X-Viewer-Id header, or by the remote address without it.
+     * With expand=all the build has its full character, perks, item and addons in place of their ids
+     *
+     * @param id The unique ID of a Build
+     * @return Result Json of a build
+     */
+    public CompletionStage<Result> getBuild(final long id) {
+        final boolean expand;
+        try {
+            expand = expand(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid expand given for getBuild");
+            return CompletableFuture.completedFuture(badRequest("Invalid expand given"));
+        }
+        final String viewer = request().header(VIEWER_HEADER).orElse(request().remoteAddress());
+        final CompletableFuture<BuildCatalog> catalog = expand
+                ? buildValidator.catalog().toCompletableFuture() : CompletableFuture.completedFuture(null);
+        return buildRepository.byId(id).thenCompose(build -> {
+            if(!build.isPresent()) {
+                return CompletableFuture.completedFuture(noContent());
+            }
+            final long character = build.get().getCharacter();
+            final CompletableFuture<Long> viewers = trendingBuilds
+                    .record(id, character, TrendingBuilds.Engagement.VIEW)
+                    .thenCompose(done -> uniqueViewers.view(id, character, viewer)).toCompletableFuture();
+            return catalog.thenCombine(viewers, (current, estimate) -> {
+                final ObjectNode json = (ObjectNode) (expand
+                        ? BuildJson.expand(build.get(), current) : Json.toJson(build.get()));
+                json.put("viewers", estimate);
+                return ok(json);
+            });
+        });
+    }
+
+    /**
+     * HTTP Get request that decodes a shared build code and returns the build it stands for,
+     * read from the game data in memory without touching the database
+     *
+     * @param code A build code made by encodeBuild
+     * @return Result Json of the build with its full character, perks, item and addons, or the rules it breaks
+     */
+    public CompletionStage<Result> getBuildByCode(final String code) {
+        final Loadout loadout;
+        try {
+            loadout = BuildCode.decode(code);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid code given for getBuildByCode");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return buildValidator.catalog().thenApply(catalog -> {
+            final BuildVerdict verdict = catalog.validate(loadout);
+            if(!verdict.isValid()) {
+                return badRequest(Json.toJson(verdict));
+            }
+            final ObjectNode json = Json.newObject();
+            json.put("code", code);
+            json.set("build", BuildJson.expand(loadout, catalog));
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Post request that validates a build and returns its code for sharing, without saving it
+     *
+     * @return Result Json of the code, or the rules the build breaks
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> encodeBuild() {
+        final Loadout loadout;
+        try {
+            loadout = BuildJson.loadout(request().body().asJson(), null);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid build given for encodeBuild");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return buildValidator.validate(loadout).thenApply(verdict -> {
+            if(!verdict.isValid()) {
+                return badRequest(Json.toJson(verdict));
+            }
+            final ObjectNode json = Json.newObject();
+            json.put("code", BuildCode.encode(loadout));
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Post request that validates and creates a new Build
+     *
+     * @return Result Json of a build, or the rules the build breaks
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> createBuild() {
+        final Loadout loadout;
+        try {
+            loadout = BuildJson.loadout(request().body().asJson(), null);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid build given for createBuild");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return buildValidator.validate(loadout).thenCompose(verdict -> {
+            if(!verdict.isValid()) {
+                return CompletableFuture.completedFuture(badRequest(Json.toJson(verdict)));
+            }
+            return buildRepository.insert(loadout.toBuild()).thenApply(build -> ok(Json.toJson(build)));
+        });
+    }
+
+    /**
+     * HTTP Post request that saves a copy of an existing Build, validated against the current game data,
+     * and counts the copy for trending builds
+     *
+     * @param id The Unique ID of the Build to copy
+     * @return Result Json of the new build, or the rules the build breaks
+     */
+    public CompletionStage<Result> copyBuild(final long id) {
+        return buildRepository.byId(id).thenCompose(existing -> {
+            if(!existing.isPresent()) {
+                return CompletableFuture.completedFuture(badRequest("There is no build with id, "+id));
+            }
+            final Loadout loadout = Loadout.of(existing.get());
+            return buildValidator.validate(loadout).thenCompose(verdict -> {
+                if(!verdict.isValid()) {
+                    return CompletableFuture.completedFuture(badRequest(Json.toJson(verdict)));
+                }
+                return buildRepository.insert(loadout.toBuild()).thenCompose(build ->
+                        trendingBuilds.record(id, loadout.getCharacter(), TrendingBuilds.Engagement.COPY)
+                                .thenApply(done -> ok(Json.toJson(build))));
+            });
+        });
+    }
+
+    /**
+     * HTTP Post request that validates many builds without saving them.
+     * Takes a Json list of builds, or one build per line with the application/x-ndjson content type,
+     * and streams back the verdict of each build as newline delimited Json
+     *
+     * @return Result newline delimited Json verdicts
+     */
+    @BodyParser.Of(BatchTextParser.class)
+    public CompletionStage<Result> validateBuilds() {
+        final boolean ndjson = request().contentType().map(CatalogResults.NDJSON::equals).orElse(false);
+        return BuildBatch.validateAll(request().body().asText(), ndjson, buildValidator, validationExecutionContext);
+    }
+
+    /**
+     * HTTP Get request that streams every valid build of a character as newline delimited Json,
+     * or only the first ones when limit is given.
+     * The builds are enumerated lazily, ranges of them in parallel, and are never held in memory all at once.
+     *
+     * @param id The unique ID of a Character
+     * @return Result newline delimited Json builds
+     */
+    public CompletionStage<Result> enumerateBuilds(final long id) {
+        final String limitParameter = request().getQueryString("limit");
+        final long limit;
+        try {
+            limit = limitParameter == null ? Long.MAX_VALUE : Long.parseLong(limitParameter);
+        }catch(NumberFormatException e) {
+            Logger.info("Invalid limit given for enumerateBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid limit given"));
+        }
+        if(limit < 1) {
+            Logger.info("Invalid limit given for enumerateBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid limit given"));
+        }
+        return buildValidator.catalog().thenApply(catalog -> {
+            final BuildSpace space;
+            try {
+                space = catalog.space(id);
+            }catch(ArithmeticException e) {
+                Logger.info("Too many builds to enumerate for character {}", id);
+                return badRequest("There are too many builds to enumerate");
+            }
+            if(space == null) {
+                return badRequest("There is no character with id, "+id);
+            }
+            final long count = Math.min(limit, space.size());
+            Logger.info("Enumerating {} Builds", count);
+            final Source<ByteString, NotUsed> builds = Source
+                    .fromIterator(() -> space.parts(0, count, ENUMERATION_CHUNK_SIZE))
+                    .mapAsync(Runtime.getRuntime().availableProcessors(), part -> CompletableFuture.supplyAsync(
+                            () -> enumerate(part), validationExecutionContext));
+            return ok().chunked(builds).as(CatalogResults.NDJSON);
+        });
+    }
+
+    /**
+     * HTTP Post request that searches for the best scoring builds of a character
+     * with the required and without the forbidden perks and addons.
+     * The search stops at its time budget, the response says whether it covered every build.
+     *
+     * @return Result Json of the best builds and statistics of the search
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> optimizeBuilds() {
+        final OptimizerQuery query;
+        try {
+            query = BuildJson.optimizerQuery(request().body().asJson());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid query given for optimizeBuilds");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return buildOptimizer.optimize(query).thenApply(result -> {
+            if(!result.getVerdict().isValid()) {
+                return badRequest(Json.toJson(result.getVerdict()));
+            }
+            Logger.info("Optimized builds of character {} in {} ms, {} nodes expanded and {} pruned",
+                    query.getCharacter(), result.getElapsedMillis(), result.getNodesExpanded(), result.getNodesPruned());
+            final ObjectNode json = Json.newObject();
+            final ArrayNode builds = json.putArray("builds");
+            for(ScoredBuild build : result.getBuilds()) {
+                builds.add(BuildJson.json(build));
+            }
+            json.put("complete", result.isComplete());
+            json.put("nodesExpanded", result.getNodesExpanded());
+            json.put("nodesPruned", result.getNodesPruned());
+            json.put("elapsedMillis", result.getElapsedMillis());
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Post request that scores a list of builds by the rarity and potency of their perks, item and addons
+     *
+     * @return Result Json list of scores, in the order of the builds
+     */
+    @BodyParser.Of(BatchJsonParser.class)
+    public CompletionStage<Result> scoreBuilds() {
+        final JsonNode body = request().body().asJson();
+        final AttributeWeights weights;
+        final long[] packed;
+        try {
+            weights = BuildJson.attributeWeights(body);
+            packed = BuildJson.pack(body.get("builds"));
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid builds given for scoreBuilds");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        final int count = packed.length / PackedCatalog.STRIDE;
+        Logger.info("Scoring {} Builds", count);
+        return buildValidator.catalog().thenApplyAsync(catalog -> {
+            final double[] scores = new double[count];
+            catalog.packed().scorer(weights).scoreAll(packed, count, scores);
+            final ObjectNode json = Json.newObject();
+            json.set("scores", Json.toJson(scores));
+            return ok(json);
+        }, validationExecutionContext);
+    }
+
+    /**
+     * HTTP Post request that searches the saved builds for the characters, perks, items and addons they use.
+     * Returns the number of matches and one page of them in id order, the size and position of the page
+     * are given with limit and after, or streams every match as newline delimited Json when stream=true is given
+     *
+     * @return Result Json page of builds
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> searchBuilds() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for searchBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
+        }
+        final BuildQuery query;
+        try {
+            query = BuildJson.buildQuery(request().body().asJson());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid search given for searchBuilds");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        if(CatalogResults.wantsStream(request())) {
+            return buildIndex.search(query).thenApply(matches -> {
+                Logger.info("Streaming {} matching Builds", matches.count());
+                return CatalogResults.ndjson(stream(matches));
+            });
+        }
+        final long after = paging == null ? 0 : paging.after;
+        final int limit = paging == null ? CatalogResults.DEFAULT_PAGE_LIMIT : paging.limit;
+        return buildIndex.search(query).thenCompose(matches -> {
+            final List<Long> ids = matches.after(after, limit);
+            return buildRepository.byIds(ids).thenApply(builds -> {
+                Logger.info("Returning page of {} matching Builds", builds.size());
+                final ObjectNode json = Json.newObject();
+                json.put("count", matches.count());
+                json.set("items", Json.toJson(builds));
+                if(ids.size() == limit && matches.hasAfter(ids.get(limit - 1))) {
+                    json.put("next", ids.get(limit - 1));
+                } else {
+                    json.putNull("next");
+                }
+                return ok(json);
+            });
+        });
+    }
+
+    /**
+     * HTTP Post request that counts the saved builds matching a search, without reading them
+     *
+     * @return Result Json of the count
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> countBuilds() {
+        final BuildQuery query;
+        try {
+            query = BuildJson.buildQuery(request().body().asJson());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid search given for countBuilds");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return buildIndex.search(query).thenApply(matches -> {
+            final ObjectNode json = Json.newObject();
+            json.put("count", matches.count());
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Post request that votes a Build up or down with a vote of 1 or -1,
+     * a vote up also counts for trending builds.
+     * The vote is counted in memory and written to the database in batches, not once per request
+     *
+     * @param id The Unique ID of a Build
+     * @return Result Json of the build id and its vote total
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> voteBuild(final long id) {
+        final JsonNode vote = request().body().asJson().get("vote");
+        if(vote == null || !vote.isIntegralNumber() || Math.abs(vote.longValue()) != 1) {
+            Logger.info("Invalid vote given for voteBuild");
+            return CompletableFuture.completedFuture(badRequest("The vote supplied was invalid"));
+        }
+        return buildIndex.characterOf(id).thenCompose(character -> {
+            if(!character.isPresent()) {
+                return CompletableFuture.completedFuture(badRequest("There is no build with id, "+id));
+            }
+            voteCounters.vote(id, vote.longValue());
+            final CompletionStage<Void> recorded = vote.longValue() > 0
+                    ? trendingBuilds.record(id, character.get(), TrendingBuilds.Engagement.VOTE)
+                    : CompletableFuture.completedFuture(null);
+            return recorded.thenCompose(done -> voteCounters.votes(id)).thenApply(votes -> ok(votesJson(id, votes)));
+        });
+    }
+
+    /**
+     * HTTP Get request that returns the vote total of a Build, including votes not yet written to the database
+     *
+     * @param id The Unique ID of a Build
+     * @return Result Json of the build id and its vote total
+     */
+    public CompletionStage<Result> getBuildVotes(final long id) {
+        return buildIndex.contains(id).thenCompose(saved -> {
+            if(!saved) {
+                return CompletableFuture.completedFuture(noContent());
+            }
+            return voteCounters.votes(id).thenApply(votes -> ok(votesJson(id, votes)));
+        });
+    }
+
+    /**
+     * HTTP Put request that updates an existing Build,
+     * only the fields given in the request are changed and the result is validated again
+     *
+     * @param id The Unique ID of a Build
+     * @return Result Json of a build, or the rules the build breaks
+     */
+    @BodyParser.Of(BodyParser.Json.class)
+    public CompletionStage<Result> updateBuild(final long id) {
+        final JsonNode body = request().body().asJson();
+        return buildRepository.byId(id).thenCompose(existing -> {
+            if(!existing.isPresent()) {
+                return CompletableFuture.completedFuture(badRequest("There is no build with id, "+id));
+            }
+            final Loadout loadout;
+            try {
+                loadout = BuildJson.loadout(body, Loadout.of(existing.get()));
+            }catch(IllegalArgumentException e) {
+                Logger.info("Invalid build given for updateBuild");
+                return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+            }
+            return buildValidator.validate(loadout).thenCompose(verdict -> {
+                if(!verdict.isValid()) {
+                    return CompletableFuture.completedFuture(badRequest(Json.toJson(verdict)));
+                }
+                return buildRepository.update(id, loadout::applyTo).thenApply(build -> build.isPresent()
+                        ? ok(Json.toJson(build.get())) : badRequest("There is no build with id, "+id));
+            });
+        });
+    }
+
+    /**
+     * HTTP Delete request that deletes a Build from the database
+     *
+     * @param id The Unique ID of a Build
+     * @return Result Json of a build
+     */
+    public CompletionStage<Result> deleteBuild(final long id) {
+        return buildRepository.delete(id).thenApply(build -> {
+            if(!build.isPresent()) {
+                return badRequest("There is no build with id, "+id);
+            }
+            return ok(Json.toJson(build.get()));
+        });
+    }
+
+    private static ObjectNode votesJson(final long id, final long votes) {
+        final ObjectNode json = Json.newObject();
+        json.put("build", id);
+        json.put("votes", votes);
+        return json;
+    }
+
+    /**
+     * @return true if the request asked for expanded builds with expand=all
+     * @throws IllegalArgumentException if expand is given with another value
+     */
+    private static boolean expand(final Http.Request request) {
+        final String expand = request.getQueryString("expand");
+        if(expand == null) {
+            return false;
+        }
+        if(!"all".equals(expand)) {
+            throw new IllegalArgumentException("Only expand=all is supported");
+        }
+        return true;
+    }
+
+    private Source<Build, NotUsed> stream(final BuildMatches matches) {
+        return Source.unfoldAsync(0L, after -> {
+            final List<Long> ids = matches.after(after, SEARCH_CHUNK_SIZE);
+            if(ids.isEmpty()) {
+                return CompletableFuture.completedFuture(Optional.<Pair<Long, List<Build>>>empty());
+            }
+            return buildRepository.byIds(ids)
+                    .thenApply(builds -> Optional.of(Pair.create(ids.get(ids.size() - 1), builds)));
+        }).mapConcat(builds -> builds);
+    }
+
+    private static ByteString enumerate(final Spliterator<Loadout> part) {
+        final ByteStringBuilder chunk = new ByteStringBuilder();
+        part.forEachRemaining(loadout -> {
+            chunk.append(ByteString.fromString(Json.stringify(BuildJson.json(loadout))));
+            chunk.putByte((byte) '\n');
+        });
+        return chunk.result();
+    }
+}
@@ -0,0 +1,339 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import models.Build;
+import play.libs.Json;
+import services.AttributeWeights;
+import services.BuildCatalog;
+import services.BuildQuery;
+import services.Loadout;
+import services.OptimizerQuery;
+import services.PackedCatalog;
+import services.ScoredBuild;
+import services.ScoringProfile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads loadouts from request bodies, i.e.
+ * {"character": 1, "perks": [2, 3, 4, 5], "item": 6, "addons": [7, 8]}
+ *
+ * @author Lowell Buttorff
+ */
+final class BuildJson {
+
+    private BuildJson() {
+    }
+
+    /**
+     * Reads a loadout, fields missing from the body are taken from a base loadout
+     *
+     * @param body Json object of a loadout
+     * @param base The loadout to fill missing fields from, null if the character is required
+     * @return Loadout of the body
+     * @throws IllegalArgumentException if a field is missing or is not an id or list of ids
+     */
+    static Loadout loadout(final JsonNode body, final Loadout base) {
+        if(body == null || !body.isObject()) {
+            throw new IllegalArgumentException("A build must be a Json object");
+        }
+        final long character;
+        if(body.has("character")) {
+            character = id(body.get("character"), "character");
+        } else if(base != null) {
+            character = base.getCharacter();
+        } else {
+            throw new IllegalArgumentException("No character given");
+        }
+        final long[] perks = body.has("perks") ? ids(body.get("perks"), "perks") : slots(base, true);
+        final long item;
+        if(body.has("item")) {
+            item = body.get("item").isNull() ? Loadout.NO_ITEM : id(body.get("item"), "item");
+        } else {
+            item = base == null ? Loadout.NO_ITEM : base.getItem();
+        }
+        final long[] addons = body.has("addons") ? ids(body.get("addons"), "addons") : slots(base, false);
+        return new Loadout(character, perks, item, addons);
+    }
+
+    /**
+     * @param loadout A loadout
+     * @return Json object of the loadout, in the same form loadout reads
+     */
+    static ObjectNode json(final Loadout loadout) {
+        final ObjectNode json = Json.newObject();
+        json.put("character", loadout.getCharacter());
+        final ArrayNode perks = json.putArray("perks");
+        for(int slot = 0; slot < loadout.perkCount(); slot++) {
+            perks.add(loadout.perk(slot));
+        }
+        if(loadout.hasItem()) {
+            json.put("item", loadout.getItem());
+        } else {
+            json.putNull("item");
+        }
+        final ArrayNode addons = json.putArray("addons");
+        for(int slot = 0; slot < loadout.addonCount(); slot++) {
+            addons.add(loadout.addon(slot));
+        }
+        return json;
+    }
+
+    /**
+     * @param loadout A loadout
+     * @param catalog The catalog to read the game data from
+     * @return Json object of the loadout with the full character, perks, item and addons in place of their ids,
+     * null where a row is no longer in the catalog
+     */
+    static ObjectNode expand(final Loadout loadout, final BuildCatalog catalog) {
+        final ObjectNode json = Json.newObject();
+        json.set("character", Json.toJson(catalog.getCharacters().get(loadout.getCharacter()).orElse(null)));
+        final ArrayNode perks = json.putArray("perks");
+        for(int slot = 0; slot < loadout.perkCount(); slot++) {
+            perks.add(Json.toJson(catalog.getPerks().get(loadout.perk(slot)).orElse(null)));
+        }
+        if(loadout.hasItem()) {
+            json.set("item", Json.toJson(catalog.getItems().get(loadout.getItem()).orElse(null)));
+        } else {
+            json.putNull("item");
+        }
+        final ArrayNode addons = json.putArray("addons");
+        for(int slot = 0; slot < loadout.addonCount(); slot++) {
+            addons.add(Json.toJson(catalog.getAddons().get(loadout.addon(slot)).orElse(null)));
+        }
+        return json;
+    }
+
+    /**
+     * @param build A saved build
+     * @param catalog The catalog to read the game data from
+     * @return Json object of the build with the full character, perks, item and addons in place of their ids
+     */
+    static ObjectNode expand(final Build build, final BuildCatalog catalog) {
+        final ObjectNode json = Json.newObject();
+        json.put("id", build.getId());
+        json.setAll(expand(Loadout.of(build), catalog));
+        return json;
+    }
+
+    /**
+     * Reads an optimizer query, i.e.
+     * {"character": 1, "requiredPerks": [2], "forbiddenPerks": [3], "requiredAddons": [], "forbiddenAddons": [],
+     * "weights": {"perks": {"4": 2.5}, "items": {}, "addons": {}}, "synergies": [{"perks": [4, 5], "bonus": 1}],
+     * "k": 10, "budgetMillis": 50}
+     * where everything but the character is optional
+     *
+     * @param body Json object of the query
+     * @return OptimizerQuery of the body
+     * @throws IllegalArgumentException if a field is missing or malformed
+     */
+    static OptimizerQuery optimizerQuery(final JsonNode body) {
+        if(body == null || !body.isObject() || !body.has("character")) {
+            throw new IllegalArgumentException("No character given");
+        }
+        final OptimizerQuery query = new OptimizerQuery(id(body.get("character"), "character"))
+                .requirePerks(idList(body.get("requiredPerks"), "requiredPerks"))
+                .forbidPerks(idList(body.get("forbiddenPerks"), "forbiddenPerks"))
+                .requireAddons(idList(body.get("requiredAddons"), "requiredAddons"))
+                .forbidAddons(idList(body.get("forbiddenAddons"), "forbiddenAddons"))
+                .profile(profile(body));
+        if(body.has("k")) {
+            query.k(body.get("k").asInt());
+        }
+        if(body.has("budgetMillis")) {
+            query.budgetMillis(body.get("budgetMillis").asLong());
+        }
+        return query;
+    }
+
+    /**
+     * Reads a search of the saved builds, i.e.
+     * {"character": 1, "requiredPerks": [2, 3], "anyAddons": [4, 5], "forbiddenAddons": [6]}
+     * where the required, any and forbidden lists are given for Characters, Perks, Items and Addons and are all optional
+     *
+     * @param body Json object of a search
+     * @return BuildQuery of the body
+     * @throws IllegalArgumentException if a field is not an id or list of ids
+     */
+    static BuildQuery buildQuery(final JsonNode body) {
+        if(body == null || !body.isObject()) {
+            throw new IllegalArgumentException("No search given");
+        }
+        final BuildQuery query = new BuildQuery();
+        if(body.has("character")) {
+            query.require(BuildQuery.Slot.CHARACTER,
+                    Collections.singletonList(id(body.get("character"), "character")));
+        }
+        for(BuildQuery.Slot slot : BuildQuery.Slot.values()) {
+            final String name = slot.name().charAt(0) + slot.name().substring(1).toLowerCase() + "s";
+            query.require(slot, idList(body.get("required" + name), "required" + name))
+                    .any(slot, idList(body.get("any" + name), "any" + name))
+                    .forbid(slot, idList(body.get("forbidden" + name), "forbidden" + name));
+        }
+        return query;
+    }
+
+    /**
+     * Reads the weights and synergies of a scoring profile
+     *
+     * @param body Json object with optional weights and synergies fields
+     * @return ScoringProfile of the body
+     * @throws IllegalArgumentException if a weight or synergy is malformed
+     */
+    static ScoringProfile profile(final JsonNode body) {
+        final ScoringProfile profile = new ScoringProfile();
+        final JsonNode weights = body.path("weights");
+        weights.path("perks").fields()
+                .forEachRemaining(weight -> profile.perk(key(weight.getKey()), weight(weight.getValue())));
+        weights.path("items").fields()
+                .forEachRemaining(weight -> profile.item(key(weight.getKey()), weight(weight.getValue())));
+        weights.path("addons").fields()
+                .forEachRemaining(weight -> profile.addon(key(weight.getKey()), weight(weight.getValue())));
+        for(JsonNode synergy : body.path("synergies")) {
+            final long[] pair = ids(synergy.path("perks"), "synergy perks");
+            if(pair.length != 2) {
+                throw new IllegalArgumentException("A synergy is between two perks");
+            }
+            profile.synergy(pair[0], pair[1], weight(synergy.path("bonus")));
+        }
+        return profile;
+    }
+
+    /**
+     * Reads the attribute weights of a scoring request, i.e.
+     * {"attributes": {"perks": {"rarity": 0.5, "potency": 1}, "items": {"potency": 2}, "addons": {}}}
+     * where every weight is optional and 0 if left out
+     *
+     * @param body Json object with an attributes field
+     * @return AttributeWeights of the body
+     * @throws IllegalArgumentException if a weight is not a number
+     */
+    static AttributeWeights attributeWeights(final JsonNode body) {
+        final JsonNode attributes = body.path("attributes");
+        final JsonNode perks = attributes.path("perks");
+        final JsonNode items = attributes.path("items");
+        final JsonNode addons = attributes.path("addons");
+        return new AttributeWeights()
+                .perks(optionalWeight(perks.get("rarity")), optionalWeight(perks.get("potency")))
+                .items(optionalWeight(items.get("rarity")), optionalWeight(items.get("potency")))
+                .addons(optionalWeight(addons.get("rarity")), optionalWeight(addons.get("potency")));
+    }
+
+    /**
+     * Packs a Json list of loadouts PackedCatalog.STRIDE ids at a time, with 0 for empty slots
+     *
+     * @param builds Json list of loadouts
+     * @return The packed builds
+     * @throws IllegalArgumentException if the list or one of the loadouts is malformed or has too many perks or addons
+     */
+    static long[] pack(final JsonNode builds) {
+        if(builds == null || !builds.isArray()) {
+            throw new IllegalArgumentException("Expected a Json list of builds");
+        }
+        final long[] packed = new long[builds.size() * PackedCatalog.STRIDE];
+        for(int build = 0; build < builds.size(); build++) {
+            final JsonNode loadout = builds.get(build);
+            final int offset = build * PackedCatalog.STRIDE;
+            packSlots(loadout.get("perks"), "perks", packed, offset, BuildCatalog.PERK_SLOTS);
+            final JsonNode item = loadout.get("item");
+            if(item != null && !item.isNull()) {
+                packed[offset + PackedCatalog.ITEM_OFFSET] = id(item, "item");
+            }
+            packSlots(loadout.get("addons"), "addons", packed, offset + PackedCatalog.ADDON_OFFSET,
+                    BuildCatalog.ADDON_SLOTS);
+        }
+        return packed;
+    }
+
+    /**
+     * @param build A scored build
+     * @return Json object of the score and the build
+     */
+    static ObjectNode json(final ScoredBuild build) {
+        final ObjectNode json = Json.newObject();
+        json.put("score", build.getScore());
+        json.set("build", json(build.getLoadout()));
+        return json;
+    }
+
+    private static void packSlots(final JsonNode ids, final String field, final long[] packed, final int offset,
+                                  final int slots) {
+        if(ids == null || ids.isNull()) {
+            return;
+        }
+        if(!ids.isArray()) {
+            throw new IllegalArgumentException("The " + field + " must be a list of ids");
+        }
+        if(ids.size() > slots) {
+            throw new IllegalArgumentException("A build has at most " + slots + " " + field);
+        }
+        for(int slot = 0; slot < ids.size(); slot++) {
+            packed[offset + slot] = id(ids.get(slot), field);
+        }
+    }
+
+    private static double optionalWeight(final JsonNode node) {
+        return node == null ? 0 : weight(node);
+    }
+
+    private static long key(final String key) {
+        try {
+            return Long.parseLong(key);
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Weights must be keyed by id");
+        }
+    }
+
+    private static double weight(final JsonNode node) {
+        if(!node.isNumber()) {
+            throw new IllegalArgumentException("Weights must be numbers");
+        }
+        return node.doubleValue();
+    }
+
+    private static List<Long> idList(final JsonNode node, final String field) {
+        final List<Long> list = new ArrayList<>();
+        if(node != null) {
+            for(long id : ids(node, field)) {
+                list.add(id);
+            }
+        }
+        return list;
+    }
+
+    private static long id(final JsonNode node, final String field) {
+        if(!node.isIntegralNumber() || !node.canConvertToLong()) {
+            throw new IllegalArgumentException("The " + field + " must be an id");
+        }
+        return node.longValue();
+    }
+
+    private static long[] ids(final JsonNode node, final String field) {
+        if(node.isNull()) {
+            return new long[0];
+        }
+        if(!node.isArray()) {
+            throw new IllegalArgumentException("The " + field + " must be a list of ids");
+        }
+        final long[] ids = new long[node.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = id(node.get(i), field);
+        }
+        return ids;
+    }
+
+    private static long[] slots(final Loadout base, final boolean perks) {
+        if(base == null) {
+            return new long[0];
+        }
+        final long[] ids = new long[perks ? base.perkCount() : base.addonCount()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = perks ? base.perk(i) : base.addon(i);
+        }
+        return ids;
+    }
+}
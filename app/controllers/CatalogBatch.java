@@ -0,0 +1,105 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.ebean.Model;
+import models.CatalogEntry;
+import models.CharacterType;
+import models.RatedEntry;
+import play.Logger;
+import play.libs.Json;
+import play.mvc.Result;
+import repositories.CatalogRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static play.mvc.Results.badRequest;
+import static play.mvc.Results.ok;
+
+/**
+ * Bulk creation of game data, shared by the game data controllers
+ *
+ * @author Lowell Buttorff
+ */
+final class CatalogBatch {
+
+    private CatalogBatch() {
+    }
+
+    /**
+     * Validates every row of a Json list up front and inserts the valid ones in a single transaction
+     *
+     * @param body The Json list of rows, each with a name, description and type
+     * @param repository The repository of the table to insert into
+     * @param noun The singular name of a row, for messages
+     * @return CompletionStage of a Json list with the outcome of each row, in the order given
+     */
+    static <T extends Model & CatalogEntry> CompletionStage<Result> createAll(final JsonNode body,
+                                                                             final CatalogRepository<T> repository,
+                                                                             final String noun) {
+        if(body == null || !body.isArray()) {
+            return CompletableFuture.completedFuture(badRequest("A list of " + noun + "s is required."));
+        }
+        final int size = body.size();
+        final String[] errors = new String[size];
+        final int[] positions = new int[size];
+        final List<T> entries = new ArrayList<>(size);
+        final Set<String> names = new HashSet<>();
+        for(int i = 0; i < size; i++) {
+            final JsonNode row = body.get(i);
+            if(!row.has("name") || !row.has("description") || !row.has("type")) {
+                errors[i] = "Some data missing from request.";
+                continue;
+            }
+            final String name = row.get("name").textValue();
+            final CharacterType type;
+            try {
+                type = CharacterType.valueOf(row.get("type").textValue());
+            } catch(Exception e) {
+                errors[i] = "The CharacterType supplied was invalid";
+                continue;
+            }
+            if(name == null || !names.add(name)) {
+                errors[i] = "The name is used more than once in the request, " + name;
+                continue;
+            }
+            final T entry = repository.create(type, name, row.get("description").textValue());
+            if(entry instanceof RatedEntry) {
+                try {
+                    CatalogResults.readAttributes(row, (RatedEntry) entry);
+                } catch(IllegalArgumentException e) {
+                    errors[i] = e.getMessage();
+                    continue;
+                }
+            }
+            positions[i] = entries.size();
+            entries.add(entry);
+        }
+        Logger.info("Creating {} of {} {}s in a batch", entries.size(), size, noun);
+        return repository.insertAll(entries).thenApply(inserted -> {
+            final ArrayNode results = Json.newArray();
+            for(int i = 0; i < size; i++) {
+                final ObjectNode result = results.addObject();
+                result.put("index", i);
+                if(errors[i] != null) {
+                    result.put("error", errors[i]);
+                    continue;
+                }
+                final Optional<T> entry = inserted.get(positions[i]);
+                if(entry.isPresent()) {
+                    result.set("created", Json.toJson(entry.get()));
+                } else {
+                    result.put("error", "A " + noun + " already exists with the name, " + entries.get(positions[i]).getName());
+                }
+            }
+            return ok(results);
+        });
+    }
+}
@@ -0,0 +1,286 @@
+package controllers;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.JsonNode;
+import models.CharacterType;
+import models.RatedEntry;
+import play.libs.Json;
+import play.mvc.Http;
+import play.mvc.Result;
+import repositories.CatalogChanges;
+import repositories.CatalogFilter;
+import repositories.JsonBody;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static play.mvc.Results.ok;
+import static play.mvc.Results.status;
+
+/**
+ * Helpers shared by the game data controllers for building responses
+ *
+ * @author Lowell Buttorff
+ */
+final class CatalogResults {
+
+    static final String NDJSON = "application/x-ndjson";
+    static final int DEFAULT_PAGE_LIMIT = 100;
+    static final int MAX_PAGE_LIMIT = 1000;
+    static final String GZIP_ETAG_SUFFIX = "-gz";
+
+    private CatalogResults() {
+    }
+
+    /**
+     * Keyset paging requested with the limit and after query parameters
+     */
+    static final class Paging {
+
+        final int limit;
+        final long after;
+
+        private Paging(final int limit, final long after) {
+            this.limit = limit;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Reads the limit and after query parameters of a request.
+     * Requests without either keep getting the whole list.
+     *
+     * @param request The current request
+     * @return Paging of the request, null if the request is not paged
+     * @throws IllegalArgumentException if limit or after is malformed or out of range
+     */
+    static Paging paging(final Http.Request request) {
+        final String limit = request.getQueryString("limit");
+        final String after = request.getQueryString("after");
+        if(limit == null && after == null) {
+            return null;
+        }
+        final int pageLimit = limit == null ? DEFAULT_PAGE_LIMIT : Integer.parseInt(limit);
+        final long pageAfter = after == null ? 0 : Long.parseLong(after);
+        if(pageLimit < 1 || pageLimit > MAX_PAGE_LIMIT || pageAfter < 0) {
+            throw new IllegalArgumentException("Page out of range");
+        }
+        return new Paging(pageLimit, pageAfter);
+    }
+
+    /**
+     * Reads the type and name query parameters of a request, both may be given more than once.
+     * Names are matched by prefix.
+     *
+     * @param request The current request
+     * @return CatalogFilter of the request, CatalogFilter.NONE if neither is given
+     * @throws IllegalArgumentException if a type is not a CharacterType
+     */
+    static CatalogFilter filter(final Http.Request request) {
+        final String[] types = request.queryString().get("type");
+        final String[] names = request.queryString().get("name");
+        if(types == null && names == null) {
+            return CatalogFilter.NONE;
+        }
+        final List<CharacterType> characterTypes = new ArrayList<>();
+        if(types != null) {
+            for(String type : types) {
+                characterTypes.add(CharacterType.valueOf(type));
+            }
+        }
+        final List<String> namePrefixes = new ArrayList<>();
+        if(names != null) {
+            Collections.addAll(namePrefixes, names);
+        }
+        return new CatalogFilter(characterTypes, namePrefixes);
+    }
+
+    /**
+     * Reads the optional rarity and potency of a perk, addon or item from a request body
+     *
+     * @param body Json object of the row
+     * @param entry The new row to set them on
+     * @throws IllegalArgumentException if rarity is not a whole number of at least 0 or potency is not a number
+     */
+    static void readAttributes(final JsonNode body, final RatedEntry entry) {
+        final Integer rarity = rarity(body);
+        final Double potency = potency(body);
+        if(rarity != null) {
+            entry.setRarity(rarity);
+        }
+        if(potency != null) {
+            entry.setPotency(potency);
+        }
+    }
+
+    /**
+     * Reads the optional rarity and potency of a perk, addon or item from a request body
+     *
+     * @param body Json object of the changes
+     * @param changes The changes to add them to
+     * @throws IllegalArgumentException if rarity is not a whole number of at least 0 or potency is not a number
+     */
+    static void readAttributes(final JsonNode body, final CatalogChanges changes) {
+        changes.rarity(rarity(body)).potency(potency(body));
+    }
+
+    private static Integer rarity(final JsonNode body) {
+        final JsonNode rarity = body.get("rarity");
+        if(rarity == null) {
+            return null;
+        }
+        if(!rarity.canConvertToInt() || !rarity.isIntegralNumber() || rarity.intValue() < 0) {
+            throw new IllegalArgumentException("The rarity supplied was invalid");
+        }
+        return rarity.intValue();
+    }
+
+    private static Double potency(final JsonNode body) {
+        final JsonNode potency = body.get("potency");
+        if(potency == null) {
+            return null;
+        }
+        if(!potency.isNumber()) {
+            throw new IllegalArgumentException("The potency supplied was invalid");
+        }
+        return potency.doubleValue();
+    }
+
+    /**
+     * Checks whether the client will take a gzipped response
+     *
+     * @param request The current request
+     * @return true if the Accept-Encoding header allows gzip
+     */
+    static boolean acceptsGzip(final Http.Request request) {
+        final String acceptEncoding = request.getHeader(Http.HeaderNames.ACCEPT_ENCODING);
+        if(acceptEncoding == null) {
+            return false;
+        }
+        for(String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.trim().split(";");
+            final String name = parts[0].trim();
+            if(!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean allowed = true;
+            for(int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim();
+                if(parameter.startsWith("q=")) {
+                    try {
+                        allowed = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch(NumberFormatException e) {
+                        allowed = false;
+                    }
+                }
+            }
+            return allowed;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a request asked for the table as a stream,
+     * with stream=true or by accepting newline delimited Json
+     *
+     * @param request The current request
+     * @return true if the response should be streamed
+     */
+    static boolean wantsStream(final Http.Request request) {
+        final String accept = request.getHeader(Http.HeaderNames.ACCEPT);
+        return "true".equals(request.getQueryString("stream")) || (accept != null && accept.contains(NDJSON));
+    }
+
+    /**
+     * HTTP Ok result that streams rows as chunked, newline delimited Json
+     *
+     * @param rows The rows to stream
+     * @return Result with a chunked body
+     */
+    static Result ndjson(final Source<?, NotUsed> rows) {
+        final ByteString newline = ByteString.fromString("\n");
+        return ok().chunked(rows.map(row -> ByteString.fromArray(Json.mapper().writeValueAsBytes(row)).concat(newline)))
+                .as(NDJSON);
+    }
+
+    /**
+     * Checks the If-None-Match header of a request against the current ETag,
+     * in either the identity or the gzip form it is sent with
+     *
+     * @param request The current request
+     * @param etag The quoted ETag of the current data
+     * @return The ETag the client already has, null if it does not have the current data
+     */
+    static String matchingETag(final Http.Request request, final String etag) {
+        final String ifNoneMatch = request.getHeader(Http.HeaderNames.IF_NONE_MATCH);
+        if(ifNoneMatch == null) {
+            return null;
+        }
+        final String gzipped = gzipETag(etag);
+        for(String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if(candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if(candidate.equals("*") || candidate.equals(etag)) {
+                return etag;
+            }
+            if(candidate.equals(gzipped)) {
+                return gzipped;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * HTTP Not Modified result for a matching If-None-Match
+     *
+     * @param etag The quoted ETag of the current data
+     * @return Result with no body
+     */
+    static Result notModified(final String etag) {
+        return tagged(status(Http.Status.NOT_MODIFIED), etag);
+    }
+
+    /**
+     * Adds the caching headers of a GET response.
+     * A gzipped body is a different representation of the data, so it gets its own strong ETag.
+     *
+     * @param result The response
+     * @param etag The quoted ETag of the data in the response
+     * @return Result with ETag and Cache-Control set
+     */
+    static Result tagged(final Result result, final String etag) {
+        final boolean gzipped = result.header(Http.HeaderNames.CONTENT_ENCODING).map("gzip"::equals).orElse(false);
+        return result.withHeader(Http.HeaderNames.ETAG, gzipped ? gzipETag(etag) : etag)
+                .withHeader(Http.HeaderNames.CACHE_CONTROL, "no-cache");
+    }
+
+    /**
+     * @param etag The quoted ETag of the data
+     * @return The quoted ETag of the data gzipped
+     */
+    static String gzipETag(final String etag) {
+        return etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + "\"";
+    }
+
+    /**
+     * HTTP Ok result with an already serialized Json body
+     *
+     * @param body The serialized body
+     * @param gzip Whether to send the gzipped copy of the body
+     * @return Result of the body
+     */
+    static Result json(final JsonBody body, final boolean gzip) {
+        final Result result;
+        if(gzip) {
+            result = ok(body.gzipped()).withHeader(Http.HeaderNames.CONTENT_ENCODING, "gzip");
+        } else {
+            result = ok(body.bytes());
+        }
+        return result.as(Http.MimeTypes.JSON).withHeader(Http.HeaderNames.VARY, Http.HeaderNames.ACCEPT_ENCODING);
+    }
+}
@@ -8,8 +8,16 @@ import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Result;
+import repositories.CatalogChanges;
+import repositories.CatalogFilter;
+import repositories.CatalogPage;
+import repositories.CharacterRepository;
 
+import javax.inject.Inject;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * This class controls the flow of Character game data
@@ -18,47 +26,108 @@ import java.util.List;
  */
 public class CharacterController extends Controller {
 
+    private final CharacterRepository characterRepository;
+
+    @Inject
+    public CharacterController(final CharacterRepository characterRepository) {
+        this.characterRepository = characterRepository;
+    }
+
     /**
-     * HTTP Get request that returns all characters in database
+     * HTTP Get request that returns all characters in database,
+     * or only those of the types and name prefixes given with type and name,
+     * or one page of them when limit or after is given,
+     * or streams them from the database as newline delimited Json when stream=true is given
      *
      * @return Result Json list of characters
      */
-    public Result getAllCharacters() {
-        List<Character> characters = Character.find.all();
-        if(characters.size() > 0) {
-            Logger.info("Returning list of Characters with {} elements", characters.size());
-            return ok(Json.toJson(characters));
+    public CompletionStage<Result> getAllCharacters() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllCharacters");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
         }
-        Logger.info("No Characters to return");
-        return noContent();
+        final CatalogFilter filter;
+        try {
+            filter = CatalogResults.filter(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getAllCharacters");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        if(CatalogResults.wantsStream(request())) {
+            Logger.info("Streaming Characters");
+            // Read from the database as it is sent, so no ETag describes the body
+            return CompletableFuture.completedFuture(CatalogResults.ndjson(characterRepository.stream(filter)));
+        }
+        final String matched = CatalogResults.matchingETag(request(), characterRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
+        }
+        if(paging != null) {
+            return characterRepository.snapshot().thenApply(characters -> CatalogResults.tagged(
+                    page(characters.page(characters.filter(filter), paging.after, paging.limit)), characterRepository.etag(characters)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return characterRepository.snapshot().thenApply(characters -> {
+            final String tag = characterRepository.etag(characters);
+            final List<Character> filtered = characters.filter(filter);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Characters with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(characters.filterJson(filter), gzip), tag);
+            }
+            Logger.info("No Characters to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
-     * HTTP Get request that returns all characters of a type
+     * HTTP Get request that returns all characters of a type,
+     * or one page of them when limit or after is given
      *
      * @return Result Json list of characters
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result getAllCharactersType() {
-        List<Character> characters;
+    public CompletionStage<Result> getAllCharactersType() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllCharactersType");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
+        }
         final JsonNode json = request().body().asJson();
         if(!json.has("type")) {
             Logger.info("No type given for getAllCharactersType");
-            return badRequest("No type given");
+            return CompletableFuture.completedFuture(badRequest("No type given"));
         }
+        final CharacterType type;
         try {
-            CharacterType type = CharacterType.valueOf(json.get("type").textValue());
-            characters = Character.find.query().where().eq("type", type).findList();
+            type = CharacterType.valueOf(json.get("type").textValue());
         }catch(Exception e) {
             Logger.info("Invalid type given");
-            return badRequest("Invalid type given");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
         }
-        if(characters.size() > 0) {
-            Logger.info("Returning list of Characters with {} elements", characters.size());
-            return ok(Json.toJson(characters));
+        final String matched = CatalogResults.matchingETag(request(), characterRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        Logger.info("No Characters to return");
-        return noContent();
+        if(paging != null) {
+            return characterRepository.snapshot().thenApply(characters -> CatalogResults.tagged(
+                    page(characters.page(characters.ofType(type), paging.after, paging.limit)), characterRepository.etag(characters)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return characterRepository.snapshot().thenApply(characters -> {
+            final String tag = characterRepository.etag(characters);
+            final List<Character> filtered = characters.ofType(type);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Characters with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(characters.ofTypeJson(type), gzip), tag);
+            }
+            Logger.info("No Characters to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
@@ -67,12 +136,19 @@ public class CharacterController extends Controller {
      * @param id The unique ID of a Character
      * @return Result Json of a character
      */
-    public Result getCharacter(final long id) {
-        Character character = Character.find.byId(id);
-        if(character == null) {
-            return noContent();
+    public CompletionStage<Result> getCharacter(final long id) {
+        final String matched = CatalogResults.matchingETag(request(), characterRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        return ok(Json.toJson(character));
+        return characterRepository.snapshot().thenApply(characters -> {
+            final String tag = characterRepository.etag(characters);
+            final Optional<Character> character = characters.get(id);
+            if(!character.isPresent()) {
+                return CatalogResults.tagged(noContent(), tag);
+            }
+            return CatalogResults.tagged(ok(Json.toJson(character.get())), tag);
+        });
     }
 
     /**
@@ -81,61 +157,67 @@ public class CharacterController extends Controller {
      * @return Result Json of a character
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result createCharacter() {
+    public CompletionStage<Result> createCharacter() {
         final JsonNode body = request().body().asJson();
         if(!body.has("name") || !body.has("description") || !body.has("type")) {
-            return badRequest("Some data missing from request.");
+            return CompletableFuture.completedFuture(badRequest("Some data missing from request."));
         }
         final String name = body.get("name").textValue();
         final String description = body.get("description").textValue();
         final String type = body.get("type").textValue();
-        if(Character.find.query().where().eq("name", name).findUnique() != null) {
-            return badRequest("A character already exists with the name, "+name);
-        }
+        final CharacterType characterType;
         try {
-            final CharacterType characterType = CharacterType.valueOf(type);
-            final Character character = new Character(characterType, name, description);
-            character.save();
-            return ok(Json.toJson(character));
+            characterType = CharacterType.valueOf(type);
         }catch(Exception e) {
             Logger.info("An invalid CharacterType was supplied for updateCharacter");
-            return badRequest("The CharacterType supplied was invalid");
+            return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
         }
+        return characterRepository.insert(new Character(characterType, name, description)).thenApply(character -> {
+            if(!character.isPresent()) {
+                return badRequest("A character already exists with the name, "+name);
+            }
+            return ok(Json.toJson(character.get()));
+        });
     }
 
     /**
-     * HTTP Put request that updates an existing Character
+     * HTTP Post request that creates many new Characters in a single transaction
+     *
+     * @return Result Json list with the outcome for each character
+     */
+    @BodyParser.Of(BatchJsonParser.class)
+    public CompletionStage<Result> createCharacters() {
+        return CatalogBatch.createAll(request().body().asJson(), characterRepository, "character");
+    }
+
+    /**
+     * HTTP Put request that updates an existing Character,
+     * only the fields given in the request are changed
      *
      * @param id The Unique ID of a Character
      * @return Result Json of a character
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result updateCharacter(final long id) {
-        Character character = Character.find.byId(id);
-        if(character == null) {
-            return badRequest("There is no character with id, "+id);
-        }
-        JsonNode body = request().body().asJson();
-        String newName = body.findPath("name").textValue();
-        if(newName != null) {
-            character.setName(newName);
-        }
-        String newDescription = body.findPath("description").textValue();
-        if(newDescription != null) {
-            character.setDescription(newDescription);
-        }
-        String newType = body.findPath("type").textValue();
-        if(newName != null) {
+    public CompletionStage<Result> updateCharacter(final long id) {
+        final JsonNode body = request().body().asJson();
+        final CatalogChanges changes = new CatalogChanges()
+                .name(body.findPath("name").textValue())
+                .description(body.findPath("description").textValue());
+        final String newType = body.findPath("type").textValue();
+        if(newType != null) {
             try{
-                CharacterType newCharacterType = CharacterType.valueOf(newType);
-                character.setType(newCharacterType);
+                changes.type(CharacterType.valueOf(newType));
             } catch(Exception e) {
                 Logger.info("An invalid CharacterType was supplied for updateCharacter");
-                return badRequest("The CharacterType supplied was invalid");
+                return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
             }
         }
-        character.save();
-        return ok(Json.toJson(character));
+        return characterRepository.update(id, changes).thenApply(character -> {
+            if(!character.isPresent()) {
+                return badRequest("There is no character with id, "+id);
+            }
+            return ok(Json.toJson(character.get()));
+        });
     }
 
     /**
@@ -144,12 +226,21 @@ public class CharacterController extends Controller {
      * @param id The Unique ID of a Character
      * @return Result Json of a character
      */
-    public Result deleteCharacter(final long id) {
-        Character character = Character.find.byId(id);
-        if(character == null) {
-            return badRequest("There is no character with id, "+id);
+    public CompletionStage<Result> deleteCharacter(final long id) {
+        return characterRepository.delete(id).thenApply(character -> {
+            if(!character.isPresent()) {
+                return badRequest("There is no character with id, "+id);
+            }
+            return ok(Json.toJson(character.get()));
+        });
+    }
+
+    private static Result page(final CatalogPage<Character> page) {
+        if(page.getItems().size() > 0) {
+            Logger.info("Returning page of Characters with {} elements", page.getItems().size());
+            return ok(Json.toJson(page));
         }
-        character.delete();
-        return ok(Json.toJson(character));
+        Logger.info("No Characters to return");
+        return noContent();
     }
 }
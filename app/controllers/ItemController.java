@@ -8,8 +8,16 @@ import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Result;
+import repositories.CatalogChanges;
+import repositories.CatalogFilter;
+import repositories.CatalogPage;
+import repositories.ItemRepository;
 
+import javax.inject.Inject;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * This class controls the flow of Item game data
@@ -18,47 +26,108 @@ import java.util.List;
  */
 public class ItemController extends Controller {
 
+    private final ItemRepository itemRepository;
+
+    @Inject
+    public ItemController(final ItemRepository itemRepository) {
+        this.itemRepository = itemRepository;
+    }
+
     /**
-     * HTTP Get request that returns all items in database
+     * HTTP Get request that returns all items in database,
+     * or only those of the types and name prefixes given with type and name,
+     * or one page of them when limit or after is given,
+     * or streams them from the database as newline delimited Json when stream=true is given
      *
      * @return Result Json list of items
      */
-    public Result getAllItems() {
-        List<Item> items = Item.find.all();
-        if(items.size() > 0) {
-            Logger.info("Returning list of Items with {} elements", items.size());
-            return ok(Json.toJson(items));
+    public CompletionStage<Result> getAllItems() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllItems");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
         }
-        Logger.info("No Items to return");
-        return noContent();
+        final CatalogFilter filter;
+        try {
+            filter = CatalogResults.filter(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getAllItems");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        if(CatalogResults.wantsStream(request())) {
+            Logger.info("Streaming Items");
+            // Read from the database as it is sent, so no ETag describes the body
+            return CompletableFuture.completedFuture(CatalogResults.ndjson(itemRepository.stream(filter)));
+        }
+        final String matched = CatalogResults.matchingETag(request(), itemRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
+        }
+        if(paging != null) {
+            return itemRepository.snapshot().thenApply(items -> CatalogResults.tagged(
+                    page(items.page(items.filter(filter), paging.after, paging.limit)), itemRepository.etag(items)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return itemRepository.snapshot().thenApply(items -> {
+            final String tag = itemRepository.etag(items);
+            final List<Item> filtered = items.filter(filter);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Items with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(items.filterJson(filter), gzip), tag);
+            }
+            Logger.info("No Items to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
-     * HTTP Get request that returns all items of a type
+     * HTTP Get request that returns all items of a type,
+     * or one page of them when limit or after is given
      *
      * @return Result Json list of items
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result getAllItemsType() {
-        List<Item> items;
+    public CompletionStage<Result> getAllItemsType() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllItemsType");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
+        }
         final JsonNode json = request().body().asJson();
         if(!json.has("type")) {
             Logger.info("No type given for getAllItemsType");
-            return badRequest("No type given");
+            return CompletableFuture.completedFuture(badRequest("No type given"));
         }
+        final CharacterType type;
         try {
-            CharacterType type = CharacterType.valueOf(json.get("type").textValue());
-            items = Item.find.query().where().eq("type", type).findList();
+            type = CharacterType.valueOf(json.get("type").textValue());
         }catch(Exception e) {
             Logger.info("Invalid type given");
-            return badRequest("Invalid type given");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
         }
-        if(items.size() > 0) {
-            Logger.info("Returning list of Items with {} elements", items.size());
-            return ok(Json.toJson(items));
+        final String matched = CatalogResults.matchingETag(request(), itemRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        Logger.info("No Items to return");
-        return noContent();
+        if(paging != null) {
+            return itemRepository.snapshot().thenApply(items -> CatalogResults.tagged(
+                    page(items.page(items.ofType(type), paging.after, paging.limit)), itemRepository.etag(items)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return itemRepository.snapshot().thenApply(items -> {
+            final String tag = itemRepository.etag(items);
+            final List<Item> filtered = items.ofType(type);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Items with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(items.ofTypeJson(type), gzip), tag);
+            }
+            Logger.info("No Items to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
@@ -67,12 +136,19 @@ public class ItemController extends Controller {
      * @param id The unique ID of a Item
      * @return Result Json of a item
      */
-    public Result getItem(final long id) {
-        Item item = Item.find.byId(id);
-        if(item == null) {
-            return noContent();
+    public CompletionStage<Result> getItem(final long id) {
+        final String matched = CatalogResults.matchingETag(request(), itemRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        return ok(Json.toJson(item));
+        return itemRepository.snapshot().thenApply(items -> {
+            final String tag = itemRepository.etag(items);
+            final Optional<Item> item = items.get(id);
+            if(!item.isPresent()) {
+                return CatalogResults.tagged(noContent(), tag);
+            }
+            return CatalogResults.tagged(ok(Json.toJson(item.get())), tag);
+        });
     }
 
     /**
@@ -81,61 +157,80 @@ public class ItemController extends Controller {
      * @return Result Json of a item
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result createItem() {
+    public CompletionStage<Result> createItem() {
         final JsonNode body = request().body().asJson();
         if(!body.has("name") || !body.has("description") || !body.has("type")) {
-            return badRequest("Some data missing from request.");
+            return CompletableFuture.completedFuture(badRequest("Some data missing from request."));
         }
         final String name = body.get("name").textValue();
         final String description = body.get("description").textValue();
         final String type = body.get("type").textValue();
-        if(Item.find.query().where().eq("name", name).findUnique() != null) {
-            return badRequest("A item already exists with the name, "+name);
-        }
+        final CharacterType characterType;
         try {
-            final CharacterType characterType = CharacterType.valueOf(type);
-            final Item item = new Item(characterType, name, description);
-            item.save();
-            return ok(Json.toJson(item));
+            characterType = CharacterType.valueOf(type);
         }catch(Exception e) {
             Logger.info("An invalid CharacterType was supplied for updateItem");
-            return badRequest("The CharacterType supplied was invalid");
+            return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
+        }
+        final Item newItem = new Item(characterType, name, description);
+        try {
+            CatalogResults.readAttributes(body, newItem);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid attributes given for createItem");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
         }
+        return itemRepository.insert(newItem).thenApply(item -> {
+            if(!item.isPresent()) {
+                return badRequest("A item already exists with the name, "+name);
+            }
+            return ok(Json.toJson(item.get()));
+        });
+    }
+
+    /**
+     * HTTP Post request that creates many new Items in a single transaction
+     *
+     * @return Result Json list with the outcome for each item
+     */
+    @BodyParser.Of(BatchJsonParser.class)
+    public CompletionStage<Result> createItems() {
+        return CatalogBatch.createAll(request().body().asJson(), itemRepository, "item");
     }
 
     /**
-     * HTTP Put request that updates an existing Item
+     * HTTP Put request that updates an existing Item,
+     * only the fields given in the request are changed
      *
      * @param id The Unique ID of a Item
      * @return Result Json of a item
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result updateItem(final long id) {
-        Item item = Item.find.byId(id);
-        if(item == null) {
-            return badRequest("There is no item with id, "+id);
-        }
-        JsonNode body = request().body().asJson();
-        String newName = body.findPath("name").textValue();
-        if(newName != null) {
-            item.setName(newName);
-        }
-        String newDescription = body.findPath("description").textValue();
-        if(newDescription != null) {
-            item.setDescription(newDescription);
-        }
-        String newType = body.findPath("type").textValue();
-        if(newName != null) {
+    public CompletionStage<Result> updateItem(final long id) {
+        final JsonNode body = request().body().asJson();
+        final CatalogChanges changes = new CatalogChanges()
+                .name(body.findPath("name").textValue())
+                .description(body.findPath("description").textValue());
+        final String newType = body.findPath("type").textValue();
+        if(newType != null) {
             try{
-                CharacterType newCharacterType = CharacterType.valueOf(newType);
-                item.setType(newCharacterType);
+                changes.type(CharacterType.valueOf(newType));
             } catch(Exception e) {
                 Logger.info("An invalid CharacterType was supplied for updateItem");
-                return badRequest("The CharacterType supplied was invalid");
+                return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
             }
         }
-        item.save();
-        return ok(Json.toJson(item));
+        try {
+            CatalogResults.readAttributes(body, changes);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid attributes given for updateItem");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return itemRepository.update(id, changes).thenApply(item -> {
+            if(!item.isPresent()) {
+                return badRequest("There is no item with id, "+id);
+            }
+            return ok(Json.toJson(item.get()));
+        });
     }
 
     /**
@@ -144,12 +239,21 @@ public class ItemController extends Controller {
      * @param id The Unique ID of a Item
      * @return Result Json of a item
      */
-    public Result deleteItem(final long id) {
-        Item item = Item.find.byId(id);
-        if(item == null) {
-            return badRequest("There is no item with id, "+id);
+    public CompletionStage<Result> deleteItem(final long id) {
+        return itemRepository.delete(id).thenApply(item -> {
+            if(!item.isPresent()) {
+                return badRequest("There is no item with id, "+id);
+            }
+            return ok(Json.toJson(item.get()));
+        });
+    }
+
+    private static Result page(final CatalogPage<Item> page) {
+        if(page.getItems().size() > 0) {
+            Logger.info("Returning page of Items with {} elements", page.getItems().size());
+            return ok(Json.toJson(page));
         }
-        item.delete();
-        return ok(Json.toJson(item));
+        Logger.info("No Items to return");
+        return noContent();
     }
 }
@@ -8,8 +8,16 @@ import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Result;
+import repositories.CatalogChanges;
+import repositories.CatalogFilter;
+import repositories.CatalogPage;
+import repositories.PerkRepository;
 
+import javax.inject.Inject;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * This class controls the flow of Perk game data
@@ -18,47 +26,108 @@ import java.util.List;
  */
 public class PerkController extends Controller {
 
+    private final PerkRepository perkRepository;
+
+    @Inject
+    public PerkController(final PerkRepository perkRepository) {
+        this.perkRepository = perkRepository;
+    }
+
     /**
-     * HTTP Get request that returns all perks in database
+     * HTTP Get request that returns all perks in database,
+     * or only those of the types and name prefixes given with type and name,
+     * or one page of them when limit or after is given,
+     * or streams them from the database as newline delimited Json when stream=true is given
      *
      * @return Result Json list of perks
      */
-    public Result getAllPerks() {
-        List<Perk> perks = Perk.find.all();
-        if(perks.size() > 0) {
-            Logger.info("Returning list of Perks with {} elements", perks.size());
-            return ok(Json.toJson(perks));
+    public CompletionStage<Result> getAllPerks() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllPerks");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
         }
-        Logger.info("No Perks to return");
-        return noContent();
+        final CatalogFilter filter;
+        try {
+            filter = CatalogResults.filter(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getAllPerks");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        if(CatalogResults.wantsStream(request())) {
+            Logger.info("Streaming Perks");
+            // Read from the database as it is sent, so no ETag describes the body
+            return CompletableFuture.completedFuture(CatalogResults.ndjson(perkRepository.stream(filter)));
+        }
+        final String matched = CatalogResults.matchingETag(request(), perkRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
+        }
+        if(paging != null) {
+            return perkRepository.snapshot().thenApply(perks -> CatalogResults.tagged(
+                    page(perks.page(perks.filter(filter), paging.after, paging.limit)), perkRepository.etag(perks)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return perkRepository.snapshot().thenApply(perks -> {
+            final String tag = perkRepository.etag(perks);
+            final List<Perk> filtered = perks.filter(filter);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Perks with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(perks.filterJson(filter), gzip), tag);
+            }
+            Logger.info("No Perks to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
-     * HTTP Get request that returns all perks of a type
+     * HTTP Get request that returns all perks of a type,
+     * or one page of them when limit or after is given
      *
      * @return Result Json list of perks
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result getAllPerksType() {
-        List<Perk> perks;
+    public CompletionStage<Result> getAllPerksType() {
+        final CatalogResults.Paging paging;
+        try {
+            paging = CatalogResults.paging(request());
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid page given for getAllPerksType");
+            return CompletableFuture.completedFuture(badRequest("Invalid page given"));
+        }
         final JsonNode json = request().body().asJson();
         if(!json.has("type")) {
             Logger.info("No type given for getAllPerksType");
-            return badRequest("No type given");
+            return CompletableFuture.completedFuture(badRequest("No type given"));
         }
+        final CharacterType type;
         try {
-            CharacterType type = CharacterType.valueOf(json.get("type").textValue());
-            perks = Perk.find.query().where().eq("type", type).findList();
+            type = CharacterType.valueOf(json.get("type").textValue());
         }catch(Exception e) {
             Logger.info("Invalid type given");
-            return badRequest("Invalid type given");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
         }
-        if(perks.size() > 0) {
-            Logger.info("Returning list of Perks with {} elements", perks.size());
-            return ok(Json.toJson(perks));
+        final String matched = CatalogResults.matchingETag(request(), perkRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        Logger.info("No Perks to return");
-        return noContent();
+        if(paging != null) {
+            return perkRepository.snapshot().thenApply(perks -> CatalogResults.tagged(
+                    page(perks.page(perks.ofType(type), paging.after, paging.limit)), perkRepository.etag(perks)));
+        }
+        final boolean gzip = CatalogResults.acceptsGzip(request());
+        return perkRepository.snapshot().thenApply(perks -> {
+            final String tag = perkRepository.etag(perks);
+            final List<Perk> filtered = perks.ofType(type);
+            if(filtered.size() > 0) {
+                Logger.info("Returning list of Perks with {} elements", filtered.size());
+                return CatalogResults.tagged(CatalogResults.json(perks.ofTypeJson(type), gzip), tag);
+            }
+            Logger.info("No Perks to return");
+            return CatalogResults.tagged(noContent(), tag);
+        });
     }
 
     /**
@@ -67,12 +136,19 @@ public class PerkController extends Controller {
      * @param id The unique ID of a Perk
      * @return Result Json of a perk
      */
-    public Result getPerk(final long id) {
-        Perk perk = Perk.find.byId(id);
-        if(perk == null) {
-            return noContent();
+    public CompletionStage<Result> getPerk(final long id) {
+        final String matched = CatalogResults.matchingETag(request(), perkRepository.etag());
+        if(matched != null) {
+            return CompletableFuture.completedFuture(CatalogResults.notModified(matched));
         }
-        return ok(Json.toJson(perk));
+        return perkRepository.snapshot().thenApply(perks -> {
+            final String tag = perkRepository.etag(perks);
+            final Optional<Perk> perk = perks.get(id);
+            if(!perk.isPresent()) {
+                return CatalogResults.tagged(noContent(), tag);
+            }
+            return CatalogResults.tagged(ok(Json.toJson(perk.get())), tag);
+        });
     }
 
     /**
@@ -81,61 +157,80 @@ public class PerkController extends Controller {
      * @return Result Json of a perk
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result createPerk() {
+    public CompletionStage<Result> createPerk() {
         final JsonNode body = request().body().asJson();
         if(!body.has("name") || !body.has("description") || !body.has("type")) {
-            return badRequest("Some data missing from request.");
+            return CompletableFuture.completedFuture(badRequest("Some data missing from request."));
         }
         final String name = body.get("name").textValue();
         final String description = body.get("description").textValue();
         final String type = body.get("type").textValue();
-        if(Perk.find.query().where().eq("name", name).findUnique() != null) {
-            return badRequest("A perk already exists with the name, "+name);
-        }
+        final CharacterType characterType;
         try {
-            final CharacterType characterType = CharacterType.valueOf(type);
-            final Perk perk = new Perk(characterType, name, description);
-            perk.save();
-            return ok(Json.toJson(perk));
+            characterType = CharacterType.valueOf(type);
         }catch(Exception e) {
             Logger.info("An invalid CharacterType was supplied for updatePerk");
-            return badRequest("The CharacterType supplied was invalid");
+            return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
+        }
+        final Perk newPerk = new Perk(characterType, name, description);
+        try {
+            CatalogResults.readAttributes(body, newPerk);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid attributes given for createPerk");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
         }
+        return perkRepository.insert(newPerk).thenApply(perk -> {
+            if(!perk.isPresent()) {
+                return badRequest("A perk already exists with the name, "+name);
+            }
+            return ok(Json.toJson(perk.get()));
+        });
+    }
+
+    /**
+     * HTTP Post request that creates many new Perks in a single transaction
+     *
+     * @return Result Json list with the outcome for each perk
+     */
+    @BodyParser.Of(BatchJsonParser.class)
+    public CompletionStage<Result> createPerks() {
+        return CatalogBatch.createAll(request().body().asJson(), perkRepository, "perk");
     }
 
     /**
-     * HTTP Put request that updates an existing Perk
+     * HTTP Put request that updates an existing Perk,
+     * only the fields given in the request are changed
      *
      * @param id The Unique ID of a Perk
      * @return Result Json of a perk
      */
     @BodyParser.Of(BodyParser.Json.class)
-    public Result updatePerk(final long id) {
-        Perk perk = Perk.find.byId(id);
-        if(perk == null) {
-            return badRequest("There is no perk with id, "+id);
-        }
-        JsonNode body = request().body().asJson();
-        String newName = body.findPath("name").textValue();
-        if(newName != null) {
-            perk.setName(newName);
-        }
-        String newDescription = body.findPath("description").textValue();
-        if(newDescription != null) {
-            perk.setDescription(newDescription);
-        }
-        String newType = body.findPath("type").textValue();
-        if(newName != null) {
+    public CompletionStage<Result> updatePerk(final long id) {
+        final JsonNode body = request().body().asJson();
+        final CatalogChanges changes = new CatalogChanges()
+                .name(body.findPath("name").textValue())
+                .description(body.findPath("description").textValue());
+        final String newType = body.findPath("type").textValue();
+        if(newType != null) {
             try{
-                CharacterType newCharacterType = CharacterType.valueOf(newType);
-                perk.setType(newCharacterType);
+                changes.type(CharacterType.valueOf(newType));
             } catch(Exception e) {
                 Logger.info("An invalid CharacterType was supplied for updatePerk");
-                return badRequest("The CharacterType supplied was invalid");
+                return CompletableFuture.completedFuture(badRequest("The CharacterType supplied was invalid"));
             }
         }
-        perk.save();
-        return ok(Json.toJson(perk));
+        try {
+            CatalogResults.readAttributes(body, changes);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid attributes given for updatePerk");
+            return CompletableFuture.completedFuture(badRequest(e.getMessage()));
+        }
+        return perkRepository.update(id, changes).thenApply(perk -> {
+            if(!perk.isPresent()) {
+                return badRequest("There is no perk with id, "+id);
+            }
+            return ok(Json.toJson(perk.get()));
+        });
     }
 
     /**
@@ -144,12 +239,21 @@ public class PerkController extends Controller {
      * @param id The Unique ID of a Perk
      * @return Result Json of a perk
      */
-    public Result deletePerk(final long id) {
-        Perk perk = Perk.find.byId(id);
-        if(perk == null) {
-            return badRequest("There is no perk with id, "+id);
+    public CompletionStage<Result> deletePerk(final long id) {
+        return perkRepository.delete(id).thenApply(perk -> {
+            if(!perk.isPresent()) {
+                return badRequest("There is no perk with id, "+id);
+            }
+            return ok(Json.toJson(perk.get()));
+        });
+    }
+
+    private static Result page(final CatalogPage<Perk> page) {
+        if(page.getItems().size() > 0) {
+            Logger.info("Returning page of Perks with {} elements", page.getItems().size());
+            return ok(Json.toJson(page));
         }
-        perk.delete();
-        return ok(Json.toJson(perk));
+        Logger.info("No Perks to return");
+        return noContent();
     }
 }
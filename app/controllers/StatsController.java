@@ -0,0 +1,348 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import models.Addon;
+import models.Build;
+import models.CharacterType;
+import models.Perk;
+import play.Logger;
+import play.libs.Json;
+import play.mvc.Controller;
+import play.mvc.Result;
+import repositories.AddonRepository;
+import repositories.BuildRepository;
+import repositories.CatalogSnapshot;
+import repositories.CharacterStat;
+import repositories.CharacterStats;
+import repositories.CharacterStatsRepository;
+import repositories.PerkRepository;
+import services.BuildQuery;
+import services.CharacterStatsChecker;
+import services.PickCount;
+import services.Synergy;
+import services.SynergyIndex;
+import services.TrendingBuild;
+import services.TrendingBuilds;
+import services.UniqueViewers;
+import services.UsageCounters;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * This class controls the flow of statistics about how the game data is used in saved Builds
+ *
+ * @author Lowell Buttorff
+ */
+public class StatsController extends Controller {
+
+    static final int DEFAULT_K = 10;
+    static final int MAX_SYNERGIES = 100;
+    static final int MAX_CHARACTER_STATS = 100;
+
+    private final SynergyIndex synergyIndex;
+    private final PerkRepository perkRepository;
+    private final BuildRepository buildRepository;
+    private final UsageCounters usageCounters;
+    private final TrendingBuilds trendingBuilds;
+    private final UniqueViewers uniqueViewers;
+    private final AddonRepository addonRepository;
+    private final CharacterStatsRepository characterStatsRepository;
+    private final CharacterStatsChecker characterStatsChecker;
+
+    @Inject
+    public StatsController(final SynergyIndex synergyIndex, final PerkRepository perkRepository,
+                           final BuildRepository buildRepository, final UsageCounters usageCounters,
+                           final TrendingBuilds trendingBuilds, final UniqueViewers uniqueViewers,
+                           final AddonRepository addonRepository,
+                           final CharacterStatsRepository characterStatsRepository,
+                           final CharacterStatsChecker characterStatsChecker) {
+        this.synergyIndex = synergyIndex;
+        this.perkRepository = perkRepository;
+        this.buildRepository = buildRepository;
+        this.usageCounters = usageCounters;
+        this.trendingBuilds = trendingBuilds;
+        this.uniqueViewers = uniqueViewers;
+        this.addonRepository = addonRepository;
+        this.characterStatsRepository = characterStatsRepository;
+        this.characterStatsChecker = characterStatsChecker;
+    }
+
+    /**
+     * HTTP Get request that returns the perks picked by the most saved builds, counted in memory,
+     * only counting builds of a CharacterType when type is given, the number of perks is given with k
+     *
+     * @return Result Json list of perks and their picks, most picked first
+     */
+    public CompletionStage<Result> getPopularPerks() {
+        final String typeParameter = request().getQueryString("type");
+        final CharacterType type;
+        try {
+            type = typeParameter == null ? null : CharacterType.valueOf(typeParameter);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getPopularPerks");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        final int k;
+        try {
+            k = k(request().getQueryString("k"), UsageCounters.MAX_K);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid k given for getPopularPerks");
+            return CompletableFuture.completedFuture(badRequest("Invalid k given"));
+        }
+        final CompletableFuture<CatalogSnapshot<Perk>> perks = perkRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<List<PickCount>> popular =
+                usageCounters.popular(BuildQuery.Slot.PERK, type, k).toCompletableFuture();
+        return CompletableFuture.allOf(perks, popular).thenApply(done -> {
+            final ArrayNode json = Json.newArray();
+            for(PickCount count : popular.join()) {
+                final Optional<Perk> perk = perks.join().get(count.getId());
+                if(perk.isPresent()) {
+                    final ObjectNode entry = json.addObject();
+                    entry.set("perk", Json.toJson(perk.get()));
+                    entry.put("picks", count.getPicks());
+                }
+            }
+            if(json.size() > 0) {
+                Logger.info("Returning list of popular Perks with {} elements", json.size());
+                return ok(json);
+            }
+            Logger.info("No popular Perks to return");
+            return noContent();
+        });
+    }
+
+    /**
+     * HTTP Get request that returns the saved builds with the most recent views, votes and copies,
+     * ranked in memory by their decayed score, only ranking builds of a CharacterType when type is given,
+     * the number of builds is given with k
+     *
+     * @return Result Json list of builds and their scores, highest score first
+     */
+    public CompletionStage<Result> getTrendingBuilds() {
+        final String typeParameter = request().getQueryString("type");
+        final CharacterType type;
+        try {
+            type = typeParameter == null ? null : CharacterType.valueOf(typeParameter);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getTrendingBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        final int k;
+        try {
+            k = k(request().getQueryString("k"), TrendingBuilds.MAX_K);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid k given for getTrendingBuilds");
+            return CompletableFuture.completedFuture(badRequest("Invalid k given"));
+        }
+        return trendingBuilds.trending(type, k).thenCompose(trending -> {
+            final List<Long> ids = new ArrayList<>(trending.size());
+            for(TrendingBuild build : trending) {
+                ids.add(build.getId());
+            }
+            return buildRepository.byIds(ids).thenApply(builds -> {
+                final Map<Long, Build> byId = new HashMap<>();
+                for(Build build : builds) {
+                    byId.put(build.getId(), build);
+                }
+                final ArrayNode json = Json.newArray();
+                for(TrendingBuild ranked : trending) {
+                    final Build build = byId.get(ranked.getId());
+                    if(build != null) {
+                        final ObjectNode entry = json.addObject();
+                        entry.set("build", Json.toJson(build));
+                        entry.put("score", ranked.getScore());
+                    }
+                }
+                if(json.size() > 0) {
+                    Logger.info("Returning list of trending Builds with {} elements", json.size());
+                    return ok(json);
+                }
+                Logger.info("No trending Builds to return");
+                return noContent();
+            });
+        });
+    }
+
+    /**
+     * HTTP Get request that returns the perks and addons most picked by the saved builds of a character
+     * and the average rarity of their addons, read from the aggregate tables without scanning the builds,
+     * the number of perks and of addons is given with k
+     *
+     * @param id The unique ID of a Character
+     * @return Result Json of the character's stats, most picked first
+     */
+    public CompletionStage<Result> getCharacterStats(final long id) {
+        final int k;
+        try {
+            k = k(request().getQueryString("k"), MAX_CHARACTER_STATS);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid k given for getCharacterStats");
+            return CompletableFuture.completedFuture(badRequest("Invalid k given"));
+        }
+        final CompletableFuture<CatalogSnapshot<Perk>> perks = perkRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<CatalogSnapshot<Addon>> addons = addonRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<CharacterStats> stats =
+                characterStatsRepository.byCharacter(id, k).toCompletableFuture();
+        return CompletableFuture.allOf(perks, addons, stats).thenApply(done -> {
+            if(stats.join().getPerks().isEmpty() && stats.join().getAddons().isEmpty()) {
+                Logger.info("No stats of Character {} to return", id);
+                return noContent();
+            }
+            final ObjectNode json = Json.newObject();
+            json.put("character", id);
+            final ArrayNode perkStats = json.putArray("perks");
+            for(CharacterStat stat : stats.join().getPerks()) {
+                final Optional<Perk> perk = perks.join().get(stat.getId());
+                // A deleted perk may still be counted in saved builds
+                if(perk.isPresent()) {
+                    final ObjectNode entry = perkStats.addObject();
+                    entry.set("perk", Json.toJson(perk.get()));
+                    entry.put("builds", stat.getBuilds());
+                }
+            }
+            final ArrayNode addonStats = json.putArray("addons");
+            for(CharacterStat stat : stats.join().getAddons()) {
+                final Optional<Addon> addon = addons.join().get(stat.getId());
+                if(addon.isPresent()) {
+                    final ObjectNode entry = addonStats.addObject();
+                    entry.set("addon", Json.toJson(addon.get()));
+                    entry.put("builds", stat.getBuilds());
+                }
+            }
+            json.set("averageAddonRarity", Json.toJson(stats.join().getAverageAddonRarity()));
+            Logger.info("Returning stats of Character {}", id);
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Get request that recounts the aggregate tables of the character stats from the saved builds
+     * and returns every count that differs
+     *
+     * @return Result Json of the check
+     */
+    public CompletionStage<Result> checkCharacterStats() {
+        return characterStatsChecker.check().thenApply(check -> ok(Json.toJson(check)));
+    }
+
+    /**
+     * HTTP Get request that returns the estimated unique viewers of any saved build of a character
+     *
+     * @param id The unique ID of a Character
+     * @return Result Json of the character's unique viewers
+     */
+    public CompletionStage<Result> getCharacterViewers(final long id) {
+        return uniqueViewers.characterViewers(id).thenApply(viewers -> {
+            Logger.info("Character {} has about {} unique viewers", id, viewers);
+            final ObjectNode json = Json.newObject();
+            json.put("character", id);
+            json.put("viewers", viewers);
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Get request that returns the estimated unique viewers of any saved build of a character of each
+     * CharacterType, only of the type given with type, a viewer of builds of many characters counts once
+     *
+     * @return Result Json of the unique viewers by CharacterType
+     */
+    public CompletionStage<Result> getTypeViewers() {
+        final String typeParameter = request().getQueryString("type");
+        final EnumSet<CharacterType> types;
+        try {
+            types = typeParameter == null
+                    ? EnumSet.allOf(CharacterType.class) : EnumSet.of(CharacterType.valueOf(typeParameter));
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid type given for getTypeViewers");
+            return CompletableFuture.completedFuture(badRequest("Invalid type given"));
+        }
+        final Map<CharacterType, CompletableFuture<Long>> viewers = new HashMap<>();
+        for(CharacterType type : types) {
+            viewers.put(type, uniqueViewers.typeViewers(type).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(viewers.values().toArray(new CompletableFuture[0])).thenApply(done -> {
+            final ObjectNode json = Json.newObject();
+            for(CharacterType type : types) {
+                json.put(type.name(), viewers.get(type).join());
+            }
+            return ok(json);
+        });
+    }
+
+    /**
+     * HTTP Get request that returns how many builds are saved, how many distinct loadouts are stored for them
+     * and the ratio of the two
+     *
+     * @return Result Json of the build storage
+     */
+    public CompletionStage<Result> getBuildStorage() {
+        return buildRepository.storage().thenApply(storage -> {
+            Logger.info("Builds deduplicated {} to 1", storage.getDedupRatio());
+            return ok(Json.toJson(storage));
+        });
+    }
+
+    /**
+     * HTTP Get request that returns the perks most often saved in the same build as a perk,
+     * the number of them is given with k
+     *
+     * @param id The unique ID of a Perk
+     * @return Result Json of the perk's build count and its synergies, most shared builds first
+     */
+    public CompletionStage<Result> getPerkSynergies(final long id) {
+        final int k;
+        try {
+            k = k(request().getQueryString("k"), MAX_SYNERGIES);
+        }catch(IllegalArgumentException e) {
+            Logger.info("Invalid k given for getPerkSynergies");
+            return CompletableFuture.completedFuture(badRequest("Invalid k given"));
+        }
+        final CompletableFuture<CatalogSnapshot<Perk>> perks = perkRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<List<Synergy>> synergies = synergyIndex.synergies(id, k).toCompletableFuture();
+        final CompletableFuture<Long> builds = synergyIndex.builds(id).toCompletableFuture();
+        return CompletableFuture.allOf(perks, synergies, builds).thenApply(done -> {
+            if(!perks.join().get(id).isPresent()) {
+                return noContent();
+            }
+            Logger.info("Returning {} synergies of Perk {}", synergies.join().size(), id);
+            final ObjectNode json = Json.newObject();
+            json.put("perk", id);
+            json.put("builds", builds.join());
+            final ArrayNode partners = json.putArray("synergies");
+            for(Synergy synergy : synergies.join()) {
+                final Optional<Perk> partner = perks.join().get(synergy.getPerk());
+                // A deleted perk may still be counted in saved builds
+                if(partner.isPresent()) {
+                    final ObjectNode entry = partners.addObject();
+                    entry.set("perk", Json.toJson(partner.get()));
+                    entry.put("count", synergy.getCount());
+                }
+            }
+            return ok(json);
+        });
+    }
+
+    /**
+     * @param k The k query parameter, DEFAULT_K if not given
+     * @param max The largest k allowed
+     * @return The k to use
+     * @throws IllegalArgumentException if k is not a number from 1 to max
+     */
+    private static int k(final String k, final int max) {
+        final int value = k == null ? DEFAULT_K : Integer.parseInt(k);
+        if(value < 1 || value > max) {
+            throw new IllegalArgumentException("k out of range");
+        }
+        return value;
+    }
+}
@@ -7,7 +7,7 @@ import javax.persistence.*;
 
 @Entity
 @Table(name = "addons")
-public class Addon extends Model {
+public class Addon extends Model implements RatedEntry {
     // Ebean Finder utility
     public final static Finder<Long, Addon> find = new Finder<>(Addon.class);
 
@@ -19,6 +19,10 @@ public class Addon extends Model {
     @Column(unique = true, nullable = false)
     private String name;
     private String description;
+    @Column(nullable = false)
+    private int rarity;
+    @Column(nullable = false)
+    private double potency;
 
     public Addon(final CharacterType type, final String name, final String description){
         this.type = type;
@@ -57,4 +61,20 @@ public class Addon extends Model {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    public int getRarity() {
+        return rarity;
+    }
+
+    public void setRarity(int rarity) {
+        this.rarity = rarity;
+    }
+
+    public double getPotency() {
+        return potency;
+    }
+
+    public void setPotency(double potency) {
+        this.potency = potency;
+    }
 }
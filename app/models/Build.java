@@ -0,0 +1,88 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.ebean.Finder;
+import io.ebean.Model;
+
+import javax.persistence.*;
+import java.util.List;
+
+@Entity
+@Table(name = "builds")
+public class Build extends Model {
+    // Ebean Finder utility
+    public final static Finder<Long, Build> find = new Finder<>(Build.class);
+
+    @Id
+    @GeneratedValue
+    private long id;
+    // Shared by every build with the same loadout, changing a slot points the build at a new, unsaved content
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "content_id")
+    private BuildContent content;
+
+    public Build(final long character, final List<Long> perks, final Long item, final List<Long> addons){
+        this.content = new BuildContent(character, perks, item, addons);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @JsonIgnore
+    public BuildContent getContent() {
+        return content;
+    }
+
+    public void setContent(BuildContent content) {
+        this.content = content;
+    }
+
+    public long getCharacter() {
+        return content.getCharacter();
+    }
+
+    public void setCharacter(long character) {
+        this.content = new BuildContent(character, getPerks(), getItem(), getAddons());
+    }
+
+    /**
+     * @return The ids of the perks in the filled perk slots, in increasing order
+     */
+    public List<Long> getPerks() {
+        return content.getPerks();
+    }
+
+    /**
+     * @param perks The ids of at most four perks
+     */
+    public void setPerks(List<Long> perks) {
+        this.content = new BuildContent(getCharacter(), perks, getItem(), getAddons());
+    }
+
+    public Long getItem() {
+        return content.getItem();
+    }
+
+    public void setItem(Long item) {
+        this.content = new BuildContent(getCharacter(), getPerks(), item, getAddons());
+    }
+
+    /**
+     * @return The ids of the addons in the filled addon slots, in increasing order
+     */
+    public List<Long> getAddons() {
+        return content.getAddons();
+    }
+
+    /**
+     * @param addons The ids of at most two addons
+     */
+    public void setAddons(List<Long> addons) {
+        this.content = new BuildContent(getCharacter(), getPerks(), getItem(), addons);
+    }
+}
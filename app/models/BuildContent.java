@@ -0,0 +1,138 @@
+package models;
+
+import io.ebean.Finder;
+import io.ebean.Model;
+
+import javax.persistence.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Entity
+@Table(name = "build_contents")
+public class BuildContent extends Model {
+    // Ebean Finder utility
+    public final static Finder<Long, BuildContent> find = new Finder<>(BuildContent.class);
+
+    @Id
+    @GeneratedValue
+    private long id;
+    // Perks and addons are sorted, so every way of listing a loadout has the same key
+    @Column(name = "content_key", unique = true, nullable = false)
+    private String contentKey;
+    @Column(name = "character_id", nullable = false)
+    private long character;
+    @Column(name = "perk1_id")
+    private Long perk1;
+    @Column(name = "perk2_id")
+    private Long perk2;
+    @Column(name = "perk3_id")
+    private Long perk3;
+    @Column(name = "perk4_id")
+    private Long perk4;
+    @Column(name = "item_id")
+    private Long item;
+    @Column(name = "addon1_id")
+    private Long addon1;
+    @Column(name = "addon2_id")
+    private Long addon2;
+
+    public BuildContent(final long character, final List<Long> perks, final Long item, final List<Long> addons){
+        final List<Long> sortedPerks = sorted(perks);
+        final List<Long> sortedAddons = sorted(addons);
+        this.character = character;
+        this.perk1 = slot(sortedPerks, 0);
+        this.perk2 = slot(sortedPerks, 1);
+        this.perk3 = slot(sortedPerks, 2);
+        this.perk4 = slot(sortedPerks, 3);
+        this.item = item;
+        this.addon1 = slot(sortedAddons, 0);
+        this.addon2 = slot(sortedAddons, 1);
+        this.contentKey = keyOf(character, sortedPerks, item, sortedAddons);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return Hex SHA-256 of the canonical form of the loadout
+     */
+    public String getContentKey() {
+        return contentKey;
+    }
+
+    public long getCharacter() {
+        return character;
+    }
+
+    /**
+     * @return The ids of the perks in the filled perk slots, in increasing order
+     */
+    public List<Long> getPerks() {
+        final List<Long> perks = new ArrayList<>(4);
+        addIfPresent(perks, perk1);
+        addIfPresent(perks, perk2);
+        addIfPresent(perks, perk3);
+        addIfPresent(perks, perk4);
+        return perks;
+    }
+
+    public Long getItem() {
+        return item;
+    }
+
+    /**
+     * @return The ids of the addons in the filled addon slots, in increasing order
+     */
+    public List<Long> getAddons() {
+        final List<Long> addons = new ArrayList<>(2);
+        addIfPresent(addons, addon1);
+        addIfPresent(addons, addon2);
+        return addons;
+    }
+
+    private static String keyOf(final long character, final List<Long> perks, final Long item,
+                                final List<Long> addons) {
+        final String canonical = character + "|" + perks + "|" + item + "|" + addons;
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder key = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                key.append(java.lang.Character.forDigit(b >>> 4 & 0xF, 16))
+                        .append(java.lang.Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch(NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Long> sorted(final List<Long> ids) {
+        final List<Long> sorted = new ArrayList<>();
+        if(ids != null) {
+            sorted.addAll(ids);
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static void addIfPresent(final List<Long> ids, final Long id) {
+        if(id != null) {
+            ids.add(id);
+        }
+    }
+
+    private static Long slot(final List<Long> ids, final int index) {
+        return index < ids.size() ? ids.get(index) : null;
+    }
+}
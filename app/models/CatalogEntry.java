@@ -0,0 +1,25 @@
+package models;
+
+/**
+ * Common shape of the game data tables: perks, addons, items and characters
+ *
+ * @author Lowell Buttorff
+ */
+public interface CatalogEntry {
+
+    long getId();
+
+    void setId(long id);
+
+    CharacterType getType();
+
+    void setType(CharacterType type);
+
+    String getName();
+
+    void setName(String name);
+
+    String getDescription();
+
+    void setDescription(String description);
+}
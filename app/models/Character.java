@@ -7,7 +7,7 @@ import javax.persistence.*;
 
 @Entity
 @Table(name="characters")
-public class Character extends Model {
+public class Character extends Model implements CatalogEntry {
     // Ebean Finder utility
     public final static Finder<Long, Character> find = new Finder<>(Character.class);
 
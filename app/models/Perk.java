@@ -7,7 +7,7 @@ import javax.persistence.*;
 
 @Entity
 @Table(name = "perks")
-public class Perk extends Model {
+public class Perk extends Model implements RatedEntry {
     // Ebean Finder utility
     public final static Finder<Long, Perk> find = new Finder<>(Perk.class);
 
@@ -19,6 +19,10 @@ public class Perk extends Model {
     @Column(unique = true, nullable = false)
     private String name;
     private String description;
+    @Column(nullable = false)
+    private int rarity;
+    @Column(nullable = false)
+    private double potency;
 
     public Perk(final CharacterType type, final String name, final String description){
         this.type = type;
@@ -57,4 +61,20 @@ public class Perk extends Model {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    public int getRarity() {
+        return rarity;
+    }
+
+    public void setRarity(int rarity) {
+        this.rarity = rarity;
+    }
+
+    public double getPotency() {
+        return potency;
+    }
+
+    public void setPotency(double potency) {
+        this.potency = potency;
+    }
 }
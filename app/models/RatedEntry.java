@@ -0,0 +1,17 @@
+package models;
+
+/**
+ * Game data with numeric effect attributes that builds are scored by: perks, addons and items
+ *
+ * @author Lowell Buttorff
+ */
+public interface RatedEntry extends CatalogEntry {
+
+    int getRarity();
+
+    void setRarity(int rarity);
+
+    double getPotency();
+
+    void setPotency(double potency);
+}
@@ -0,0 +1,22 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Bounded execution context that all database work on the addons table runs on,
+ * configured by addons.dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class AddonExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public AddonExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "addons.dispatcher");
+    }
+}
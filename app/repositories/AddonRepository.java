@@ -0,0 +1,26 @@
+package repositories;
+
+import io.ebean.Finder;
+import models.Addon;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory replica of the addons table
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class AddonRepository extends CatalogRepository<Addon> {
+
+    @Inject
+    public AddonRepository(final AddonExecutionContext executionContext) {
+        this(Addon.find, executionContext);
+    }
+
+    public AddonRepository(final Finder<Long, Addon> finder, final Executor executor) {
+        super(finder, executor, Addon::new, "addons");
+    }
+}
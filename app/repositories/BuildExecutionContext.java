@@ -0,0 +1,22 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Bounded execution context that all database work on the builds table runs on,
+ * configured by builds.dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class BuildExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public BuildExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "builds.dispatcher");
+    }
+}
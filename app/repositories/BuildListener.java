@@ -0,0 +1,20 @@
+package repositories;
+
+import models.Build;
+
+/**
+ * Receives every change to the builds table made through the BuildRepository,
+ * for keeping in-memory indexes of the builds current without querying the table.
+ * Changes may be delivered from several threads at once.
+ *
+ * @author Lowell Buttorff
+ */
+@FunctionalInterface
+public interface BuildListener {
+
+    /**
+     * @param previous The build before the change, null if it was created
+     * @param current The build after the change, null if it was deleted
+     */
+    void changed(Build previous, Build current);
+}
@@ -0,0 +1,449 @@
+package repositories;
+
+import io.ebean.DuplicateKeyException;
+import io.ebean.Finder;
+import io.ebean.Query;
+import io.ebean.SqlRow;
+import io.ebean.Transaction;
+import models.Build;
+import models.BuildContent;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Access to the builds table.
+ * Unlike the game data tables, builds are user data that grows without bound, so they are not replicated in memory.
+ * Every write is passed on to the subscribed BuildListeners, so all writes to the table have to go through here.
+ * The aggregate tables of the CharacterStatsRepository are updated in the same transaction as each write.
+ * Builds with the same loadout share one stored BuildContent, contents are kept when no build uses them any more.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class BuildRepository {
+
+    // Ranges of ids read at once when new listeners are loaded with the existing builds
+    static final int SCAN_PARALLELISM = 4;
+    // Builds read from a range at a time, a write to a build of the range waits for at most one chunk
+    static final int SCAN_CHUNK_SIZE = 500;
+    // Saved contents kept in memory, the least recently used beyond this are looked up by content key again
+    static final int MAX_CACHED_CONTENTS = 10000;
+
+    /**
+     * Listeners being loaded with the builds that existed when they subscribed, up to id high.
+     * The ids are split into SCAN_PARALLELISM ranges, each read in chunks in id order.
+     * A write is passed on once the scan of its range is past the build, earlier writes are left to the scan,
+     * which reads the build as stored after them.
+     */
+    private static final class Load {
+
+        final List<BuildListener> listeners;
+        final long low;
+        final long high;
+        final long width;
+        // Last id read in each range
+        final AtomicLongArray scanned = new AtomicLongArray(SCAN_PARALLELISM);
+        // A chunk is read under the write lock of its range, a write to a build of the range takes the read lock
+        final ReadWriteLock[] ranges = new ReadWriteLock[SCAN_PARALLELISM];
+
+        Load(final List<BuildListener> listeners, final long low, final long high) {
+            this.listeners = listeners;
+            this.low = low;
+            this.high = high;
+            this.width = (high - low) / SCAN_PARALLELISM + 1;
+            for(int range = 0; range < SCAN_PARALLELISM; range++) {
+                scanned.set(range, low + range * width - 1);
+                ranges[range] = new ReentrantReadWriteLock();
+            }
+        }
+
+        /**
+         * @return The range of the id, -1 for builds created after the listeners subscribed
+         */
+        int rangeOf(final long id) {
+            return id < low || id > high ? -1 : (int) ((id - low) / width);
+        }
+
+        /**
+         * @return true if a write to the build has to be passed on to the listeners
+         */
+        boolean covers(final long id) {
+            final int range = rangeOf(id);
+            return range < 0 || scanned.get(range) >= id;
+        }
+    }
+
+    private final Finder<Long, Build> finder;
+    private final Executor executor;
+    private final Executor scanExecutor;
+    private final List<BuildListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<BuildListener, CompletableFuture<Void>> subscribed = new ConcurrentHashMap<>();
+    // Subscribed listeners not yet taken by a load, all taken at once share one scan
+    private final Queue<BuildListener> pending = new ConcurrentLinkedQueue<>();
+    private final List<Load> loads = new CopyOnWriteArrayList<>();
+    // Hash-cons table of the recently saved contents by content key, so saving a known loadout needs no lookup
+    private final Map<String, BuildContent> contents = Collections.synchronizedMap(
+            new LinkedHashMap<String, BuildContent>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, BuildContent> eldest) {
+                    return size() > MAX_CACHED_CONTENTS;
+                }
+            });
+    // Writes share the read lock, starting and finishing a load take the write lock so no write is half passed on
+    private final ReadWriteLock subscriptions = new ReentrantReadWriteLock();
+
+    @Inject
+    public BuildRepository(final BuildExecutionContext executionContext,
+                           final BuildScanExecutionContext scanExecutionContext) {
+        this(Build.find, executionContext, scanExecutionContext);
+    }
+
+    public BuildRepository(final Finder<Long, Build> finder, final Executor executor) {
+        this(finder, executor, executor);
+    }
+
+    public BuildRepository(final Finder<Long, Build> finder, final Executor executor, final Executor scanExecutor) {
+        this.finder = finder;
+        this.executor = executor;
+        this.scanExecutor = scanExecutor;
+    }
+
+    /**
+     * @param id The unique ID of a build
+     * @return CompletionStage of the build, if present
+     */
+    public CompletionStage<Optional<Build>> byId(final long id) {
+        return CompletableFuture.supplyAsync(() -> query().where().idEq(id).findOneOrEmpty(), executor);
+    }
+
+    /**
+     * @param ids The unique IDs of builds
+     * @return CompletionStage of the builds that exist, ordered by id
+     */
+    public CompletionStage<List<Build>> byIds(final Collection<Long> ids) {
+        if(ids.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return CompletableFuture.supplyAsync(() -> query().where().idIn(ids).orderBy("id").findList(),
+                executor);
+    }
+
+    /**
+     * Keyset page of the builds in id order
+     *
+     * @param after Only builds with a greater id are returned
+     * @param limit The largest number of builds to return
+     * @return CompletionStage of a CatalogPage of at most limit builds
+     */
+    public CompletionStage<CatalogPage<Build>> page(final long after, final int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            final List<Build> builds = query().where().gt("id", after).orderBy("id")
+                    .setMaxRows(limit + 1)
+                    .findList();
+            if(builds.size() <= limit) {
+                return new CatalogPage<>(builds, null);
+            }
+            final List<Build> items = builds.subList(0, limit);
+            return new CatalogPage<>(items, items.get(limit - 1).getId());
+        }, executor);
+    }
+
+    /**
+     * @param build The new build
+     * @return CompletionStage of the saved build
+     */
+    public CompletionStage<Build> insert(final Build build) {
+        return CompletableFuture.supplyAsync(() -> write(() -> {
+            build.setContent(intern(build.getContent()));
+            try(Transaction transaction = finder.db().beginTransaction()) {
+                finder.db().save(build, transaction);
+                CharacterStatsRepository.apply(finder.db(), transaction, null, build);
+                transaction.commit();
+            }
+            notify(null, build);
+            return build;
+        }), executor);
+    }
+
+    /**
+     * Changes the slots of a build and saves them. The build is read again and locked within the transaction
+     * of the write, so the change, the aggregate counts and the listeners all start from the build as stored.
+     *
+     * @param id The unique ID of a build
+     * @param change Sets the new slots of the build
+     * @return CompletionStage of the saved build, empty if there is no build with the id
+     */
+    public CompletionStage<Optional<Build>> update(final long id, final Consumer<Build> change) {
+        return CompletableFuture.supplyAsync(() -> write(id, () -> {
+            final Build build;
+            final Build previous;
+            try(Transaction transaction = finder.db().beginTransaction()) {
+                build = locked(id);
+                if(build == null) {
+                    return Optional.<Build>empty();
+                }
+                previous = copyOf(build);
+                change.accept(build);
+                build.setContent(intern(build.getContent()));
+                finder.db().update(build, transaction);
+                CharacterStatsRepository.apply(finder.db(), transaction, previous, build);
+                transaction.commit();
+            }
+            notify(previous, build);
+            return Optional.of(build);
+        }), executor);
+    }
+
+    /**
+     * @param id The unique ID of a build
+     * @return CompletionStage of the deleted build, empty if there is no build with the id
+     */
+    public CompletionStage<Optional<Build>> delete(final long id) {
+        return CompletableFuture.supplyAsync(() -> write(id, () -> {
+            final Build build;
+            try(Transaction transaction = finder.db().beginTransaction()) {
+                // Locked, so a concurrent update cannot change the slots the counts are taken from
+                build = locked(id);
+                if(build == null || !finder.db().delete(build, transaction)) {
+                    return Optional.<Build>empty();
+                }
+                CharacterStatsRepository.apply(finder.db(), transaction, build, null);
+                transaction.commit();
+            }
+            notify(build, null);
+            return Optional.of(build);
+        }), executor);
+    }
+
+    /**
+     * @return CompletionStage of the number of builds and of the distinct loadouts stored for them
+     */
+    public CompletionStage<BuildStorage> storage() {
+        return CompletableFuture.supplyAsync(() -> new BuildStorage(finder.query().findCount(),
+                finder.db().find(BuildContent.class).findCount()), executor);
+    }
+
+    /**
+     * Loads a listener with every existing build, as if each was just created, then passes it every later write.
+     * The table is read in SCAN_PARALLELISM id ranges at once on the scan execution context,
+     * a write only waits while the chunk of its build is read. Listeners subscribing together share one scan.
+     * A listener is only loaded once however often it subscribes, a failed load is tried again on the next call.
+     *
+     * @param listener The listener to subscribe, it has to take changes from several threads at once
+     * @return CompletionStage completed once the listener is loaded
+     */
+    public CompletionStage<Void> subscribe(final BuildListener listener) {
+        final CompletableFuture<Void> created = new CompletableFuture<>();
+        final CompletableFuture<Void> loading = subscribed.computeIfAbsent(listener, added -> created);
+        if(loading == created) {
+            created.whenComplete((done, failure) -> {
+                if(failure != null) {
+                    subscribed.remove(listener, created);
+                }
+            });
+            pending.add(listener);
+            executor.execute(this::load);
+        }
+        return loading;
+    }
+
+    private void load() {
+        final List<BuildListener> taken = new ArrayList<>();
+        final Load load;
+        subscriptions.writeLock().lock();
+        try {
+            for(BuildListener listener = pending.poll(); listener != null; listener = pending.poll()) {
+                taken.add(listener);
+            }
+            if(taken.isEmpty()) {
+                return;
+            }
+            final SqlRow bounds = finder.db().createSqlQuery("select min(id) as low, max(id) as high from builds")
+                    .findOne();
+            if(bounds == null || bounds.getLong("low") == null) {
+                load = new Load(taken, 1, 0);
+            } else {
+                load = new Load(taken, bounds.getLong("low"), bounds.getLong("high"));
+            }
+            loads.add(load);
+        } catch(RuntimeException e) {
+            loaded(taken, e);
+            return;
+        } finally {
+            subscriptions.writeLock().unlock();
+        }
+        final List<CompletableFuture<Void>> ranges = new ArrayList<>();
+        for(int range = 0; range < SCAN_PARALLELISM; range++) {
+            final int scanned = range;
+            ranges.add(CompletableFuture.runAsync(() -> scan(load, scanned), scanExecutor));
+        }
+        CompletableFuture.allOf(ranges.toArray(new CompletableFuture[0])).whenComplete((done, failure) -> {
+            subscriptions.writeLock().lock();
+            try {
+                loads.remove(load);
+                if(failure == null) {
+                    listeners.addAll(load.listeners);
+                }
+            } finally {
+                subscriptions.writeLock().unlock();
+            }
+            loaded(load.listeners, failure);
+        });
+    }
+
+    private void scan(final Load load, final int range) {
+        final long end = Math.min(load.high, load.low + (range + 1) * load.width - 1);
+        while(load.scanned.get(range) < end) {
+            final Lock chunk = load.ranges[range].writeLock();
+            chunk.lock();
+            try {
+                final List<Build> builds = query().where()
+                        .gt("id", load.scanned.get(range)).le("id", end)
+                        .orderBy("id")
+                        .setMaxRows(SCAN_CHUNK_SIZE)
+                        .findList();
+                for(Build build : builds) {
+                    for(BuildListener listener : load.listeners) {
+                        listener.changed(null, build);
+                    }
+                }
+                load.scanned.set(range, builds.size() < SCAN_CHUNK_SIZE ? end : builds.get(builds.size() - 1).getId());
+            } finally {
+                chunk.unlock();
+            }
+        }
+    }
+
+    private void loaded(final List<BuildListener> loaded, final Throwable failure) {
+        for(BuildListener listener : loaded) {
+            final CompletableFuture<Void> loading = subscribed.get(listener);
+            if(failure == null) {
+                loading.complete(null);
+            } else {
+                loading.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * The saved content with the same loadout, saving the given content first if there is none.
+     * Recently used contents are looked up in memory, others by their unique content key.
+     * A new content is saved in a transaction of its own.
+     */
+    private BuildContent intern(final BuildContent content) {
+        final BuildContent known = contents.get(content.getContentKey());
+        if(known != null) {
+            return known;
+        }
+        BuildContent saved = findContent(content.getContentKey());
+        if(saved == null) {
+            // Committed on its own, a content cached here must outlive a rolled back build write
+            try(Transaction own = finder.db().createTransaction()) {
+                finder.db().save(content, own);
+                own.commit();
+                saved = content;
+            } catch(DuplicateKeyException e) {
+                // Saved by a concurrent write since the lookup
+                saved = findContent(content.getContentKey());
+            }
+        }
+        final BuildContent raced = contents.putIfAbsent(saved.getContentKey(), saved);
+        return raced == null ? saved : raced;
+    }
+
+    /**
+     * Locks the row of a build until the current transaction ends, then reads the build as stored.
+     * H2 does not lock rows of a join, so the lock and the read are separate queries.
+     */
+    private Build locked(final long id) {
+        if(finder.db().createSqlQuery("select id from builds where id = :id for update")
+                .setParameter("id", id).findOne() == null) {
+            return null;
+        }
+        return query().where().idEq(id).findOne();
+    }
+
+    private BuildContent findContent(final String contentKey) {
+        return finder.db().find(BuildContent.class).where().eq("contentKey", contentKey).findOne();
+    }
+
+    private Query<Build> query() {
+        // Builds are never useful without their slots, reading them in the same query avoids a lazy load per build
+        return finder.query().fetch("content");
+    }
+
+    private <R> R write(final Supplier<R> write) {
+        subscriptions.readLock().lock();
+        try {
+            return write.get();
+        } finally {
+            subscriptions.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes an existing build, waiting for a load reading the build's chunk
+     */
+    private <R> R write(final long id, final Supplier<R> write) {
+        subscriptions.readLock().lock();
+        final List<Lock> held = new ArrayList<>();
+        try {
+            for(Load load : loads) {
+                final int range = load.rangeOf(id);
+                if(range >= 0) {
+                    final Lock lock = load.ranges[range].readLock();
+                    lock.lock();
+                    held.add(lock);
+                }
+            }
+            return write.get();
+        } finally {
+            for(Lock lock : held) {
+                lock.unlock();
+            }
+            subscriptions.readLock().unlock();
+        }
+    }
+
+    private void notify(final Build previous, final Build current) {
+        for(BuildListener listener : listeners) {
+            listener.changed(previous, current);
+        }
+        final long id = current != null ? current.getId() : previous.getId();
+        for(Load load : loads) {
+            if(load.covers(id)) {
+                for(BuildListener listener : load.listeners) {
+                    listener.changed(previous, current);
+                }
+            }
+        }
+    }
+
+    private static Build copyOf(final Build build) {
+        final Build copy = new Build(build.getCharacter(), build.getPerks(), build.getItem(), build.getAddons());
+        copy.setId(build.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,23 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Bounded execution context that loads new BuildListeners with the existing builds,
+ * kept apart from BuildExecutionContext so a long scan never holds up writes to the builds table,
+ * configured by builds.scan-dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class BuildScanExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public BuildScanExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "builds.scan-dispatcher");
+    }
+}
@@ -0,0 +1,32 @@
+package repositories;
+
+/**
+ * How many builds are saved and how many distinct loadouts are stored for them
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildStorage {
+
+    private final long builds;
+    private final long contents;
+
+    public BuildStorage(final long builds, final long contents) {
+        this.builds = builds;
+        this.contents = contents;
+    }
+
+    public long getBuilds() {
+        return builds;
+    }
+
+    public long getContents() {
+        return contents;
+    }
+
+    /**
+     * @return Saved builds per stored loadout, 1 when nothing is stored
+     */
+    public double getDedupRatio() {
+        return contents == 0 ? 1 : (double) builds / contents;
+    }
+}
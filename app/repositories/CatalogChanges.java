@@ -0,0 +1,139 @@
+package repositories;
+
+import io.ebean.SqlUpdate;
+import models.CatalogEntry;
+import models.CharacterType;
+import models.RatedEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The columns a partial update changes, anything left null is kept as it is
+ *
+ * @author Lowell Buttorff
+ */
+public final class CatalogChanges {
+
+    private String name;
+    private String description;
+    private CharacterType type;
+    private Integer rarity;
+    private Double potency;
+
+    public CatalogChanges name(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    public CatalogChanges description(final String description) {
+        this.description = description;
+        return this;
+    }
+
+    public CatalogChanges type(final CharacterType type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Only perks, addons and items have a rarity
+     */
+    public CatalogChanges rarity(final Integer rarity) {
+        this.rarity = rarity;
+        return this;
+    }
+
+    /**
+     * Only perks, addons and items have a potency
+     */
+    public CatalogChanges potency(final Double potency) {
+        this.potency = potency;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if no column is changed
+     */
+    public boolean isEmpty() {
+        return name == null && description == null && type == null && rarity == null && potency == null;
+    }
+
+    /**
+     * @return The SET clause of an UPDATE statement for the changed columns, with named parameters
+     */
+    String setClause() {
+        final List<String> columns = new ArrayList<>();
+        if(name != null) {
+            columns.add("name = :name");
+        }
+        if(description != null) {
+            columns.add("description = :description");
+        }
+        if(type != null) {
+            columns.add("type = :type");
+        }
+        if(rarity != null) {
+            columns.add("rarity = :rarity");
+        }
+        if(potency != null) {
+            columns.add("potency = :potency");
+        }
+        return String.join(", ", columns);
+    }
+
+    /**
+     * Binds the parameters of the SET clause
+     *
+     * @param update The UPDATE statement
+     * @return SqlUpdate with the parameters bound
+     */
+    SqlUpdate bind(final SqlUpdate update) {
+        if(name != null) {
+            update.setParameter("name", name);
+        }
+        if(description != null) {
+            update.setParameter("description", description);
+        }
+        if(type != null) {
+            // The type column holds the ordinal, see the check constraints in 1.sql
+            update.setParameter("type", type.ordinal());
+        }
+        if(rarity != null) {
+            update.setParameter("rarity", rarity);
+        }
+        if(potency != null) {
+            update.setParameter("potency", potency);
+        }
+        return update;
+    }
+
+    /**
+     * Applies the changes to a row in memory
+     *
+     * @param entry The row to change
+     */
+    void applyTo(final CatalogEntry entry) {
+        if(name != null) {
+            entry.setName(name);
+        }
+        if(description != null) {
+            entry.setDescription(description);
+        }
+        if(type != null) {
+            entry.setType(type);
+        }
+        if(entry instanceof RatedEntry) {
+            if(rarity != null) {
+                ((RatedEntry) entry).setRarity(rarity);
+            }
+            if(potency != null) {
+                ((RatedEntry) entry).setPotency(potency);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package repositories;
+
+import io.ebean.ExpressionList;
+import io.ebean.Junction;
+import models.CatalogEntry;
+import models.CharacterType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Filter on the rows of a game data table by CharacterType and by name prefix.
+ * Rows match when they have any of the types and start with any of the prefixes, an empty list matches everything.
+ *
+ * @author Lowell Buttorff
+ */
+public final class CatalogFilter {
+
+    public static final CatalogFilter NONE = new CatalogFilter(Collections.emptyList(), Collections.emptyList());
+
+    private final Set<CharacterType> types;
+    private final List<String> namePrefixes;
+
+    public CatalogFilter(final Collection<CharacterType> types, final Collection<String> namePrefixes) {
+        this.types = types.isEmpty() ? EnumSet.noneOf(CharacterType.class) : EnumSet.copyOf(types);
+        this.namePrefixes = Collections.unmodifiableList(new ArrayList<>(namePrefixes));
+    }
+
+    /**
+     * @return true if the filter matches every row
+     */
+    public boolean isEmpty() {
+        return types.isEmpty() && namePrefixes.isEmpty();
+    }
+
+    public Set<CharacterType> getTypes() {
+        return Collections.unmodifiableSet(types);
+    }
+
+    public List<String> getNamePrefixes() {
+        return namePrefixes;
+    }
+
+    /**
+     * @param entry A row of the table
+     * @return true if the row has one of the types
+     */
+    public boolean matchesType(final CatalogEntry entry) {
+        return types.isEmpty() || types.contains(entry.getType());
+    }
+
+    /**
+     * @param entry A row of the table
+     * @return true if the row passes the filter
+     */
+    public boolean matches(final CatalogEntry entry) {
+        if(!matchesType(entry)) {
+            return false;
+        }
+        if(namePrefixes.isEmpty()) {
+            return true;
+        }
+        for(String prefix : namePrefixes) {
+            if(entry.getName() != null && entry.getName().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the filter to a database query, where it is served by the (type, name) indexes
+     *
+     * @param where The where clause of the query
+     * @return ExpressionList with the filter added
+     */
+    <T> ExpressionList<T> applyTo(final ExpressionList<T> where) {
+        if(!types.isEmpty()) {
+            where.in("type", types);
+        }
+        if(namePrefixes.size() == 1) {
+            where.startsWith("name", namePrefixes.get(0));
+        } else if(!namePrefixes.isEmpty()) {
+            final Junction<T> anyPrefix = where.or();
+            for(String prefix : namePrefixes) {
+                anyPrefix.startsWith("name", prefix);
+            }
+            anyPrefix.endOr();
+        }
+        return where;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if(this == other) {
+            return true;
+        }
+        if(!(other instanceof CatalogFilter)) {
+            return false;
+        }
+        final CatalogFilter filter = (CatalogFilter) other;
+        return types.equals(filter.types) && namePrefixes.equals(filter.namePrefixes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(types, namePrefixes);
+    }
+}
@@ -0,0 +1,33 @@
+package repositories;
+
+import java.util.List;
+
+/**
+ * One page of a table in id order, with the cursor for the page after it
+ *
+ * @author Lowell Buttorff
+ */
+public final class CatalogPage<T> {
+
+    private final List<T> items;
+    private final Long next;
+
+    CatalogPage(final List<T> items, final Long next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * @return The rows on this page ordered by id
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The id to pass as after for the next page, null on the last page
+     */
+    public Long getNext() {
+        return next;
+    }
+}
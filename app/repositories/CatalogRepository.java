@@ -0,0 +1,360 @@
+package repositories;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import io.ebean.DuplicateKeyException;
+import io.ebean.Finder;
+import io.ebean.Model;
+import io.ebean.Query;
+import io.ebean.QueryIterator;
+import io.ebean.Transaction;
+import models.CatalogEntry;
+import models.CharacterType;
+import models.RatedEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-mostly replica of a game data table.
+ * Reads are served from an immutable CatalogSnapshot without touching the database or taking locks,
+ * writes go to the database and then publish a new snapshot.
+ * All writes to the table have to go through the repository for the replica to stay current.
+ *
+ * @author Lowell Buttorff
+ */
+public abstract class CatalogRepository<T extends Model & CatalogEntry> {
+
+    // Rows pulled from the database per step of a stream
+    static final int STREAM_CHUNK_SIZE = 256;
+    // Rows sent to the database per JDBC batch of a bulk insert
+    static final int INSERT_BATCH_SIZE = 100;
+
+    /**
+     * Creates new, unsaved rows of the table
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        T create(CharacterType type, String name, String description);
+    }
+
+    private final Finder<Long, T> finder;
+    private final Executor executor;
+    private final Factory<T> factory;
+    private final String table;
+    private final AtomicReference<CatalogSnapshot<T>> snapshot = new AtomicReference<>();
+    // Tags carry the start time to stay unique across restarts
+    private final long epoch = System.currentTimeMillis();
+
+    protected CatalogRepository(final Finder<Long, T> finder, final Executor executor, final Factory<T> factory,
+                                final String table) {
+        this.finder = finder;
+        this.executor = executor;
+        this.factory = factory;
+        this.table = table;
+    }
+
+    /**
+     * Creates a new row without saving it
+     *
+     * @param type The CharacterType of the row
+     * @param name The unique name of the row
+     * @param description The description of the row
+     * @return The unsaved row
+     */
+    public T create(final CharacterType type, final String name, final String description) {
+        return factory.create(type, name, description);
+    }
+
+    /**
+     * The current snapshot of the table, loaded from the database on first use
+     *
+     * @return CompletionStage of the current CatalogSnapshot
+     */
+    public CompletionStage<CatalogSnapshot<T>> snapshot() {
+        final CatalogSnapshot<T> current = snapshot.get();
+        if(current != null) {
+            return CompletableFuture.completedFuture(current);
+        }
+        return CompletableFuture.supplyAsync(this::load, executor);
+    }
+
+    /**
+     * Strong entity tag for the current version of the table, without loading it.
+     * Only for checking If-None-Match, responses with a body are tagged with etag(CatalogSnapshot).
+     *
+     * @return The quoted ETag value
+     */
+    public String etag() {
+        final CatalogSnapshot<T> current = snapshot.get();
+        return etagOf(current == null ? 0 : current.getVersion());
+    }
+
+    /**
+     * Strong entity tag for a snapshot of the table
+     *
+     * @param served The snapshot the response is built from
+     * @return The quoted ETag value
+     */
+    public String etag(final CatalogSnapshot<T> served) {
+        return etagOf(served.getVersion());
+    }
+
+    /**
+     * @return CompletionStage of all rows ordered by id
+     */
+    public CompletionStage<List<T>> all() {
+        return snapshot().thenApply(CatalogSnapshot::all);
+    }
+
+    /**
+     * @param type The CharacterType to filter by
+     * @return CompletionStage of all rows of the type ordered by id
+     */
+    public CompletionStage<List<T>> ofType(final CharacterType type) {
+        return snapshot().thenApply(current -> current.ofType(type));
+    }
+
+    /**
+     * @param id The unique ID of a row
+     * @return CompletionStage of the row, if present
+     */
+    public CompletionStage<Optional<T>> byId(final long id) {
+        return snapshot().thenApply(current -> current.get(id));
+    }
+
+    /**
+     * Streams the table straight from the database in id order.
+     * Rows are pulled in small chunks as downstream asks for them, so memory use does not grow with the table.
+     *
+     * @return Source of all rows ordered by id
+     */
+    public Source<T, NotUsed> stream() {
+        return stream(CatalogFilter.NONE);
+    }
+
+    /**
+     * Streams the rows passing a filter straight from the database in id order
+     *
+     * @param filter The filter to apply
+     * @return Source of the matching rows ordered by id
+     */
+    public Source<T, NotUsed> stream(final CatalogFilter filter) {
+        return Source.<List<T>, QueryIterator<T>>unfoldResourceAsync(
+                () -> CompletableFuture.supplyAsync(() -> query(filter).orderBy("id").findIterate(), executor),
+                rows -> CompletableFuture.supplyAsync(() -> nextChunk(rows), executor),
+                rows -> CompletableFuture.supplyAsync(() -> {
+                    rows.close();
+                    return Done.getInstance();
+                }, executor))
+                .mapConcat(chunk -> chunk);
+    }
+
+    /**
+     * Inserts a new row unless one already exists with the same name.
+     * This is a single insert, a taken name is detected by the unique constraint on the name column.
+     *
+     * @param entry The row to insert
+     * @return CompletionStage of the inserted row, empty if the name is taken
+     */
+    public CompletionStage<Optional<T>> insert(final T entry) {
+        return snapshot().thenApplyAsync(current -> {
+            try {
+                finder.db().save(entry);
+            } catch(DuplicateKeyException e) {
+                return Optional.empty();
+            }
+            publish(latest -> latest.with(entry));
+            return Optional.of(entry);
+        }, executor);
+    }
+
+    /**
+     * Inserts many new rows in a single transaction using JDBC batching.
+     * Names already taken are found with one query up front and those rows are skipped.
+     *
+     * @param entries The rows to insert, with distinct names
+     * @return CompletionStage of the inserted rows in the order given, empty where the name is taken
+     */
+    public CompletionStage<List<Optional<T>>> insertAll(final List<T> entries) {
+        return snapshot().thenApplyAsync(current -> {
+            final Set<String> names = new HashSet<>();
+            for(T entry : entries) {
+                names.add(entry.getName());
+            }
+            final Set<String> taken = new HashSet<>();
+            final Map<String, T> inserted = new HashMap<>();
+            // A name taken between the check and the insert rolls the batch back, it is retried once with a fresh check
+            for(int attempt = 1; ; attempt++) {
+                taken.clear();
+                if(!names.isEmpty()) {
+                    for(T existing : finder.query().where().in("name", names).findList()) {
+                        taken.add(existing.getName());
+                    }
+                }
+                // Fresh copies on every attempt, a rolled back batch leaves its beans looking saved
+                final List<T> inserts = new ArrayList<>();
+                for(T entry : entries) {
+                    if(!taken.contains(entry.getName())) {
+                        inserts.add(freshCopyOf(entry));
+                    }
+                }
+                if(inserts.isEmpty()) {
+                    break;
+                }
+                try {
+                    insertBatch(inserts);
+                } catch(DuplicateKeyException e) {
+                    if(attempt < 2) {
+                        continue;
+                    }
+                    throw e;
+                }
+                // Read the rows back so the replica gets the generated ids whatever the driver returns for a batch
+                final Set<String> insertedNames = new HashSet<>();
+                for(T entry : inserts) {
+                    insertedNames.add(entry.getName());
+                }
+                for(T entry : finder.query().where().in("name", insertedNames).findList()) {
+                    inserted.put(entry.getName(), entry);
+                }
+                publish(latest -> latest.withAll(inserted.values()));
+                break;
+            }
+            final List<Optional<T>> results = new ArrayList<>(entries.size());
+            for(T entry : entries) {
+                results.add(taken.contains(entry.getName()) ? Optional.empty() : Optional.ofNullable(inserted.get(entry.getName())));
+            }
+            return results;
+        }, executor);
+    }
+
+    /**
+     * Applies a partial update to an existing row with a single UPDATE of the changed columns,
+     * the row is not read from the database first
+     *
+     * @param id The unique ID of a row
+     * @param changes The columns to change
+     * @return CompletionStage of the updated row, empty if there is no row with the id
+     */
+    public CompletionStage<Optional<T>> update(final long id, final CatalogChanges changes) {
+        return snapshot().thenApplyAsync(current -> {
+            if(changes.isEmpty()) {
+                return current.get(id);
+            }
+            final int rows = changes.bind(finder.db().createSqlUpdate(
+                    "update " + table + " set " + changes.setClause() + " where id = :id"))
+                    .setParameter("id", id)
+                    .execute();
+            if(rows == 0) {
+                return Optional.empty();
+            }
+            // Applied to whatever the replica holds when publishing, so concurrent updates to other columns are kept
+            final AtomicReference<T> updated = new AtomicReference<>();
+            publish(latest -> {
+                final Optional<T> entry = latest.get(id);
+                if(!entry.isPresent()) {
+                    return latest;
+                }
+                final T copy = copyOf(entry.get());
+                changes.applyTo(copy);
+                updated.set(copy);
+                return latest.with(copy);
+            });
+            return Optional.ofNullable(updated.get());
+        }, executor);
+    }
+
+    /**
+     * Deletes an existing row with a single DELETE, the row is not read from the database first
+     *
+     * @param id The unique ID of a row
+     * @return CompletionStage of the deleted row, empty if there is no row with the id
+     */
+    public CompletionStage<Optional<T>> delete(final long id) {
+        return snapshot().thenApplyAsync(current -> {
+            final int rows = finder.db().createSqlUpdate("delete from " + table + " where id = :id")
+                    .setParameter("id", id)
+                    .execute();
+            if(rows == 0) {
+                return Optional.empty();
+            }
+            final AtomicReference<T> deleted = new AtomicReference<>();
+            publish(latest -> {
+                deleted.set(latest.get(id).orElse(null));
+                return latest.without(id);
+            });
+            return Optional.ofNullable(deleted.get());
+        }, executor);
+    }
+
+    private T copyOf(final T entry) {
+        final T copy = freshCopyOf(entry);
+        copy.setId(entry.getId());
+        return copy;
+    }
+
+    private T freshCopyOf(final T entry) {
+        final T copy = factory.create(entry.getType(), entry.getName(), entry.getDescription());
+        if(entry instanceof RatedEntry) {
+            ((RatedEntry) copy).setRarity(((RatedEntry) entry).getRarity());
+            ((RatedEntry) copy).setPotency(((RatedEntry) entry).getPotency());
+        }
+        return copy;
+    }
+
+    private Query<T> query(final CatalogFilter filter) {
+        if(filter.isEmpty()) {
+            return finder.query();
+        }
+        return filter.applyTo(finder.query().where()).query();
+    }
+
+    private void insertBatch(final List<T> inserts) {
+        try(Transaction transaction = finder.db().beginTransaction()) {
+            transaction.setBatchMode(true);
+            transaction.setBatchSize(INSERT_BATCH_SIZE);
+            finder.db().saveAll(inserts, transaction);
+            transaction.commit();
+        }
+    }
+
+    private Optional<List<T>> nextChunk(final QueryIterator<T> rows) {
+        if(!rows.hasNext()) {
+            return Optional.empty();
+        }
+        final List<T> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        while(chunk.size() < STREAM_CHUNK_SIZE && rows.hasNext()) {
+            chunk.add(rows.next());
+        }
+        return Optional.of(chunk);
+    }
+
+    private CatalogSnapshot<T> load() {
+        final CatalogSnapshot<T> current = snapshot.get();
+        if(current != null) {
+            return current;
+        }
+        final CatalogSnapshot<T> loaded = CatalogSnapshot.of(finder.all());
+        return snapshot.compareAndSet(null, loaded) ? loaded : snapshot.get();
+    }
+
+    private void publish(final UnaryOperator<CatalogSnapshot<T>> change) {
+        snapshot.updateAndGet(change);
+    }
+
+    private String etagOf(final long version) {
+        return "\"" + Long.toHexString(epoch) + "-" + Long.toHexString(version) + "\"";
+    }
+}
@@ -0,0 +1,307 @@
+package repositories;
+
+import models.CatalogEntry;
+import models.CharacterType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable copy of a game data table, indexed by id and by CharacterType.
+ * Changes never touch an existing snapshot, they produce a new one.
+ *
+ * @author Lowell Buttorff
+ */
+public final class CatalogSnapshot<T extends CatalogEntry> {
+
+    // Filters are chosen by clients, so only this many filtered bodies are kept per snapshot
+    static final int MAX_FILTERED_JSON = 64;
+
+    private static final Comparator<CatalogEntry> BY_ID = Comparator.comparingLong(CatalogEntry::getId);
+    private static final Comparator<CatalogEntry> BY_NAME =
+            Comparator.comparing(CatalogEntry::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    // Bumped by every change, so a snapshot and its ETag are always read together
+    private final long version;
+    private final List<T> entries;
+    private final Map<Long, T> byId;
+    private final Map<CharacterType, List<T>> byType;
+    // Serialized lazily on first request; a racing request may serialize twice, but never sees a partial body
+    private volatile JsonBody allJson;
+    private final JsonBody[] typeJson = new JsonBody[CharacterType.values().length];
+    private final ConcurrentMap<CatalogFilter, JsonBody> filteredJson = new ConcurrentHashMap<>();
+    // Sorted by name on the first name prefix filter
+    private volatile List<T> byName;
+
+    private CatalogSnapshot(final List<T> sortedEntries, final long version) {
+        this.version = version;
+        this.entries = Collections.unmodifiableList(sortedEntries);
+        final Map<Long, T> ids = new HashMap<>(sortedEntries.size() * 2);
+        final Map<CharacterType, List<T>> types = new EnumMap<>(CharacterType.class);
+        for(CharacterType type : CharacterType.values()) {
+            types.put(type, new ArrayList<>());
+        }
+        for(T entry : sortedEntries) {
+            ids.put(entry.getId(), entry);
+            types.get(entry.getType()).add(entry);
+        }
+        for(Map.Entry<CharacterType, List<T>> type : types.entrySet()) {
+            type.setValue(Collections.unmodifiableList(type.getValue()));
+        }
+        this.byId = Collections.unmodifiableMap(ids);
+        this.byType = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Builds a snapshot of the given rows
+     *
+     * @param entries The rows of the table, in any order
+     * @return CatalogSnapshot of the rows
+     */
+    public static <T extends CatalogEntry> CatalogSnapshot<T> of(final Collection<T> entries) {
+        final List<T> sorted = new ArrayList<>(entries);
+        sorted.sort(BY_ID);
+        return new CatalogSnapshot<>(sorted, 0);
+    }
+
+    /**
+     * @return Number of changes made since the table was loaded
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return All rows ordered by id
+     */
+    public List<T> all() {
+        return entries;
+    }
+
+    /**
+     * @param type The CharacterType to filter by
+     * @return All rows of the type ordered by id
+     */
+    public List<T> ofType(final CharacterType type) {
+        return byType.get(type);
+    }
+
+    /**
+     * Rows passing a filter, name prefixes are looked up by binary search in a name ordered copy of the table
+     *
+     * @param filter The filter to apply
+     * @return The matching rows ordered by id
+     */
+    public List<T> filter(final CatalogFilter filter) {
+        if(filter.getNamePrefixes().isEmpty()) {
+            if(filter.getTypes().isEmpty()) {
+                return entries;
+            }
+            if(filter.getTypes().size() == 1) {
+                return byType.get(filter.getTypes().iterator().next());
+            }
+            final List<T> matches = new ArrayList<>();
+            for(T entry : entries) {
+                if(filter.matchesType(entry)) {
+                    matches.add(entry);
+                }
+            }
+            return matches;
+        }
+        final List<T> names = byName();
+        final Map<Long, T> matches = new HashMap<>();
+        for(String prefix : filter.getNamePrefixes()) {
+            int low = 0;
+            int high = names.size();
+            while(low < high) {
+                final int middle = (low + high) >>> 1;
+                final String name = names.get(middle).getName();
+                if(name == null || name.compareTo(prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for(int i = low; i < names.size() && names.get(i).getName().startsWith(prefix); i++) {
+                if(filter.matchesType(names.get(i))) {
+                    matches.put(names.get(i).getId(), names.get(i));
+                }
+            }
+        }
+        final List<T> sorted = new ArrayList<>(matches.values());
+        sorted.sort(BY_ID);
+        return sorted;
+    }
+
+    /**
+     * Keyset page of rows in id order
+     *
+     * @param rows Rows of this snapshot ordered by id, such as all() or the result of filter
+     * @param after Only rows with a greater id are returned
+     * @param limit The largest number of rows to return
+     * @return CatalogPage of at most limit rows
+     */
+    public CatalogPage<T> page(final List<T> rows, final long after, final int limit) {
+        int low = 0;
+        int high = rows.size();
+        while(low < high) {
+            final int middle = (low + high) >>> 1;
+            if(rows.get(middle).getId() <= after) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        final int end = (int) Math.min((long) low + limit, rows.size());
+        final List<T> items = rows.subList(low, end);
+        final Long next = end < rows.size() && !items.isEmpty() ? items.get(items.size() - 1).getId() : null;
+        return new CatalogPage<>(items, next);
+    }
+
+    /**
+     * @return All rows serialized as a Json list
+     */
+    public JsonBody allJson() {
+        JsonBody json = allJson;
+        if(json == null) {
+            json = JsonBody.of(entries);
+            allJson = json;
+        }
+        return json;
+    }
+
+    /**
+     * @param type The CharacterType to filter by
+     * @return All rows of the type serialized as a Json list
+     */
+    public JsonBody ofTypeJson(final CharacterType type) {
+        JsonBody json = typeJson[type.ordinal()];
+        if(json == null) {
+            json = JsonBody.of(byType.get(type));
+            typeJson[type.ordinal()] = json;
+        }
+        return json;
+    }
+
+    /**
+     * Rows passing a filter serialized as a Json list.
+     * The bodies of the first MAX_FILTERED_JSON filters asked for are kept for the life of the snapshot.
+     *
+     * @param filter The filter to apply
+     * @return The matching rows ordered by id serialized as a Json list
+     */
+    public JsonBody filterJson(final CatalogFilter filter) {
+        if(filter.isEmpty()) {
+            return allJson();
+        }
+        if(filter.getNamePrefixes().isEmpty() && filter.getTypes().size() == 1) {
+            return ofTypeJson(filter.getTypes().iterator().next());
+        }
+        JsonBody json = filteredJson.get(filter);
+        if(json == null) {
+            json = JsonBody.of(filter(filter));
+            if(filteredJson.size() < MAX_FILTERED_JSON) {
+                filteredJson.putIfAbsent(filter, json);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * @param id The unique ID of a row
+     * @return The row, if present
+     */
+    public Optional<T> get(final long id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    /**
+     * @return Number of rows in the snapshot
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private List<T> byName() {
+        List<T> names = byName;
+        if(names == null) {
+            final List<T> sorted = new ArrayList<>(entries);
+            sorted.sort(BY_NAME);
+            names = Collections.unmodifiableList(sorted);
+            byName = names;
+        }
+        return names;
+    }
+
+    /**
+     * Copy of this snapshot with the row added, or replaced if its id is already present
+     *
+     * @param entry The new or changed row
+     * @return CatalogSnapshot containing the row
+     */
+    public CatalogSnapshot<T> with(final T entry) {
+        final List<T> copy = new ArrayList<>(entries.size() + 1);
+        boolean placed = false;
+        for(T existing : entries) {
+            if(!placed && existing.getId() >= entry.getId()) {
+                copy.add(entry);
+                placed = true;
+                if(existing.getId() == entry.getId()) {
+                    continue;
+                }
+            }
+            copy.add(existing);
+        }
+        if(!placed) {
+            copy.add(entry);
+        }
+        return new CatalogSnapshot<>(copy, version + 1);
+    }
+
+    /**
+     * Copy of this snapshot with many rows added or replaced at once
+     *
+     * @param changed The new or changed rows
+     * @return CatalogSnapshot containing the rows
+     */
+    public CatalogSnapshot<T> withAll(final Collection<T> changed) {
+        if(changed.isEmpty()) {
+            return this;
+        }
+        final Map<Long, T> merged = new HashMap<>(byId);
+        for(T entry : changed) {
+            merged.put(entry.getId(), entry);
+        }
+        final List<T> sorted = new ArrayList<>(merged.values());
+        sorted.sort(BY_ID);
+        return new CatalogSnapshot<>(sorted, version + 1);
+    }
+
+    /**
+     * Copy of this snapshot without the row with the given id
+     *
+     * @param id The unique ID of a row
+     * @return CatalogSnapshot without the row
+     */
+    public CatalogSnapshot<T> without(final long id) {
+        if(!byId.containsKey(id)) {
+            return this;
+        }
+        final List<T> copy = new ArrayList<>(entries.size());
+        for(T existing : entries) {
+            if(existing.getId() != id) {
+                copy.add(existing);
+            }
+        }
+        return new CatalogSnapshot<>(copy, version + 1);
+    }
+}
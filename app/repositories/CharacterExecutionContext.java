@@ -0,0 +1,22 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Bounded execution context that all database work on the characters table runs on,
+ * configured by characters.dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class CharacterExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public CharacterExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "characters.dispatcher");
+    }
+}
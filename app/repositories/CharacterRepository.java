@@ -0,0 +1,26 @@
+package repositories;
+
+import io.ebean.Finder;
+import models.Character;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory replica of the characters table
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class CharacterRepository extends CatalogRepository<Character> {
+
+    @Inject
+    public CharacterRepository(final CharacterExecutionContext executionContext) {
+        this(Character.find, executionContext);
+    }
+
+    public CharacterRepository(final Finder<Long, Character> finder, final Executor executor) {
+        super(finder, executor, Character::new, "characters");
+    }
+}
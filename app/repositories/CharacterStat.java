@@ -0,0 +1,25 @@
+package repositories;
+
+/**
+ * The number of saved builds of a character that pick a perk or addon
+ *
+ * @author Lowell Buttorff
+ */
+public final class CharacterStat {
+
+    private final long id;
+    private final long builds;
+
+    public CharacterStat(final long id, final long builds) {
+        this.id = id;
+        this.builds = builds;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getBuilds() {
+        return builds;
+    }
+}
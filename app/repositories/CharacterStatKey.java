@@ -0,0 +1,59 @@
+package repositories;
+
+import java.util.Objects;
+
+/**
+ * A row of an aggregate table, the character and the perk or addon its builds pick.
+ * Keys order by table, character and id, the order rows are locked in by build writes.
+ *
+ * @author Lowell Buttorff
+ */
+public final class CharacterStatKey implements Comparable<CharacterStatKey> {
+
+    private final CharacterStatsTable table;
+    private final long character;
+    private final long id;
+
+    public CharacterStatKey(final CharacterStatsTable table, final long character, final long id) {
+        this.table = table;
+        this.character = character;
+        this.id = id;
+    }
+
+    public CharacterStatsTable getTable() {
+        return table;
+    }
+
+    public long getCharacter() {
+        return character;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(final CharacterStatKey other) {
+        if(table != other.table) {
+            return table.compareTo(other.table);
+        }
+        if(character != other.character) {
+            return Long.compare(character, other.character);
+        }
+        return Long.compare(id, other.id);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if(!(other instanceof CharacterStatKey)) {
+            return false;
+        }
+        final CharacterStatKey key = (CharacterStatKey) other;
+        return table == key.table && character == key.character && id == key.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(table, character, id);
+    }
+}
@@ -0,0 +1,49 @@
+package repositories;
+
+import java.util.List;
+
+/**
+ * The perks and addons most picked by the saved builds of a character, read from the aggregate tables
+ *
+ * @author Lowell Buttorff
+ */
+public final class CharacterStats {
+
+    private final long character;
+    private final List<CharacterStat> perks;
+    private final List<CharacterStat> addons;
+    private final Double averageAddonRarity;
+
+    public CharacterStats(final long character, final List<CharacterStat> perks, final List<CharacterStat> addons,
+                          final Double averageAddonRarity) {
+        this.character = character;
+        this.perks = perks;
+        this.addons = addons;
+        this.averageAddonRarity = averageAddonRarity;
+    }
+
+    public long getCharacter() {
+        return character;
+    }
+
+    /**
+     * @return The most picked perks, most builds first
+     */
+    public List<CharacterStat> getPerks() {
+        return perks;
+    }
+
+    /**
+     * @return The most picked addons, most builds first
+     */
+    public List<CharacterStat> getAddons() {
+        return addons;
+    }
+
+    /**
+     * @return The rarity of the addons in the character's builds averaged over every pick, null if none has addons
+     */
+    public Double getAverageAddonRarity() {
+        return averageAddonRarity;
+    }
+}
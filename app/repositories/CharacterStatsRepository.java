@@ -0,0 +1,207 @@
+package repositories;
+
+import io.ebean.DuplicateKeyException;
+import io.ebean.EbeanServer;
+import io.ebean.Finder;
+import io.ebean.SqlRow;
+import io.ebean.SqlUpdate;
+import io.ebean.Transaction;
+import models.Build;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Access to the character_perk_stats and character_addon_stats aggregate tables,
+ * which count the saved builds of every character picking each perk and addon.
+ * The BuildRepository updates them with apply in the same transaction as every build write,
+ * so reading them never needs a scan of the builds table.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class CharacterStatsRepository {
+
+    // Updates and inserts tried for a count before the write is given up
+    static final int MAX_COUNT_ATTEMPTS = 3;
+
+    private final Finder<Long, Build> finder;
+    private final Executor executor;
+
+    @Inject
+    public CharacterStatsRepository(final BuildExecutionContext executionContext) {
+        this(Build.find, executionContext);
+    }
+
+    public CharacterStatsRepository(final Finder<Long, Build> finder, final Executor executor) {
+        this.finder = finder;
+        this.executor = executor;
+    }
+
+    /**
+     * @param character The unique ID of a Character
+     * @param k The largest number of perks and of addons to return
+     * @return CompletionStage of the k perks and addons most picked by the character's builds
+     */
+    public CompletionStage<CharacterStats> byCharacter(final long character, final int k) {
+        return CompletableFuture.supplyAsync(() -> {
+            final EbeanServer db = finder.db();
+            final SqlRow rarity = db.createSqlQuery("select sum(s.builds * a.rarity) as weighted,"
+                    + " sum(s.builds) as picks from character_addon_stats s join addons a on a.id = s.addon_id"
+                    + " where s.character_id = :character and s.builds > 0")
+                    .setParameter("character", character)
+                    .findOne();
+            final Double average = rarity == null || rarity.getLong("picks") == null ? null
+                    : rarity.getLong("weighted") / (double) rarity.getLong("picks");
+            return new CharacterStats(character, top(db, CharacterStatsTable.PERK, character, k),
+                    top(db, CharacterStatsTable.ADDON, character, k), average);
+        }, executor);
+    }
+
+    /**
+     * @return CompletionStage of every count in the aggregate tables, without the ones at 0
+     */
+    public CompletionStage<Map<CharacterStatKey, Long>> stored() {
+        return CompletableFuture.supplyAsync(() -> {
+            final Map<CharacterStatKey, Long> counts = new HashMap<>();
+            for(CharacterStatsTable table : CharacterStatsTable.values()) {
+                for(SqlRow row : finder.db().createSqlQuery("select character_id, " + table.column()
+                        + " as entry_id, builds from " + table.table() + " where builds <> 0").findList()) {
+                    counts.put(new CharacterStatKey(table, row.getLong("character_id"), row.getLong("entry_id")),
+                            row.getLong("builds"));
+                }
+            }
+            return counts;
+        }, executor);
+    }
+
+    /**
+     * Counts the builds again from the builds table, only the builds whose id is part modulo parts,
+     * so the table can be recounted in parts at once
+     *
+     * @param part The remainder of the ids of the builds to count
+     * @param parts The number of parts
+     * @return CompletionStage of the counts of the part's builds
+     */
+    public CompletionStage<Map<CharacterStatKey, Long>> recount(final int part, final int parts) {
+        return CompletableFuture.supplyAsync(() -> {
+            final Map<CharacterStatKey, Long> counts = new HashMap<>();
+            for(CharacterStatsTable table : CharacterStatsTable.values()) {
+                final StringBuilder picks = new StringBuilder();
+                for(String column : table.contentColumns()) {
+                    if(picks.length() > 0) {
+                        picks.append(" union all ");
+                    }
+                    picks.append("select c.character_id, c.").append(column).append(" as entry_id")
+                            .append(" from builds b join build_contents c on c.id = b.content_id")
+                            .append(" where mod(b.id, :parts) = :part");
+                }
+                for(SqlRow row : finder.db().createSqlQuery("select character_id, entry_id,"
+                        + " count(*) as builds from (" + picks + ") picks where entry_id is not null"
+                        + " group by character_id, entry_id")
+                        .setParameter("parts", parts)
+                        .setParameter("part", part)
+                        .findList()) {
+                    counts.put(new CharacterStatKey(table, row.getLong("character_id"), row.getLong("entry_id")),
+                            row.getLong("builds"));
+                }
+            }
+            return counts;
+        }, executor);
+    }
+
+    /**
+     * Updates the counts for a build write, within the transaction of the write.
+     * Rows are updated in key order, so concurrent writes lock shared rows in the same order.
+     *
+     * @param db The database of the write
+     * @param transaction The transaction of the write
+     * @param previous The build before the write, null if it was created
+     * @param current The build after the write, null if it was deleted
+     */
+    static void apply(final EbeanServer db, final Transaction transaction, final Build previous,
+                      final Build current) {
+        final SortedMap<CharacterStatKey, Long> deltas = new TreeMap<>();
+        for(CharacterStatsTable table : CharacterStatsTable.values()) {
+            if(previous != null) {
+                for(Long id : table.idsOf(previous)) {
+                    deltas.merge(new CharacterStatKey(table, previous.getCharacter(), id), -1L, Long::sum);
+                }
+            }
+            if(current != null) {
+                for(Long id : table.idsOf(current)) {
+                    deltas.merge(new CharacterStatKey(table, current.getCharacter(), id), 1L, Long::sum);
+                }
+            }
+        }
+        for(Map.Entry<CharacterStatKey, Long> delta : deltas.entrySet()) {
+            if(delta.getValue() != 0) {
+                count(db, transaction, delta.getKey(), delta.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds to a count, inserting its row if there is none.
+     * An insert racing a concurrent one waits for it to commit, so the next update finds the row.
+     *
+     * @throws IllegalStateException if the row is neither found nor inserted, so the write rolls back
+     */
+    private static void count(final EbeanServer db, final Transaction transaction, final CharacterStatKey key,
+                              final long delta) {
+        for(int attempt = 1; !add(db, transaction, key, delta); attempt++) {
+            try {
+                final CharacterStatsTable table = key.getTable();
+                db.execute(db.createSqlUpdate("insert into " + table.table() + " (character_id, "
+                        + table.column() + ", builds) values (:character, :id, :delta)")
+                        .setParameter("character", key.getCharacter())
+                        .setParameter("id", key.getId())
+                        .setParameter("delta", delta), transaction);
+                return;
+            } catch(DuplicateKeyException e) {
+                // Inserted by a concurrent write since the update, added to by the next update
+                if(attempt == MAX_COUNT_ATTEMPTS) {
+                    throw new IllegalStateException("Could not count the builds of " + key.getTable() + " "
+                            + key.getId() + " for character " + key.getCharacter(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the row existed and was updated
+     */
+    private static boolean add(final EbeanServer db, final Transaction transaction, final CharacterStatKey key,
+                               final long delta) {
+        final SqlUpdate update = db.createSqlUpdate("update " + key.getTable().table()
+                + " set builds = builds + :delta where character_id = :character and "
+                + key.getTable().column() + " = :id")
+                .setParameter("delta", delta)
+                .setParameter("character", key.getCharacter())
+                .setParameter("id", key.getId());
+        return db.execute(update, transaction) > 0;
+    }
+
+    private static List<CharacterStat> top(final EbeanServer db, final CharacterStatsTable table,
+                                           final long character, final int k) {
+        final List<CharacterStat> top = new ArrayList<>();
+        for(SqlRow row : db.createSqlQuery("select " + table.column() + " as entry_id, builds from "
+                + table.table() + " where character_id = :character and builds > 0"
+                + " order by builds desc, " + table.column())
+                .setParameter("character", character)
+                .setMaxRows(k)
+                .findList()) {
+            top.add(new CharacterStat(row.getLong("entry_id"), row.getLong("builds")));
+        }
+        return top;
+    }
+}
@@ -0,0 +1,48 @@
+package repositories;
+
+import models.Build;
+
+import java.util.List;
+
+/**
+ * The aggregate tables counting saved builds by character and one kind of game data they pick
+ *
+ * @author Lowell Buttorff
+ */
+public enum CharacterStatsTable {
+    PERK("character_perk_stats", "perk_id", "perk1_id", "perk2_id", "perk3_id", "perk4_id"),
+    ADDON("character_addon_stats", "addon_id", "addon1_id", "addon2_id");
+
+    private final String table;
+    private final String column;
+    private final String[] contentColumns;
+
+    CharacterStatsTable(final String table, final String column, final String... contentColumns) {
+        this.table = table;
+        this.column = column;
+        this.contentColumns = contentColumns;
+    }
+
+    String table() {
+        return table;
+    }
+
+    String column() {
+        return column;
+    }
+
+    /**
+     * @return The columns of build_contents holding the slots counted in the table
+     */
+    String[] contentColumns() {
+        return contentColumns;
+    }
+
+    /**
+     * @param build A build
+     * @return The ids the build picks that are counted in the table
+     */
+    List<Long> idsOf(final Build build) {
+        return this == PERK ? build.getPerks() : build.getAddons();
+    }
+}
@@ -0,0 +1,22 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Bounded execution context that all database work on the items table runs on,
+ * configured by items.dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class ItemExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public ItemExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "items.dispatcher");
+    }
+}
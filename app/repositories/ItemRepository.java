@@ -0,0 +1,26 @@
+package repositories;
+
+import io.ebean.Finder;
+import models.Item;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory replica of the items table
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class ItemRepository extends CatalogRepository<Item> {
+
+    @Inject
+    public ItemRepository(final ItemExecutionContext executionContext) {
+        this(Item.find, executionContext);
+    }
+
+    public ItemRepository(final Finder<Long, Item> finder, final Executor executor) {
+        super(finder, executor, Item::new, "items");
+    }
+}
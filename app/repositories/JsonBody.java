@@ -0,0 +1,57 @@
+package repositories;
+
+import play.libs.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body serialized once to UTF-8 Json, kept alongside a gzipped copy
+ *
+ * @author Lowell Buttorff
+ */
+public final class JsonBody {
+
+    private final byte[] bytes;
+    private final byte[] gzipped;
+
+    private JsonBody(final byte[] bytes, final byte[] gzipped) {
+        this.bytes = bytes;
+        this.gzipped = gzipped;
+    }
+
+    /**
+     * Serializes a value with the application's Json mapper
+     *
+     * @param value The value to serialize
+     * @return JsonBody of the value
+     */
+    public static JsonBody of(final Object value) {
+        try {
+            final byte[] bytes = Json.mapper().writeValueAsBytes(value);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(bytes);
+            }
+            return new JsonBody(bytes, out.toByteArray());
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The serialized Json, callers must not modify it
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The gzipped Json, callers must not modify it
+     */
+    public byte[] gzipped() {
+        return gzipped;
+    }
+}
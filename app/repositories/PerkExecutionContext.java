@@ -0,0 +1,22 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Bounded execution context that all database work on the perks table runs on,
+ * configured by perks.dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class PerkExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public PerkExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "perks.dispatcher");
+    }
+}
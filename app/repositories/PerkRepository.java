@@ -0,0 +1,26 @@
+package repositories;
+
+import io.ebean.Finder;
+import models.Perk;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory replica of the perks table
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class PerkRepository extends CatalogRepository<Perk> {
+
+    @Inject
+    public PerkRepository(final PerkExecutionContext executionContext) {
+        this(Perk.find, executionContext);
+    }
+
+    public PerkRepository(final Finder<Long, Perk> finder, final Executor executor) {
+        super(finder, executor, Perk::new, "perks");
+    }
+}
@@ -0,0 +1,39 @@
+package repositories;
+
+import models.CharacterType;
+
+/**
+ * The number of saved builds of a CharacterType that pick a perk, item or addon
+ *
+ * @author Lowell Buttorff
+ */
+public final class UsageCount {
+
+    private final String slot;
+    private final CharacterType type;
+    private final long id;
+    private final long picks;
+
+    public UsageCount(final String slot, final CharacterType type, final long id, final long picks) {
+        this.slot = slot;
+        this.type = type;
+        this.id = id;
+        this.picks = picks;
+    }
+
+    public String getSlot() {
+        return slot;
+    }
+
+    public CharacterType getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getPicks() {
+        return picks;
+    }
+}
@@ -0,0 +1,70 @@
+package repositories;
+
+import io.ebean.EbeanServer;
+import io.ebean.Finder;
+import io.ebean.SqlUpdate;
+import io.ebean.Transaction;
+import models.Build;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Access to the usage_counts summary table, which only ever receives whole snapshots of counts kept in memory
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class UsageRepository {
+
+    // Rows sent to the database per JDBC batch of a flush
+    static final int FLUSH_BATCH_SIZE = 100;
+
+    private final Finder<Long, Build> finder;
+    private final Executor executor;
+
+    @Inject
+    public UsageRepository(final BuildExecutionContext executionContext) {
+        this(Build.find, executionContext);
+    }
+
+    public UsageRepository(final Finder<Long, Build> finder, final Executor executor) {
+        this.finder = finder;
+        this.executor = executor;
+    }
+
+    /**
+     * Writes counts over the ones already in the table, in a single transaction
+     *
+     * @param counts The current counts
+     * @return CompletionStage completed once the counts are written
+     */
+    public CompletionStage<Void> flush(final List<UsageCount> counts) {
+        return CompletableFuture.runAsync(() -> {
+            final EbeanServer db = finder.db();
+            final Timestamp now = new Timestamp(System.currentTimeMillis());
+            try(Transaction transaction = db.beginTransaction()) {
+                transaction.setBatchMode(true);
+                transaction.setBatchSize(FLUSH_BATCH_SIZE);
+                for(UsageCount count : counts) {
+                    final SqlUpdate merge = db.createSqlUpdate("merge into usage_counts"
+                            + " (slot, character_type, entry_id, picks, updated_at)"
+                            + " key (slot, character_type, entry_id)"
+                            + " values (:slot, :type, :id, :picks, :now)")
+                            .setParameter("slot", count.getSlot())
+                            .setParameter("type", count.getType().name())
+                            .setParameter("id", count.getId())
+                            .setParameter("picks", count.getPicks())
+                            .setParameter("now", now);
+                    db.execute(merge, transaction);
+                }
+                transaction.commit();
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,98 @@
+package repositories;
+
+import io.ebean.EbeanServer;
+import io.ebean.Finder;
+import io.ebean.SqlRow;
+import io.ebean.SqlUpdate;
+import io.ebean.Transaction;
+import models.Build;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Access to the build_viewers table, which only ever receives whole sketches kept in memory
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class ViewerRepository {
+
+    // Rows sent to the database per JDBC batch of a flush
+    static final int FLUSH_BATCH_SIZE = 100;
+
+    private final Finder<Long, Build> finder;
+    private final Executor executor;
+
+    @Inject
+    public ViewerRepository(final BuildExecutionContext executionContext) {
+        this(Build.find, executionContext);
+    }
+
+    public ViewerRepository(final Finder<Long, Build> finder, final Executor executor) {
+        this.finder = finder;
+        this.executor = executor;
+    }
+
+    /**
+     * @return CompletionStage of the sketch of every build with viewers
+     */
+    public CompletionStage<List<ViewerSketch>> all() {
+        return CompletableFuture.supplyAsync(() -> {
+            final List<ViewerSketch> sketches = new ArrayList<>();
+            for(SqlRow row : finder.db()
+                    .createSqlQuery("select build_id, character_id, sketch from build_viewers").findList()) {
+                sketches.add(new ViewerSketch(row.getLong("build_id"), row.getLong("character_id"),
+                        (byte[]) row.get("sketch")));
+            }
+            return sketches;
+        }, executor);
+    }
+
+    /**
+     * Writes sketches over the ones already in the table, in a single transaction.
+     * Sketches of builds that no longer exist are dropped.
+     *
+     * @param sketches The current sketches
+     * @return CompletionStage of the ids of the builds whose sketch was dropped, once the sketches are written
+     */
+    public CompletionStage<Set<Long>> flush(final List<ViewerSketch> sketches) {
+        return CompletableFuture.supplyAsync(() -> {
+            final EbeanServer db = finder.db();
+            final Timestamp now = new Timestamp(System.currentTimeMillis());
+            final Set<Long> dropped = new HashSet<>();
+            for(ViewerSketch sketch : sketches) {
+                dropped.add(sketch.getBuild());
+            }
+            try(Transaction transaction = db.beginTransaction()) {
+                for(SqlRow row : db.createSqlQuery("select id from builds where id in (:ids)")
+                        .setParameter("ids", new ArrayList<>(dropped))
+                        .findList()) {
+                    dropped.remove(row.getLong("id"));
+                }
+                transaction.setBatchMode(true);
+                transaction.setBatchSize(FLUSH_BATCH_SIZE);
+                for(ViewerSketch sketch : sketches) {
+                    final SqlUpdate merge = db.createSqlUpdate("merge into build_viewers"
+                            + " (build_id, character_id, sketch, updated_at) key (build_id)"
+                            + " select id, :character, :sketch, :now from builds where id = :id")
+                            .setParameter("character", sketch.getCharacter())
+                            .setParameter("sketch", sketch.getSketch())
+                            .setParameter("now", now)
+                            .setParameter("id", sketch.getBuild());
+                    db.execute(merge, transaction);
+                }
+                transaction.commit();
+            }
+            return dropped;
+        }, executor);
+    }
+}
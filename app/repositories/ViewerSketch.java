@@ -0,0 +1,31 @@
+package repositories;
+
+/**
+ * The packed HyperLogLog sketch of the unique viewers of a saved build
+ *
+ * @author Lowell Buttorff
+ */
+public final class ViewerSketch {
+
+    private final long build;
+    private final long character;
+    private final byte[] sketch;
+
+    public ViewerSketch(final long build, final long character, final byte[] sketch) {
+        this.build = build;
+        this.character = character;
+        this.sketch = sketch;
+    }
+
+    public long getBuild() {
+        return build;
+    }
+
+    public long getCharacter() {
+        return character;
+    }
+
+    public byte[] getSketch() {
+        return sketch;
+    }
+}
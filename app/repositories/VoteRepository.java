@@ -0,0 +1,92 @@
+package repositories;
+
+import io.ebean.EbeanServer;
+import io.ebean.Finder;
+import io.ebean.SqlRow;
+import io.ebean.SqlUpdate;
+import io.ebean.Transaction;
+import models.Build;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Access to the build_votes table, which only ever receives batches of vote deltas counted in memory
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class VoteRepository {
+
+    // Rows sent to the database per JDBC batch of a flush
+    static final int FLUSH_BATCH_SIZE = 100;
+
+    private final Finder<Long, Build> finder;
+    private final Executor executor;
+
+    @Inject
+    public VoteRepository(final BuildExecutionContext executionContext) {
+        this(Build.find, executionContext);
+    }
+
+    public VoteRepository(final Finder<Long, Build> finder, final Executor executor) {
+        this.finder = finder;
+        this.executor = executor;
+    }
+
+    /**
+     * @return CompletionStage of the vote total of every build with votes, by build id
+     */
+    public CompletionStage<Map<Long, Long>> all() {
+        return CompletableFuture.supplyAsync(() -> {
+            final Map<Long, Long> votes = new HashMap<>();
+            for(SqlRow row : finder.db().createSqlQuery("select build_id, votes from build_votes")
+                    .findList()) {
+                votes.put(row.getLong("build_id"), row.getLong("votes"));
+            }
+            return votes;
+        }, executor);
+    }
+
+    /**
+     * Adds deltas to the vote totals of builds in a single transaction.
+     * Each build's row is written once per call however many votes it received,
+     * deltas of builds that no longer exist are dropped.
+     *
+     * @param deltas The votes to add, by build id
+     * @return CompletionStage of the ids of the builds whose deltas were dropped, once the deltas are written
+     */
+    public CompletionStage<Set<Long>> apply(final Map<Long, Long> deltas) {
+        return CompletableFuture.supplyAsync(() -> {
+            final EbeanServer db = finder.db();
+            final Set<Long> dropped = new HashSet<>(deltas.keySet());
+            try(Transaction transaction = db.beginTransaction()) {
+                for(SqlRow row : db.createSqlQuery("select id from builds where id in (:ids)")
+                        .setParameter("ids", new ArrayList<>(dropped))
+                        .findList()) {
+                    dropped.remove(row.getLong("id"));
+                }
+                transaction.setBatchMode(true);
+                transaction.setBatchSize(FLUSH_BATCH_SIZE);
+                for(Map.Entry<Long, Long> delta : deltas.entrySet()) {
+                    final SqlUpdate merge = db.createSqlUpdate("merge into build_votes (build_id, votes) key (build_id)"
+                            + " select b.id, coalesce(v.votes, 0) + :delta from builds b"
+                            + " left join build_votes v on v.build_id = b.id where b.id = :id")
+                            .setParameter("delta", delta.getValue())
+                            .setParameter("id", delta.getKey());
+                    db.execute(merge, transaction);
+                }
+                transaction.commit();
+            }
+            return dropped;
+        }, executor);
+    }
+}
@@ -0,0 +1,58 @@
+package services;
+
+/**
+ * How much the rarity and potency of perks, items and addons count towards the score of a build
+ *
+ * @author Lowell Buttorff
+ */
+public final class AttributeWeights {
+
+    private double perkRarity;
+    private double perkPotency;
+    private double itemRarity;
+    private double itemPotency;
+    private double addonRarity;
+    private double addonPotency;
+
+    public AttributeWeights perks(final double rarity, final double potency) {
+        this.perkRarity = rarity;
+        this.perkPotency = potency;
+        return this;
+    }
+
+    public AttributeWeights items(final double rarity, final double potency) {
+        this.itemRarity = rarity;
+        this.itemPotency = potency;
+        return this;
+    }
+
+    public AttributeWeights addons(final double rarity, final double potency) {
+        this.addonRarity = rarity;
+        this.addonPotency = potency;
+        return this;
+    }
+
+    public double getPerkRarity() {
+        return perkRarity;
+    }
+
+    public double getPerkPotency() {
+        return perkPotency;
+    }
+
+    public double getItemRarity() {
+        return itemRarity;
+    }
+
+    public double getItemPotency() {
+        return itemPotency;
+    }
+
+    public double getAddonRarity() {
+        return addonRarity;
+    }
+
+    public double getAddonPotency() {
+        return addonPotency;
+    }
+}
@@ -0,0 +1,222 @@
+package services;
+
+import models.Addon;
+import models.CatalogEntry;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import repositories.CatalogSnapshot;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable rules for putting builds together, precomputed from snapshots of the game data tables.
+ * Every table is turned into one BitSet of ids per CharacterType, so validating a Loadout
+ * is a handful of bit lookups and never touches the database.
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildCatalog {
+
+    public static final int PERK_SLOTS = 4;
+    public static final int ADDON_SLOTS = 2;
+
+    private static final CharacterType[] TYPES = CharacterType.values();
+
+    private final CatalogSnapshot<Character> characters;
+    private final CatalogSnapshot<Perk> perks;
+    private final CatalogSnapshot<Item> items;
+    private final CatalogSnapshot<Addon> addons;
+    private final BitSet[] characterIds;
+    private final BitSet[] perkIds;
+    private final BitSet[] itemIds;
+    private final BitSet[] addonIds;
+    // Packed on first use; racing callers may pack twice, but never see a partial one
+    private volatile PackedCatalog packed;
+
+    public BuildCatalog(final CatalogSnapshot<Character> characters, final CatalogSnapshot<Perk> perks,
+                        final CatalogSnapshot<Item> items, final CatalogSnapshot<Addon> addons) {
+        this.characters = characters;
+        this.perks = perks;
+        this.items = items;
+        this.addons = addons;
+        this.characterIds = idsByType(characters);
+        this.perkIds = idsByType(perks);
+        this.itemIds = idsByType(items);
+        this.addonIds = idsByType(addons);
+    }
+
+    /**
+     * Checks a loadout against the rules of the game:
+     * the character exists, perks and addons match its CharacterType, only survivors carry an item,
+     * survivors only take addons with an item, no slot holds a duplicate and no slot limit is exceeded
+     *
+     * @param loadout The loadout to check
+     * @return BuildVerdict listing every rule the loadout breaks
+     */
+    public BuildVerdict validate(final Loadout loadout) {
+        final CharacterType type = typeOf(characterIds, loadout.getCharacter());
+        if(type == null) {
+            return new BuildVerdict(single("There is no character with id, " + loadout.getCharacter()));
+        }
+        List<String> errors = null;
+        if(loadout.perkCount() > PERK_SLOTS) {
+            errors = add(errors, "A build has at most " + PERK_SLOTS + " perks");
+        }
+        for(int slot = 0; slot < loadout.perkCount(); slot++) {
+            final long perk = loadout.perk(slot);
+            errors = check(errors, "perk", perk, type, perkIds);
+            for(int earlier = 0; earlier < slot; earlier++) {
+                if(loadout.perk(earlier) == perk) {
+                    errors = add(errors, "Perk " + perk + " is in the build more than once");
+                    break;
+                }
+            }
+        }
+        if(loadout.hasItem()) {
+            if(type != CharacterType.SURVIVOR) {
+                errors = add(errors, "Only survivors carry an item");
+            } else {
+                errors = check(errors, "item", loadout.getItem(), type, itemIds);
+            }
+        }
+        if(loadout.addonCount() > ADDON_SLOTS) {
+            errors = add(errors, "A build has at most " + ADDON_SLOTS + " addons");
+        }
+        if(loadout.addonCount() > 0 && type == CharacterType.SURVIVOR && !loadout.hasItem()) {
+            errors = add(errors, "Survivor addons need an item");
+        }
+        for(int slot = 0; slot < loadout.addonCount(); slot++) {
+            final long addon = loadout.addon(slot);
+            errors = check(errors, "addon", addon, type, addonIds);
+            for(int earlier = 0; earlier < slot; earlier++) {
+                if(loadout.addon(earlier) == addon) {
+                    errors = add(errors, "Addon " + addon + " is in the build more than once");
+                    break;
+                }
+            }
+        }
+        return errors == null ? BuildVerdict.VALID : new BuildVerdict(errors);
+    }
+
+    /**
+     * @param id The unique ID of a character
+     * @return The CharacterType of the character, null if there is no such character
+     */
+    public CharacterType characterType(final long id) {
+        return typeOf(characterIds, id);
+    }
+
+    /**
+     * @param character The unique ID of a character
+     * @return BuildSpace of every valid build of the character, null if there is no such character
+     * @throws ArithmeticException if the character has more than Long.MAX_VALUE builds
+     */
+    public BuildSpace space(final long character) {
+        final CharacterType type = characterType(character);
+        if(type == null) {
+            return null;
+        }
+        final boolean survivor = type == CharacterType.SURVIVOR;
+        return new BuildSpace(character, ids(perks.ofType(type)),
+                survivor ? ids(items.ofType(type)) : new long[0], ids(addons.ofType(type)), survivor);
+    }
+
+    /**
+     * @return The numeric attributes of the perks, items and addons packed into primitive columns
+     */
+    public PackedCatalog packed() {
+        PackedCatalog current = packed;
+        if(current == null) {
+            current = new PackedCatalog(perks, items, addons);
+            packed = current;
+        }
+        return current;
+    }
+
+    public CatalogSnapshot<Character> getCharacters() {
+        return characters;
+    }
+
+    public CatalogSnapshot<Perk> getPerks() {
+        return perks;
+    }
+
+    public CatalogSnapshot<Item> getItems() {
+        return items;
+    }
+
+    public CatalogSnapshot<Addon> getAddons() {
+        return addons;
+    }
+
+    /**
+     * @return true if the catalog was built from exactly these snapshots
+     */
+    boolean isOf(final CatalogSnapshot<Character> characters, final CatalogSnapshot<Perk> perks,
+                 final CatalogSnapshot<Item> items, final CatalogSnapshot<Addon> addons) {
+        return this.characters == characters && this.perks == perks && this.items == items && this.addons == addons;
+    }
+
+    private static List<String> check(List<String> errors, final String noun, final long id,
+                                      final CharacterType type, final BitSet[] ids) {
+        final CharacterType actual = typeOf(ids, id);
+        if(actual == null) {
+            return add(errors, "There is no " + noun + " with id, " + id);
+        }
+        if(actual != type) {
+            return add(errors, "The " + noun + " " + id + " is not a " + type.name().toLowerCase() + " " + noun);
+        }
+        return errors;
+    }
+
+    private static CharacterType typeOf(final BitSet[] ids, final long id) {
+        if(id <= 0 || id > Integer.MAX_VALUE) {
+            return null;
+        }
+        for(CharacterType type : TYPES) {
+            if(ids[type.ordinal()].get((int) id)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static BitSet[] idsByType(final CatalogSnapshot<? extends CatalogEntry> snapshot) {
+        final BitSet[] ids = new BitSet[TYPES.length];
+        for(CharacterType type : TYPES) {
+            final BitSet bits = new BitSet();
+            for(CatalogEntry entry : snapshot.ofType(type)) {
+                // Ids beyond int range cannot be indexed, such rows are treated as missing
+                if(entry.getId() > 0 && entry.getId() <= Integer.MAX_VALUE) {
+                    bits.set((int) entry.getId());
+                }
+            }
+            ids[type.ordinal()] = bits;
+        }
+        return ids;
+    }
+
+    private static long[] ids(final List<? extends CatalogEntry> entries) {
+        final long[] ids = new long[entries.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = entries.get(i).getId();
+        }
+        return ids;
+    }
+
+    private static List<String> add(List<String> errors, final String error) {
+        if(errors == null) {
+            errors = new ArrayList<>(2);
+        }
+        errors.add(error);
+        return errors;
+    }
+
+    private static List<String> single(final String error) {
+        return add(null, error);
+    }
+}
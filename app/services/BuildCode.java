@@ -0,0 +1,204 @@
+package services;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Compact, url safe codes for sharing a Loadout.
+ * A code is the base64url text, without padding, of
+ * a version byte, a header byte with the number of perks, the number of addons and whether there is an item,
+ * the ids of the character, perks, item and addons as unsigned LEB128 varints,
+ * and a Fletcher-16 checksum of everything before it.
+ * Decoding reads the text in place and allocates nothing but the Loadout.
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildCode {
+
+    public static final int VERSION = 1;
+
+    private static final int PERK_BITS = 0x07;
+    private static final int ADDON_SHIFT = 3;
+    private static final int ADDON_BITS = 0x03;
+    private static final int ITEM_FLAG = 0x20;
+    private static final int MAX_VARINT_BYTES = 10;
+    // Version, header, eight ids and the checksum
+    private static final int MAX_BYTES =
+            2 + (1 + BuildCatalog.PERK_SLOTS + 1 + BuildCatalog.ADDON_SLOTS) * MAX_VARINT_BYTES + 2;
+    private static final int MAX_LENGTH = (MAX_BYTES * 8 + 5) / 6;
+
+    private static final byte[] SEXTETS = new byte[128];
+
+    static {
+        Arrays.fill(SEXTETS, (byte) -1);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for(int i = 0; i < alphabet.length(); i++) {
+            SEXTETS[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private BuildCode() {
+    }
+
+    /**
+     * @param loadout A loadout with at most PERK_SLOTS perks and ADDON_SLOTS addons
+     * @return The code of the loadout
+     * @throws IllegalArgumentException if the loadout has too many perks or addons, or an id below 1
+     */
+    public static String encode(final Loadout loadout) {
+        if(loadout.perkCount() > BuildCatalog.PERK_SLOTS || loadout.addonCount() > BuildCatalog.ADDON_SLOTS) {
+            throw new IllegalArgumentException("The build has too many perks or addons for a code");
+        }
+        final byte[] bytes = new byte[MAX_BYTES];
+        int length = 0;
+        bytes[length++] = VERSION;
+        bytes[length++] = (byte) (loadout.perkCount() | loadout.addonCount() << ADDON_SHIFT
+                | (loadout.hasItem() ? ITEM_FLAG : 0));
+        length = putVarint(bytes, length, loadout.getCharacter());
+        for(int slot = 0; slot < loadout.perkCount(); slot++) {
+            length = putVarint(bytes, length, loadout.perk(slot));
+        }
+        if(loadout.hasItem()) {
+            length = putVarint(bytes, length, loadout.getItem());
+        }
+        for(int slot = 0; slot < loadout.addonCount(); slot++) {
+            length = putVarint(bytes, length, loadout.addon(slot));
+        }
+        final int checksum = fletcher(bytes, length);
+        bytes[length++] = (byte) (checksum >>> 8);
+        bytes[length++] = (byte) checksum;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * @param code A code made by encode
+     * @return Loadout of the code
+     * @throws IllegalArgumentException if the code is malformed, of another version or fails its checksum
+     */
+    public static Loadout decode(final String code) {
+        if(code == null || code.length() > MAX_LENGTH || code.length() % 4 == 1) {
+            throw invalid();
+        }
+        final int length = code.length() * 6 / 8;
+        // Version, header, character and checksum at the least
+        if(length < 5) {
+            throw invalid();
+        }
+        // Bits past the last byte have to be zero, so every loadout has exactly one code
+        final int padding = code.length() * 6 % 8;
+        if(padding != 0 && (sextet(code, code.length() - 1) & (1 << padding) - 1) != 0) {
+            throw invalid();
+        }
+        int sum1 = 0;
+        int sum2 = 0;
+        for(int i = 0; i < length - 2; i++) {
+            sum1 = (sum1 + byteAt(code, i)) % 255;
+            sum2 = (sum2 + sum1) % 255;
+        }
+        if((sum2 << 8 | sum1) != (byteAt(code, length - 2) << 8 | byteAt(code, length - 1))) {
+            throw invalid();
+        }
+        if(byteAt(code, 0) != VERSION) {
+            throw invalid();
+        }
+        final int header = byteAt(code, 1);
+        final int perkCount = header & PERK_BITS;
+        final int addonCount = header >>> ADDON_SHIFT & ADDON_BITS;
+        if(perkCount > BuildCatalog.PERK_SLOTS || addonCount > BuildCatalog.ADDON_SLOTS
+                || (header & ~(PERK_BITS | ADDON_BITS << ADDON_SHIFT | ITEM_FLAG)) != 0) {
+            throw invalid();
+        }
+        final int end = length - 2;
+        int position = 2;
+        final long character = varint(code, position, end);
+        position += varintLength(code, position);
+        final long[] perks = new long[perkCount];
+        for(int slot = 0; slot < perkCount; slot++) {
+            perks[slot] = varint(code, position, end);
+            position += varintLength(code, position);
+        }
+        long item = Loadout.NO_ITEM;
+        if((header & ITEM_FLAG) != 0) {
+            item = varint(code, position, end);
+            position += varintLength(code, position);
+        }
+        final long[] addons = new long[addonCount];
+        for(int slot = 0; slot < addonCount; slot++) {
+            addons[slot] = varint(code, position, end);
+            position += varintLength(code, position);
+        }
+        if(position != end) {
+            throw invalid();
+        }
+        return Loadout.wrap(character, perks, item, addons);
+    }
+
+    private static int putVarint(final byte[] bytes, int position, long value) {
+        if(value < 1) {
+            throw new IllegalArgumentException("Ids in a code must be at least 1");
+        }
+        while((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Reads the varint starting at a byte, which has to end before the end and be a positive id in its shortest form
+     */
+    private static long varint(final String code, final int position, final int end) {
+        long value = 0;
+        for(int i = 0; i < MAX_VARINT_BYTES && position + i < end; i++) {
+            final int next = byteAt(code, position + i);
+            value |= (long) (next & 0x7F) << 7 * i;
+            if((next & 0x80) == 0) {
+                // A trailing zero byte is a longer encoding of a shorter value, the tenth byte only holds the sign bit
+                if((next == 0 && i > 0) || (i == MAX_VARINT_BYTES - 1 && next > 1) || value < 1) {
+                    throw invalid();
+                }
+                return value;
+            }
+        }
+        throw invalid();
+    }
+
+    private static int varintLength(final String code, final int position) {
+        int length = 1;
+        while((byteAt(code, position + length - 1) & 0x80) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int byteAt(final String code, final int index) {
+        final int bit = index * 8;
+        final int first = bit / 6;
+        final int twelve = sextet(code, first) << 6 | sextet(code, first + 1);
+        return twelve >>> 4 - bit % 6 & 0xFF;
+    }
+
+    private static int sextet(final String code, final int index) {
+        final char c = code.charAt(index);
+        final int value = c < SEXTETS.length ? SEXTETS[c] : -1;
+        if(value < 0) {
+            throw invalid();
+        }
+        return value;
+    }
+
+    private static int fletcher(final byte[] bytes, final int length) {
+        int sum1 = 0;
+        int sum2 = 0;
+        for(int i = 0; i < length; i++) {
+            sum1 = (sum1 + (bytes[i] & 0xFF)) % 255;
+            sum2 = (sum2 + sum1) % 255;
+        }
+        return sum2 << 8 | sum1;
+    }
+
+    private static IllegalArgumentException invalid() {
+        return new IllegalArgumentException("The build code is invalid");
+    }
+}
@@ -0,0 +1,230 @@
+package services;
+
+import models.Build;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import repositories.BuildListener;
+import repositories.BuildRepository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from every character, perk, item and addon id to the compressed bitmap of the saved builds using it,
+ * so a BuildQuery is answered with bitmap AND, OR and ANDNOT instead of joins over the builds table.
+ * The index is loaded from the builds table on first use and kept current as builds are written.
+ * The bitmaps hold 64 bit ids, so any id the builds table hands out can be indexed.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class BuildIndex implements BuildListener {
+
+    private static final Comparator<Roaring64NavigableMap> SMALLEST =
+            Comparator.comparingLong(Roaring64NavigableMap::getLongCardinality);
+
+    private final BuildRepository buildRepository;
+    private final Map<BuildQuery.Slot, Map<Long, Roaring64NavigableMap>> postings =
+            new EnumMap<>(BuildQuery.Slot.class);
+    private final Roaring64NavigableMap all = posting();
+    // Writes change bitmaps in place, queries read many of them at once
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Inject
+    public BuildIndex(final BuildRepository buildRepository) {
+        this.buildRepository = buildRepository;
+        for(BuildQuery.Slot slot : BuildQuery.Slot.values()) {
+            postings.put(slot, new HashMap<>());
+        }
+    }
+
+    /**
+     * Subscribes the index to the builds table the first time it is called
+     *
+     * @return CompletionStage completed once the index holds every saved build
+     */
+    public CompletionStage<Void> ready() {
+        return buildRepository.subscribe(this);
+    }
+
+    /**
+     * @param query The query to answer
+     * @return CompletionStage of the ids of the saved builds matching the query
+     */
+    public CompletionStage<BuildMatches> search(final BuildQuery query) {
+        return ready().thenApply(done -> {
+            lock.readLock().lock();
+            try {
+                return new BuildMatches(evaluate(query));
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * @param id The unique ID of a Build
+     * @return CompletionStage of whether a build with the id is saved
+     */
+    public CompletionStage<Boolean> contains(final long id) {
+        return ready().thenApply(done -> {
+            lock.readLock().lock();
+            try {
+                return all.contains(id);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Finds the character of a saved build by checking the bitmap of each character, without reading the build
+     *
+     * @param id The unique ID of a Build
+     * @return CompletionStage of the unique ID of the build's Character, empty if no build with the id is saved
+     */
+    public CompletionStage<Optional<Long>> characterOf(final long id) {
+        return ready().thenApply(done -> {
+            lock.readLock().lock();
+            try {
+                for(Map.Entry<Long, Roaring64NavigableMap> character
+                        : postings.get(BuildQuery.Slot.CHARACTER).entrySet()) {
+                    if(character.getValue().contains(id)) {
+                        return Optional.of(character.getKey());
+                    }
+                }
+                return Optional.empty();
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public void changed(final Build previous, final Build current) {
+        lock.writeLock().lock();
+        try {
+            if(previous != null) {
+                final long id = previous.getId();
+                all.removeLong(id);
+                for(BuildQuery.Slot slot : BuildQuery.Slot.values()) {
+                    for(Long key : keysOf(previous, slot)) {
+                        final Roaring64NavigableMap builds = postings.get(slot).get(key);
+                        if(builds != null) {
+                            builds.removeLong(id);
+                            if(builds.isEmpty()) {
+                                postings.get(slot).remove(key);
+                            }
+                        }
+                    }
+                }
+            }
+            if(current != null) {
+                final long id = current.getId();
+                all.addLong(id);
+                for(BuildQuery.Slot slot : BuildQuery.Slot.values()) {
+                    for(Long key : keysOf(current, slot)) {
+                        postings.get(slot).computeIfAbsent(key, missing -> posting()).addLong(id);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Roaring64NavigableMap evaluate(final BuildQuery query) {
+        final List<Roaring64NavigableMap> required = new ArrayList<>();
+        for(BuildQuery.Slot slot : BuildQuery.Slot.values()) {
+            for(Long key : query.getRequired(slot)) {
+                final Roaring64NavigableMap builds = postings.get(slot).get(key);
+                if(builds == null) {
+                    return new Roaring64NavigableMap();
+                }
+                required.add(builds);
+            }
+        }
+        Roaring64NavigableMap matches;
+        if(required.isEmpty()) {
+            matches = copy(all);
+        } else {
+            // Smallest first, so the intermediate results shrink as fast as possible
+            required.sort(SMALLEST);
+            matches = copy(required.get(0));
+            for(int i = 1; i < required.size() && !matches.isEmpty(); i++) {
+                matches.and(required.get(i));
+            }
+        }
+        for(BuildQuery.Slot slot : query.anySlots()) {
+            if(matches.isEmpty()) {
+                return matches;
+            }
+            matches.and(union(slot, query.getAny(slot)));
+        }
+        for(BuildQuery.Slot slot : BuildQuery.Slot.values()) {
+            for(Long key : query.getForbidden(slot)) {
+                final Roaring64NavigableMap builds = postings.get(slot).get(key);
+                if(builds != null) {
+                    matches.andNot(builds);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private Roaring64NavigableMap union(final BuildQuery.Slot slot, final Set<Long> keys) {
+        final Roaring64NavigableMap builds = new Roaring64NavigableMap();
+        for(Long key : keys) {
+            final Roaring64NavigableMap posting = postings.get(slot).get(key);
+            if(posting != null) {
+                builds.or(posting);
+            }
+        }
+        return builds;
+    }
+
+    /**
+     * A bitmap of the index, without a cache of cardinalities so queries sharing the read lock only ever read it
+     */
+    private static Roaring64NavigableMap posting() {
+        return new Roaring64NavigableMap(false, false);
+    }
+
+    /**
+     * @return A copy of a bitmap of the index, which a query may change
+     */
+    private static Roaring64NavigableMap copy(final Roaring64NavigableMap posting) {
+        final Roaring64NavigableMap copy = new Roaring64NavigableMap();
+        copy.or(posting);
+        return copy;
+    }
+
+    private static List<Long> keysOf(final Build build, final BuildQuery.Slot slot) {
+        switch(slot) {
+            case CHARACTER:
+                final List<Long> character = new ArrayList<>(1);
+                character.add(build.getCharacter());
+                return character;
+            case PERK:
+                return build.getPerks();
+            case ITEM:
+                final List<Long> item = new ArrayList<>(1);
+                if(build.getItem() != null) {
+                    item.add(build.getItem());
+                }
+                return item;
+            default:
+                return build.getAddons();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package services;
+
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ids of the builds matching a BuildQuery, as they were when the query ran
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildMatches {
+
+    private final Roaring64NavigableMap ids;
+
+    BuildMatches(final Roaring64NavigableMap ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * @return Number of matching builds
+     */
+    public long count() {
+        return ids.getLongCardinality();
+    }
+
+    /**
+     * Keyset page of the matching ids
+     *
+     * @param after Only ids greater than this are returned
+     * @param limit The largest number of ids to return
+     * @return At most limit ids in increasing order
+     */
+    public List<Long> after(final long after, final int limit) {
+        final long count = ids.getLongCardinality();
+        // Ids are positive, the rank of after is the position of the first id greater than it
+        long next = after < 1 ? 0 : ids.rankLong(after);
+        final List<Long> page = new ArrayList<>((int) Math.min(limit, count - next));
+        for(; page.size() < limit && next < count; next++) {
+            page.add(ids.select(next));
+        }
+        return page;
+    }
+
+    /**
+     * @param after An id
+     * @return true if there is a matching id greater than it
+     */
+    public boolean hasAfter(final long after) {
+        return !ids.isEmpty() && ids.getReverseLongIterator().next() > after;
+    }
+}
@@ -0,0 +1,425 @@
+package services;
+
+import models.CatalogEntry;
+import models.CharacterType;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the best scoring builds of a character with a parallel branch-and-bound search.
+ * Builds fill every slot the game data allows, like a BuildSpace, but whole branches are skipped
+ * once an optimistic bound on their score cannot beat the k-th best build found so far.
+ * The search stops at its time budget and returns the best builds found until then.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class BuildOptimizer {
+
+    // Nodes expanded between checks of the deadline
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    private final BuildValidator buildValidator;
+    private final Executor executor;
+
+    @Inject
+    public BuildOptimizer(final BuildValidator buildValidator, final ValidationExecutionContext executionContext) {
+        this(buildValidator, (Executor) executionContext);
+    }
+
+    public BuildOptimizer(final BuildValidator buildValidator, final Executor executor) {
+        this.buildValidator = buildValidator;
+        this.executor = executor;
+    }
+
+    /**
+     * @param query What to search for
+     * @return CompletionStage of the best builds found
+     */
+    public CompletionStage<OptimizerResult> optimize(final OptimizerQuery query) {
+        return buildValidator.catalog().thenCompose(catalog -> optimize(catalog, query, executor));
+    }
+
+    /**
+     * Searches the builds of a character in a catalog, splitting the search by first perk over the executor
+     *
+     * @param catalog The game data to build from
+     * @param query What to search for
+     * @param executor Where to run the branches of the search
+     * @return CompletionStage of the best builds found
+     */
+    public static CompletionStage<OptimizerResult> optimize(final BuildCatalog catalog, final OptimizerQuery query,
+                                                            final Executor executor) {
+        final long start = System.nanoTime();
+        final BuildVerdict verdict = check(catalog, query);
+        if(!verdict.isValid()) {
+            return CompletableFuture.completedFuture(OptimizerResult.rejected(verdict));
+        }
+        final Search search = new Search(catalog, query, start + query.getBudgetMillis() * 1_000_000L);
+        final List<CompletableFuture<Void>> branches = new ArrayList<>();
+        for(int first : search.firstPerks()) {
+            branches.add(CompletableFuture.runAsync(() -> search.branch(first), executor));
+        }
+        return CompletableFuture.allOf(branches.toArray(new CompletableFuture[0]))
+                .thenApply(done -> search.result(start));
+    }
+
+    private static BuildVerdict check(final BuildCatalog catalog, final OptimizerQuery query) {
+        final CharacterType type = catalog.characterType(query.getCharacter());
+        if(type == null) {
+            return BuildVerdict.rejected("There is no character with id, " + query.getCharacter());
+        }
+        for(long perk : query.getRequiredPerks()) {
+            if(query.getForbiddenPerks().contains(perk)) {
+                return BuildVerdict.rejected("Perk " + perk + " is both required and forbidden");
+            }
+        }
+        for(long addon : query.getRequiredAddons()) {
+            if(query.getForbiddenAddons().contains(addon)) {
+                return BuildVerdict.rejected("Addon " + addon + " is both required and forbidden");
+            }
+        }
+        final List<? extends CatalogEntry> items = type == CharacterType.SURVIVOR
+                ? catalog.getItems().ofType(type) : new ArrayList<CatalogEntry>();
+        if(!query.getRequiredAddons().isEmpty() && type == CharacterType.SURVIVOR && items.isEmpty()) {
+            return BuildVerdict.rejected("Survivor addons need an item");
+        }
+        // Any item will do to check the required addons, the search picks the real one
+        return catalog.validate(new Loadout(query.getCharacter(), toArray(query.getRequiredPerks()),
+                items.isEmpty() ? Loadout.NO_ITEM : items.get(0).getId(), toArray(query.getRequiredAddons())));
+    }
+
+    private static long[] toArray(final Set<Long> ids) {
+        final long[] array = new long[ids.size()];
+        int i = 0;
+        for(long id : ids) {
+            array[i++] = id;
+        }
+        return array;
+    }
+
+    /**
+     * State of one search, shared by its branches.
+     * Perks are chosen first in order of optimistic value, then the item, then addons in order of weight,
+     * and each choice only looks at candidates after the last one, so every build is reached once.
+     */
+    private static final class Search {
+
+        private final long character;
+        private final long[] requiredPerks;
+        private final long[] requiredAddons;
+        private final double baseScore;
+        // Candidates ordered by optimistic value, best first
+        private final long[] perks;
+        private final double[] perkGains;
+        private final double[] perkBounds;
+        private final Map<Long, Double> perkPairs;
+        private final int perkSlots;
+        private final long[] items;
+        private final double[] itemWeights;
+        private final long[] addons;
+        private final double[] addonWeights;
+        private final int addonSlots;
+        // Best score the item and addons can add to any choice of perks
+        private final double tailBound;
+        private final int k;
+        private final long deadline;
+        private final PriorityQueue<ScoredBuild> best = new PriorityQueue<>(Comparator.comparingDouble(ScoredBuild::getScore));
+        private volatile double threshold = Double.NEGATIVE_INFINITY;
+        private volatile boolean timedOut;
+        private final LongAdder expanded = new LongAdder();
+        private final LongAdder pruned = new LongAdder();
+        private final ThreadLocal<int[]> sinceDeadlineCheck = ThreadLocal.withInitial(() -> new int[1]);
+
+        Search(final BuildCatalog catalog, final OptimizerQuery query, final long deadline) {
+            final ScoringProfile profile = query.getProfile();
+            final CharacterType type = catalog.characterType(query.getCharacter());
+            this.character = query.getCharacter();
+            this.requiredPerks = toArray(query.getRequiredPerks());
+            this.requiredAddons = toArray(query.getRequiredAddons());
+            this.k = query.getK();
+            this.deadline = deadline;
+
+            double base = 0;
+            for(int i = 0; i < requiredPerks.length; i++) {
+                base += profile.perkWeight(requiredPerks[i]);
+                for(int j = i + 1; j < requiredPerks.length; j++) {
+                    base += profile.synergy(requiredPerks[i], requiredPerks[j]);
+                }
+            }
+            for(long addon : requiredAddons) {
+                base += profile.addonWeight(addon);
+            }
+            this.baseScore = base;
+
+            final long[] perkPool = pool(catalog.getPerks().ofType(type), query.getRequiredPerks(),
+                    query.getForbiddenPerks());
+            final double[] gains = new double[perkPool.length];
+            final double[] bounds = new double[perkPool.length];
+            for(int i = 0; i < perkPool.length; i++) {
+                gains[i] = profile.perkWeight(perkPool[i]);
+                for(long required : requiredPerks) {
+                    gains[i] += profile.synergy(perkPool[i], required);
+                }
+                bounds[i] = gains[i];
+                if(profile.hasSynergies()) {
+                    for(long other : perkPool) {
+                        bounds[i] += Math.max(0, profile.synergy(perkPool[i], other));
+                    }
+                }
+            }
+            final Integer[] perkOrder = order(bounds);
+            this.perks = new long[perkPool.length];
+            this.perkGains = new double[perkPool.length];
+            this.perkBounds = new double[perkPool.length];
+            for(int i = 0; i < perkOrder.length; i++) {
+                perks[i] = perkPool[perkOrder[i]];
+                perkGains[i] = gains[perkOrder[i]];
+                perkBounds[i] = bounds[perkOrder[i]];
+            }
+            this.perkSlots = Math.min(BuildCatalog.PERK_SLOTS - requiredPerks.length, perks.length);
+            this.perkPairs = new HashMap<>();
+            if(profile.hasSynergies()) {
+                for(int i = 0; i < perks.length; i++) {
+                    for(int j = i + 1; j < perks.length; j++) {
+                        final double bonus = profile.synergy(perks[i], perks[j]);
+                        if(bonus != 0) {
+                            perkPairs.put(pair(i, j), bonus);
+                        }
+                    }
+                }
+            }
+
+            final boolean survivor = type == CharacterType.SURVIVOR;
+            final long[] itemPool = survivor ? pool(catalog.getItems().ofType(type), null, null) : new long[0];
+            final double[] itemValues = new double[itemPool.length];
+            for(int i = 0; i < itemPool.length; i++) {
+                itemValues[i] = profile.itemWeight(itemPool[i]);
+            }
+            final Integer[] itemOrder = order(itemValues);
+            this.items = new long[itemPool.length];
+            this.itemWeights = new double[itemPool.length];
+            for(int i = 0; i < itemOrder.length; i++) {
+                items[i] = itemPool[itemOrder[i]];
+                itemWeights[i] = itemValues[itemOrder[i]];
+            }
+
+            final boolean withAddons = !survivor || items.length > 0;
+            final long[] addonPool = withAddons ? pool(catalog.getAddons().ofType(type), query.getRequiredAddons(),
+                    query.getForbiddenAddons()) : new long[0];
+            final double[] addonValues = new double[addonPool.length];
+            for(int i = 0; i < addonPool.length; i++) {
+                addonValues[i] = profile.addonWeight(addonPool[i]);
+            }
+            final Integer[] addonOrder = order(addonValues);
+            this.addons = new long[addonPool.length];
+            this.addonWeights = new double[addonPool.length];
+            for(int i = 0; i < addonOrder.length; i++) {
+                addons[i] = addonPool[addonOrder[i]];
+                addonWeights[i] = addonValues[addonOrder[i]];
+            }
+            this.addonSlots = Math.min(BuildCatalog.ADDON_SLOTS - requiredAddons.length, addons.length);
+            this.tailBound = (items.length > 0 ? itemWeights[0] : 0) + bestOf(addonWeights, 0, addonSlots);
+        }
+
+        /**
+         * @return The candidate index of the first perk of each branch, a single branch if no perk is chosen
+         */
+        int[] firstPerks() {
+            if(perkSlots == 0) {
+                return new int[]{-1};
+            }
+            final int[] first = new int[perks.length - perkSlots + 1];
+            for(int i = 0; i < first.length; i++) {
+                first[i] = i;
+            }
+            return first;
+        }
+
+        /**
+         * Searches every build whose best ordered perk is the given candidate
+         */
+        void branch(final int first) {
+            final int[] chosenPerks = new int[perkSlots];
+            final int[] chosenAddons = new int[addonSlots];
+            if(first < 0) {
+                items(baseScore, chosenPerks, chosenAddons);
+                return;
+            }
+            chosenPerks[0] = first;
+            perks(first + 1, 1, baseScore + perkGains[first], chosenPerks, chosenAddons);
+        }
+
+        private void perks(final int next, final int depth, final double score, final int[] chosenPerks,
+                           final int[] chosenAddons) {
+            if(!expand()) {
+                return;
+            }
+            final int free = perkSlots - depth;
+            if(free == 0) {
+                items(score, chosenPerks, chosenAddons);
+                return;
+            }
+            if(prune(score + bestOf(perkBounds, next, free) + tailBound)) {
+                return;
+            }
+            for(int candidate = next; candidate <= perks.length - free && !timedOut; candidate++) {
+                double gain = perkGains[candidate];
+                if(!perkPairs.isEmpty()) {
+                    for(int i = 0; i < depth; i++) {
+                        gain += perkPairs.getOrDefault(pair(chosenPerks[i], candidate), 0.0);
+                    }
+                }
+                chosenPerks[depth] = candidate;
+                perks(candidate + 1, depth + 1, score + gain, chosenPerks, chosenAddons);
+            }
+        }
+
+        private void items(final double score, final int[] chosenPerks, final int[] chosenAddons) {
+            if(items.length == 0) {
+                addons(0, 0, score, chosenPerks, -1, chosenAddons);
+                return;
+            }
+            for(int item = 0; item < items.length && !timedOut; item++) {
+                if(prune(score + itemWeights[item] + bestOf(addonWeights, 0, addonSlots))) {
+                    // Items are ordered by weight, none of the rest can do better
+                    return;
+                }
+                addons(0, 0, score + itemWeights[item], chosenPerks, item, chosenAddons);
+            }
+        }
+
+        private void addons(final int next, final int depth, final double score, final int[] chosenPerks,
+                            final int item, final int[] chosenAddons) {
+            if(!expand()) {
+                return;
+            }
+            final int free = addonSlots - depth;
+            if(free == 0) {
+                offer(score, chosenPerks, item, chosenAddons);
+                return;
+            }
+            if(prune(score + bestOf(addonWeights, next, free))) {
+                return;
+            }
+            for(int candidate = next; candidate <= addons.length - free && !timedOut; candidate++) {
+                chosenAddons[depth] = candidate;
+                addons(candidate + 1, depth + 1, score + addonWeights[candidate], chosenPerks, item, chosenAddons);
+            }
+        }
+
+        private boolean expand() {
+            expanded.increment();
+            if(timedOut) {
+                return false;
+            }
+            final int[] ticks = sinceDeadlineCheck.get();
+            if(++ticks[0] < DEADLINE_CHECK_INTERVAL) {
+                return true;
+            }
+            ticks[0] = 0;
+            if(System.nanoTime() > deadline) {
+                timedOut = true;
+                return false;
+            }
+            return true;
+        }
+
+        private boolean prune(final double bound) {
+            if(bound <= threshold) {
+                pruned.increment();
+                return true;
+            }
+            return false;
+        }
+
+        private void offer(final double score, final int[] chosenPerks, final int item, final int[] chosenAddons) {
+            if(score <= threshold) {
+                return;
+            }
+            final long[] perkIds = Arrays.copyOf(requiredPerks, requiredPerks.length + chosenPerks.length);
+            for(int i = 0; i < chosenPerks.length; i++) {
+                perkIds[requiredPerks.length + i] = perks[chosenPerks[i]];
+            }
+            final long[] addonIds = Arrays.copyOf(requiredAddons, requiredAddons.length + chosenAddons.length);
+            for(int i = 0; i < chosenAddons.length; i++) {
+                addonIds[requiredAddons.length + i] = addons[chosenAddons[i]];
+            }
+            final Loadout loadout = new Loadout(character, perkIds, item < 0 ? Loadout.NO_ITEM : items[item], addonIds);
+            synchronized(best) {
+                if(best.size() < k) {
+                    best.add(new ScoredBuild(loadout, score));
+                } else if(score > best.peek().getScore()) {
+                    best.poll();
+                    best.add(new ScoredBuild(loadout, score));
+                }
+                if(best.size() == k) {
+                    threshold = best.peek().getScore();
+                }
+            }
+        }
+
+        OptimizerResult result(final long start) {
+            final List<ScoredBuild> builds;
+            synchronized(best) {
+                builds = new ArrayList<>(best);
+            }
+            builds.sort(Comparator.comparingDouble(ScoredBuild::getScore).reversed());
+            return new OptimizerResult(builds, !timedOut, expanded.sum(), pruned.sum(),
+                    (System.nanoTime() - start) / 1_000_000L);
+        }
+
+        private long pair(final int first, final int second) {
+            return first < second ? (long) first * perks.length + second : (long) second * perks.length + first;
+        }
+
+        /**
+         * @return Sum of the count values from index start of an array ordered best first
+         */
+        private static double bestOf(final double[] values, final int start, final int count) {
+            double sum = 0;
+            for(int i = start; i < start + count && i < values.length; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }
+
+        private static long[] pool(final List<? extends CatalogEntry> entries, final Set<Long> required,
+                                   final Set<Long> forbidden) {
+            final List<Long> ids = new ArrayList<>(entries.size());
+            for(CatalogEntry entry : entries) {
+                if((required == null || !required.contains(entry.getId()))
+                        && (forbidden == null || !forbidden.contains(entry.getId()))) {
+                    ids.add(entry.getId());
+                }
+            }
+            final long[] pool = new long[ids.size()];
+            for(int i = 0; i < pool.length; i++) {
+                pool[i] = ids.get(i);
+            }
+            return pool;
+        }
+
+        private static Integer[] order(final double[] values) {
+            final Integer[] order = new Integer[values.length];
+            for(int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (first, second) -> Double.compare(values[second], values[first]));
+            return order;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What to search the saved builds for: the game data every result must have,
+ * the groups of game data a result must have at least one of, and the game data no result may have
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildQuery {
+
+    /**
+     * The kinds of game data a build is made of
+     */
+    public enum Slot {
+        CHARACTER, PERK, ITEM, ADDON
+    }
+
+    private final Map<Slot, Set<Long>> required = new EnumMap<>(Slot.class);
+    private final Map<Slot, Set<Long>> any = new EnumMap<>(Slot.class);
+    private final Map<Slot, Set<Long>> forbidden = new EnumMap<>(Slot.class);
+
+    public BuildQuery() {
+        for(Slot slot : Slot.values()) {
+            required.put(slot, new LinkedHashSet<>());
+            any.put(slot, new LinkedHashSet<>());
+            forbidden.put(slot, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * @param slot The kind of game data
+     * @param ids Every result has all of them
+     * @return This query
+     */
+    public BuildQuery require(final Slot slot, final Collection<Long> ids) {
+        required.get(slot).addAll(ids);
+        return this;
+    }
+
+    /**
+     * @param slot The kind of game data
+     * @param ids Every result has at least one of them, ignored if empty
+     * @return This query
+     */
+    public BuildQuery any(final Slot slot, final Collection<Long> ids) {
+        any.get(slot).addAll(ids);
+        return this;
+    }
+
+    /**
+     * @param slot The kind of game data
+     * @param ids No result has any of them
+     * @return This query
+     */
+    public BuildQuery forbid(final Slot slot, final Collection<Long> ids) {
+        forbidden.get(slot).addAll(ids);
+        return this;
+    }
+
+    public Set<Long> getRequired(final Slot slot) {
+        return required.get(slot);
+    }
+
+    public Set<Long> getAny(final Slot slot) {
+        return any.get(slot);
+    }
+
+    public Set<Long> getForbidden(final Slot slot) {
+        return forbidden.get(slot);
+    }
+
+    /**
+     * @return Every slot with any terms, in Slot order
+     */
+    List<Slot> anySlots() {
+        final List<Slot> slots = new ArrayList<>();
+        for(Slot slot : Slot.values()) {
+            if(!any.get(slot).isEmpty()) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,261 @@
+package services;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Every valid build of one character: each combination of perks of its type, with every item it can carry
+ * and each combination of addons of its type, filling as many slots as the catalog allows.
+ * Builds are numbered by rank so ranges of the space can be enumerated independently without materializing it.
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildSpace {
+
+    private final long character;
+    private final long[] perks;
+    private final long[] items;
+    private final long[] addons;
+    private final int perkSlots;
+    private final int addonSlots;
+    private final long perkCombinations;
+    private final long addonCombinations;
+    private final long size;
+
+    /**
+     * @param character The unique ID of the character
+     * @param perks The ids of the perks the character can take
+     * @param items The ids of the items the character can carry, empty if it carries none
+     * @param addons The ids of the addons the character can take, used only with an item if items is not empty
+     * @param needsItem Whether addons can only be taken with an item
+     * @throws ArithmeticException if the space has more than Long.MAX_VALUE builds
+     */
+    BuildSpace(final long character, final long[] perks, final long[] items, final long[] addons,
+               final boolean needsItem) {
+        this.character = character;
+        this.perks = perks;
+        this.items = items;
+        this.perkSlots = Math.min(BuildCatalog.PERK_SLOTS, perks.length);
+        final boolean withAddons = !needsItem || items.length > 0;
+        this.addons = withAddons ? addons : new long[0];
+        this.addonSlots = Math.min(BuildCatalog.ADDON_SLOTS, this.addons.length);
+        this.perkCombinations = combinations(perks.length, perkSlots);
+        this.addonCombinations = combinations(this.addons.length, addonSlots);
+        this.size = Math.multiplyExact(Math.multiplyExact(perkCombinations, Math.max(1, items.length)),
+                addonCombinations);
+    }
+
+    /**
+     * @return Number of builds in the space
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @param rank The rank of a build, from 0 to size() - 1
+     * @return The build with the rank
+     */
+    public Loadout get(final long rank) {
+        final Cursor cursor = new Cursor(rank);
+        return cursor.loadout();
+    }
+
+    /**
+     * @return Spliterator over the whole space in rank order
+     */
+    public Spliterator<Loadout> spliterator() {
+        return spliterator(0, size);
+    }
+
+    /**
+     * @param from The first rank, inclusive
+     * @param to The last rank, exclusive
+     * @return Spliterator over a range of the space in rank order
+     */
+    public Spliterator<Loadout> spliterator(final long from, final long to) {
+        return new RankSpliterator(from, Math.min(to, size));
+    }
+
+    /**
+     * Splits a range of the space with its spliterator's own trySplit until each part holds at most partSize builds.
+     * Parts are split off lazily in rank order, so only the halves still to split are pending at once.
+     *
+     * @param from The first rank, inclusive
+     * @param to The last rank, exclusive
+     * @param partSize The largest number of builds of a part, at least 1
+     * @return Iterator over spliterators of consecutive ranges of the space in rank order
+     */
+    public Iterator<Spliterator<Loadout>> parts(final long from, final long to, final long partSize) {
+        final Deque<Spliterator<Loadout>> pending = new ArrayDeque<>();
+        if(from < Math.min(to, size)) {
+            pending.push(spliterator(from, to));
+        }
+        return new Iterator<Spliterator<Loadout>>() {
+
+            @Override
+            public boolean hasNext() {
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public Spliterator<Loadout> next() {
+                if(pending.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Spliterator<Loadout> part = pending.pop();
+                while(part.estimateSize() > partSize) {
+                    final Spliterator<Loadout> prefix = part.trySplit();
+                    if(prefix == null) {
+                        break;
+                    }
+                    pending.push(part);
+                    part = prefix;
+                }
+                return part;
+            }
+        };
+    }
+
+    /**
+     * Ranks are decoded as perk combination, then item, then addon combination, with the addons varying fastest
+     * and each combination in lexicographic order of its indexes
+     */
+    private final class Cursor {
+
+        private final int[] perkIndexes = new int[perkSlots];
+        private int item;
+        private final int[] addonIndexes = new int[addonSlots];
+
+        Cursor(final long rank) {
+            final long itemCount = Math.max(1, items.length);
+            final long addonRank = rank % addonCombinations;
+            final long rest = rank / addonCombinations;
+            item = (int) (rest % itemCount);
+            unrank(rest / itemCount, perks.length, perkIndexes);
+            unrank(addonRank, addons.length, addonIndexes);
+        }
+
+        Loadout loadout() {
+            final long[] perkIds = new long[perkSlots];
+            for(int i = 0; i < perkSlots; i++) {
+                perkIds[i] = perks[perkIndexes[i]];
+            }
+            final long[] addonIds = new long[addonSlots];
+            for(int i = 0; i < addonSlots; i++) {
+                addonIds[i] = addons[addonIndexes[i]];
+            }
+            return new Loadout(character, perkIds, items.length == 0 ? Loadout.NO_ITEM : items[item], addonIds);
+        }
+
+        void advance() {
+            if(next(addonIndexes, addons.length)) {
+                return;
+            }
+            if(++item < items.length) {
+                return;
+            }
+            item = 0;
+            next(perkIndexes, perks.length);
+        }
+    }
+
+    private final class RankSpliterator implements Spliterator<Loadout> {
+
+        private long from;
+        private final long to;
+        private Cursor cursor;
+
+        RankSpliterator(final long from, final long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super Loadout> action) {
+            if(from >= to) {
+                return false;
+            }
+            if(cursor == null) {
+                cursor = new Cursor(from);
+            } else {
+                cursor.advance();
+            }
+            from++;
+            action.accept(cursor.loadout());
+            return true;
+        }
+
+        @Override
+        public Spliterator<Loadout> trySplit() {
+            // Once started the cursor belongs to this half, only untouched ranges are split
+            if(cursor != null || to - from < 2) {
+                return null;
+            }
+            final long middle = from + (to - from) / 2;
+            final Spliterator<Loadout> prefix = new RankSpliterator(from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    private static void unrank(long rank, final int n, final int[] indexes) {
+        final int k = indexes.length;
+        int candidate = 0;
+        for(int i = 0; i < k; i++) {
+            while(true) {
+                final long starting = combinations(n - 1 - candidate, k - 1 - i);
+                if(rank < starting) {
+                    break;
+                }
+                rank -= starting;
+                candidate++;
+            }
+            indexes[i] = candidate++;
+        }
+    }
+
+    private static boolean next(final int[] indexes, final int n) {
+        final int k = indexes.length;
+        for(int i = k - 1; i >= 0; i--) {
+            if(indexes[i] < n - k + i) {
+                indexes[i]++;
+                for(int j = i + 1; j < k; j++) {
+                    indexes[j] = indexes[j - 1] + 1;
+                }
+                return true;
+            }
+        }
+        // Wrapped around, back to the first combination
+        for(int j = 0; j < k; j++) {
+            indexes[j] = j;
+        }
+        return false;
+    }
+
+    private static long combinations(final int n, final int k) {
+        if(k < 0 || k > n) {
+            return 0;
+        }
+        long result = 1;
+        for(int i = 1; i <= k; i++) {
+            // Exact at every step, the product of i consecutive integers is divisible by i!
+            result = Math.multiplyExact(result, n - k + i) / i;
+        }
+        return result;
+    }
+}
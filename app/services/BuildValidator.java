@@ -0,0 +1,76 @@
+package services;
+
+import models.Addon;
+import models.Character;
+import models.Item;
+import models.Perk;
+import repositories.AddonRepository;
+import repositories.CatalogSnapshot;
+import repositories.CharacterRepository;
+import repositories.ItemRepository;
+import repositories.PerkRepository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a BuildCatalog of the current game data and validates builds against it.
+ * The catalog is rebuilt only after one of the tables has changed.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class BuildValidator {
+
+    private final CharacterRepository characterRepository;
+    private final PerkRepository perkRepository;
+    private final ItemRepository itemRepository;
+    private final AddonRepository addonRepository;
+    private final AtomicReference<BuildCatalog> catalog = new AtomicReference<>();
+
+    @Inject
+    public BuildValidator(final CharacterRepository characterRepository, final PerkRepository perkRepository,
+                          final ItemRepository itemRepository, final AddonRepository addonRepository) {
+        this.characterRepository = characterRepository;
+        this.perkRepository = perkRepository;
+        this.itemRepository = itemRepository;
+        this.addonRepository = addonRepository;
+    }
+
+    /**
+     * The BuildCatalog of the current snapshots of the game data tables
+     *
+     * @return CompletionStage of the current BuildCatalog
+     */
+    public CompletionStage<BuildCatalog> catalog() {
+        final CompletableFuture<CatalogSnapshot<Character>> characters =
+                characterRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<CatalogSnapshot<Perk>> perks = perkRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<CatalogSnapshot<Item>> items = itemRepository.snapshot().toCompletableFuture();
+        final CompletableFuture<CatalogSnapshot<Addon>> addons = addonRepository.snapshot().toCompletableFuture();
+        return CompletableFuture.allOf(characters, perks, items, addons)
+                .thenApply(done -> catalogOf(characters.join(), perks.join(), items.join(), addons.join()));
+    }
+
+    /**
+     * @param loadout The loadout to check
+     * @return CompletionStage of the BuildVerdict of the loadout
+     */
+    public CompletionStage<BuildVerdict> validate(final Loadout loadout) {
+        return catalog().thenApply(current -> current.validate(loadout));
+    }
+
+    private BuildCatalog catalogOf(final CatalogSnapshot<Character> characters, final CatalogSnapshot<Perk> perks,
+                                   final CatalogSnapshot<Item> items, final CatalogSnapshot<Addon> addons) {
+        final BuildCatalog current = catalog.get();
+        if(current != null && current.isOf(characters, perks, items, addons)) {
+            return current;
+        }
+        final BuildCatalog rebuilt = new BuildCatalog(characters, perks, items, addons);
+        catalog.set(rebuilt);
+        return rebuilt;
+    }
+}
@@ -0,0 +1,42 @@
+package services;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of validating a Loadout against the catalog
+ *
+ * @author Lowell Buttorff
+ */
+public final class BuildVerdict {
+
+    static final BuildVerdict VALID = new BuildVerdict(Collections.emptyList());
+
+    private final List<String> errors;
+
+    BuildVerdict(final List<String> errors) {
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @param error Why a loadout could not be checked at all, such as a malformed request
+     * @return BuildVerdict with the single error
+     */
+    public static BuildVerdict rejected(final String error) {
+        return new BuildVerdict(Collections.singletonList(error));
+    }
+
+    /**
+     * @return true if the loadout breaks no rule
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * @return Every rule the loadout breaks, empty if it is valid
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+}
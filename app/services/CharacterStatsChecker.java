@@ -0,0 +1,76 @@
+package services;
+
+import play.Logger;
+import repositories.CharacterStatKey;
+import repositories.CharacterStatsRepository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Checks the aggregate tables of the CharacterStatsRepository against the builds table.
+ * The builds are recounted in CHECK_PARALLELISM parts at once, the parts are summed
+ * and every count that differs from the stored one is reported. Builds written during a check may show as differences.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class CharacterStatsChecker {
+
+    static final int CHECK_PARALLELISM = 4;
+
+    private static final Comparator<StatsDifference> ORDER = Comparator.comparing(StatsDifference::getTable)
+            .thenComparingLong(StatsDifference::getCharacter).thenComparingLong(StatsDifference::getId);
+
+    private final CharacterStatsRepository characterStatsRepository;
+
+    @Inject
+    public CharacterStatsChecker(final CharacterStatsRepository characterStatsRepository) {
+        this.characterStatsRepository = characterStatsRepository;
+    }
+
+    /**
+     * @return CompletionStage of the counts that differ from a recount, ordered by table, character and id
+     */
+    public CompletionStage<StatsCheck> check() {
+        final List<CompletableFuture<Map<CharacterStatKey, Long>>> parts = new ArrayList<>();
+        for(int part = 0; part < CHECK_PARALLELISM; part++) {
+            parts.add(characterStatsRepository.recount(part, CHECK_PARALLELISM).toCompletableFuture());
+        }
+        final CompletableFuture<Map<CharacterStatKey, Long>> stored =
+                characterStatsRepository.stored().toCompletableFuture();
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).thenCombine(stored, (done, counts) -> {
+            final Map<CharacterStatKey, Long> recounted = new HashMap<>();
+            for(CompletableFuture<Map<CharacterStatKey, Long>> part : parts) {
+                part.join().forEach((key, builds) -> recounted.merge(key, builds, Long::sum));
+            }
+            final Set<CharacterStatKey> keys = new HashSet<>(counts.keySet());
+            keys.addAll(recounted.keySet());
+            final List<StatsDifference> differences = new ArrayList<>();
+            for(CharacterStatKey key : keys) {
+                final long expected = recounted.getOrDefault(key, 0L);
+                final long actual = counts.getOrDefault(key, 0L);
+                if(expected != actual) {
+                    differences.add(new StatsDifference(key, actual, expected));
+                }
+            }
+            differences.sort(ORDER);
+            if(differences.isEmpty()) {
+                Logger.info("Character stats match a recount of {} counts", keys.size());
+            } else {
+                Logger.warn("Character stats differ from a recount in {} of {} counts", differences.size(),
+                        keys.size());
+            }
+            return new StatsCheck(keys.size(), differences);
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch of long keys: a fixed grid of counters that never under-counts a key
+ * and over-counts it by at most a small fraction of the total, whatever the number of keys.
+ * Counters are updated lock free, so any number of threads may add at once.
+ * Counts may go down as well as up, as long as no key is taken below 0.
+ *
+ * @author Lowell Buttorff
+ */
+public final class CountMinSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x85EBCA77C2B2AE63L, 0x27D4EB2F165667C5L
+    };
+
+    private final int depth;
+    private final int widthBits;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param depth Rows of counters, each halves the chance of an estimate being off by more than the bound
+     * @param widthBits Log2 of the counters per row, the bound on the over-count is about total / 2^(widthBits - 1)
+     */
+    public CountMinSketch(final int depth, final int widthBits) {
+        if(depth < 1 || depth > SEEDS.length || widthBits < 1 || widthBits > 24) {
+            throw new IllegalArgumentException("Sketch size out of range");
+        }
+        this.depth = depth;
+        this.widthBits = widthBits;
+        this.counters = new AtomicLongArray(depth << widthBits);
+    }
+
+    /**
+     * @param key The key to count
+     * @param delta The amount to add, may be negative
+     * @return The estimate of the key after adding
+     */
+    public long add(final long key, final long delta) {
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(row, key), delta));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key A key
+     * @return At least the count of the key
+     */
+    public long estimate(final long key) {
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, key)));
+        }
+        return estimate;
+    }
+
+    private int index(final int row, final long key) {
+        long hash = (key + row) * SEEDS[row];
+        hash ^= hash >>> 31;
+        hash *= SEEDS[(row + depth) % SEEDS.length];
+        return (row << widthBits) | (int) (hash >>> (64 - widthBits));
+    }
+}
@@ -0,0 +1,88 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the most counted keys in bounded memory: a CountMinSketch estimates every key
+ * and a small candidate table keeps the keys with the largest estimates.
+ * Only keys entering the table and candidates counted down take a lock, the hot keys already in it never do.
+ *
+ * @author Lowell Buttorff
+ */
+public final class HeavyHitters {
+
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private final ConcurrentMap<Long, Long> candidates = new ConcurrentHashMap<>();
+    // Smallest estimate in a full candidate table, a key has to beat it to get in
+    private volatile long floor = Long.MIN_VALUE;
+
+    /**
+     * @param sketch The sketch to estimate keys with
+     * @param capacity The number of candidates to keep, at least the largest k asked for
+     */
+    public HeavyHitters(final CountMinSketch sketch, final int capacity) {
+        this.sketch = sketch;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param key The key to count
+     * @param delta The amount to add, may be negative
+     */
+    public void add(final long key, final long delta) {
+        final long estimate = sketch.add(key, delta);
+        if(delta >= 0 && candidates.computeIfPresent(key, (candidate, last) -> Math.max(last, estimate)) != null) {
+            // A growing candidate never lowers the floor
+            return;
+        }
+        // Counting down a key that is not a candidate never makes it one
+        if(!candidates.containsKey(key) && (delta < 0 || estimate <= floor)) {
+            return;
+        }
+        synchronized(this) {
+            if(delta < 0 && !candidates.containsKey(key)) {
+                return;
+            }
+            if(estimate <= 0) {
+                candidates.remove(key);
+            } else {
+                candidates.put(key, estimate);
+            }
+            if(candidates.size() > capacity) {
+                candidates.remove(smallest().getKey());
+            }
+            floor = candidates.size() < capacity ? Long.MIN_VALUE : smallest().getValue();
+        }
+    }
+
+    /**
+     * @param k The largest number of keys to return
+     * @return The candidates with the largest estimates, largest first, ties by key
+     */
+    public List<Long> top(final int k) {
+        final List<Map.Entry<Long, Long>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort(Comparator.<Map.Entry<Long, Long>>comparingLong(Map.Entry::getValue).reversed()
+                .thenComparingLong(Map.Entry::getKey));
+        final List<Long> keys = new ArrayList<>(Math.min(k, entries.size()));
+        for(int i = 0; i < entries.size() && keys.size() < k; i++) {
+            keys.add(entries.get(i).getKey());
+        }
+        return keys;
+    }
+
+    private Map.Entry<Long, Long> smallest() {
+        Map.Entry<Long, Long> smallest = null;
+        for(Map.Entry<Long, Long> candidate : candidates.entrySet()) {
+            if(smallest == null || candidate.getValue() < smallest.getValue()) {
+                smallest = candidate;
+            }
+        }
+        return smallest;
+    }
+}
@@ -0,0 +1,161 @@
+package services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it, in a fixed BYTES of memory.
+ * There are REGISTERS registers of 6 bits each, packed into a byte array, giving a standard error of
+ * 1.04 / sqrt(REGISTERS), about 3.25%. Two sketches merge by taking the larger of each register,
+ * which estimates the distinct values of both together.
+ * Not thread-safe.
+ *
+ * @author Lowell Buttorff
+ */
+public final class HyperLogLog {
+
+    static final int PRECISION = 10;
+    public static final int REGISTERS = 1 << PRECISION;
+    static final int REGISTER_BITS = 6;
+    public static final int BYTES = REGISTERS * REGISTER_BITS / Byte.SIZE;
+    public static final double STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    private static final int REGISTER_MASK = (1 << REGISTER_BITS) - 1;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[BYTES];
+    }
+
+    private HyperLogLog(final byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * @param bytes Bytes of a sketch made by toBytes, copied
+     * @return HyperLogLog of the bytes
+     * @throws IllegalArgumentException if the bytes are not BYTES long
+     */
+    public static HyperLogLog of(final byte[] bytes) {
+        if(bytes.length != BYTES) {
+            throw new IllegalArgumentException("A sketch is " + BYTES + " bytes");
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    /**
+     * 64-bit hash of a string, FNV-1a over its UTF-8 bytes with a final mix so every bit depends on every byte
+     *
+     * @param value The string to hash
+     * @return The hash to add
+     */
+    public static long hash(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * @param hash Well mixed 64-bit hash of a value, such as from hash
+     * @return true if the sketch changed
+     */
+    public boolean add(final long hash) {
+        final int register = (int) (hash >>> (Long.SIZE - PRECISION));
+        // Position of the first 1 bit after the register bits, the bits past the end count as 1
+        final int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), Long.SIZE - PRECISION) + 1;
+        if(rank <= get(register)) {
+            return false;
+        }
+        set(register, rank);
+        return true;
+    }
+
+    /**
+     * @param other A sketch whose values are added to this one, left unchanged
+     */
+    public void merge(final HyperLogLog other) {
+        for(int register = 0; register < REGISTERS; register++) {
+            final int rank = other.get(register);
+            if(rank > get(register)) {
+                set(register, rank);
+            }
+        }
+    }
+
+    /**
+     * @return Estimated number of distinct values added
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for(int register = 0; register < REGISTERS; register++) {
+            final int rank = get(register);
+            sum += 1.0 / (1L << rank);
+            if(rank == 0) {
+                zeros++;
+            }
+        }
+        final double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Small counts leave registers empty, linear counting is more accurate there
+        if(estimate <= 2.5 * REGISTERS && zeros > 0) {
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return Copy of the packed registers, BYTES long
+     */
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    /**
+     * @return Independent copy of the sketch
+     */
+    public HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    private int get(final int register) {
+        final int bit = register * REGISTER_BITS;
+        final int index = bit >>> 3;
+        int bits = registers[index] & 0xff;
+        if(index + 1 < BYTES) {
+            bits |= (registers[index + 1] & 0xff) << Byte.SIZE;
+        }
+        return (bits >>> (bit & 7)) & REGISTER_MASK;
+    }
+
+    private void set(final int register, final int rank) {
+        final int bit = register * REGISTER_BITS;
+        final int index = bit >>> 3;
+        final int shift = bit & 7;
+        final int mask = REGISTER_MASK << shift;
+        final int value = rank << shift;
+        registers[index] = (byte) ((registers[index] & ~mask) | (value & mask));
+        if(shift + REGISTER_BITS > Byte.SIZE) {
+            registers[index + 1] = (byte) ((registers[index + 1] & ~(mask >>> Byte.SIZE))
+                    | ((value & mask) >>> Byte.SIZE));
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof HyperLogLog && Arrays.equals(registers, ((HyperLogLog) other).registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+}
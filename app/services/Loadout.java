@@ -0,0 +1,134 @@
+package services;
+
+import models.Build;
+import models.BuildContent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The catalog ids a build is made of, without any database state.
+ * Slots may hold more ids than a build allows, the BuildCatalog reports them.
+ *
+ * @author Lowell Buttorff
+ */
+public final class Loadout {
+
+    // Id of an empty item slot
+    public static final long NO_ITEM = 0;
+
+    private final long character;
+    private final long[] perks;
+    private final long item;
+    private final long[] addons;
+
+    public Loadout(final long character, final long[] perks, final long item, final long[] addons) {
+        this(character, perks, item, addons, true);
+    }
+
+    private Loadout(final long character, final long[] perks, final long item, final long[] addons,
+                    final boolean copy) {
+        this.character = character;
+        this.perks = copy ? perks.clone() : perks;
+        this.item = item;
+        this.addons = copy ? addons.clone() : addons;
+    }
+
+    /**
+     * Loadout taking over arrays nothing else holds, without copying them
+     */
+    static Loadout wrap(final long character, final long[] perks, final long item, final long[] addons) {
+        return new Loadout(character, perks, item, addons, false);
+    }
+
+    /**
+     * @param build A saved or unsaved build
+     * @return Loadout of the build
+     */
+    public static Loadout of(final Build build) {
+        return new Loadout(build.getCharacter(), toArray(build.getPerks()),
+                build.getItem() == null ? NO_ITEM : build.getItem(), toArray(build.getAddons()));
+    }
+
+    /**
+     * @return A new, unsaved build of this loadout
+     */
+    public Build toBuild() {
+        return new Build(character, toList(perks), item == NO_ITEM ? null : item, toList(addons));
+    }
+
+    /**
+     * Copies this loadout into a build, replacing all of its slots with one new content
+     *
+     * @param build The build to change
+     */
+    public void applyTo(final Build build) {
+        build.setContent(new BuildContent(character, toList(perks), item == NO_ITEM ? null : item, toList(addons)));
+    }
+
+    public long getCharacter() {
+        return character;
+    }
+
+    public int perkCount() {
+        return perks.length;
+    }
+
+    public long perk(final int slot) {
+        return perks[slot];
+    }
+
+    public long getItem() {
+        return item;
+    }
+
+    public boolean hasItem() {
+        return item != NO_ITEM;
+    }
+
+    public int addonCount() {
+        return addons.length;
+    }
+
+    public long addon(final int slot) {
+        return addons[slot];
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if(this == other) {
+            return true;
+        }
+        if(!(other instanceof Loadout)) {
+            return false;
+        }
+        final Loadout loadout = (Loadout) other;
+        return character == loadout.character && item == loadout.item
+                && Arrays.equals(perks, loadout.perks) && Arrays.equals(addons, loadout.addons);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Long.hashCode(character);
+        hash = 31 * hash + Arrays.hashCode(perks);
+        hash = 31 * hash + Long.hashCode(item);
+        return 31 * hash + Arrays.hashCode(addons);
+    }
+
+    private static long[] toArray(final List<Long> ids) {
+        final long[] array = new long[ids.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+
+    private static List<Long> toList(final long[] ids) {
+        final List<Long> list = new ArrayList<>(ids.length);
+        for(long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
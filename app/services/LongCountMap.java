@@ -0,0 +1,146 @@
+package services;
+
+/**
+ * Open addressing hash map from long keys to long counts, without boxing either.
+ * Key 0 marks an empty slot, so 0 itself cannot be counted; row ids start at 1.
+ * Counts that drop to 0 are removed. Not thread-safe.
+ *
+ * @author Lowell Buttorff
+ */
+public final class LongCountMap {
+
+    /**
+     * Receives the entries of a map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long count);
+    }
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    public LongCountMap() {
+        keys = new long[MIN_CAPACITY];
+        counts = new long[MIN_CAPACITY];
+    }
+
+    /**
+     * Adds to the count of a key, a key whose count reaches 0 is removed
+     *
+     * @param key The key, not 0
+     * @param delta The amount to add, may be negative
+     * @return The new count of the key
+     */
+    public long add(final long key, final long delta) {
+        if(key == 0) {
+            throw new IllegalArgumentException("0 cannot be a key");
+        }
+        int slot = slot(key);
+        while(keys[slot] != 0) {
+            if(keys[slot] == key) {
+                counts[slot] += delta;
+                final long count = counts[slot];
+                if(count == 0) {
+                    remove(slot);
+                }
+                return count;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        if(delta == 0) {
+            return 0;
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        if(++size * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * @param key The key
+     * @return The count of the key, 0 if it is not in the map
+     */
+    public long get(final long key) {
+        if(key == 0) {
+            return 0;
+        }
+        int slot = slot(key);
+        while(keys[slot] != 0) {
+            if(keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return 0;
+    }
+
+    /**
+     * @return Number of keys with a count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param consumer Receives every key and its count, in no particular order
+     */
+    public void forEach(final EntryConsumer consumer) {
+        for(int slot = 0; slot < keys.length; slot++) {
+            if(keys[slot] != 0) {
+                consumer.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    private int slot(final long key) {
+        // Fibonacci hashing spreads sequential ids over the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+    }
+
+    /**
+     * Empties a slot and shifts later entries of the same probe run back, so lookups never stop early
+     */
+    private void remove(int slot) {
+        size--;
+        int next = slot;
+        while(true) {
+            next = (next + 1) & (keys.length - 1);
+            if(keys[next] == 0) {
+                break;
+            }
+            final int home = slot(keys[next]);
+            // Move the entry back unless its home lies cyclically after the hole and at or before its slot
+            final boolean stays = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if(!stays) {
+                keys[slot] = keys[next];
+                counts[slot] = counts[next];
+                slot = next;
+            }
+        }
+        keys[slot] = 0;
+        counts[slot] = 0;
+    }
+
+    private void resize(final int capacity) {
+        final long[] oldKeys = keys;
+        final long[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                while(keys[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
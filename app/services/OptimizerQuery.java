@@ -0,0 +1,115 @@
+package services;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * What to search the builds of a character for: perks and addons every result must or must not have,
+ * how to score builds, how many to return and how long to search
+ *
+ * @author Lowell Buttorff
+ */
+public final class OptimizerQuery {
+
+    public static final int DEFAULT_K = 10;
+    public static final int MAX_K = 100;
+    public static final long DEFAULT_BUDGET_MILLIS = 50;
+    public static final long MAX_BUDGET_MILLIS = 1000;
+
+    private final long character;
+    private final Set<Long> requiredPerks = new LinkedHashSet<>();
+    private final Set<Long> forbiddenPerks = new LinkedHashSet<>();
+    private final Set<Long> requiredAddons = new LinkedHashSet<>();
+    private final Set<Long> forbiddenAddons = new LinkedHashSet<>();
+    private ScoringProfile profile = new ScoringProfile();
+    private int k = DEFAULT_K;
+    private long budgetMillis = DEFAULT_BUDGET_MILLIS;
+
+    public OptimizerQuery(final long character) {
+        this.character = character;
+    }
+
+    public OptimizerQuery requirePerks(final Collection<Long> perks) {
+        requiredPerks.addAll(perks);
+        return this;
+    }
+
+    public OptimizerQuery forbidPerks(final Collection<Long> perks) {
+        forbiddenPerks.addAll(perks);
+        return this;
+    }
+
+    public OptimizerQuery requireAddons(final Collection<Long> addons) {
+        requiredAddons.addAll(addons);
+        return this;
+    }
+
+    public OptimizerQuery forbidAddons(final Collection<Long> addons) {
+        forbiddenAddons.addAll(addons);
+        return this;
+    }
+
+    public OptimizerQuery profile(final ScoringProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * @param k The number of builds to return, from 1 to MAX_K
+     * @return This query
+     * @throws IllegalArgumentException if k is out of range
+     */
+    public OptimizerQuery k(final int k) {
+        if(k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k must be from 1 to " + MAX_K);
+        }
+        this.k = k;
+        return this;
+    }
+
+    /**
+     * @param budgetMillis How long to search before returning the best builds found so far, from 1 to MAX_BUDGET_MILLIS
+     * @return This query
+     * @throws IllegalArgumentException if the budget is out of range
+     */
+    public OptimizerQuery budgetMillis(final long budgetMillis) {
+        if(budgetMillis < 1 || budgetMillis > MAX_BUDGET_MILLIS) {
+            throw new IllegalArgumentException("The budget must be from 1 to " + MAX_BUDGET_MILLIS + " ms");
+        }
+        this.budgetMillis = budgetMillis;
+        return this;
+    }
+
+    public long getCharacter() {
+        return character;
+    }
+
+    public Set<Long> getRequiredPerks() {
+        return requiredPerks;
+    }
+
+    public Set<Long> getForbiddenPerks() {
+        return forbiddenPerks;
+    }
+
+    public Set<Long> getRequiredAddons() {
+        return requiredAddons;
+    }
+
+    public Set<Long> getForbiddenAddons() {
+        return forbiddenAddons;
+    }
+
+    public ScoringProfile getProfile() {
+        return profile;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+}
@@ -0,0 +1,79 @@
+package services;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The best builds a search found, with statistics of the search
+ *
+ * @author Lowell Buttorff
+ */
+public final class OptimizerResult {
+
+    private final List<ScoredBuild> builds;
+    private final BuildVerdict verdict;
+    private final boolean complete;
+    private final long nodesExpanded;
+    private final long nodesPruned;
+    private final long elapsedMillis;
+
+    OptimizerResult(final List<ScoredBuild> builds, final boolean complete, final long nodesExpanded,
+                    final long nodesPruned, final long elapsedMillis) {
+        this.builds = Collections.unmodifiableList(builds);
+        this.verdict = BuildVerdict.VALID;
+        this.complete = complete;
+        this.nodesExpanded = nodesExpanded;
+        this.nodesPruned = nodesPruned;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    private OptimizerResult(final BuildVerdict verdict) {
+        this.builds = Collections.emptyList();
+        this.verdict = verdict;
+        this.complete = true;
+        this.nodesExpanded = 0;
+        this.nodesPruned = 0;
+        this.elapsedMillis = 0;
+    }
+
+    /**
+     * @param verdict Why the query cannot be searched
+     * @return OptimizerResult of a query that was rejected before searching
+     */
+    static OptimizerResult rejected(final BuildVerdict verdict) {
+        return new OptimizerResult(verdict);
+    }
+
+    /**
+     * @return The best builds found, highest score first
+     */
+    public List<ScoredBuild> getBuilds() {
+        return builds;
+    }
+
+    /**
+     * @return The verdict of the query, invalid if its required perks and addons cannot make a build
+     */
+    public BuildVerdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * @return true if the whole search space was covered, false if the time budget ran out first
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public long getNodesPruned() {
+        return nodesPruned;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,116 @@
+package services;
+
+import models.RatedEntry;
+import repositories.CatalogSnapshot;
+
+/**
+ * The numeric attributes of perks, items and addons packed into primitive columns indexed by id.
+ * Index 0 is never a row id and always holds zeros, so an empty slot scores nothing without a branch.
+ *
+ * @author Lowell Buttorff
+ */
+public final class PackedCatalog {
+
+    // Layout of one build in a packed batch: four perks, the item, then two addons, 0 for an empty slot
+    public static final int STRIDE = BuildCatalog.PERK_SLOTS + 1 + BuildCatalog.ADDON_SLOTS;
+    public static final int ITEM_OFFSET = BuildCatalog.PERK_SLOTS;
+    public static final int ADDON_OFFSET = BuildCatalog.PERK_SLOTS + 1;
+
+    private final int[] perkRarity;
+    private final double[] perkPotency;
+    private final int[] itemRarity;
+    private final double[] itemPotency;
+    private final int[] addonRarity;
+    private final double[] addonPotency;
+
+    PackedCatalog(final CatalogSnapshot<? extends RatedEntry> perks, final CatalogSnapshot<? extends RatedEntry> items,
+                  final CatalogSnapshot<? extends RatedEntry> addons) {
+        perkRarity = new int[length(perks)];
+        perkPotency = new double[perkRarity.length];
+        pack(perks, perkRarity, perkPotency);
+        itemRarity = new int[length(items)];
+        itemPotency = new double[itemRarity.length];
+        pack(items, itemRarity, itemPotency);
+        addonRarity = new int[length(addons)];
+        addonPotency = new double[addonRarity.length];
+        pack(addons, addonRarity, addonPotency);
+    }
+
+    /**
+     * Folds a set of weights into one value per id, so scoring a build is a sum of seven array reads
+     *
+     * @param weights How much each attribute counts
+     * @return Scorer of builds under the weights
+     */
+    public Scorer scorer(final AttributeWeights weights) {
+        return new Scorer(values(perkRarity, perkPotency, weights.getPerkRarity(), weights.getPerkPotency()),
+                values(itemRarity, itemPotency, weights.getItemRarity(), weights.getItemPotency()),
+                values(addonRarity, addonPotency, weights.getAddonRarity(), weights.getAddonPotency()));
+    }
+
+    /**
+     * Scores builds packed STRIDE ids at a time
+     */
+    public static final class Scorer {
+
+        private final double[] perks;
+        private final double[] items;
+        private final double[] addons;
+
+        private Scorer(final double[] perks, final double[] items, final double[] addons) {
+            this.perks = perks;
+            this.items = items;
+            this.addons = addons;
+        }
+
+        /**
+         * Scores a batch of builds without allocating, ids missing from the catalog score nothing
+         *
+         * @param builds The packed builds, STRIDE ids per build
+         * @param count The number of builds in the batch
+         * @param scores Where to write the score of each build, at least count long
+         */
+        public void scoreAll(final long[] builds, final int count, final double[] scores) {
+            for(int build = 0, offset = 0; build < count; build++, offset += STRIDE) {
+                scores[build] = value(perks, builds[offset]) + value(perks, builds[offset + 1])
+                        + value(perks, builds[offset + 2]) + value(perks, builds[offset + 3])
+                        + value(items, builds[offset + ITEM_OFFSET])
+                        + value(addons, builds[offset + ADDON_OFFSET]) + value(addons, builds[offset + ADDON_OFFSET + 1]);
+            }
+        }
+
+        private static double value(final double[] column, final long id) {
+            return id >= 0 && id < column.length ? column[(int) id] : 0;
+        }
+    }
+
+    private static double[] values(final int[] rarity, final double[] potency, final double rarityWeight,
+                                   final double potencyWeight) {
+        final double[] values = new double[rarity.length];
+        for(int id = 0; id < values.length; id++) {
+            values[id] = rarityWeight * rarity[id] + potencyWeight * potency[id];
+        }
+        return values;
+    }
+
+    private static int length(final CatalogSnapshot<? extends RatedEntry> snapshot) {
+        long max = 0;
+        for(RatedEntry entry : snapshot.all()) {
+            // Ids beyond int range cannot be indexed, such rows score nothing
+            if(entry.getId() < Integer.MAX_VALUE) {
+                max = Math.max(max, entry.getId());
+            }
+        }
+        return (int) max + 1;
+    }
+
+    private static void pack(final CatalogSnapshot<? extends RatedEntry> snapshot, final int[] rarity,
+                             final double[] potency) {
+        for(RatedEntry entry : snapshot.all()) {
+            if(entry.getId() > 0 && entry.getId() < rarity.length) {
+                rarity[(int) entry.getId()] = entry.getRarity();
+                potency[(int) entry.getId()] = entry.getPotency();
+            }
+        }
+    }
+}
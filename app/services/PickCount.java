@@ -0,0 +1,25 @@
+package services;
+
+/**
+ * A perk, item or addon and the number of saved builds that pick it
+ *
+ * @author Lowell Buttorff
+ */
+public final class PickCount {
+
+    private final long id;
+    private final long picks;
+
+    public PickCount(final long id, final long picks) {
+        this.id = id;
+        this.picks = picks;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getPicks() {
+        return picks;
+    }
+}
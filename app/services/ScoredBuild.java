@@ -0,0 +1,25 @@
+package services;
+
+/**
+ * A loadout with its score
+ *
+ * @author Lowell Buttorff
+ */
+public final class ScoredBuild {
+
+    private final Loadout loadout;
+    private final double score;
+
+    public ScoredBuild(final Loadout loadout, final double score) {
+        this.loadout = loadout;
+        this.score = score;
+    }
+
+    public Loadout getLoadout() {
+        return loadout;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,95 @@
+package services;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weights that score a build: one per perk, item and addon, plus bonuses for pairs of perks that work well together.
+ * Anything without a weight scores 0.
+ *
+ * @author Lowell Buttorff
+ */
+public final class ScoringProfile {
+
+    private final Map<Long, Double> perks = new HashMap<>();
+    private final Map<Long, Double> items = new HashMap<>();
+    private final Map<Long, Double> addons = new HashMap<>();
+    private final Map<Long, Map<Long, Double>> synergies = new HashMap<>();
+
+    public ScoringProfile perk(final long id, final double weight) {
+        perks.put(id, weight);
+        return this;
+    }
+
+    public ScoringProfile item(final long id, final double weight) {
+        items.put(id, weight);
+        return this;
+    }
+
+    public ScoringProfile addon(final long id, final double weight) {
+        addons.put(id, weight);
+        return this;
+    }
+
+    /**
+     * Adds a bonus scored when a build has both perks
+     *
+     * @param perk One perk of the pair
+     * @param other The other perk of the pair
+     * @param bonus The bonus, may be negative for perks that work against each other
+     * @return This profile
+     */
+    public ScoringProfile synergy(final long perk, final long other, final double bonus) {
+        synergies.computeIfAbsent(perk, id -> new HashMap<>()).put(other, bonus);
+        synergies.computeIfAbsent(other, id -> new HashMap<>()).put(perk, bonus);
+        return this;
+    }
+
+    public double perkWeight(final long id) {
+        return perks.getOrDefault(id, 0.0);
+    }
+
+    public double itemWeight(final long id) {
+        return items.getOrDefault(id, 0.0);
+    }
+
+    public double addonWeight(final long id) {
+        return addons.getOrDefault(id, 0.0);
+    }
+
+    /**
+     * @return The bonus of having both perks, 0 if the pair has none
+     */
+    public double synergy(final long perk, final long other) {
+        final Map<Long, Double> partners = synergies.get(perk);
+        return partners == null ? 0 : partners.getOrDefault(other, 0.0);
+    }
+
+    /**
+     * @return true if any pair of perks has a bonus
+     */
+    public boolean hasSynergies() {
+        return !synergies.isEmpty();
+    }
+
+    /**
+     * @param loadout A loadout
+     * @return The score of the loadout under this profile
+     */
+    public double score(final Loadout loadout) {
+        double score = 0;
+        for(int slot = 0; slot < loadout.perkCount(); slot++) {
+            score += perkWeight(loadout.perk(slot));
+            for(int other = slot + 1; other < loadout.perkCount(); other++) {
+                score += synergy(loadout.perk(slot), loadout.perk(other));
+            }
+        }
+        if(loadout.hasItem()) {
+            score += itemWeight(loadout.getItem());
+        }
+        for(int slot = 0; slot < loadout.addonCount(); slot++) {
+            score += addonWeight(loadout.addon(slot));
+        }
+        return score;
+    }
+}
@@ -0,0 +1,34 @@
+package services;
+
+import java.util.List;
+
+/**
+ * The outcome of recounting the aggregate tables from the builds table
+ *
+ * @author Lowell Buttorff
+ */
+public final class StatsCheck {
+
+    private final long checked;
+    private final List<StatsDifference> differences;
+
+    public StatsCheck(final long checked, final List<StatsDifference> differences) {
+        this.checked = checked;
+        this.differences = differences;
+    }
+
+    /**
+     * @return The number of counts compared
+     */
+    public long getChecked() {
+        return checked;
+    }
+
+    public List<StatsDifference> getDifferences() {
+        return differences;
+    }
+
+    public boolean isConsistent() {
+        return differences.isEmpty();
+    }
+}
@@ -0,0 +1,42 @@
+package services;
+
+import repositories.CharacterStatKey;
+import repositories.CharacterStatsTable;
+
+/**
+ * A count of an aggregate table that differs from the count recounted from the builds table
+ *
+ * @author Lowell Buttorff
+ */
+public final class StatsDifference {
+
+    private final CharacterStatKey key;
+    private final long stored;
+    private final long recounted;
+
+    public StatsDifference(final CharacterStatKey key, final long stored, final long recounted) {
+        this.key = key;
+        this.stored = stored;
+        this.recounted = recounted;
+    }
+
+    public CharacterStatsTable getTable() {
+        return key.getTable();
+    }
+
+    public long getCharacter() {
+        return key.getCharacter();
+    }
+
+    public long getId() {
+        return key.getId();
+    }
+
+    public long getStored() {
+        return stored;
+    }
+
+    public long getRecounted() {
+        return recounted;
+    }
+}
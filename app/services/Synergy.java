@@ -0,0 +1,25 @@
+package services;
+
+/**
+ * A perk and the number of saved builds it shares with another perk
+ *
+ * @author Lowell Buttorff
+ */
+public final class Synergy {
+
+    private final long perk;
+    private final long count;
+
+    public Synergy(final long perk, final long count) {
+        this.perk = perk;
+        this.count = count;
+    }
+
+    public long getPerk() {
+        return perk;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,123 @@
+package services;
+
+import models.Build;
+import repositories.BuildListener;
+import repositories.BuildRepository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sparse matrix of how many saved builds use each pair of perks together.
+ * Each perk has a row of counts keyed by the other perk, the count of the perk itself is the number of builds using it.
+ * The matrix is loaded from the builds table on first use and kept current as builds are written.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class SynergyIndex implements BuildListener {
+
+    private static final Comparator<Synergy> STRONGEST = Comparator.comparingLong(Synergy::getCount).reversed()
+            .thenComparingLong(Synergy::getPerk);
+
+    private final BuildRepository buildRepository;
+    private final ConcurrentMap<Long, LongCountMap> rows = new ConcurrentHashMap<>();
+
+    @Inject
+    public SynergyIndex(final BuildRepository buildRepository) {
+        this.buildRepository = buildRepository;
+    }
+
+    /**
+     * Subscribes the index to the builds table the first time it is called
+     *
+     * @return CompletionStage completed once the index holds every saved build
+     */
+    public CompletionStage<Void> ready() {
+        return buildRepository.subscribe(this);
+    }
+
+    /**
+     * The perks most often saved in the same build as a perk
+     *
+     * @param perk The unique ID of a Perk
+     * @param k The largest number of perks to return
+     * @return CompletionStage of at most k Synergies, most shared builds first
+     */
+    public CompletionStage<List<Synergy>> synergies(final long perk, final int k) {
+        return ready().thenApply(done -> top(perk, k));
+    }
+
+    /**
+     * @param perk The unique ID of a Perk
+     * @return CompletionStage of the number of saved builds using the perk
+     */
+    public CompletionStage<Long> builds(final long perk) {
+        return ready().thenApply(done -> count(perk, perk));
+    }
+
+    @Override
+    public void changed(final Build previous, final Build current) {
+        if(previous != null) {
+            apply(previous.getPerks(), -1);
+        }
+        if(current != null) {
+            apply(current.getPerks(), 1);
+        }
+    }
+
+    private void apply(final List<Long> perks, final long delta) {
+        for(Long perk : perks) {
+            final LongCountMap row = rows.computeIfAbsent(perk, id -> new LongCountMap());
+            synchronized(row) {
+                for(Long other : perks) {
+                    row.add(other, delta);
+                }
+            }
+        }
+    }
+
+    private long count(final long perk, final long other) {
+        final LongCountMap row = rows.get(perk);
+        if(row == null) {
+            return 0;
+        }
+        synchronized(row) {
+            return row.get(other);
+        }
+    }
+
+    private List<Synergy> top(final long perk, final int k) {
+        final LongCountMap row = rows.get(perk);
+        if(row == null || k < 1) {
+            return Collections.emptyList();
+        }
+        // Weakest of the k strongest at the head, so each candidate is compared with it only
+        final PriorityQueue<Synergy> strongest = new PriorityQueue<>(k + 1, STRONGEST.reversed());
+        synchronized(row) {
+            row.forEach((other, count) -> {
+                if(other == perk) {
+                    return;
+                }
+                final Synergy synergy = new Synergy(other, count);
+                if(strongest.size() < k) {
+                    strongest.add(synergy);
+                } else if(STRONGEST.compare(synergy, strongest.peek()) < 0) {
+                    strongest.poll();
+                    strongest.add(synergy);
+                }
+            });
+        }
+        final List<Synergy> sorted = new ArrayList<>(strongest);
+        sorted.sort(STRONGEST);
+        return sorted;
+    }
+}
@@ -0,0 +1,25 @@
+package services;
+
+/**
+ * A saved build and its engagement score, decayed to the time it was ranked
+ *
+ * @author Lowell Buttorff
+ */
+public final class TrendingBuild {
+
+    private final long id;
+    private final double score;
+
+    public TrendingBuild(final long id, final double score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,280 @@
+package services;
+
+import models.Build;
+import models.CharacterType;
+import repositories.BuildListener;
+import repositories.BuildRepository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leaderboard of the saved builds with the most recent engagement, by CharacterType.
+ * Every view, vote and copy adds its weight to a build's score, and scores decay by half every HALF_LIFE_HOURS.
+ * Scores are kept as the log of the engagement weighted by e^(rate * time of the event),
+ * so they only ever grow, their order never changes without an event, and nothing is rescanned as time passes.
+ * Builds are ranked in a concurrent skip list per CharacterType, re-ranked on each event,
+ * so the top k are read off the head of the list.
+ * Only builds with engagement are tracked, in memory, and deleted builds are dropped.
+ * The ids of deleted builds are kept for TOMBSTONE_MINUTES, so an event that read a build just before it was deleted
+ * cannot track it again.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class TrendingBuilds implements BuildListener {
+
+    public static final int MAX_K = 100;
+    static final double HALF_LIFE_HOURS = 12;
+    // Far longer than an event takes from reading its build to being recorded
+    static final long TOMBSTONE_MINUTES = 10;
+    private static final double RATE_PER_MILLI = Math.log(2) / (HALF_LIFE_HOURS * 60 * 60 * 1000);
+    private static final CharacterType[] TYPES = CharacterType.values();
+    private static final Comparator<Rank> HIGHEST_FIRST = (first, second) -> first.logScore != second.logScore
+            ? Double.compare(second.logScore, first.logScore) : Long.compare(first.id, second.id);
+
+    /**
+     * Ways of engaging with a saved build and what each adds to its score
+     */
+    public enum Engagement {
+        VIEW(1), VOTE(3), COPY(5);
+
+        private final double logWeight;
+
+        Engagement(final double weight) {
+            this.logWeight = Math.log(weight);
+        }
+    }
+
+    /**
+     * Position of a build in a leaderboard, replaced on every event
+     */
+    private static final class Rank {
+
+        final double logScore;
+        final long id;
+
+        Rank(final double logScore, final long id) {
+            this.logScore = logScore;
+            this.id = id;
+        }
+    }
+
+    /**
+     * A deleted build, remembered until it expires
+     */
+    private static final class Tombstone {
+
+        final long id;
+        final long expires;
+
+        Tombstone(final long id, final long expires) {
+            this.id = id;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Current rank of a tracked build, guarded by itself
+     */
+    private static final class Tracked {
+
+        CharacterType type;
+        Rank rank;
+        boolean removed;
+    }
+
+    private final BuildRepository buildRepository;
+    private final BuildValidator buildValidator;
+    private final Clock clock;
+    // Scores are logs of engagement decayed back to this time, so they stay small
+    private final long epoch;
+    private final Map<CharacterType, NavigableSet<Rank>> ranks = new EnumMap<>(CharacterType.class);
+    private final ConcurrentMap<Long, Tracked> tracked = new ConcurrentHashMap<>();
+    // Added before a deleted build is dropped, checked after an event tracks one, so one of the two sees the other
+    private final Set<Long> deleted = ConcurrentHashMap.newKeySet();
+    // The deleted ids in the order they expire
+    private final Queue<Tombstone> tombstones = new ConcurrentLinkedQueue<>();
+
+    @Inject
+    public TrendingBuilds(final BuildRepository buildRepository, final BuildValidator buildValidator) {
+        this(buildRepository, buildValidator, Clock.systemUTC());
+    }
+
+    public TrendingBuilds(final BuildRepository buildRepository, final BuildValidator buildValidator,
+                          final Clock clock) {
+        this.buildRepository = buildRepository;
+        this.buildValidator = buildValidator;
+        this.clock = clock;
+        this.epoch = clock.millis();
+        for(CharacterType type : TYPES) {
+            ranks.put(type, new ConcurrentSkipListSet<>(HIGHEST_FIRST));
+        }
+    }
+
+    /**
+     * Subscribes the leaderboard to the builds table the first time it is called
+     *
+     * @return CompletionStage completed once the game data is loaded and deletes of saved builds are followed
+     */
+    public CompletionStage<Void> ready() {
+        return buildValidator.catalog().thenCompose(loaded -> buildRepository.subscribe(this));
+    }
+
+    /**
+     * Adds an event to the score of a saved build
+     *
+     * @param build The unique ID of a Build
+     * @param character The unique ID of the build's Character
+     * @param engagement What happened
+     * @return CompletionStage completed once the build is re-ranked
+     */
+    public CompletionStage<Void> record(final long build, final long character, final Engagement engagement) {
+        return ready().thenCompose(done -> buildValidator.catalog()).thenAccept(catalog -> {
+            final CharacterType type = catalog.characterType(character);
+            if(type == null) {
+                return;
+            }
+            final double logWeight = engagement.logWeight + RATE_PER_MILLI * (clock.millis() - epoch);
+            final Tracked current = tracked.computeIfAbsent(build, id -> new Tracked());
+            synchronized(current) {
+                if(current.removed) {
+                    return;
+                }
+                if(deleted.contains(build)) {
+                    current.removed = true;
+                    tracked.remove(build, current);
+                    return;
+                }
+                final Rank previous = current.rank;
+                final Rank next = new Rank(previous == null
+                        ? logWeight : logAddExp(previous.logScore, logWeight), build);
+                // Added before the old rank is removed, so a concurrent read never misses the build.
+                // An event too small to move a huge score leaves an equal rank, which is kept
+                final boolean added = ranks.get(type).add(next);
+                if(previous != null && (added || current.type != type)) {
+                    ranks.get(current.type).remove(previous);
+                }
+                current.type = type;
+                current.rank = next;
+            }
+        });
+    }
+
+    /**
+     * The builds with the highest decayed score
+     *
+     * @param type Only rank builds of this CharacterType, null for builds of every type
+     * @param k The largest number to return, from 1 to MAX_K
+     * @return CompletionStage of at most k TrendingBuilds, highest score first
+     */
+    public CompletionStage<List<TrendingBuild>> trending(final CharacterType type, final int k) {
+        return ready().thenApply(done -> {
+            final List<Rank> top = new ArrayList<>();
+            final Set<Long> seen = new HashSet<>();
+            for(CharacterType candidateType : TYPES) {
+                if(type != null && type != candidateType) {
+                    continue;
+                }
+                final Iterator<Rank> ranked = ranks.get(candidateType).iterator();
+                int taken = 0;
+                while(taken < k && ranked.hasNext()) {
+                    final Rank rank = ranked.next();
+                    // A build being re-ranked may be seen at both its old and new rank, the first is the higher
+                    if(seen.add(rank.id)) {
+                        top.add(rank);
+                        taken++;
+                    }
+                }
+            }
+            top.sort(HIGHEST_FIRST);
+            final double decay = RATE_PER_MILLI * (clock.millis() - epoch);
+            final List<TrendingBuild> trending = new ArrayList<>(Math.min(k, top.size()));
+            for(int i = 0; i < k && i < top.size(); i++) {
+                trending.add(new TrendingBuild(top.get(i).id, Math.exp(top.get(i).logScore - decay)));
+            }
+            return trending;
+        });
+    }
+
+    /**
+     * @return Number of builds with engagement
+     */
+    public int size() {
+        return tracked.size();
+    }
+
+    @Override
+    public void changed(final Build previous, final Build current) {
+        if(previous == null) {
+            return;
+        }
+        if(current == null) {
+            bury(previous.getId());
+        }
+        final Tracked existing = tracked.get(previous.getId());
+        if(existing == null) {
+            return;
+        }
+        if(current == null) {
+            tracked.remove(previous.getId(), existing);
+            synchronized(existing) {
+                existing.removed = true;
+                if(existing.rank != null) {
+                    ranks.get(existing.type).remove(existing.rank);
+                }
+            }
+        } else if(previous.getCharacter() != current.getCharacter()) {
+            // Loaded by ready before the first change, so the catalog is already complete
+            final BuildCatalog catalog = buildValidator.catalog().toCompletableFuture().getNow(null);
+            if(catalog == null) {
+                throw new IllegalStateException("The game data is loaded before builds are ranked");
+            }
+            // The build keeps its score under the type of its new character
+            final CharacterType type = catalog.characterType(current.getCharacter());
+            synchronized(existing) {
+                if(existing.rank != null && type != null && type != existing.type) {
+                    ranks.get(type).add(existing.rank);
+                    ranks.get(existing.type).remove(existing.rank);
+                    existing.type = type;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remembers a deleted build and forgets the builds deleted more than TOMBSTONE_MINUTES ago
+     */
+    private void bury(final long build) {
+        final long now = clock.millis();
+        deleted.add(build);
+        tombstones.add(new Tombstone(build, now + TimeUnit.MINUTES.toMillis(TOMBSTONE_MINUTES)));
+        for(Tombstone oldest = tombstones.peek(); oldest != null && oldest.expires <= now; oldest = tombstones.peek()) {
+            if(tombstones.remove(oldest)) {
+                deleted.remove(oldest.id);
+            }
+        }
+    }
+
+    private static double logAddExp(final double first, final double second) {
+        final double max = Math.max(first, second);
+        return max + Math.log1p(Math.exp(Math.min(first, second) - max));
+    }
+}
@@ -0,0 +1,263 @@
+package services;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import models.Build;
+import models.CharacterType;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import repositories.BuildListener;
+import repositories.BuildRepository;
+import repositories.ViewerRepository;
+import repositories.ViewerSketch;
+import scala.concurrent.duration.FiniteDuration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Estimated unique viewers of every saved build, of the builds of every character and of every CharacterType,
+ * without storing who viewed what. Each viewed build has a HyperLogLog sketch of HyperLogLog.BYTES,
+ * each character a sketch of the viewers of all its builds, and a CharacterType merges the sketches of its characters.
+ * Sketches are loaded from the build_viewers table on first use, the characters' by merging their builds',
+ * and the sketches of builds with new viewers are flushed back every FLUSH_INTERVAL_MINUTES.
+ * A deleted build's sketch is dropped from memory, as is one the flush finds no build for,
+ * the viewers stay counted for its character.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class UniqueViewers implements BuildListener {
+
+    static final int FLUSH_INTERVAL_MINUTES = 1;
+
+    /**
+     * Sketch of a viewed build, guarded by itself
+     */
+    private static final class Viewed {
+
+        final HyperLogLog sketch;
+        long character;
+        long estimate;
+
+        Viewed(final long character, final HyperLogLog sketch) {
+            this.character = character;
+            this.sketch = sketch;
+            this.estimate = sketch.estimate();
+        }
+    }
+
+    private final ViewerRepository viewerRepository;
+    private final BuildRepository buildRepository;
+    private final BuildValidator buildValidator;
+    private final ConcurrentMap<Long, Viewed> builds = new ConcurrentHashMap<>();
+    // Each sketch is guarded by itself
+    private final ConcurrentMap<Long, HyperLogLog> characters = new ConcurrentHashMap<>();
+    // Builds whose sketch changed since the last flush
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<CompletableFuture<Void>> loading = new AtomicReference<>();
+
+    @Inject
+    public UniqueViewers(final ViewerRepository viewerRepository, final BuildRepository buildRepository,
+                         final BuildValidator buildValidator, final ActorSystem actorSystem,
+                         final ApplicationLifecycle lifecycle) {
+        this(viewerRepository, buildRepository, buildValidator);
+        final FiniteDuration interval = FiniteDuration.create(FLUSH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        final Cancellable flushes = actorSystem.scheduler().schedule(interval, interval, () -> flush()
+                .whenComplete((done, failure) -> {
+                    if(failure != null) {
+                        Logger.error("Flushing viewer sketches failed", failure);
+                    }
+                }), actorSystem.dispatcher());
+        lifecycle.addStopHook(() -> {
+            flushes.cancel();
+            return flush();
+        });
+    }
+
+    public UniqueViewers(final ViewerRepository viewerRepository, final BuildRepository buildRepository,
+                         final BuildValidator buildValidator) {
+        this.viewerRepository = viewerRepository;
+        this.buildRepository = buildRepository;
+        this.buildValidator = buildValidator;
+    }
+
+    /**
+     * Loads the sketches from the build_viewers table and subscribes to the builds table the first time it is called
+     *
+     * @return CompletionStage completed once the sketches are loaded and deletes of saved builds are followed
+     */
+    public CompletionStage<Void> ready() {
+        return load().thenCompose(done -> buildRepository.subscribe(this));
+    }
+
+    private CompletionStage<Void> load() {
+        while(true) {
+            final CompletableFuture<Void> current = loading.get();
+            if(current != null) {
+                return current;
+            }
+            final CompletableFuture<Void> started = new CompletableFuture<>();
+            if(loading.compareAndSet(null, started)) {
+                viewerRepository.all().whenComplete((sketches, failure) -> {
+                    if(failure != null) {
+                        loading.compareAndSet(started, null);
+                        started.completeExceptionally(failure);
+                        return;
+                    }
+                    for(ViewerSketch row : sketches) {
+                        final HyperLogLog sketch = HyperLogLog.of(row.getSketch());
+                        builds.put(row.getBuild(), new Viewed(row.getCharacter(), sketch));
+                        characters.computeIfAbsent(row.getCharacter(), id -> new HyperLogLog()).merge(sketch);
+                    }
+                    started.complete(null);
+                });
+                return started;
+            }
+        }
+    }
+
+    /**
+     * Counts a view of a saved build
+     *
+     * @param build The unique ID of a Build
+     * @param character The unique ID of the build's Character
+     * @param viewer Identifies the viewer, only its hash is kept
+     * @return CompletionStage of the estimated unique viewers of the build, including this one
+     */
+    public CompletionStage<Long> view(final long build, final long character, final String viewer) {
+        return ready().thenApply(done -> {
+            final long hash = HyperLogLog.hash(viewer);
+            final Viewed viewed = builds.computeIfAbsent(build, id -> new Viewed(character, new HyperLogLog()));
+            final long estimate;
+            synchronized(viewed) {
+                viewed.character = character;
+                if(viewed.sketch.add(hash)) {
+                    viewed.estimate = viewed.sketch.estimate();
+                    dirty.add(build);
+                }
+                estimate = viewed.estimate;
+            }
+            final HyperLogLog characterSketch = characters.computeIfAbsent(character, id -> new HyperLogLog());
+            synchronized(characterSketch) {
+                characterSketch.add(hash);
+            }
+            return estimate;
+        });
+    }
+
+    /**
+     * @param build The unique ID of a Build
+     * @return CompletionStage of the estimated unique viewers of the build
+     */
+    public CompletionStage<Long> viewers(final long build) {
+        return ready().thenApply(done -> {
+            final Viewed viewed = builds.get(build);
+            if(viewed == null) {
+                return 0L;
+            }
+            synchronized(viewed) {
+                return viewed.estimate;
+            }
+        });
+    }
+
+    /**
+     * @param character The unique ID of a Character
+     * @return CompletionStage of the estimated unique viewers of any build of the character
+     */
+    public CompletionStage<Long> characterViewers(final long character) {
+        return ready().thenApply(done -> {
+            final HyperLogLog sketch = characters.get(character);
+            if(sketch == null) {
+                return 0L;
+            }
+            synchronized(sketch) {
+                return sketch.estimate();
+            }
+        });
+    }
+
+    /**
+     * Merges the sketches of every character of a type, so a viewer of builds of many characters counts once
+     *
+     * @param type The CharacterType
+     * @return CompletionStage of the estimated unique viewers of any build of a character of the type
+     */
+    public CompletionStage<Long> typeViewers(final CharacterType type) {
+        return ready().thenCompose(done -> buildValidator.catalog()).thenApply(catalog -> {
+            final HyperLogLog merged = new HyperLogLog();
+            for(Map.Entry<Long, HyperLogLog> character : characters.entrySet()) {
+                if(catalog.characterType(character.getKey()) == type) {
+                    synchronized(character.getValue()) {
+                        merged.merge(character.getValue());
+                    }
+                }
+            }
+            return merged.estimate();
+        });
+    }
+
+    /**
+     * Writes the sketches of the builds with new viewers to the build_viewers table.
+     * If writing fails they are written by the next flush.
+     *
+     * @return CompletionStage completed once the sketches are written
+     */
+    public CompletionStage<Void> flush() {
+        return ready().thenCompose(done -> {
+            final List<ViewerSketch> rows = new ArrayList<>();
+            final Iterator<Long> changed = dirty.iterator();
+            while(changed.hasNext()) {
+                final long build = changed.next();
+                changed.remove();
+                final Viewed viewed = builds.get(build);
+                if(viewed == null) {
+                    // Deleted since it was viewed
+                    continue;
+                }
+                synchronized(viewed) {
+                    rows.add(new ViewerSketch(build, viewed.character, viewed.sketch.toBytes()));
+                }
+            }
+            if(rows.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Logger.info("Flushing {} viewer sketches", rows.size());
+            return viewerRepository.flush(rows).handle((dropped, failure) -> {
+                if(failure != null) {
+                    for(ViewerSketch row : rows) {
+                        dirty.add(row.getBuild());
+                    }
+                    throw failure instanceof CompletionException
+                            ? (CompletionException) failure : new CompletionException(failure);
+                }
+                // Viewed while they were deleted, their sketches have nowhere to go
+                for(Long build : dropped) {
+                    builds.remove(build);
+                }
+                return null;
+            });
+        });
+    }
+
+    @Override
+    public void changed(final Build previous, final Build current) {
+        if(previous != null && current == null) {
+            builds.remove(previous.getId());
+            dirty.remove(previous.getId());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package services;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import models.Build;
+import models.CharacterType;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import repositories.BuildListener;
+import repositories.BuildRepository;
+import repositories.UsageCount;
+import repositories.UsageRepository;
+import scala.concurrent.duration.FiniteDuration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counts of how many saved builds pick each perk, item and addon, split by the CharacterType of the build.
+ * Counts are LongAdders, which spread concurrent updates over cells instead of contending on one value,
+ * and the most picked of each CharacterType are tracked with HeavyHitters so they are found without a scan.
+ * The counts are loaded from the builds table on first use, kept current as builds are written
+ * and flushed to the usage_counts table every FLUSH_INTERVAL_MINUTES.
+ * Each build is counted under the type its character had when it was counted, and the ids of the builds counted
+ * under each type are kept in a bitmap, so a build is counted down from the same type after its character changes type.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class UsageCounters implements BuildListener {
+
+    public static final int MAX_K = 100;
+    static final int FLUSH_INTERVAL_MINUTES = 1;
+    // Candidates kept per CharacterType, more than MAX_K so keys near the cut are not lost to sketch error
+    static final int CANDIDATES = 2 * MAX_K;
+
+    private static final BuildQuery.Slot[] SLOTS =
+            {BuildQuery.Slot.PERK, BuildQuery.Slot.ITEM, BuildQuery.Slot.ADDON};
+    private static final CharacterType[] TYPES = CharacterType.values();
+
+    /**
+     * Counts of one slot for builds of one CharacterType
+     */
+    private static final class Counters {
+
+        final ConcurrentMap<Long, LongAdder> picks = new ConcurrentHashMap<>();
+        final HeavyHitters popular = new HeavyHitters(new CountMinSketch(4, 12), CANDIDATES);
+
+        void add(final long id, final long delta) {
+            picks.computeIfAbsent(id, key -> new LongAdder()).add(delta);
+            popular.add(id, delta);
+        }
+
+        long picks(final long id) {
+            final LongAdder count = picks.get(id);
+            return count == null ? 0 : count.sum();
+        }
+    }
+
+    private final BuildRepository buildRepository;
+    private final BuildValidator buildValidator;
+    private final UsageRepository usageRepository;
+    private final Map<BuildQuery.Slot, Counters[]> counters = new EnumMap<>(BuildQuery.Slot.class);
+    // Ids of the builds counted under each CharacterType, each guarded by itself
+    private final Roaring64NavigableMap[] countedAs = new Roaring64NavigableMap[TYPES.length];
+
+    @Inject
+    public UsageCounters(final BuildRepository buildRepository, final BuildValidator buildValidator,
+                         final UsageRepository usageRepository, final ActorSystem actorSystem,
+                         final ApplicationLifecycle lifecycle) {
+        this(buildRepository, buildValidator, usageRepository);
+        final FiniteDuration interval = FiniteDuration.create(FLUSH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        final Cancellable flushes = actorSystem.scheduler().schedule(interval, interval, () -> flush()
+                .whenComplete((done, failure) -> {
+                    if(failure != null) {
+                        Logger.error("Flushing usage counts failed", failure);
+                    }
+                }), actorSystem.dispatcher());
+        lifecycle.addStopHook(() -> {
+            flushes.cancel();
+            return flush();
+        });
+    }
+
+    public UsageCounters(final BuildRepository buildRepository, final BuildValidator buildValidator,
+                         final UsageRepository usageRepository) {
+        this.buildRepository = buildRepository;
+        this.buildValidator = buildValidator;
+        this.usageRepository = usageRepository;
+        for(BuildQuery.Slot slot : SLOTS) {
+            final Counters[] types = new Counters[TYPES.length];
+            for(int type = 0; type < types.length; type++) {
+                types[type] = new Counters();
+            }
+            counters.put(slot, types);
+        }
+        for(int type = 0; type < countedAs.length; type++) {
+            countedAs[type] = new Roaring64NavigableMap();
+        }
+    }
+
+    /**
+     * Loads the game data, then subscribes the counters to the builds table the first time it is called.
+     * The game data is in memory before any build is counted, so counting never waits on it.
+     *
+     * @return CompletionStage completed once the counters hold every saved build
+     */
+    public CompletionStage<Void> ready() {
+        return buildValidator.catalog().thenCompose(loaded -> buildRepository.subscribe(this));
+    }
+
+    /**
+     * The most picked perks, items or addons
+     *
+     * @param slot PERK, ITEM or ADDON
+     * @param type Only count builds of this CharacterType, null for builds of every type
+     * @param k The largest number to return, from 1 to MAX_K
+     * @return CompletionStage of at most k PickCounts, most picked first
+     */
+    public CompletionStage<List<PickCount>> popular(final BuildQuery.Slot slot, final CharacterType type,
+                                                    final int k) {
+        return ready().thenApply(done -> {
+            final Counters[] types = counters.get(slot);
+            final Map<Long, Long> picks = new HashMap<>();
+            for(CharacterType candidateType : TYPES) {
+                if(type != null && type != candidateType) {
+                    continue;
+                }
+                for(long id : types[candidateType.ordinal()].popular.top(k)) {
+                    picks.merge(id, types[candidateType.ordinal()].picks(id), Long::sum);
+                }
+            }
+            final List<PickCount> top = new ArrayList<>();
+            for(Map.Entry<Long, Long> entry : picks.entrySet()) {
+                // Candidates are ranked by estimate, the exact count decides
+                if(entry.getValue() > 0) {
+                    top.add(new PickCount(entry.getKey(), entry.getValue()));
+                }
+            }
+            top.sort((first, second) -> first.getPicks() != second.getPicks()
+                    ? Long.compare(second.getPicks(), first.getPicks()) : Long.compare(first.getId(), second.getId()));
+            return top.size() > k ? new ArrayList<>(top.subList(0, k)) : top;
+        });
+    }
+
+    /**
+     * Writes every count to the usage_counts table
+     *
+     * @return CompletionStage completed once the counts are written
+     */
+    public CompletionStage<Void> flush() {
+        return ready().thenCompose(done -> {
+            final List<UsageCount> rows = new ArrayList<>();
+            for(BuildQuery.Slot slot : SLOTS) {
+                for(CharacterType type : TYPES) {
+                    counters.get(slot)[type.ordinal()].picks.forEach((id, picks) ->
+                            rows.add(new UsageCount(slot.name(), type, id, picks.sum())));
+                }
+            }
+            Logger.info("Flushing {} usage counts", rows.size());
+            return usageRepository.flush(rows);
+        });
+    }
+
+    @Override
+    public void changed(final Build previous, final Build current) {
+        if(previous != null) {
+            uncount(previous);
+        }
+        if(current != null) {
+            // Loaded by ready before the first change, so the catalog is already complete
+            final BuildCatalog catalog = buildValidator.catalog().toCompletableFuture().getNow(null);
+            if(catalog == null) {
+                throw new IllegalStateException("The game data is loaded before builds are counted");
+            }
+            // A build whose character was deleted is not counted
+            final CharacterType type = catalog.characterType(current.getCharacter());
+            if(type != null) {
+                synchronized(countedAs[type.ordinal()]) {
+                    countedAs[type.ordinal()].addLong(current.getId());
+                }
+                count(type, current, 1);
+            }
+        }
+    }
+
+    /**
+     * Counts a build down from the type it was counted under, if it was counted
+     */
+    private void uncount(final Build build) {
+        final long id = build.getId();
+        for(CharacterType type : TYPES) {
+            final boolean counted;
+            synchronized(countedAs[type.ordinal()]) {
+                counted = countedAs[type.ordinal()].contains(id);
+                if(counted) {
+                    countedAs[type.ordinal()].removeLong(id);
+                }
+            }
+            if(counted) {
+                count(type, build, -1);
+                return;
+            }
+        }
+    }
+
+    private void count(final CharacterType type, final Build build, final long delta) {
+        for(Long perk : build.getPerks()) {
+            counters.get(BuildQuery.Slot.PERK)[type.ordinal()].add(perk, delta);
+        }
+        if(build.getItem() != null) {
+            counters.get(BuildQuery.Slot.ITEM)[type.ordinal()].add(build.getItem(), delta);
+        }
+        for(Long addon : build.getAddons()) {
+            counters.get(BuildQuery.Slot.ADDON)[type.ordinal()].add(addon, delta);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package services;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Fork-join execution context for CPU bound work on builds, such as validating them in bulk,
+ * configured by validation.dispatcher in application.conf
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class ValidationExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public ValidationExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "validation.dispatcher");
+    }
+}
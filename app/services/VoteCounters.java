@@ -0,0 +1,375 @@
+package services;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import com.typesafe.config.Config;
+import models.Build;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import repositories.BuildListener;
+import repositories.BuildRepository;
+import repositories.VoteRepository;
+import scala.concurrent.duration.FiniteDuration;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Vote totals of saved builds, counted in memory and written behind to the build_votes table.
+ * A vote only takes the lock of one of SHARDS shards, picked by thread, appends to the shard's VoteLog
+ * and adds to the shard's pending counts, so votes on one hot build never wait on its row in the database.
+ * Every flush interval the pending counts of all shards are summed and each voted build's row is written once.
+ * Votes are durable at least once: logs are only deleted after their votes are committed,
+ * and the logs left by a crash are counted again on start, which repeats any votes committed just before it.
+ * The votes of a deleted build are dropped from memory, as are those the database has no build for.
+ *
+ * @author Lowell Buttorff
+ */
+@Singleton
+public class VoteCounters implements BuildListener {
+
+    static final int SHARDS = 16;
+    private static final String PREFIX = "votes-";
+
+    /**
+     * Votes taken by one shard since its last flush
+     */
+    private static final class Shard {
+
+        // All guarded by the shard, the log is opened by the first vote after a flush
+        VoteLog log;
+        LongCountMap pending = new LongCountMap();
+    }
+
+    private final VoteRepository voteRepository;
+    private final BuildRepository buildRepository;
+    private final Path directory;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final AtomicReference<CompletableFuture<Void>> loading = new AtomicReference<>();
+    private final AtomicBoolean flushRunning = new AtomicBoolean();
+    // Moving votes between shards, flushing and persisted takes the write lock, so reads never miss or repeat them
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Totals in the database and votes taken out of the shards but not committed yet, guarded by lock
+    private final LongCountMap persisted = new LongCountMap();
+    private LongCountMap flushing = new LongCountMap();
+    // Builds deleted since the last load or commit, totals read or written before their delete are not kept
+    private final Set<Long> deleted = new HashSet<>();
+    // Logs whose votes are all out of the shards, deleted once committed. Only touched by the running flush
+    private final List<Path> sealed = new ArrayList<>();
+    // Numbers the logs, so a new log never reopens one waiting to be deleted
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Inject
+    public VoteCounters(final VoteRepository voteRepository, final BuildRepository buildRepository,
+                        final Config config, final ActorSystem actorSystem, final ApplicationLifecycle lifecycle) {
+        this(voteRepository, buildRepository, Paths.get(config.getString("votes.log-directory")));
+        final FiniteDuration interval = FiniteDuration.create(
+                config.getDuration("votes.flush-interval", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        final Cancellable flushes = actorSystem.scheduler().schedule(interval, interval, () -> flush()
+                .whenComplete((done, failure) -> {
+                    if(failure != null) {
+                        Logger.error("Flushing votes failed", failure);
+                    }
+                }), actorSystem.dispatcher());
+        lifecycle.addStopHook(() -> {
+            flushes.cancel();
+            return flush().whenComplete((done, failure) -> close());
+        });
+    }
+
+    /**
+     * Keeps logs in a directory, after counting the votes of the logs already there
+     *
+     * @param voteRepository The build_votes table
+     * @param buildRepository The builds table, whose deletes drop the votes of the build
+     * @param directory Directory of the logs, created if missing
+     * @throws UncheckedIOException if the logs could not be read
+     */
+    public VoteCounters(final VoteRepository voteRepository, final BuildRepository buildRepository,
+                        final Path directory) {
+        this.voteRepository = voteRepository;
+        this.buildRepository = buildRepository;
+        this.directory = directory;
+        for(int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        try {
+            Files.createDirectories(directory);
+            try(DirectoryStream<Path> logs = Files.newDirectoryStream(directory, PREFIX + "*" + VoteLog.SUFFIX)) {
+                for(Path log : logs) {
+                    VoteLog.replay(log, shards[0].pending::add);
+                    sealed.add(log);
+                    sequence.set(Math.max(sequence.get(), sequenceOf(log)));
+                }
+            }
+            if(!sealed.isEmpty()) {
+                Logger.info("Recounted votes of {} builds from {} logs", shards[0].pending.size(), sealed.size());
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Subscribes to the builds table, then loads the vote totals from the build_votes table the first time it is called
+     *
+     * @return CompletionStage completed once the totals are loaded
+     */
+    public CompletionStage<Void> ready() {
+        while(true) {
+            final CompletableFuture<Void> current = loading.get();
+            if(current != null) {
+                return current;
+            }
+            final CompletableFuture<Void> started = new CompletableFuture<>();
+            if(loading.compareAndSet(null, started)) {
+                buildRepository.subscribe(this).thenCompose(subscribed -> voteRepository.all())
+                        .whenComplete((votes, failure) -> {
+                            if(failure != null) {
+                                loading.compareAndSet(started, null);
+                                started.completeExceptionally(failure);
+                                return;
+                            }
+                            lock.writeLock().lock();
+                            try {
+                                for(Map.Entry<Long, Long> total : votes.entrySet()) {
+                                    if(total.getValue() != 0 && !deleted.contains(total.getKey())) {
+                                        persisted.add(total.getKey(), total.getValue());
+                                    }
+                                }
+                                deleted.clear();
+                            } finally {
+                                lock.writeLock().unlock();
+                            }
+                            started.complete(null);
+                        });
+                return started;
+            }
+        }
+    }
+
+    /**
+     * Counts a vote, it is in the log when this returns
+     *
+     * @param build The unique ID of a Build
+     * @param delta The vote, not 0
+     * @throws UncheckedIOException if the vote could not be logged, it is not counted then
+     */
+    public void vote(final long build, final long delta) {
+        final Shard shard = shards[(int) (Thread.currentThread().getId() % SHARDS)];
+        synchronized(shard) {
+            try {
+                if(shard.log == null) {
+                    shard.log = new VoteLog(nextLogPath());
+                }
+                shard.log.append(build, delta);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            shard.pending.add(build, delta);
+        }
+    }
+
+    /**
+     * @param build The unique ID of a Build
+     * @return CompletionStage of the vote total of the build, including votes not yet written to the database
+     */
+    public CompletionStage<Long> votes(final long build) {
+        return ready().thenApply(done -> {
+            lock.readLock().lock();
+            try {
+                long votes = persisted.get(build) + flushing.get(build);
+                for(Shard shard : shards) {
+                    synchronized(shard) {
+                        votes += shard.pending.get(build);
+                    }
+                }
+                return votes;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Writes the votes taken since the last flush to the build_votes table and deletes their logs.
+     * Votes keep being taken while the flush runs, a flush called while another runs does nothing.
+     * If writing fails the votes are kept and written by the next flush.
+     *
+     * @return CompletionStage completed once the votes are written
+     */
+    public CompletionStage<Void> flush() {
+        return ready().thenCompose(done -> {
+            if(!flushRunning.compareAndSet(false, true)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final Map<Long, Long> deltas;
+            try {
+                deltas = seal();
+            } catch(RuntimeException e) {
+                flushRunning.set(false);
+                final CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            final List<Path> covered = new ArrayList<>(sealed);
+            final CompletionStage<Set<Long>> written = deltas.isEmpty()
+                    ? CompletableFuture.completedFuture(Collections.emptySet()) : voteRepository.apply(deltas);
+            return written.whenComplete((dropped, failure) -> {
+                try {
+                    if(failure == null) {
+                        commit(deltas, dropped);
+                        delete(covered);
+                        Logger.info("Flushed votes of {} builds", deltas.size());
+                    }
+                } finally {
+                    flushRunning.set(false);
+                }
+            }).thenApply(dropped -> null);
+        });
+    }
+
+    /**
+     * Drops the votes of deleted builds, the build_votes rows go with the build
+     */
+    @Override
+    public void changed(final Build previous, final Build current) {
+        if(previous == null || current != null) {
+            return;
+        }
+        final long build = previous.getId();
+        lock.writeLock().lock();
+        try {
+            persisted.add(build, -persisted.get(build));
+            flushing.add(build, -flushing.get(build));
+            for(Shard shard : shards) {
+                synchronized(shard) {
+                    shard.pending.add(build, -shard.pending.get(build));
+                }
+            }
+            deleted.add(build);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the pending votes of every shard to flushing and seals the logs of the shards that took votes.
+     * Logs are forced to the disk after the lock is released, no vote can reach them by then.
+     *
+     * @return Every vote not yet committed, by build id
+     */
+    private Map<Long, Long> seal() {
+        final List<VoteLog> previous = new ArrayList<>();
+        final Map<Long, Long> deltas;
+        lock.writeLock().lock();
+        try {
+            for(Shard shard : shards) {
+                synchronized(shard) {
+                    if(shard.log != null) {
+                        previous.add(shard.log);
+                        sealed.add(shard.log.path());
+                        shard.log = null;
+                    }
+                    shard.pending.forEach(flushing::add);
+                    shard.pending = new LongCountMap();
+                }
+            }
+            deltas = new HashMap<>(flushing.size() * 2);
+            flushing.forEach(deltas::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for(VoteLog log : previous) {
+            try {
+                log.seal();
+            } catch(IOException e) {
+                // The votes are still flushed, only the log may not survive the machine going down
+                Logger.warn("Could not force vote log {} to disk", log.path());
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Adds the written votes to the totals, without those of builds deleted since the last commit or not found
+     *
+     * @param deltas The votes written
+     * @param dropped The ids of the builds the database had no row for
+     */
+    private void commit(final Map<Long, Long> deltas, final Set<Long> dropped) {
+        lock.writeLock().lock();
+        try {
+            for(Map.Entry<Long, Long> delta : deltas.entrySet()) {
+                if(!dropped.contains(delta.getKey()) && !deleted.contains(delta.getKey())) {
+                    persisted.add(delta.getKey(), delta.getValue());
+                }
+            }
+            deleted.clear();
+            flushing = new LongCountMap();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void delete(final List<Path> logs) {
+        for(Path log : logs) {
+            try {
+                Files.deleteIfExists(log);
+                sealed.remove(log);
+            } catch(IOException e) {
+                // Left for the next flush, its votes are only recounted if the process dies first
+                Logger.warn("Could not delete vote log {}", log);
+            }
+        }
+    }
+
+    private void close() {
+        for(Shard shard : shards) {
+            synchronized(shard) {
+                if(shard.log == null) {
+                    continue;
+                }
+                try {
+                    shard.log.close();
+                } catch(IOException e) {
+                    Logger.warn("Could not close vote log {}", shard.log.path());
+                }
+            }
+        }
+    }
+
+    private Path nextLogPath() {
+        return directory.resolve(PREFIX + sequence.incrementAndGet() + VoteLog.SUFFIX);
+    }
+
+    private static long sequenceOf(final Path log) {
+        final String name = log.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - VoteLog.SUFFIX.length()));
+        } catch(RuntimeException e) {
+            return 0;
+        }
+    }
+}
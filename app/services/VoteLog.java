@@ -0,0 +1,96 @@
+package services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of votes, one fixed size record of build id and delta per vote.
+ * A vote is written to the operating system before it is counted, so it survives the process dying
+ * until the votes are in the database and the file is deleted.
+ * It only reaches the disk, and survives the machine going down, once the log is sealed.
+ * Not thread-safe.
+ *
+ * @author Lowell Buttorff
+ */
+final class VoteLog {
+
+    static final String SUFFIX = ".log";
+    static final int RECORD_SIZE = 2 * Long.BYTES;
+
+    /**
+     * Receives the votes of a log
+     */
+    interface VoteConsumer {
+        void accept(long build, long delta);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    VoteLog(final Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return The file of the log
+     */
+    Path path() {
+        return path;
+    }
+
+    /**
+     * @param build The unique ID of a Build
+     * @param delta The vote
+     * @throws IOException if the record could not be written
+     */
+    void append(final long build, final long delta) throws IOException {
+        record.clear();
+        record.putLong(build).putLong(delta).flip();
+        while(record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Forces every record written to the disk and closes the log, no more votes are appended to it
+     *
+     * @throws IOException if the records could not be forced to the disk
+     */
+    void seal() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads back every whole record of a log, a record cut short by a crash is ignored
+     *
+     * @param path The file of the log
+     * @param consumer Receives every vote in the order written
+     * @throws IOException if the file could not be read
+     */
+    static void replay(final Path path, final VoteConsumer consumer) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            while(channel.read(records) > 0) {
+                records.flip();
+                while(records.remaining() >= RECORD_SIZE) {
+                    consumer.accept(records.getLong(), records.getLong());
+                }
+                records.compact();
+            }
+        }
+    }
+}
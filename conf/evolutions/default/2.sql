@@ -0,0 +1,23 @@
+# --- Indexes for filtering game data by type and name prefix
+
+# --- !Ups
+
+create index ix_addons_type_name on addons (type, name);
+
+create index ix_characters_type_name on characters (type, name);
+
+create index ix_items_type_name on items (type, name);
+
+create index ix_perks_type_name on perks (type, name);
+
+
+# --- !Downs
+
+drop index if exists ix_addons_type_name;
+
+drop index if exists ix_characters_type_name;
+
+drop index if exists ix_items_type_name;
+
+drop index if exists ix_perks_type_name;
+
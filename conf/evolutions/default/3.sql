@@ -0,0 +1,23 @@
+# --- Builds made of a character, perks, an item and addons
+
+# --- !Ups
+
+create table builds (
+  id                            bigint auto_increment not null,
+  character_id                  bigint not null,
+  perk1_id                      bigint,
+  perk2_id                      bigint,
+  perk3_id                      bigint,
+  perk4_id                      bigint,
+  item_id                       bigint,
+  addon1_id                     bigint,
+  addon2_id                     bigint,
+  constraint pk_builds primary key (id)
+);
+
+create index ix_builds_character_id on builds (character_id);
+
+
+# --- !Downs
+
+drop table if exists builds;
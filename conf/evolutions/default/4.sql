@@ -0,0 +1,24 @@
+# --- Numeric effect attributes that builds are scored by
+
+# --- !Ups
+
+alter table addons add column rarity integer default 0 not null;
+alter table addons add column potency double default 0 not null;
+
+alter table items add column rarity integer default 0 not null;
+alter table items add column potency double default 0 not null;
+
+alter table perks add column rarity integer default 0 not null;
+alter table perks add column potency double default 0 not null;
+
+
+# --- !Downs
+
+alter table addons drop column if exists rarity;
+alter table addons drop column if exists potency;
+
+alter table items drop column if exists rarity;
+alter table items drop column if exists potency;
+
+alter table perks drop column if exists rarity;
+alter table perks drop column if exists potency;
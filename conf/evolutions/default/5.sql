@@ -0,0 +1,123 @@
+# --- Loadouts stored once and shared by every build using them
+
+# --- !Ups
+
+create table build_contents (
+  id                            bigint auto_increment not null,
+  content_key                   varchar(255) not null,
+  character_id                  bigint not null,
+  perk1_id                      bigint,
+  perk2_id                      bigint,
+  perk3_id                      bigint,
+  perk4_id                      bigint,
+  item_id                       bigint,
+  addon1_id                     bigint,
+  addon2_id                     bigint,
+  constraint uq_build_contents_content_key unique (content_key),
+  constraint pk_build_contents primary key (id)
+);
+
+create index ix_build_contents_character_id on build_contents (character_id);
+
+-- Existing builds get the content key BuildContent computes, the hex SHA-256 of
+-- "character|[perks]|item|[addons]" with the perks and addons in increasing order, so identical loadouts share one
+-- content and dedupe with later saves of the same loadout
+create table legacy_slots (
+  build_id                      bigint not null,
+  kind                          varchar(5) not null,
+  slot_id                       bigint not null
+);
+
+insert into legacy_slots (build_id, kind, slot_id)
+  select id, 'perk', perk1_id from builds where perk1_id is not null
+  union all select id, 'perk', perk2_id from builds where perk2_id is not null
+  union all select id, 'perk', perk3_id from builds where perk3_id is not null
+  union all select id, 'perk', perk4_id from builds where perk4_id is not null
+  union all select id, 'addon', addon1_id from builds where addon1_id is not null
+  union all select id, 'addon', addon2_id from builds where addon2_id is not null;
+
+-- The n-th smallest slot of a kind is the one with fewer than n slots below it and at least n up to it
+create table legacy_contents as
+  select b.id as build_id,
+    lower(cast(hash('SHA256', stringtoutf8(concat(b.character_id, '|[',
+      coalesce((select group_concat(s.slot_id order by s.slot_id separator ', ') from legacy_slots s
+        where s.build_id = b.id and s.kind = 'perk'), ''), ']|',
+      coalesce(cast(b.item_id as varchar), 'null'), '|[',
+      coalesce((select group_concat(s.slot_id order by s.slot_id separator ', ') from legacy_slots s
+        where s.build_id = b.id and s.kind = 'addon'), ''), ']')), 1) as varchar)) as content_key,
+    b.character_id,
+    (select max(s.slot_id) from legacy_slots s where s.build_id = b.id and s.kind = 'perk'
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id < s.slot_id) < 1
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id <= s.slot_id) >= 1) as perk1_id,
+    (select max(s.slot_id) from legacy_slots s where s.build_id = b.id and s.kind = 'perk'
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id < s.slot_id) < 2
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id <= s.slot_id) >= 2) as perk2_id,
+    (select max(s.slot_id) from legacy_slots s where s.build_id = b.id and s.kind = 'perk'
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id < s.slot_id) < 3
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id <= s.slot_id) >= 3) as perk3_id,
+    (select max(s.slot_id) from legacy_slots s where s.build_id = b.id and s.kind = 'perk'
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id < s.slot_id) < 4
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'perk' and t.slot_id <= s.slot_id) >= 4) as perk4_id,
+    b.item_id,
+    (select max(s.slot_id) from legacy_slots s where s.build_id = b.id and s.kind = 'addon'
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'addon' and t.slot_id < s.slot_id) < 1
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'addon' and t.slot_id <= s.slot_id) >= 1) as addon1_id,
+    (select max(s.slot_id) from legacy_slots s where s.build_id = b.id and s.kind = 'addon'
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'addon' and t.slot_id < s.slot_id) < 2
+      and (select count(*) from legacy_slots t where t.build_id = b.id and t.kind = 'addon' and t.slot_id <= s.slot_id) >= 2) as addon2_id
+  from builds b;
+
+insert into build_contents (content_key, character_id, perk1_id, perk2_id, perk3_id, perk4_id, item_id, addon1_id, addon2_id)
+  select content_key, min(character_id), min(perk1_id), min(perk2_id), min(perk3_id), min(perk4_id), min(item_id),
+    min(addon1_id), min(addon2_id)
+  from legacy_contents
+  group by content_key;
+
+alter table builds add column content_id bigint;
+update builds set content_id = (select c.id from build_contents c join legacy_contents l on l.content_key = c.content_key
+  where l.build_id = builds.id);
+drop table legacy_contents;
+drop table legacy_slots;
+
+alter table builds alter column content_id set not null;
+alter table builds add constraint fk_builds_content_id foreign key (content_id) references build_contents (id);
+create index ix_builds_content_id on builds (content_id);
+
+drop index if exists ix_builds_character_id;
+alter table builds drop column character_id;
+alter table builds drop column perk1_id;
+alter table builds drop column perk2_id;
+alter table builds drop column perk3_id;
+alter table builds drop column perk4_id;
+alter table builds drop column item_id;
+alter table builds drop column addon1_id;
+alter table builds drop column addon2_id;
+
+
+# --- !Downs
+
+alter table builds add column character_id bigint;
+alter table builds add column perk1_id bigint;
+alter table builds add column perk2_id bigint;
+alter table builds add column perk3_id bigint;
+alter table builds add column perk4_id bigint;
+alter table builds add column item_id bigint;
+alter table builds add column addon1_id bigint;
+alter table builds add column addon2_id bigint;
+update builds set
+  character_id = (select c.character_id from build_contents c where c.id = builds.content_id),
+  perk1_id = (select c.perk1_id from build_contents c where c.id = builds.content_id),
+  perk2_id = (select c.perk2_id from build_contents c where c.id = builds.content_id),
+  perk3_id = (select c.perk3_id from build_contents c where c.id = builds.content_id),
+  perk4_id = (select c.perk4_id from build_contents c where c.id = builds.content_id),
+  item_id = (select c.item_id from build_contents c where c.id = builds.content_id),
+  addon1_id = (select c.addon1_id from build_contents c where c.id = builds.content_id),
+  addon2_id = (select c.addon2_id from build_contents c where c.id = builds.content_id);
+alter table builds alter column character_id set not null;
+create index ix_builds_character_id on builds (character_id);
+
+alter table builds drop constraint if exists fk_builds_content_id;
+drop index if exists ix_builds_content_id;
+alter table builds drop column content_id;
+
+drop table if exists build_contents;
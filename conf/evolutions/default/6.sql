@@ -0,0 +1,17 @@
+# --- Pick counts of game data in saved builds, flushed from memory on a schedule
+
+# --- !Ups
+
+create table usage_counts (
+  slot                          varchar(16) not null,
+  character_type                varchar(16) not null,
+  entry_id                      bigint not null,
+  picks                         bigint not null,
+  updated_at                    timestamp not null,
+  constraint pk_usage_counts primary key (slot, character_type, entry_id)
+);
+
+
+# --- !Downs
+
+drop table if exists usage_counts;
@@ -0,0 +1,18 @@
+# --- Vote totals of saved builds, written behind from counters kept in memory
+
+# --- !Ups
+
+create table build_votes (
+  build_id                      bigint not null,
+  votes                         bigint not null,
+  constraint pk_build_votes primary key (build_id)
+);
+
+alter table build_votes add constraint fk_build_votes_build_id foreign key (build_id) references builds (id) on delete cascade on update restrict;
+
+
+# --- !Downs
+
+alter table build_votes drop constraint if exists fk_build_votes_build_id;
+
+drop table if exists build_votes;
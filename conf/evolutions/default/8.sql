@@ -0,0 +1,20 @@
+# --- HyperLogLog sketches of the unique viewers of saved builds, flushed from memory on a schedule
+
+# --- !Ups
+
+create table build_viewers (
+  build_id                      bigint not null,
+  character_id                  bigint not null,
+  sketch                        varbinary(768) not null,
+  updated_at                    timestamp not null,
+  constraint pk_build_viewers primary key (build_id)
+);
+
+alter table build_viewers add constraint fk_build_viewers_build_id foreign key (build_id) references builds (id) on delete cascade on update restrict;
+
+
+# --- !Downs
+
+alter table build_viewers drop constraint if exists fk_build_viewers_build_id;
+
+drop table if exists build_viewers;
@@ -0,0 +1,47 @@
+# --- Counts of saved builds by character and perk and by character and addon, kept current with every build write
+
+# --- !Ups
+
+create table character_perk_stats (
+  character_id                  bigint not null,
+  perk_id                       bigint not null,
+  builds                        bigint not null,
+  constraint pk_character_perk_stats primary key (character_id, perk_id)
+);
+
+create table character_addon_stats (
+  character_id                  bigint not null,
+  addon_id                      bigint not null,
+  builds                        bigint not null,
+  constraint pk_character_addon_stats primary key (character_id, addon_id)
+);
+
+-- Counted from the builds saved so far, every later write updates the counts in its own transaction
+insert into character_perk_stats (character_id, perk_id, builds)
+  select character_id, perk_id, count(*) from (
+    select c.character_id, c.perk1_id as perk_id from builds b join build_contents c on c.id = b.content_id
+    union all
+    select c.character_id, c.perk2_id as perk_id from builds b join build_contents c on c.id = b.content_id
+    union all
+    select c.character_id, c.perk3_id as perk_id from builds b join build_contents c on c.id = b.content_id
+    union all
+    select c.character_id, c.perk4_id as perk_id from builds b join build_contents c on c.id = b.content_id
+  ) picks
+  where perk_id is not null
+  group by character_id, perk_id;
+
+insert into character_addon_stats (character_id, addon_id, builds)
+  select character_id, addon_id, count(*) from (
+    select c.character_id, c.addon1_id as addon_id from builds b join build_contents c on c.id = b.content_id
+    union all
+    select c.character_id, c.addon2_id as addon_id from builds b join build_contents c on c.id = b.content_id
+  ) picks
+  where addon_id is not null
+  group by character_id, addon_id;
+
+
+# --- !Downs
+
+drop table if exists character_addon_stats;
+
+drop table if exists character_perk_stats;
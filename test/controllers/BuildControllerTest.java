@@ -0,0 +1,714 @@
+package controllers;
+
+import akka.stream.Materializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import io.ebean.Ebean;
+import io.ebean.meta.MetaQueryPlanStatistic;
+import models.Addon;
+import models.Character;
+import models.CharacterType;
+import models.Perk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import play.Application;
+import play.Logger;
+import play.db.Database;
+import play.db.Databases;
+import play.db.evolutions.Evolutions;
+import play.libs.Json;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.Helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static play.mvc.Http.Status.BAD_REQUEST;
+import static play.mvc.Http.Status.NO_CONTENT;
+import static play.test.Helpers.OK;
+import static play.test.Helpers.contentAsString;
+import static play.test.Helpers.route;
+
+public class BuildControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private Database database;
+    private long killer;
+    private long survivor;
+    private long[] killerPerks = new long[4];
+    private long survivorPerk;
+    private long killerAddon;
+
+    @Before
+    public void init() {
+        Map<String, Object> settings = new HashMap<>(Helpers.inMemoryDatabase());
+        settings.put("votes.log-directory", folder.getRoot().getPath());
+        application = Helpers.fakeApplication(settings);
+        Helpers.start(application);
+        database = Databases.inMemory(
+                "testdb",
+                ImmutableMap.of(
+                        "MODE","MySQL"
+                ),
+                ImmutableMap.of(
+                        "logStatements", true
+                )
+        );
+        Evolutions.applyEvolutions(database);
+        Character billy = new Character(CharacterType.KILLER, "billy", "booli");
+        billy.save();
+        killer = billy.getId();
+        Character dwight = new Character(CharacterType.SURVIVOR, "dwight", "leader");
+        dwight.save();
+        survivor = dwight.getId();
+        for(int i = 0; i < killerPerks.length; i++) {
+            Perk perk = new Perk(CharacterType.KILLER, "hex" + i, "ruin");
+            perk.save();
+            killerPerks[i] = perk.getId();
+        }
+        Perk sprint = new Perk(CharacterType.SURVIVOR, "sprint burst", "run");
+        sprint.save();
+        survivorPerk = sprint.getId();
+        Addon addon = new Addon(CharacterType.KILLER, "carburetor", "tuning");
+        addon.save();
+        killerAddon = addon.getId();
+    }
+
+    @After
+    public void cleanUp() {
+        Evolutions.cleanupEvolutions(database);
+        database.shutdown();
+        Helpers.stop(application);
+    }
+
+    @Test
+    public void testCreateBuild() {
+        Logger.info("Testing createBuild...");
+        Result result = route(application, createRequest(killerBuild()));
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+        JsonNode build = Json.parse(contentAsString(result));
+        assertEquals(killer, build.get("character").asLong());
+        assertEquals(4, build.get("perks").size());
+        assertTrue(build.get("item").isNull());
+        assertEquals(killerAddon, build.get("addons").get(0).asLong());
+    }
+
+    @Test
+    public void testCreateInvalidBuild() {
+        Logger.info("Testing createBuild with a survivor perk on a killer...");
+        ObjectNode body = killerBuild();
+        body.putArray("perks").add(killerPerks[0]).add(survivorPerk).add(killerPerks[0]);
+        Result result = route(application, createRequest(body));
+        assertEquals(BAD_REQUEST, result.status());
+        JsonNode verdict = Json.parse(contentAsString(result));
+        assertFalse(verdict.get("valid").asBoolean());
+        assertEquals(2, verdict.get("errors").size());
+    }
+
+    @Test
+    public void testCreateBuildNoCharacter() {
+        Logger.info("Testing createBuild without a character...");
+        ObjectNode body = killerBuild();
+        body.remove("character");
+        assertEquals(BAD_REQUEST, route(application, createRequest(body)).status());
+    }
+
+    @Test
+    public void testGetBuild() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing getBuild...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(id).url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertEquals(id, Json.parse(contentAsString(result)).get("id").asLong());
+    }
+
+    @Test
+    public void testGetBuildViewers() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing getBuild counts unique viewers...");
+        assertEquals(1, viewBuild(id, "alice").get("viewers").asLong());
+        assertEquals(1, viewBuild(id, "alice").get("viewers").asLong());
+        assertEquals(2, viewBuild(id, "bob").get("viewers").asLong());
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(id).url() + "?expand=all")
+                .header(BuildController.VIEWER_HEADER, "carol");
+        assertEquals(3, Json.parse(contentAsString(route(application, request))).get("viewers").asLong());
+    }
+
+    @Test
+    public void testGetNonexistentBuild() {
+        Logger.info("Testing getBuild with a nonexistent build...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(42).url());
+        assertEquals(NO_CONTENT, route(application, request).status());
+    }
+
+    @Test
+    public void testGetAllBuildsPaged() {
+        route(application, createRequest(killerBuild()));
+        route(application, createRequest(killerBuild()));
+        Logger.info("Testing getAllBuilds with a page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getAllBuilds().url() + "?limit=1");
+        JsonNode page = Json.parse(contentAsString(route(application, request)));
+        assertEquals(1, page.get("items").size());
+        Http.RequestBuilder next = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getAllBuilds().url()
+                        + "?limit=1&after=" + page.get("next").asLong());
+        JsonNode nextPage = Json.parse(contentAsString(route(application, next)));
+        assertEquals(1, nextPage.get("items").size());
+        assertTrue(nextPage.get("next").isNull());
+    }
+
+    @Test
+    public void testUpdateBuildPerksOnly() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing updateBuild with only perks...");
+        ObjectNode body = Json.newObject();
+        body.putArray("perks").add(killerPerks[3]);
+        Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.updateBuild(id).url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode build = Json.parse(contentAsString(result));
+        assertEquals(1, build.get("perks").size());
+        assertEquals(killerAddon, build.get("addons").get(0).asLong());
+    }
+
+    @Test
+    public void testUpdateBuildToInvalid() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing updateBuild to a survivor...");
+        ObjectNode body = Json.newObject();
+        body.put("character", survivor);
+        Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.updateBuild(id).url());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
+    @Test
+    public void testUpdateBuildConcurrently() throws Exception {
+        ObjectNode created = killerBuild();
+        created.putArray("perks").add(killerPerks[0]);
+        long id = Json.parse(contentAsString(route(application, createRequest(created)))).get("id").asLong();
+        Logger.info("Testing updateBuild with concurrent requests for one build...");
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for(int i = 0; i < 64; i++) {
+            final long perk = killerPerks[1 + i % 2];
+            statuses.add(requests.submit(() -> {
+                ObjectNode body = Json.newObject();
+                body.putArray("perks").add(perk);
+                Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                        .bodyJson(body)
+                        .uri(controllers.routes.BuildController.updateBuild(id).url());
+                return route(application, request).status();
+            }));
+        }
+        for(Future<Integer> status : statuses) {
+            assertEquals(OK, (int) status.get(30, TimeUnit.SECONDS));
+        }
+        requests.shutdown();
+        // Every update starts from the build as stored, so the counts end on its last loadout only
+        JsonNode check = Json.parse(contentAsString(route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.checkCharacterStats().url()))));
+        assertTrue(check.get("consistent").asBoolean());
+        JsonNode stats = Json.parse(contentAsString(route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getCharacterStats(killer).url()))));
+        assertEquals(1, stats.get("perks").size());
+        assertEquals(1, stats.get("perks").get(0).get("builds").asLong());
+        long perk = Json.parse(contentAsString(route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(id).url())))).get("perks").get(0).asLong();
+        assertEquals(perk, stats.get("perks").get(0).get("perk").get("id").asLong());
+        // The listeners were passed the same changes
+        ObjectNode query = Json.newObject();
+        query.putArray("anyPerks").add(killerPerks[0]).add(killerPerks[1]).add(killerPerks[2]);
+        Result count = route(application, new Http.RequestBuilder().method("POST")
+                .bodyJson(query)
+                .uri(controllers.routes.BuildController.countBuilds().url()));
+        assertEquals(1, Json.parse(contentAsString(count)).get("count").asLong());
+    }
+
+    @Test
+    public void testLoadIndexDuringWrites() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            ObjectNode created = killerBuild();
+            created.putArray("perks").add(killerPerks[0]);
+            ids.add(Json.parse(contentAsString(route(application, createRequest(created)))).get("id").asLong());
+        }
+        Logger.info("Testing the build index loads while builds are written...");
+        ObjectNode query = Json.newObject();
+        query.putArray("anyPerks").add(killerPerks[1]);
+        Http.RequestBuilder count = new Http.RequestBuilder().method("POST")
+                .bodyJson(query)
+                .uri(controllers.routes.BuildController.countBuilds().url());
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for(int i = 0; i < ids.size(); i++) {
+            final long id = ids.get(i);
+            if(i == ids.size() / 2) {
+                statuses.add(requests.submit(() -> route(application, count).status()));
+            }
+            statuses.add(requests.submit(() -> {
+                ObjectNode body = Json.newObject();
+                body.putArray("perks").add(killerPerks[1]);
+                Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                        .bodyJson(body)
+                        .uri(controllers.routes.BuildController.updateBuild(id).url());
+                return route(application, request).status();
+            }));
+        }
+        for(Future<Integer> status : statuses) {
+            assertEquals(OK, (int) status.get(30, TimeUnit.SECONDS));
+        }
+        requests.shutdown();
+        // Every build was either read by the load after its update or passed on to the index with it
+        assertEquals(ids.size(), Json.parse(contentAsString(route(application, count))).get("count").asLong());
+    }
+
+    @Test
+    public void testDeleteBuild() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing deleteBuild...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("DELETE")
+                .uri(controllers.routes.BuildController.deleteBuild(id).url());
+        assertEquals(OK, route(application, request).status());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
+    @Test
+    public void testValidateBuilds() {
+        ArrayNode builds = Json.newArray();
+        for(int i = 0; i < 3000; i++) {
+            ObjectNode build = killerBuild();
+            if(i % 2 == 1) {
+                build.putArray("perks").add(survivorPerk);
+            }
+            builds.add(build);
+        }
+        Logger.info("Testing validateBuilds with a Json list...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(builds)
+                .uri(controllers.routes.BuildController.validateBuilds().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/x-ndjson", result));
+        String[] verdicts = contentAsString(result, application.injector().instanceOf(Materializer.class)).split("\n");
+        assertEquals(3000, verdicts.length);
+        for(int i = 0; i < verdicts.length; i++) {
+            JsonNode verdict = Json.parse(verdicts[i]);
+            assertEquals(i, verdict.get("index").asInt());
+            assertEquals(i % 2 == 0, verdict.get("valid").asBoolean());
+        }
+    }
+
+    @Test
+    public void testValidateBuildsNdjson() {
+        String body = killerBuild().toString() + "\n{not json\n\n" + Json.newObject().put("character", 42) + "\n";
+        Logger.info("Testing validateBuilds with newline delimited Json...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyText(body)
+                .header("Content-Type", "application/x-ndjson")
+                .uri(controllers.routes.BuildController.validateBuilds().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        String[] verdicts = contentAsString(result, application.injector().instanceOf(Materializer.class)).split("\n");
+        assertEquals(3, verdicts.length);
+        assertTrue(Json.parse(verdicts[0]).get("valid").asBoolean());
+        assertEquals("A build must be a Json object", Json.parse(verdicts[1]).get("errors").get(0).textValue());
+        assertEquals("There is no character with id, 42", Json.parse(verdicts[2]).get("errors").get(0).textValue());
+    }
+
+    @Test
+    public void testValidateBuildsNotList() {
+        Logger.info("Testing validateBuilds without a list...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(killerBuild())
+                .uri(controllers.routes.BuildController.validateBuilds().url());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
+    @Test
+    public void testEnumerateBuilds() {
+        new Perk(CharacterType.KILLER, "hex4", "ruin").save();
+        new Addon(CharacterType.KILLER, "gearbox", "tuning").save();
+        Logger.info("Testing enumerateBuilds...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.enumerateBuilds(killer).url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/x-ndjson", result));
+        String[] builds = contentAsString(result, application.injector().instanceOf(Materializer.class)).split("\n");
+        // C(5,4) perk combinations with the one pair of addons
+        assertEquals(5, builds.length);
+        for(String build : builds) {
+            assertEquals(4, Json.parse(build).get("perks").size());
+            assertEquals(2, Json.parse(build).get("addons").size());
+        }
+        Http.RequestBuilder limited = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.enumerateBuilds(killer).url() + "?limit=2");
+        assertEquals(2, contentAsString(route(application, limited),
+                application.injector().instanceOf(Materializer.class)).split("\n").length);
+    }
+
+    @Test
+    public void testEnumerateBuildsBadRequest() {
+        Logger.info("Testing enumerateBuilds with a bad limit and character...");
+        Http.RequestBuilder badLimit = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.enumerateBuilds(killer).url() + "?limit=0");
+        assertEquals(BAD_REQUEST, route(application, badLimit).status());
+        Http.RequestBuilder noCharacter = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.enumerateBuilds(42).url());
+        assertEquals(BAD_REQUEST, route(application, noCharacter).status());
+    }
+
+    @Test
+    public void testOptimizeBuilds() {
+        new Perk(CharacterType.KILLER, "hex4", "ruin").save();
+        ObjectNode body = Json.newObject();
+        body.put("character", killer);
+        body.putArray("forbiddenPerks").add(killerPerks[0]);
+        body.putObject("weights").putObject("perks").put(String.valueOf(killerPerks[1]), 5);
+        body.put("k", 2);
+        Logger.info("Testing optimizeBuilds...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.optimizeBuilds().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode json = Json.parse(contentAsString(result));
+        assertTrue(json.get("complete").asBoolean());
+        assertTrue(json.has("nodesExpanded"));
+        assertTrue(json.has("nodesPruned"));
+        // Only one build is left once the first perk is forbidden
+        assertEquals(1, json.get("builds").size());
+        assertEquals(5.0, json.get("builds").get(0).get("score").asDouble(), 0);
+        assertEquals(4, json.get("builds").get(0).get("build").get("perks").size());
+    }
+
+    @Test
+    public void testOptimizeBuildsBadRequest() {
+        ObjectNode body = Json.newObject();
+        body.put("character", killer);
+        body.put("k", 0);
+        Logger.info("Testing optimizeBuilds with a bad k...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.optimizeBuilds().url());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
+    @Test
+    public void testOptimizeBuildsSynergyWithoutPerks() {
+        ObjectNode body = Json.newObject();
+        body.put("character", killer);
+        body.putArray("synergies").addObject().put("bonus", 1);
+        Logger.info("Testing optimizeBuilds with a synergy without perks...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.optimizeBuilds().url());
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+        assertEquals("The synergy perks must be a list of ids", contentAsString(result));
+    }
+
+    @Test
+    public void testScoreBuilds() {
+        Perk rated = new Perk(CharacterType.KILLER, "bbq", "chili");
+        rated.setRarity(2);
+        rated.setPotency(1.5);
+        rated.save();
+        ObjectNode body = Json.newObject();
+        body.putObject("attributes").putObject("perks").put("rarity", 1).put("potency", 2);
+        ArrayNode builds = body.putArray("builds");
+        builds.addObject().putArray("perks").add(rated.getId()).add(killerPerks[0]);
+        builds.add(killerBuild());
+        Logger.info("Testing scoreBuilds...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.scoreBuilds().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode scores = Json.parse(contentAsString(result)).get("scores");
+        assertEquals(2, scores.size());
+        assertEquals(5.0, scores.get(0).asDouble(), 0);
+        assertEquals(0.0, scores.get(1).asDouble(), 0);
+    }
+
+    @Test
+    public void testScoreBuildsTooManyPerks() {
+        ObjectNode body = Json.newObject();
+        body.putArray("builds").addObject().putArray("perks").add(1).add(2).add(3).add(4).add(5);
+        Logger.info("Testing scoreBuilds with too many perks...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.scoreBuilds().url());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
+    @Test
+    public void testSearchBuilds() {
+        route(application, createRequest(killerBuild()));
+        ObjectNode twoPerks = killerBuild();
+        twoPerks.putArray("perks").add(killerPerks[0]).add(killerPerks[1]);
+        twoPerks.putArray("addons");
+        route(application, createRequest(twoPerks));
+        ObjectNode body = Json.newObject();
+        body.put("character", killer);
+        body.putArray("requiredPerks").add(killerPerks[0]);
+        body.putArray("forbiddenAddons").add(killerAddon);
+        Logger.info("Testing searchBuilds...");
+        Result result = route(application, searchRequest(body, ""));
+        assertEquals(OK, result.status());
+        JsonNode page = Json.parse(contentAsString(result));
+        assertEquals(1, page.get("count").asLong());
+        assertEquals(1, page.get("items").size());
+        assertEquals(2, page.get("items").get(0).get("perks").size());
+        assertTrue(page.get("next").isNull());
+        body.remove("forbiddenAddons");
+        page = Json.parse(contentAsString(route(application, searchRequest(body, "?limit=1"))));
+        assertEquals(2, page.get("count").asLong());
+        assertEquals(1, page.get("items").size());
+        assertEquals(page.get("items").get(0).get("id").asLong(), page.get("next").asLong());
+    }
+
+    @Test
+    public void testSearchBuildsStream() {
+        route(application, createRequest(killerBuild()));
+        route(application, createRequest(killerBuild()));
+        ObjectNode body = Json.newObject();
+        body.putArray("anyPerks").add(killerPerks[3]).add(survivorPerk);
+        Logger.info("Testing searchBuilds as a stream...");
+        Result result = route(application, searchRequest(body, "?stream=true"));
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/x-ndjson", result));
+        assertEquals(2, contentAsString(result).trim().split("\n").length);
+    }
+
+    @Test
+    public void testCountBuilds() {
+        route(application, createRequest(killerBuild()));
+        ObjectNode body = Json.newObject();
+        body.putArray("requiredCharacters").add(survivor);
+        Logger.info("Testing countBuilds...");
+        Result result = route(application, new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.countBuilds().url()));
+        assertEquals(OK, result.status());
+        assertEquals(0, Json.parse(contentAsString(result)).get("count").asLong());
+        body.putArray("requiredCharacters").add(killer);
+        result = route(application, new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.countBuilds().url()));
+        assertEquals(1, Json.parse(contentAsString(result)).get("count").asLong());
+    }
+
+    @Test
+    public void testSearchBuildsBadRequest() {
+        ObjectNode body = Json.newObject();
+        body.put("requiredPerks", "all");
+        Logger.info("Testing searchBuilds with a malformed list...");
+        assertEquals(BAD_REQUEST, route(application, searchRequest(body, "")).status());
+    }
+
+    @Test
+    public void testEncodeBuild() {
+        Logger.info("Testing encodeBuild and getBuildByCode...");
+        Result result = route(application, new Http.RequestBuilder().method("POST")
+                .bodyJson(killerBuild())
+                .uri(controllers.routes.BuildController.encodeBuild().url()));
+        assertEquals(OK, result.status());
+        String code = Json.parse(contentAsString(result)).get("code").asText();
+        result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuildByCode(code).url()));
+        assertEquals(OK, result.status());
+        JsonNode json = Json.parse(contentAsString(result));
+        assertEquals(code, json.get("code").asText());
+        assertEquals("billy", json.get("build").get("character").get("name").asText());
+        assertEquals(4, json.get("build").get("perks").size());
+        assertEquals("hex0", json.get("build").get("perks").get(0).get("name").asText());
+        assertEquals("carburetor", json.get("build").get("addons").get(0).get("name").asText());
+    }
+
+    @Test
+    public void testEncodeInvalidBuild() {
+        ObjectNode body = killerBuild();
+        body.putArray("perks").add(survivorPerk);
+        Logger.info("Testing encodeBuild with a survivor perk on a killer...");
+        Result result = route(application, new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.encodeBuild().url()));
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testGetBuildByInvalidCode() {
+        Logger.info("Testing getBuildByCode with a malformed code...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuildByCode("AQQBAgME").url()));
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testGetBuildExpanded() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        // The first view loads the trending builds, which reads every build once, and the viewer sketches
+        route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(id).url()));
+        resetQueryCount();
+        Logger.info("Testing getBuild with expand=all...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(id).url() + "?expand=all"));
+        assertEquals(OK, result.status());
+        // The build and its content in one query, the game data comes from memory
+        assertEquals(1, queryCount());
+        JsonNode build = Json.parse(contentAsString(result));
+        assertEquals(id, build.get("id").asLong());
+        assertEquals("billy", build.get("character").get("name").asText());
+        assertEquals(4, build.get("perks").size());
+        assertEquals("hex0", build.get("perks").get(0).get("name").asText());
+        assertTrue(build.get("item").isNull());
+        assertEquals("carburetor", build.get("addons").get(0).get("name").asText());
+    }
+
+    @Test
+    public void testGetAllBuildsExpanded() {
+        for(int i = 0; i < 10; i++) {
+            route(application, createRequest(killerBuild()));
+        }
+        resetQueryCount();
+        Logger.info("Testing getAllBuilds with expand=all...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getAllBuilds().url() + "?expand=all&limit=5"));
+        assertEquals(OK, result.status());
+        // No query per build
+        assertEquals(1, queryCount());
+        JsonNode page = Json.parse(contentAsString(result));
+        assertEquals(5, page.get("items").size());
+        assertEquals("billy", page.get("items").get(4).get("character").get("name").asText());
+        assertEquals(page.get("items").get(4).get("id").asLong(), page.get("next").asLong());
+    }
+
+    @Test
+    public void testGetBuildInvalidExpand() {
+        Logger.info("Testing getBuild with an unknown expand...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(1).url() + "?expand=perks"));
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testCopyBuild() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing copyBuild...");
+        Result result = route(application, new Http.RequestBuilder().method("POST")
+                .uri(controllers.routes.BuildController.copyBuild(id).url()));
+        assertEquals(OK, result.status());
+        JsonNode copy = Json.parse(contentAsString(result));
+        assertTrue(copy.get("id").asLong() != id);
+        assertEquals(killer, copy.get("character").asLong());
+        assertEquals(4, copy.get("perks").size());
+        assertEquals(BAD_REQUEST, route(application, new Http.RequestBuilder().method("POST")
+                .uri(controllers.routes.BuildController.copyBuild(42).url())).status());
+    }
+
+    @Test
+    public void testVoteBuild() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing voteBuild...");
+        route(application, voteRequest(id, 1));
+        route(application, voteRequest(id, 1));
+        Result result = route(application, voteRequest(id, -1));
+        assertEquals(OK, result.status());
+        assertEquals(1, Json.parse(contentAsString(result)).get("votes").asLong());
+        Result votes = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuildVotes(id).url()));
+        assertEquals(OK, votes.status());
+        assertEquals(id, Json.parse(contentAsString(votes)).get("build").asLong());
+        assertEquals(1, Json.parse(contentAsString(votes)).get("votes").asLong());
+    }
+
+    @Test
+    public void testVoteBuildBadRequest() {
+        long id = Json.parse(contentAsString(route(application, createRequest(killerBuild())))).get("id").asLong();
+        Logger.info("Testing voteBuild with an invalid vote and a nonexistent build...");
+        assertEquals(BAD_REQUEST, route(application, voteRequest(id, 2)).status());
+        assertEquals(BAD_REQUEST, route(application, voteRequest(id + 1, 1)).status());
+        assertEquals(NO_CONTENT, route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuildVotes(id + 1).url())).status());
+    }
+
+    private ObjectNode killerBuild() {
+        ObjectNode body = Json.newObject();
+        body.put("character", killer);
+        body.putArray("perks").add(killerPerks[0]).add(killerPerks[1]).add(killerPerks[2]).add(killerPerks[3]);
+        body.putArray("addons").add(killerAddon);
+        return body;
+    }
+
+    private Http.RequestBuilder createRequest(final JsonNode body) {
+        return new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.createBuild().url());
+    }
+
+    private Http.RequestBuilder voteRequest(final long id, final int vote) {
+        ObjectNode body = Json.newObject();
+        body.put("vote", vote);
+        return new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.voteBuild(id).url());
+    }
+
+    private Http.RequestBuilder searchRequest(final JsonNode body, final String query) {
+        return new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.searchBuilds().url() + query);
+    }
+
+    private static void resetQueryCount() {
+        Ebean.getDefaultServer().getMetaInfoManager().collectQueryPlanStatistics(true);
+    }
+
+    private static long queryCount() {
+        long count = 0;
+        List<MetaQueryPlanStatistic> plans =
+                Ebean.getDefaultServer().getMetaInfoManager().collectQueryPlanStatistics(false);
+        for(MetaQueryPlanStatistic plan : plans) {
+            count += plan.getExecutionCount();
+        }
+        return count;
+    }
+
+    private JsonNode viewBuild(final long id, final String viewer) {
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(id).url())
+                .header(BuildController.VIEWER_HEADER, viewer));
+        assertEquals(OK, result.status());
+        return Json.parse(contentAsString(result));
+    }
+}
@@ -1,8 +1,11 @@
 package controllers;
 
+import akka.stream.Materializer;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableMap;
+import io.ebean.Finder;
 import models.Character;
 import models.CharacterType;
 import org.junit.After;
@@ -13,17 +16,32 @@ import play.Logger;
 import play.db.Database;
 import play.db.Databases;
 import play.db.evolutions.Evolutions;
+import play.inject.guice.GuiceApplicationBuilder;
 import play.libs.Json;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.test.Helpers;
+import repositories.CharacterRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static play.inject.Bindings.bind;
 import static play.mvc.Http.Status.BAD_REQUEST;
+import static play.mvc.Http.Status.NOT_MODIFIED;
 import static play.mvc.Http.Status.NO_CONTENT;
 import static play.test.Helpers.OK;
+import static play.test.Helpers.contentAsString;
 import static play.test.Helpers.route;
+import static play.test.Helpers.running;
 
 public class CharacterControllerTest {
 
@@ -73,6 +91,81 @@ public class CharacterControllerTest {
         assertEquals(NO_CONTENT, result.status());
     }
 
+    @Test
+    public void testGetAllCharactersGzip() {
+        createCharacter().save();
+        Logger.info("Testing getAllCharacters with gzip...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .header("Accept-Encoding", "gzip")
+                .uri(routes.CharacterController.getAllCharacters().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertEquals("gzip", result.header("Content-Encoding").orElse(null));
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+    }
+
+    @Test
+    public void testGetAllCharactersPaged() {
+        createCharacter().save();
+        new Character(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllCharacters with a page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url() + "?limit=1");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode page = Json.parse(contentAsString(result));
+        assertEquals(1, page.get("items").size());
+        Http.RequestBuilder next = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url()
+                        + "?limit=1&after=" + page.get("next").asLong());
+        JsonNode nextPage = Json.parse(contentAsString(route(application, next)));
+        assertEquals(1, nextPage.get("items").size());
+        assertTrue(nextPage.get("next").isNull());
+    }
+
+    @Test
+    public void testGetAllCharactersFiltered() {
+        createCharacter().save();
+        new Character(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllCharacters with a filter...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url() + "?type=SURVIVOR&name=ch&name=zz");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode characters = Json.parse(contentAsString(result));
+        assertEquals(1, characters.size());
+        assertEquals("chuck", characters.get(0).get("name").textValue());
+        Http.RequestBuilder none = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url() + "?type=KILLER&name=ch");
+        assertEquals(NO_CONTENT, route(application, none).status());
+        Http.RequestBuilder invalid = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url() + "?type=NURSE");
+        assertEquals(BAD_REQUEST, route(application, invalid).status());
+    }
+
+    @Test
+    public void testGetAllCharactersBadPage() {
+        Logger.info("Testing getAllCharacters with a bad page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url() + "?limit=0");
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testGetAllCharactersStream() {
+        createCharacter().save();
+        new Character(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllCharacters as a stream...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url() + "?stream=true");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/x-ndjson", result));
+        String body = contentAsString(result, application.injector().instanceOf(Materializer.class));
+        assertEquals(2, body.split("\n").length);
+    }
+
     @Test
     public void testGetAllCharactersTypeWithNone() {
         ObjectNode json = Json.newObject();
@@ -146,6 +239,66 @@ public class CharacterControllerTest {
         assertEquals(BAD_REQUEST, result.status());
     }
 
+    @Test
+    public void testCreateCharacters() {
+        createCharacter().save();
+        ArrayNode json = Json.newArray();
+        json.addObject().put("name", "chuck").put("description", "boosted").put("type", "SURVIVOR");
+        json.addObject().put("name", "chuck").put("description", "boosted").put("type", "SURVIVOR");
+        json.addObject().put("name", "booli").put("description", "boosted").put("type", "invalid");
+        json.addObject().put("name", "billy").put("description", "booli").put("type", "KILLER");
+        Logger.info("Testing createCharacters...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(routes.CharacterController.createCharacters().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode rows = Json.parse(contentAsString(result));
+        assertEquals(4, rows.size());
+        assertEquals("chuck", rows.get(0).get("created").get("name").textValue());
+        assertTrue(rows.get(1).has("error"));
+        assertTrue(rows.get(2).has("error"));
+        assertTrue(rows.get(3).has("error"));
+        assertEquals(2, Character.find.all().size());
+    }
+
+    @Test
+    public void testCreateCharactersNotList() {
+        Logger.info("Testing createCharacters without a list...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(Json.toJson(createCharacter()))
+                .uri(routes.CharacterController.createCharacters().url());
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testCreateCharacterConcurrently() throws Exception {
+        Logger.info("Testing createCharacter with concurrent requests for one name...");
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            statuses.add(requests.submit(() -> {
+                Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                        .bodyJson(Json.toJson(createCharacter()))
+                        .uri(routes.CharacterController.createCharacter().url());
+                return route(application, request).status();
+            }));
+        }
+        int created = 0;
+        for(Future<Integer> status : statuses) {
+            int code = status.get(30, TimeUnit.SECONDS);
+            if(code == OK) {
+                created++;
+            } else {
+                assertEquals(BAD_REQUEST, code);
+            }
+        }
+        requests.shutdown();
+        assertEquals(1, created);
+        assertEquals(1, Character.find.all().size());
+    }
+
     @Test
     public void testCreateCharacterWithNull() {
         Logger.info("Testing createCharacter with existing Character...");
@@ -211,6 +364,26 @@ public class CharacterControllerTest {
         assertTrue(ControllerTestHelper.testContentType("application/json", result));
     }
 
+    @Test
+    public void testUpdateCharacterDescriptionOnly() {
+        Character testCharacter = createCharacter();
+        testCharacter.setId(100);
+        testCharacter.save();
+        ObjectNode json = Json.newObject();
+        json.put("description", "boosted");
+        Logger.info("Testing updateCharacter with only a description...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                .bodyJson(json)
+                .uri(routes.CharacterController.updateCharacter(100).url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode character = Json.parse(contentAsString(result));
+        assertEquals("billy", character.get("name").textValue());
+        assertEquals("boosted", character.get("description").textValue());
+        assertEquals("KILLER", character.get("type").textValue());
+        assertEquals("boosted", Character.find.byId(100L).getDescription());
+    }
+
     @Test
     public void testUpdateNoCharacter() {
         JsonNode json = Json.toJson(createCharacter());
@@ -260,6 +433,69 @@ public class CharacterControllerTest {
         assertEquals(BAD_REQUEST, result.status());
     }
 
+    @Test
+    public void testGetAllCharactersNotModified() {
+        createCharacter().save();
+        Logger.info("Testing getAllCharacters with current ETag...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url());
+        String etag = route(application, request).header("ETag").get();
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", etag)
+                .uri(routes.CharacterController.getAllCharacters().url());
+        Result result = route(application, conditional);
+        assertEquals(NOT_MODIFIED, result.status());
+        assertEquals(etag, result.header("ETag").get());
+    }
+
+    @Test
+    public void testCreateCharacterChangesETag() {
+        Logger.info("Testing createCharacter changes ETag...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(routes.CharacterController.getAllCharacters().url());
+        String etag = route(application, request).header("ETag").get();
+        Http.RequestBuilder create = new Http.RequestBuilder().method("POST")
+                .bodyJson(Json.toJson(createCharacter()))
+                .uri(routes.CharacterController.createCharacter().url());
+        route(application, create);
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", etag)
+                .uri(routes.CharacterController.getAllCharacters().url());
+        Result result = route(application, conditional);
+        assertEquals(OK, result.status());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNotModifiedSkipsFinder() {
+        Finder<Long, Character> finder = mock(Finder.class);
+        CharacterRepository characterRepository = new CharacterRepository(finder, Runnable::run);
+        Application mocked = new GuiceApplicationBuilder()
+                .configure(Helpers.inMemoryDatabase())
+                .overrides(bind(CharacterRepository.class).toInstance(characterRepository))
+                .build();
+        ObjectNode json = Json.newObject();
+        json.put("type",String.valueOf(CharacterType.KILLER));
+        Logger.info("Testing 304 responses never touch the Finder...");
+        running(mocked, () -> {
+            String etag = characterRepository.etag();
+            Http.RequestBuilder all = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .uri(routes.CharacterController.getAllCharacters().url());
+            Http.RequestBuilder type = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .bodyJson(json)
+                    .uri(routes.CharacterController.getAllCharactersType().url());
+            Http.RequestBuilder one = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .uri(routes.CharacterController.getCharacter(100).url());
+            assertEquals(NOT_MODIFIED, route(mocked, all).status());
+            assertEquals(NOT_MODIFIED, route(mocked, type).status());
+            assertEquals(NOT_MODIFIED, route(mocked, one).status());
+        });
+        verifyZeroInteractions(finder);
+    }
+
     private Character createCharacter() {
         return new Character(CharacterType.KILLER, "billy", "booli");
     }
@@ -1,8 +1,11 @@
 package controllers;
 
+import akka.stream.Materializer;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableMap;
+import io.ebean.Finder;
 import models.CharacterType;
 import models.Item;
 import org.junit.After;
@@ -13,17 +16,32 @@ import play.Logger;
 import play.db.Database;
 import play.db.Databases;
 import play.db.evolutions.Evolutions;
+import play.inject.guice.GuiceApplicationBuilder;
 import play.libs.Json;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.test.Helpers;
+import repositories.ItemRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static play.inject.Bindings.bind;
 import static play.mvc.Http.Status.BAD_REQUEST;
+import static play.mvc.Http.Status.NOT_MODIFIED;
 import static play.mvc.Http.Status.NO_CONTENT;
 import static play.test.Helpers.OK;
+import static play.test.Helpers.contentAsString;
 import static play.test.Helpers.route;
+import static play.test.Helpers.running;
 
 public class ItemControllerTest {
 
@@ -73,6 +91,81 @@ public class ItemControllerTest {
         assertEquals(NO_CONTENT, result.status());
     }
 
+    @Test
+    public void testGetAllItemsGzip() {
+        createItem().save();
+        Logger.info("Testing getAllItems with gzip...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .header("Accept-Encoding", "gzip")
+                .uri(controllers.routes.ItemController.getAllItems().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertEquals("gzip", result.header("Content-Encoding").orElse(null));
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+    }
+
+    @Test
+    public void testGetAllItemsPaged() {
+        createItem().save();
+        new Item(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllItems with a page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url() + "?limit=1");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode page = Json.parse(contentAsString(result));
+        assertEquals(1, page.get("items").size());
+        Http.RequestBuilder next = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url()
+                        + "?limit=1&after=" + page.get("next").asLong());
+        JsonNode nextPage = Json.parse(contentAsString(route(application, next)));
+        assertEquals(1, nextPage.get("items").size());
+        assertTrue(nextPage.get("next").isNull());
+    }
+
+    @Test
+    public void testGetAllItemsFiltered() {
+        createItem().save();
+        new Item(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllItems with a filter...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url() + "?type=SURVIVOR&name=ch&name=zz");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode items = Json.parse(contentAsString(result));
+        assertEquals(1, items.size());
+        assertEquals("chuck", items.get(0).get("name").textValue());
+        Http.RequestBuilder none = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url() + "?type=KILLER&name=ch");
+        assertEquals(NO_CONTENT, route(application, none).status());
+        Http.RequestBuilder invalid = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url() + "?type=NURSE");
+        assertEquals(BAD_REQUEST, route(application, invalid).status());
+    }
+
+    @Test
+    public void testGetAllItemsBadPage() {
+        Logger.info("Testing getAllItems with a bad page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url() + "?limit=0");
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testGetAllItemsStream() {
+        createItem().save();
+        new Item(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllItems as a stream...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url() + "?stream=true");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/x-ndjson", result));
+        String body = contentAsString(result, application.injector().instanceOf(Materializer.class));
+        assertEquals(2, body.split("\n").length);
+    }
+
     @Test
     public void testGetAllItemsTypeWithNone() {
         ObjectNode json = Json.newObject();
@@ -134,6 +227,42 @@ public class ItemControllerTest {
         assertEquals(OK, result.status());
     }
 
+    @Test
+    public void testCreateItemWithAttributes() {
+        ObjectNode json = (ObjectNode) Json.toJson(createItem());
+        json.put("rarity", 3);
+        json.put("potency", 2.5);
+        Logger.info("Testing createItem with rarity and potency...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(controllers.routes.ItemController.createItem().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode item = Json.parse(contentAsString(result));
+        assertEquals(3, item.get("rarity").asInt());
+        assertEquals(2.5, item.get("potency").asDouble(), 0);
+        ObjectNode potency = Json.newObject();
+        potency.put("potency", 4);
+        Http.RequestBuilder update = new Http.RequestBuilder().method("PUT")
+                .bodyJson(potency)
+                .uri(controllers.routes.ItemController.updateItem(item.get("id").asLong()).url());
+        JsonNode updated = Json.parse(contentAsString(route(application, update)));
+        assertEquals(3, updated.get("rarity").asInt());
+        assertEquals(4, updated.get("potency").asDouble(), 0);
+        assertEquals("billy", updated.get("name").textValue());
+    }
+
+    @Test
+    public void testCreateItemBadRarity() {
+        ObjectNode json = (ObjectNode) Json.toJson(createItem());
+        json.put("rarity", -1);
+        Logger.info("Testing createItem with a bad rarity...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(controllers.routes.ItemController.createItem().url());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
     @Test
     public void testCreateExistingItem() {
         Logger.info("Testing createItem with existing Item...");
@@ -146,6 +275,66 @@ public class ItemControllerTest {
         assertEquals(BAD_REQUEST, result.status());
     }
 
+    @Test
+    public void testCreateItems() {
+        createItem().save();
+        ArrayNode json = Json.newArray();
+        json.addObject().put("name", "chuck").put("description", "boosted").put("type", "SURVIVOR");
+        json.addObject().put("name", "chuck").put("description", "boosted").put("type", "SURVIVOR");
+        json.addObject().put("name", "booli").put("description", "boosted").put("type", "invalid");
+        json.addObject().put("name", "billy").put("description", "booli").put("type", "KILLER");
+        Logger.info("Testing createItems...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(controllers.routes.ItemController.createItems().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode rows = Json.parse(contentAsString(result));
+        assertEquals(4, rows.size());
+        assertEquals("chuck", rows.get(0).get("created").get("name").textValue());
+        assertTrue(rows.get(1).has("error"));
+        assertTrue(rows.get(2).has("error"));
+        assertTrue(rows.get(3).has("error"));
+        assertEquals(2, Item.find.all().size());
+    }
+
+    @Test
+    public void testCreateItemsNotList() {
+        Logger.info("Testing createItems without a list...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(Json.toJson(createItem()))
+                .uri(controllers.routes.ItemController.createItems().url());
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testCreateItemConcurrently() throws Exception {
+        Logger.info("Testing createItem with concurrent requests for one name...");
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            statuses.add(requests.submit(() -> {
+                Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                        .bodyJson(Json.toJson(createItem()))
+                        .uri(controllers.routes.ItemController.createItem().url());
+                return route(application, request).status();
+            }));
+        }
+        int created = 0;
+        for(Future<Integer> status : statuses) {
+            int code = status.get(30, TimeUnit.SECONDS);
+            if(code == OK) {
+                created++;
+            } else {
+                assertEquals(BAD_REQUEST, code);
+            }
+        }
+        requests.shutdown();
+        assertEquals(1, created);
+        assertEquals(1, Item.find.all().size());
+    }
+
     @Test
     public void testCreateItemWithNull() {
         Logger.info("Testing createItem with existing Item...");
@@ -211,6 +400,26 @@ public class ItemControllerTest {
         assertTrue(ControllerTestHelper.testContentType("application/json", result));
     }
 
+    @Test
+    public void testUpdateItemDescriptionOnly() {
+        Item testItem = createItem();
+        testItem.setId(100);
+        testItem.save();
+        ObjectNode json = Json.newObject();
+        json.put("description", "boosted");
+        Logger.info("Testing updateItem with only a description...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                .bodyJson(json)
+                .uri(controllers.routes.ItemController.updateItem(100).url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode item = Json.parse(contentAsString(result));
+        assertEquals("billy", item.get("name").textValue());
+        assertEquals("boosted", item.get("description").textValue());
+        assertEquals("KILLER", item.get("type").textValue());
+        assertEquals("boosted", Item.find.byId(100L).getDescription());
+    }
+
     @Test
     public void testUpdateNoItem() {
         JsonNode json = Json.toJson(createItem());
@@ -260,6 +469,69 @@ public class ItemControllerTest {
         assertEquals(BAD_REQUEST, result.status());
     }
 
+    @Test
+    public void testGetAllItemsNotModified() {
+        createItem().save();
+        Logger.info("Testing getAllItems with current ETag...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url());
+        String etag = route(application, request).header("ETag").get();
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", etag)
+                .uri(controllers.routes.ItemController.getAllItems().url());
+        Result result = route(application, conditional);
+        assertEquals(NOT_MODIFIED, result.status());
+        assertEquals(etag, result.header("ETag").get());
+    }
+
+    @Test
+    public void testCreateItemChangesETag() {
+        Logger.info("Testing createItem changes ETag...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.ItemController.getAllItems().url());
+        String etag = route(application, request).header("ETag").get();
+        Http.RequestBuilder create = new Http.RequestBuilder().method("POST")
+                .bodyJson(Json.toJson(createItem()))
+                .uri(controllers.routes.ItemController.createItem().url());
+        route(application, create);
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", etag)
+                .uri(controllers.routes.ItemController.getAllItems().url());
+        Result result = route(application, conditional);
+        assertEquals(OK, result.status());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNotModifiedSkipsFinder() {
+        Finder<Long, Item> finder = mock(Finder.class);
+        ItemRepository itemRepository = new ItemRepository(finder, Runnable::run);
+        Application mocked = new GuiceApplicationBuilder()
+                .configure(Helpers.inMemoryDatabase())
+                .overrides(bind(ItemRepository.class).toInstance(itemRepository))
+                .build();
+        ObjectNode json = Json.newObject();
+        json.put("type",String.valueOf(CharacterType.KILLER));
+        Logger.info("Testing 304 responses never touch the Finder...");
+        running(mocked, () -> {
+            String etag = itemRepository.etag();
+            Http.RequestBuilder all = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .uri(controllers.routes.ItemController.getAllItems().url());
+            Http.RequestBuilder type = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .bodyJson(json)
+                    .uri(controllers.routes.ItemController.getAllItemsType().url());
+            Http.RequestBuilder one = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .uri(controllers.routes.ItemController.getItem(100).url());
+            assertEquals(NOT_MODIFIED, route(mocked, all).status());
+            assertEquals(NOT_MODIFIED, route(mocked, type).status());
+            assertEquals(NOT_MODIFIED, route(mocked, one).status());
+        });
+        verifyZeroInteractions(finder);
+    }
+
     private Item createItem() {
         return new Item(CharacterType.KILLER, "billy", "booli");
     }
@@ -1,8 +1,11 @@
 package controllers;
 
+import akka.stream.Materializer;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableMap;
+import io.ebean.Finder;
 import models.CharacterType;
 import models.Perk;
 import org.junit.After;
@@ -13,17 +16,34 @@ import play.Logger;
 import play.db.Database;
 import play.db.Databases;
 import play.db.evolutions.Evolutions;
+import play.inject.guice.GuiceApplicationBuilder;
 import play.libs.Json;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.test.Helpers;
+import repositories.PerkRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static play.inject.Bindings.bind;
 import static play.mvc.Http.Status.BAD_REQUEST;
+import static play.mvc.Http.Status.NOT_MODIFIED;
 import static play.mvc.Http.Status.NO_CONTENT;
 import static play.test.Helpers.OK;
+import static play.test.Helpers.contentAsString;
 import static play.test.Helpers.route;
+import static play.test.Helpers.running;
 
 public class PerkControllerTest {
 
@@ -73,6 +93,99 @@ public class PerkControllerTest {
         assertEquals(NO_CONTENT, result.status());
     }
 
+    @Test
+    public void testGetAllPerksGzip() {
+        createPerk().save();
+        Logger.info("Testing getAllPerks with gzip...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .header("Accept-Encoding", "gzip")
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertEquals("gzip", result.header("Content-Encoding").orElse(null));
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+        // The gzipped body is its own representation, with its own ETag
+        String etag = result.header("ETag").get();
+        assertTrue(etag.endsWith("-gz\""));
+        Http.RequestBuilder identity = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        assertNotEquals(etag, route(application, identity).header("ETag").get());
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("Accept-Encoding", "gzip")
+                .header("If-None-Match", etag)
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        Result notModified = route(application, conditional);
+        assertEquals(NOT_MODIFIED, notModified.status());
+        assertEquals(etag, notModified.header("ETag").get());
+    }
+
+    @Test
+    public void testGetAllPerksPaged() {
+        createPerk().save();
+        new Perk(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllPerks with a page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?limit=1");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode page = Json.parse(contentAsString(result));
+        assertEquals(1, page.get("items").size());
+        Http.RequestBuilder next = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url()
+                        + "?limit=1&after=" + page.get("next").asLong());
+        JsonNode nextPage = Json.parse(contentAsString(route(application, next)));
+        assertEquals(1, nextPage.get("items").size());
+        assertTrue(nextPage.get("next").isNull());
+    }
+
+    @Test
+    public void testGetAllPerksFiltered() {
+        createPerk().save();
+        new Perk(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllPerks with a filter...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?type=SURVIVOR&name=ch&name=zz");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode perks = Json.parse(contentAsString(result));
+        assertEquals(1, perks.size());
+        assertEquals("chuck", perks.get(0).get("name").textValue());
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", result.header("ETag").get())
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?type=SURVIVOR&name=ch&name=zz");
+        assertEquals(NOT_MODIFIED, route(application, conditional).status());
+        Http.RequestBuilder none = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?type=KILLER&name=ch");
+        assertEquals(NO_CONTENT, route(application, none).status());
+        Http.RequestBuilder invalid = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?type=NURSE");
+        assertEquals(BAD_REQUEST, route(application, invalid).status());
+    }
+
+    @Test
+    public void testGetAllPerksBadPage() {
+        Logger.info("Testing getAllPerks with a bad page...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?limit=0");
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testGetAllPerksStream() {
+        createPerk().save();
+        new Perk(CharacterType.SURVIVOR, "chuck", "boosted").save();
+        Logger.info("Testing getAllPerks as a stream...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url() + "?stream=true");
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/x-ndjson", result));
+        assertFalse(result.header("ETag").isPresent());
+        String body = contentAsString(result, application.injector().instanceOf(Materializer.class));
+        assertEquals(2, body.split("\n").length);
+    }
+
     @Test
     public void testGetAllPerksTypeWithNone() {
         ObjectNode json = Json.newObject();
@@ -134,6 +247,42 @@ public class PerkControllerTest {
         assertEquals(OK, result.status());
     }
 
+    @Test
+    public void testCreatePerkWithAttributes() {
+        ObjectNode json = (ObjectNode) Json.toJson(createPerk());
+        json.put("rarity", 3);
+        json.put("potency", 2.5);
+        Logger.info("Testing createPerk with rarity and potency...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(controllers.routes.PerkController.createPerk().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode perk = Json.parse(contentAsString(result));
+        assertEquals(3, perk.get("rarity").asInt());
+        assertEquals(2.5, perk.get("potency").asDouble(), 0);
+        ObjectNode potency = Json.newObject();
+        potency.put("potency", 4);
+        Http.RequestBuilder update = new Http.RequestBuilder().method("PUT")
+                .bodyJson(potency)
+                .uri(controllers.routes.PerkController.updatePerk(perk.get("id").asLong()).url());
+        JsonNode updated = Json.parse(contentAsString(route(application, update)));
+        assertEquals(3, updated.get("rarity").asInt());
+        assertEquals(4, updated.get("potency").asDouble(), 0);
+        assertEquals("billy", updated.get("name").textValue());
+    }
+
+    @Test
+    public void testCreatePerkBadRarity() {
+        ObjectNode json = (ObjectNode) Json.toJson(createPerk());
+        json.put("rarity", -1);
+        Logger.info("Testing createPerk with a bad rarity...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(controllers.routes.PerkController.createPerk().url());
+        assertEquals(BAD_REQUEST, route(application, request).status());
+    }
+
     @Test
     public void testCreateExistingPerk() {
         Logger.info("Testing createPerk with existing Perk...");
@@ -146,6 +295,66 @@ public class PerkControllerTest {
         assertEquals(BAD_REQUEST, result.status());
     }
 
+    @Test
+    public void testCreatePerks() {
+        createPerk().save();
+        ArrayNode json = Json.newArray();
+        json.addObject().put("name", "chuck").put("description", "boosted").put("type", "SURVIVOR");
+        json.addObject().put("name", "chuck").put("description", "boosted").put("type", "SURVIVOR");
+        json.addObject().put("name", "booli").put("description", "boosted").put("type", "invalid");
+        json.addObject().put("name", "billy").put("description", "booli").put("type", "KILLER");
+        Logger.info("Testing createPerks...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(json)
+                .uri(controllers.routes.PerkController.createPerks().url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode rows = Json.parse(contentAsString(result));
+        assertEquals(4, rows.size());
+        assertEquals("chuck", rows.get(0).get("created").get("name").textValue());
+        assertTrue(rows.get(1).has("error"));
+        assertTrue(rows.get(2).has("error"));
+        assertTrue(rows.get(3).has("error"));
+        assertEquals(2, Perk.find.all().size());
+    }
+
+    @Test
+    public void testCreatePerksNotList() {
+        Logger.info("Testing createPerks without a list...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                .bodyJson(Json.toJson(createPerk()))
+                .uri(controllers.routes.PerkController.createPerks().url());
+        Result result = route(application, request);
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testCreatePerkConcurrently() throws Exception {
+        Logger.info("Testing createPerk with concurrent requests for one name...");
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            statuses.add(requests.submit(() -> {
+                Http.RequestBuilder request = new Http.RequestBuilder().method("POST")
+                        .bodyJson(Json.toJson(createPerk()))
+                        .uri(controllers.routes.PerkController.createPerk().url());
+                return route(application, request).status();
+            }));
+        }
+        int created = 0;
+        for(Future<Integer> status : statuses) {
+            int code = status.get(30, TimeUnit.SECONDS);
+            if(code == OK) {
+                created++;
+            } else {
+                assertEquals(BAD_REQUEST, code);
+            }
+        }
+        requests.shutdown();
+        assertEquals(1, created);
+        assertEquals(1, Perk.find.all().size());
+    }
+
     @Test
     public void testCreatePerkWithNull() {
         Logger.info("Testing createPerk with existing Perk...");
@@ -211,6 +420,26 @@ public class PerkControllerTest {
         assertTrue(ControllerTestHelper.testContentType("application/json", result));
     }
 
+    @Test
+    public void testUpdatePerkDescriptionOnly() {
+        Perk testPerk = createPerk();
+        testPerk.setId(100);
+        testPerk.save();
+        ObjectNode json = Json.newObject();
+        json.put("description", "boosted");
+        Logger.info("Testing updatePerk with only a description...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("PUT")
+                .bodyJson(json)
+                .uri(controllers.routes.PerkController.updatePerk(100).url());
+        Result result = route(application, request);
+        assertEquals(OK, result.status());
+        JsonNode perk = Json.parse(contentAsString(result));
+        assertEquals("billy", perk.get("name").textValue());
+        assertEquals("boosted", perk.get("description").textValue());
+        assertEquals("KILLER", perk.get("type").textValue());
+        assertEquals("boosted", Perk.find.byId(100L).getDescription());
+    }
+
     @Test
     public void testUpdateNoPerk() {
         JsonNode json = Json.toJson(createPerk());
@@ -260,6 +489,69 @@ public class PerkControllerTest {
         assertEquals(BAD_REQUEST, result.status());
     }
 
+    @Test
+    public void testGetAllPerksNotModified() {
+        createPerk().save();
+        Logger.info("Testing getAllPerks with current ETag...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        String etag = route(application, request).header("ETag").get();
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", etag)
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        Result result = route(application, conditional);
+        assertEquals(NOT_MODIFIED, result.status());
+        assertEquals(etag, result.header("ETag").get());
+    }
+
+    @Test
+    public void testCreatePerkChangesETag() {
+        Logger.info("Testing createPerk changes ETag...");
+        Http.RequestBuilder request = new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        String etag = route(application, request).header("ETag").get();
+        Http.RequestBuilder create = new Http.RequestBuilder().method("POST")
+                .bodyJson(Json.toJson(createPerk()))
+                .uri(controllers.routes.PerkController.createPerk().url());
+        route(application, create);
+        Http.RequestBuilder conditional = new Http.RequestBuilder().method("GET")
+                .header("If-None-Match", etag)
+                .uri(controllers.routes.PerkController.getAllPerks().url());
+        Result result = route(application, conditional);
+        assertEquals(OK, result.status());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNotModifiedSkipsFinder() {
+        Finder<Long, Perk> finder = mock(Finder.class);
+        PerkRepository perkRepository = new PerkRepository(finder, Runnable::run);
+        Application mocked = new GuiceApplicationBuilder()
+                .configure(Helpers.inMemoryDatabase())
+                .overrides(bind(PerkRepository.class).toInstance(perkRepository))
+                .build();
+        ObjectNode json = Json.newObject();
+        json.put("type",String.valueOf(CharacterType.KILLER));
+        Logger.info("Testing 304 responses never touch the Finder...");
+        running(mocked, () -> {
+            String etag = perkRepository.etag();
+            Http.RequestBuilder all = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .uri(controllers.routes.PerkController.getAllPerks().url());
+            Http.RequestBuilder type = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .bodyJson(json)
+                    .uri(controllers.routes.PerkController.getAllPerksType().url());
+            Http.RequestBuilder one = new Http.RequestBuilder().method("GET")
+                    .header("If-None-Match", etag)
+                    .uri(controllers.routes.PerkController.getPerk(100).url());
+            assertEquals(NOT_MODIFIED, route(mocked, all).status());
+            assertEquals(NOT_MODIFIED, route(mocked, type).status());
+            assertEquals(NOT_MODIFIED, route(mocked, one).status());
+        });
+        verifyZeroInteractions(finder);
+    }
+
     private Perk createPerk() {
         return new Perk(CharacterType.KILLER, "billy", "booli");
     }
@@ -0,0 +1,324 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import io.ebean.Ebean;
+import models.Addon;
+import models.Character;
+import models.CharacterType;
+import models.Perk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Application;
+import play.Logger;
+import play.db.Database;
+import play.db.Databases;
+import play.db.evolutions.Evolutions;
+import play.libs.Json;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.Helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static play.mvc.Http.Status.BAD_REQUEST;
+import static play.mvc.Http.Status.NO_CONTENT;
+import static play.test.Helpers.OK;
+import static play.test.Helpers.contentAsString;
+import static play.test.Helpers.route;
+
+public class StatsControllerTest {
+
+    private Application application;
+    private Database database;
+    private long killer;
+    private long[] killerPerks = new long[5];
+    private long[] killerAddons = new long[2];
+
+    @Before
+    public void init() {
+        application = Helpers.fakeApplication(Helpers.inMemoryDatabase());
+        Helpers.start(application);
+        database = Databases.inMemory(
+                "testdb",
+                ImmutableMap.of(
+                        "MODE","MySQL"
+                ),
+                ImmutableMap.of(
+                        "logStatements", true
+                )
+        );
+        Evolutions.applyEvolutions(database);
+        Character billy = new Character(CharacterType.KILLER, "billy", "booli");
+        billy.save();
+        killer = billy.getId();
+        for(int i = 0; i < killerPerks.length; i++) {
+            Perk perk = new Perk(CharacterType.KILLER, "hex" + i, "ruin");
+            perk.save();
+            killerPerks[i] = perk.getId();
+        }
+        for(int i = 0; i < killerAddons.length; i++) {
+            Addon addon = new Addon(CharacterType.KILLER, "carburetor" + i, "tuning");
+            addon.setRarity(i + 1);
+            addon.save();
+            killerAddons[i] = addon.getId();
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        Evolutions.cleanupEvolutions(database);
+        database.shutdown();
+        Helpers.stop(application);
+    }
+
+    @Test
+    public void testGetPerkSynergies() {
+        long first = createBuild(killerPerks[0], killerPerks[1], killerPerks[2]);
+        Logger.info("Testing getPerkSynergies...");
+        // Saved before the index is loaded
+        JsonNode synergies = synergies(killerPerks[0], 10);
+        assertEquals(1, synergies.get("builds").asLong());
+        assertEquals(2, synergies.get("synergies").size());
+        // Saved after, counted as they are written
+        createBuild(killerPerks[0], killerPerks[2]);
+        synergies = synergies(killerPerks[0], 1);
+        assertEquals(2, synergies.get("builds").asLong());
+        assertEquals(1, synergies.get("synergies").size());
+        assertEquals(killerPerks[2], synergies.get("synergies").get(0).get("perk").get("id").asLong());
+        assertEquals(2, synergies.get("synergies").get(0).get("count").asLong());
+        route(application, new Http.RequestBuilder().method("DELETE")
+                .uri(controllers.routes.BuildController.deleteBuild(first).url()));
+        synergies = synergies(killerPerks[1], 10);
+        assertEquals(0, synergies.get("builds").asLong());
+        assertEquals(0, synergies.get("synergies").size());
+    }
+
+    @Test
+    public void testGetPerkSynergiesInvalidK() {
+        Logger.info("Testing getPerkSynergies with an invalid k...");
+        assertEquals(BAD_REQUEST, route(application, synergiesRequest(killerPerks[0], "0")).status());
+        assertEquals(BAD_REQUEST, route(application, synergiesRequest(killerPerks[0], "101")).status());
+        assertEquals(BAD_REQUEST, route(application, synergiesRequest(killerPerks[0], "many")).status());
+    }
+
+    @Test
+    public void testGetPerkSynergiesNoPerk() {
+        Logger.info("Testing getPerkSynergies of a missing perk...");
+        assertEquals(NO_CONTENT, route(application, synergiesRequest(999, "10")).status());
+    }
+
+    @Test
+    public void testGetBuildStorage() {
+        createBuild(killerPerks[0], killerPerks[1]);
+        createBuild(killerPerks[1], killerPerks[0]);
+        createBuild(killerPerks[2]);
+        Logger.info("Testing getBuildStorage...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getBuildStorage().url()));
+        assertEquals(OK, result.status());
+        JsonNode storage = Json.parse(contentAsString(result));
+        assertEquals(3, storage.get("builds").asLong());
+        // The first two builds are the same loadout listed in another order
+        assertEquals(2, storage.get("contents").asLong());
+        assertEquals(1.5, storage.get("dedupRatio").asDouble(), 0);
+    }
+
+    @Test
+    public void testGetPopularPerks() {
+        createBuild(killerPerks[0], killerPerks[1]);
+        createBuild(killerPerks[1]);
+        Logger.info("Testing getPopularPerks...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getPopularPerks().url() + "?type=KILLER&k=1"));
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+        JsonNode popular = Json.parse(contentAsString(result));
+        assertEquals(1, popular.size());
+        assertEquals(killerPerks[1], popular.get(0).get("perk").get("id").asLong());
+        assertEquals(2, popular.get(0).get("picks").asLong());
+        result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getPopularPerks().url() + "?type=SURVIVOR"));
+        assertEquals(NO_CONTENT, result.status());
+    }
+
+    @Test
+    public void testGetPopularPerksInvalidType() {
+        Logger.info("Testing getPopularPerks with an invalid type...");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getPopularPerks().url() + "?type=GHOST"));
+        assertEquals(BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testGetTrendingBuilds() {
+        long viewed = createBuild(killerPerks[0]);
+        long copied = createBuild(killerPerks[1]);
+        Logger.info("Testing getTrendingBuilds...");
+        assertEquals(NO_CONTENT, route(application, trendingRequest("")).status());
+        route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(viewed).url()));
+        route(application, new Http.RequestBuilder().method("POST")
+                .uri(controllers.routes.BuildController.copyBuild(copied).url()));
+        Result result = route(application, trendingRequest("?type=KILLER&k=5"));
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+        JsonNode trending = Json.parse(contentAsString(result));
+        assertEquals(2, trending.size());
+        // A copy weighs more than a view
+        assertEquals(copied, trending.get(0).get("build").get("id").asLong());
+        assertEquals(viewed, trending.get(1).get("build").get("id").asLong());
+        assertTrue(trending.get(0).get("score").asDouble() > trending.get(1).get("score").asDouble());
+        assertEquals(1, Json.parse(contentAsString(route(application, trendingRequest("?k=1")))).size());
+        assertEquals(NO_CONTENT, route(application, trendingRequest("?type=SURVIVOR")).status());
+    }
+
+    @Test
+    public void testGetTrendingBuildsBadRequest() {
+        Logger.info("Testing getTrendingBuilds with an invalid type and k...");
+        assertEquals(BAD_REQUEST, route(application, trendingRequest("?type=GHOST")).status());
+        assertEquals(BAD_REQUEST, route(application, trendingRequest("?k=101")).status());
+    }
+
+    @Test
+    public void testGetViewers() {
+        long first = createBuild(killerPerks[0]);
+        long second = createBuild(killerPerks[1]);
+        Logger.info("Testing getCharacterViewers and getTypeViewers...");
+        viewBuild(first, "alice");
+        viewBuild(second, "alice");
+        viewBuild(second, "bob");
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getCharacterViewers(killer).url()));
+        assertEquals(OK, result.status());
+        JsonNode viewers = Json.parse(contentAsString(result));
+        assertEquals(killer, viewers.get("character").asLong());
+        // alice viewed both builds and counts once
+        assertEquals(2, viewers.get("viewers").asLong());
+        JsonNode types = Json.parse(contentAsString(route(application, typeViewersRequest(""))));
+        assertEquals(2, types.get("KILLER").asLong());
+        assertEquals(0, types.get("SURVIVOR").asLong());
+        assertEquals(1, Json.parse(contentAsString(route(application, typeViewersRequest("?type=KILLER")))).size());
+        assertEquals(BAD_REQUEST, route(application, typeViewersRequest("?type=GHOST")).status());
+    }
+
+    @Test
+    public void testGetCharacterStats() {
+        long first = createBuild(killerPerks[0], killerPerks[1]);
+        long second = createBuild(killerPerks[0]);
+        Logger.info("Testing getCharacterStats...");
+        addAddons(first, killerAddons[0], killerAddons[1]);
+        addAddons(second, killerAddons[1]);
+        createBuild(killerPerks[2]);
+        route(application, new Http.RequestBuilder().method("DELETE")
+                .uri(controllers.routes.BuildController.deleteBuild(second).url()));
+        Result result = route(application, characterStatsRequest(killer, "?k=2"));
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+        JsonNode stats = Json.parse(contentAsString(result));
+        assertEquals(killer, stats.get("character").asLong());
+        assertEquals(2, stats.get("perks").size());
+        assertEquals(killerPerks[0], stats.get("perks").get(0).get("perk").get("id").asLong());
+        assertEquals(1, stats.get("perks").get(0).get("builds").asLong());
+        assertEquals(2, stats.get("addons").size());
+        // Rarities 1 and 2, the deleted build no longer counts
+        assertEquals(1.5, stats.get("averageAddonRarity").asDouble(), 1e-9);
+        assertEquals(BAD_REQUEST, route(application, characterStatsRequest(killer, "?k=0")).status());
+        assertEquals(NO_CONTENT, route(application, characterStatsRequest(999, "")).status());
+    }
+
+    @Test
+    public void testCheckCharacterStats() {
+        long first = createBuild(killerPerks[0], killerPerks[1]);
+        createBuild(killerPerks[0]);
+        addAddons(first, killerAddons[0]);
+        Logger.info("Testing checkCharacterStats...");
+        JsonNode check = checkStats();
+        assertTrue(check.get("consistent").asBoolean());
+        assertEquals(3, check.get("checked").asLong());
+        assertEquals(0, check.get("differences").size());
+        // Drift written around the BuildRepository is found by the recount
+        Ebean.getDefaultServer().createSqlUpdate("update character_perk_stats set builds = 7 where perk_id = :perk")
+                .setParameter("perk", killerPerks[0])
+                .execute();
+        check = checkStats();
+        assertEquals(false, check.get("consistent").asBoolean());
+        assertEquals(1, check.get("differences").size());
+        JsonNode difference = check.get("differences").get(0);
+        assertEquals("PERK", difference.get("table").asText());
+        assertEquals(killer, difference.get("character").asLong());
+        assertEquals(killerPerks[0], difference.get("id").asLong());
+        assertEquals(7, difference.get("stored").asLong());
+        assertEquals(2, difference.get("recounted").asLong());
+    }
+
+    private long createBuild(final long... perks) {
+        ObjectNode body = Json.newObject();
+        body.put("character", killer);
+        ArrayNode slots = body.putArray("perks");
+        for(long perk : perks) {
+            slots.add(perk);
+        }
+        Result result = route(application, new Http.RequestBuilder().method("POST")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.createBuild().url()));
+        assertEquals(OK, result.status());
+        return Json.parse(contentAsString(result)).get("id").asLong();
+    }
+
+    private JsonNode synergies(final long perk, final int k) {
+        Result result = route(application, synergiesRequest(perk, String.valueOf(k)));
+        assertEquals(OK, result.status());
+        assertTrue(ControllerTestHelper.testContentType("application/json", result));
+        return Json.parse(contentAsString(result));
+    }
+
+    private void viewBuild(final long build, final String viewer) {
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.BuildController.getBuild(build).url())
+                .header(BuildController.VIEWER_HEADER, viewer));
+        assertEquals(OK, result.status());
+    }
+
+    private Http.RequestBuilder typeViewersRequest(final String query) {
+        return new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getTypeViewers().url() + query);
+    }
+
+    private void addAddons(final long build, final long... addons) {
+        ObjectNode body = Json.newObject();
+        ArrayNode slots = body.putArray("addons");
+        for(long addon : addons) {
+            slots.add(addon);
+        }
+        Result result = route(application, new Http.RequestBuilder().method("PUT")
+                .bodyJson(body)
+                .uri(controllers.routes.BuildController.updateBuild(build).url()));
+        assertEquals(OK, result.status());
+    }
+
+    private JsonNode checkStats() {
+        Result result = route(application, new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.checkCharacterStats().url()));
+        assertEquals(OK, result.status());
+        return Json.parse(contentAsString(result));
+    }
+
+    private Http.RequestBuilder characterStatsRequest(final long character, final String query) {
+        return new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getCharacterStats(character).url() + query);
+    }
+
+    private Http.RequestBuilder trendingRequest(final String query) {
+        return new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getTrendingBuilds().url() + query);
+    }
+
+    private Http.RequestBuilder synergiesRequest(final long perk, final String k) {
+        return new Http.RequestBuilder().method("GET")
+                .uri(controllers.routes.StatsController.getPerkSynergies(perk).url() + "?k=" + k);
+    }
+}
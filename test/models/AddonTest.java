@@ -52,4 +52,16 @@ public class AddonTest {
         testAddon.setDescription(description);
         assertEquals(description, testAddon.getDescription());
     }
+
+    @Test
+    public void setRarity() {
+        testAddon.setRarity(3);
+        assertEquals(3, testAddon.getRarity());
+    }
+
+    @Test
+    public void setPotency() {
+        testAddon.setPotency(1.5);
+        assertEquals(1.5, testAddon.getPotency(), 0);
+    }
 }
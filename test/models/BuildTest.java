@@ -0,0 +1,74 @@
+package models;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class BuildTest {
+
+    private Build testBuild = new Build(1, Arrays.asList(2L, 3L), 4L, Collections.singletonList(5L));
+
+    @Test
+    public void constructorTest() {
+        assertEquals(1, testBuild.getCharacter());
+        assertEquals(Arrays.asList(2L, 3L), testBuild.getPerks());
+        assertEquals(Long.valueOf(4), testBuild.getItem());
+        assertEquals(Collections.singletonList(5L), testBuild.getAddons());
+    }
+
+    @Test
+    public void setId() {
+        testBuild.setId(7);
+        assertEquals(7, testBuild.getId());
+    }
+
+    @Test
+    public void setPerks() {
+        testBuild.setPerks(Arrays.asList(6L, 7L, 8L, 9L));
+        assertEquals(Arrays.asList(6L, 7L, 8L, 9L), testBuild.getPerks());
+        testBuild.setPerks(null);
+        assertEquals(Collections.emptyList(), testBuild.getPerks());
+    }
+
+    @Test
+    public void setItem() {
+        testBuild.setItem(null);
+        assertNull(testBuild.getItem());
+    }
+
+    @Test
+    public void setAddons() {
+        testBuild.setAddons(Arrays.asList(8L, 9L));
+        assertEquals(Arrays.asList(8L, 9L), testBuild.getAddons());
+    }
+
+    @Test
+    public void slotsAreSorted() {
+        Build build = new Build(1, Arrays.asList(9L, 3L, 6L), null, Arrays.asList(8L, 2L));
+        assertEquals(Arrays.asList(3L, 6L, 9L), build.getPerks());
+        assertEquals(Arrays.asList(2L, 8L), build.getAddons());
+    }
+
+    @Test
+    public void sameLoadoutSameContentKey() {
+        Build build = new Build(1, Arrays.asList(3L, 2L), 4L, Collections.singletonList(5L));
+        assertEquals(testBuild.getContent().getContentKey(), build.getContent().getContentKey());
+        assertEquals(64, build.getContent().getContentKey().length());
+        build.setItem(null);
+        assertNotEquals(testBuild.getContent().getContentKey(), build.getContent().getContentKey());
+    }
+
+    @Test
+    public void changingASlotReplacesTheContent() {
+        BuildContent content = testBuild.getContent();
+        testBuild.setCharacter(2);
+        assertEquals(1, content.getCharacter());
+        assertEquals(2, testBuild.getCharacter());
+        assertEquals(Arrays.asList(2L, 3L), testBuild.getPerks());
+    }
+}
@@ -52,4 +52,16 @@ public class ItemTest {
         testItem.setDescription(description);
         assertEquals(description, testItem.getDescription());
     }
+
+    @Test
+    public void setRarity() {
+        testItem.setRarity(3);
+        assertEquals(3, testItem.getRarity());
+    }
+
+    @Test
+    public void setPotency() {
+        testItem.setPotency(1.5);
+        assertEquals(1.5, testItem.getPotency(), 0);
+    }
 }
@@ -52,4 +52,16 @@ public class PerkTest {
         testPerk.setDescription(description);
         assertEquals(description, testPerk.getDescription());
     }
+
+    @Test
+    public void setRarity() {
+        testPerk.setRarity(3);
+        assertEquals(3, testPerk.getRarity());
+    }
+
+    @Test
+    public void setPotency() {
+        testPerk.setPotency(1.5);
+        assertEquals(1.5, testPerk.getPotency(), 0);
+    }
 }
@@ -0,0 +1,159 @@
+package repositories;
+
+import models.CharacterType;
+import models.Perk;
+import org.junit.Test;
+import play.libs.Json;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CatalogSnapshotTest {
+
+    private final CatalogSnapshot<Perk> snapshot = CatalogSnapshot.of(Arrays.asList(
+            createPerk(3, CharacterType.SURVIVOR, "chuck"),
+            createPerk(1, CharacterType.KILLER, "billy")));
+
+    @Test
+    public void ofTest() {
+        assertEquals(2, snapshot.size());
+        assertEquals(1, snapshot.all().get(0).getId());
+        assertEquals(3, snapshot.all().get(1).getId());
+        assertEquals("billy", snapshot.get(1).get().getName());
+        assertEquals(1, snapshot.ofType(CharacterType.KILLER).size());
+        assertEquals(1, snapshot.ofType(CharacterType.SURVIVOR).size());
+    }
+
+    @Test
+    public void withNewEntry() {
+        CatalogSnapshot<Perk> changed = snapshot.with(createPerk(2, CharacterType.KILLER, "booli"));
+        assertEquals(3, changed.size());
+        assertEquals(2, changed.all().get(1).getId());
+        assertEquals(2, changed.ofType(CharacterType.KILLER).size());
+        assertEquals(2, snapshot.size());
+    }
+
+    @Test
+    public void withChangedEntry() {
+        CatalogSnapshot<Perk> changed = snapshot.with(createPerk(1, CharacterType.SURVIVOR, "boosted"));
+        assertEquals(2, changed.size());
+        assertEquals("boosted", changed.get(1).get().getName());
+        assertEquals(0, changed.ofType(CharacterType.KILLER).size());
+        assertEquals("billy", snapshot.get(1).get().getName());
+    }
+
+    @Test
+    public void withAllEntries() {
+        CatalogSnapshot<Perk> changed = snapshot.withAll(Arrays.asList(
+                createPerk(2, CharacterType.KILLER, "booli"),
+                createPerk(3, CharacterType.KILLER, "boosted")));
+        assertEquals(3, changed.size());
+        assertEquals(2, changed.all().get(1).getId());
+        assertEquals("boosted", changed.get(3).get().getName());
+        assertEquals(3, changed.ofType(CharacterType.KILLER).size());
+    }
+
+    @Test
+    public void withoutEntry() {
+        CatalogSnapshot<Perk> changed = snapshot.without(1);
+        assertEquals(1, changed.size());
+        assertFalse(changed.get(1).isPresent());
+        assertTrue(snapshot.get(1).isPresent());
+    }
+
+    @Test
+    public void withoutMissingEntry() {
+        assertSame(snapshot, snapshot.without(100));
+    }
+
+    @Test
+    public void changesBumpTheVersion() {
+        assertEquals(0, snapshot.getVersion());
+        CatalogSnapshot<Perk> changed = snapshot.with(createPerk(2, CharacterType.KILLER, "booli"));
+        assertEquals(1, changed.getVersion());
+        assertEquals(2, changed.withAll(Arrays.asList(createPerk(3, CharacterType.KILLER, "billy"))).getVersion());
+        assertEquals(2, changed.without(2).getVersion());
+        assertEquals(0, snapshot.getVersion());
+    }
+
+    @Test
+    public void jsonIsSerializedOnce() {
+        assertSame(snapshot.allJson(), snapshot.allJson());
+        assertSame(snapshot.ofTypeJson(CharacterType.KILLER), snapshot.ofTypeJson(CharacterType.KILLER));
+        assertNotSame(snapshot.allJson(), snapshot.without(1).allJson());
+    }
+
+    @Test
+    public void pageTest() {
+        CatalogSnapshot<Perk> larger = snapshot.with(createPerk(2, CharacterType.KILLER, "booli"));
+        CatalogPage<Perk> first = larger.page(larger.all(), 0, 2);
+        assertEquals(2, first.getItems().size());
+        assertEquals(Long.valueOf(2), first.getNext());
+        CatalogPage<Perk> last = larger.page(larger.all(), first.getNext(), 2);
+        assertEquals(1, last.getItems().size());
+        assertEquals(3, last.getItems().get(0).getId());
+        assertNull(last.getNext());
+        assertTrue(larger.page(larger.all(), 3, 2).getItems().isEmpty());
+    }
+
+    @Test
+    public void pageOfTypeTest() {
+        CatalogSnapshot<Perk> larger = snapshot.with(createPerk(2, CharacterType.KILLER, "booli"));
+        CatalogPage<Perk> page = larger.page(larger.ofType(CharacterType.KILLER), 1, 5);
+        assertEquals(1, page.getItems().size());
+        assertEquals(2, page.getItems().get(0).getId());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    public void filterTest() {
+        CatalogSnapshot<Perk> larger = snapshot.with(createPerk(2, CharacterType.KILLER, "booli"))
+                .with(createPerk(4, CharacterType.SURVIVOR, "boosted"));
+        assertSame(larger.all(), larger.filter(CatalogFilter.NONE));
+        assertEquals(2, larger.filter(new CatalogFilter(Collections.singletonList(CharacterType.KILLER),
+                Collections.emptyList())).size());
+        List<Perk> prefixed = larger.filter(new CatalogFilter(Collections.emptyList(), Arrays.asList("b", "bo")));
+        assertEquals(3, prefixed.size());
+        assertEquals(1, prefixed.get(0).getId());
+        assertEquals(4, prefixed.get(2).getId());
+        List<Perk> both = larger.filter(new CatalogFilter(Collections.singletonList(CharacterType.SURVIVOR),
+                Collections.singletonList("boo")));
+        assertEquals(1, both.size());
+        assertEquals("boosted", both.get(0).getName());
+        assertTrue(larger.filter(new CatalogFilter(Collections.emptyList(), Collections.singletonList("z"))).isEmpty());
+    }
+
+    @Test
+    public void filteredJsonIsSerializedOnce() {
+        assertSame(snapshot.allJson(), snapshot.filterJson(CatalogFilter.NONE));
+        assertSame(snapshot.ofTypeJson(CharacterType.KILLER), snapshot.filterJson(
+                new CatalogFilter(Collections.singletonList(CharacterType.KILLER), Collections.emptyList())));
+        JsonBody prefixed = snapshot.filterJson(new CatalogFilter(Collections.emptyList(), Collections.singletonList("b")));
+        assertSame(prefixed, snapshot.filterJson(new CatalogFilter(Collections.emptyList(), Collections.singletonList("b"))));
+        assertEquals(1, Json.parse(prefixed.bytes()).size());
+        assertEquals("billy", Json.parse(prefixed.bytes()).get(0).get("name").textValue());
+    }
+
+    @Test
+    public void filteredJsonCacheIsBounded() {
+        for(int i = 0; i < CatalogSnapshot.MAX_FILTERED_JSON; i++) {
+            snapshot.filterJson(new CatalogFilter(Collections.emptyList(), Collections.singletonList("b" + i)));
+        }
+        CatalogFilter last = new CatalogFilter(Collections.emptyList(), Collections.singletonList("c"));
+        assertNotSame(snapshot.filterJson(last), snapshot.filterJson(last));
+    }
+
+    private static Perk createPerk(final long id, final CharacterType type, final String name) {
+        Perk perk = new Perk(type, name, "booli");
+        perk.setId(id);
+        return perk;
+    }
+}
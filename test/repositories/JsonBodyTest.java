@@ -0,0 +1,39 @@
+package repositories;
+
+import models.CharacterType;
+import models.Perk;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonBodyTest {
+
+    @Test
+    public void ofTest() throws IOException {
+        JsonBody body = JsonBody.of(Collections.singletonList(new Perk(CharacterType.KILLER, "billy", "booli")));
+        String json = new String(body.bytes(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("["));
+        assertTrue(json.contains("\"name\":\"billy\""));
+        assertArrayEquals(body.bytes(), gunzip(body.gzipped()));
+    }
+
+    private static byte[] gunzip(final byte[] gzipped) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,190 @@
+package repositories;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import io.ebean.DuplicateKeyException;
+import io.ebean.EbeanServer;
+import io.ebean.Finder;
+import io.ebean.Query;
+import io.ebean.QueryIterator;
+import io.ebean.SqlUpdate;
+import models.CharacterType;
+import models.Perk;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class PerkRepositoryTest {
+
+    private Finder<Long, Perk> finder;
+    private PerkRepository perkRepository;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        Perk killer = new Perk(CharacterType.KILLER, "billy", "booli");
+        killer.setId(1);
+        Perk survivor = new Perk(CharacterType.SURVIVOR, "chuck", "boosted");
+        survivor.setId(2);
+        finder = mock(Finder.class);
+        when(finder.all()).thenReturn(Arrays.asList(survivor, killer));
+        perkRepository = new PerkRepository(finder, Runnable::run);
+    }
+
+    @Test
+    public void readsLoadTableOnce() throws Exception {
+        List<Perk> perks = perkRepository.all().toCompletableFuture().get();
+        Optional<Perk> perk = perkRepository.byId(2).toCompletableFuture().get();
+        Optional<Perk> missing = perkRepository.byId(100).toCompletableFuture().get();
+        List<Perk> killers = perkRepository.ofType(CharacterType.KILLER).toCompletableFuture().get();
+
+        assertEquals(2, perks.size());
+        assertEquals(1, perks.get(0).getId());
+        assertTrue(perk.isPresent());
+        assertEquals("chuck", perk.get().getName());
+        assertFalse(missing.isPresent());
+        assertEquals(1, killers.size());
+        verify(finder, times(1)).all();
+        verifyNoMoreInteractions(finder);
+    }
+
+    @Test
+    public void insertTakenNameIsEmpty() throws Exception {
+        EbeanServer server = mock(EbeanServer.class);
+        when(finder.db()).thenReturn(server);
+        doThrow(new DuplicateKeyException("uq_perks_name", null)).when(server).save(any());
+        Optional<Perk> perk = perkRepository.insert(new Perk(CharacterType.KILLER, "billy", "booli"))
+                .toCompletableFuture().get();
+        assertFalse(perk.isPresent());
+        assertEquals(2, perkRepository.all().toCompletableFuture().get().size());
+        verify(finder, times(0)).query();
+    }
+
+    @Test
+    public void updateWritesOnlyChangedColumns() throws Exception {
+        SqlUpdate update = mockSqlUpdate("update perks set description = :description where id = :id", 1);
+        Optional<Perk> perk = perkRepository.update(1, new CatalogChanges().description("boosted"))
+                .toCompletableFuture().get();
+        assertTrue(perk.isPresent());
+        assertEquals("billy", perk.get().getName());
+        assertEquals("boosted", perk.get().getDescription());
+        assertEquals(CharacterType.KILLER, perk.get().getType());
+        assertEquals("boosted", perkRepository.byId(1).toCompletableFuture().get().get().getDescription());
+        verify(update).setParameter("description", "boosted");
+        verify(finder, times(0)).byId(any());
+    }
+
+    @Test
+    public void updateMissingRowIsEmpty() throws Exception {
+        mockSqlUpdate("update perks set name = :name, type = :type where id = :id", 0);
+        Optional<Perk> perk = perkRepository.update(100, new CatalogChanges().name("chuck").type(CharacterType.SURVIVOR))
+                .toCompletableFuture().get();
+        assertFalse(perk.isPresent());
+    }
+
+    @Test
+    public void deleteIsOneStatement() throws Exception {
+        mockSqlUpdate("delete from perks where id = :id", 1);
+        Optional<Perk> perk = perkRepository.delete(2).toCompletableFuture().get();
+        assertTrue(perk.isPresent());
+        assertEquals("chuck", perk.get().getName());
+        assertFalse(perkRepository.byId(2).toCompletableFuture().get().isPresent());
+        verify(finder, times(0)).byId(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void streamPullsRowsOnDemand() throws Exception {
+        final long rows = 1_000_000;
+        SyntheticRows iterator = new SyntheticRows(rows);
+        Query<Perk> query = mock(Query.class);
+        when(finder.query()).thenReturn(query);
+        when(query.orderBy("id")).thenReturn(query);
+        when(query.findIterate()).thenReturn(iterator);
+        AtomicLong consumed = new AtomicLong();
+        AtomicLong maxAhead = new AtomicLong();
+
+        ActorSystem system = ActorSystem.create("PerkRepositoryTest");
+        try {
+            Materializer materializer = ActorMaterializer.create(system);
+            long count = perkRepository.stream()
+                    .runWith(Sink.fold(0L, (total, perk) -> {
+                        consumed.incrementAndGet();
+                        maxAhead.accumulateAndGet(iterator.produced - consumed.get(), Math::max);
+                        return total + 1;
+                    }), materializer)
+                    .toCompletableFuture().get(60, TimeUnit.SECONDS);
+            assertEquals(rows, count);
+        } finally {
+            system.terminate();
+        }
+        assertTrue(iterator.closed);
+        // Only a few chunks are ever held between the database and the consumer
+        assertTrue(maxAhead.get() <= 64 * CatalogRepository.STREAM_CHUNK_SIZE);
+    }
+
+    private static class SyntheticRows implements QueryIterator<Perk> {
+
+        private final long rows;
+        private volatile long produced;
+        private volatile boolean closed;
+
+        SyntheticRows(final long rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return produced < rows;
+        }
+
+        @Override
+        public Perk next() {
+            produced++;
+            Perk perk = new Perk(CharacterType.KILLER, "perk" + produced, "booli");
+            perk.setId(produced);
+            return perk;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private SqlUpdate mockSqlUpdate(final String sql, final int rows) {
+        EbeanServer server = mock(EbeanServer.class);
+        SqlUpdate update = mock(SqlUpdate.class);
+        when(finder.db()).thenReturn(server);
+        when(server.createSqlUpdate(anyString())).thenThrow(new AssertionError("Unexpected statement"));
+        doReturn(update).when(server).createSqlUpdate(sql);
+        when(update.setParameter(anyString(), any())).thenReturn(update);
+        when(update.execute()).thenReturn(rows);
+        return update;
+    }
+}
@@ -0,0 +1,118 @@
+package services;
+
+import models.Addon;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import org.junit.Test;
+import repositories.CatalogSnapshot;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BuildCatalogTest {
+
+    // Killer 1, survivor 2; killer perks 1-5, survivor perks 6-9; survivor item 1, killer item 2;
+    // killer addons 1-3, survivor addons 4-5
+    private final BuildCatalog catalog = new BuildCatalog(
+            CatalogSnapshot.of(Arrays.asList(
+                    character(1, CharacterType.KILLER), character(2, CharacterType.SURVIVOR))),
+            CatalogSnapshot.of(Arrays.asList(
+                    perk(1, CharacterType.KILLER), perk(2, CharacterType.KILLER), perk(3, CharacterType.KILLER),
+                    perk(4, CharacterType.KILLER), perk(5, CharacterType.KILLER), perk(6, CharacterType.SURVIVOR),
+                    perk(7, CharacterType.SURVIVOR), perk(8, CharacterType.SURVIVOR), perk(9, CharacterType.SURVIVOR))),
+            CatalogSnapshot.of(Arrays.asList(item(1, CharacterType.SURVIVOR), item(2, CharacterType.KILLER))),
+            CatalogSnapshot.of(Arrays.asList(
+                    addon(1, CharacterType.KILLER), addon(2, CharacterType.KILLER), addon(3, CharacterType.KILLER),
+                    addon(4, CharacterType.SURVIVOR), addon(5, CharacterType.SURVIVOR))));
+
+    @Test
+    public void validKillerBuild() {
+        BuildVerdict verdict = catalog.validate(new Loadout(1, new long[]{1, 2, 3, 4}, Loadout.NO_ITEM, new long[]{1, 2}));
+        assertTrue(verdict.isValid());
+        assertSame(BuildVerdict.VALID, verdict);
+    }
+
+    @Test
+    public void validSurvivorBuild() {
+        assertTrue(catalog.validate(new Loadout(2, new long[]{6, 7}, 1, new long[]{4, 5})).isValid());
+    }
+
+    @Test
+    public void emptyBuildIsValid() {
+        assertTrue(catalog.validate(new Loadout(1, new long[0], Loadout.NO_ITEM, new long[0])).isValid());
+    }
+
+    @Test
+    public void unknownCharacter() {
+        BuildVerdict verdict = catalog.validate(new Loadout(3, new long[]{1}, Loadout.NO_ITEM, new long[0]));
+        assertFalse(verdict.isValid());
+        assertEquals("There is no character with id, 3", verdict.getErrors().get(0));
+    }
+
+    @Test
+    public void wrongTypeAndMissingPerks() {
+        BuildVerdict verdict = catalog.validate(new Loadout(1, new long[]{1, 6, 42}, Loadout.NO_ITEM, new long[0]));
+        assertEquals(Arrays.asList("The perk 6 is not a killer perk", "There is no perk with id, 42"),
+                verdict.getErrors());
+    }
+
+    @Test
+    public void duplicatesAndSlotLimits() {
+        BuildVerdict verdict = catalog.validate(
+                new Loadout(1, new long[]{1, 2, 3, 4, 1}, Loadout.NO_ITEM, new long[]{1, 1, 2}));
+        assertEquals(Arrays.asList("A build has at most 4 perks", "Perk 1 is in the build more than once",
+                "A build has at most 2 addons", "Addon 1 is in the build more than once"), verdict.getErrors());
+    }
+
+    @Test
+    public void itemsOnlyForSurvivors() {
+        assertEquals(Arrays.asList("Only survivors carry an item"),
+                catalog.validate(new Loadout(1, new long[0], 2, new long[0])).getErrors());
+        assertEquals(Arrays.asList("The item 2 is not a survivor item"),
+                catalog.validate(new Loadout(2, new long[0], 2, new long[0])).getErrors());
+    }
+
+    @Test
+    public void survivorAddonsNeedAnItem() {
+        assertEquals(Arrays.asList("Survivor addons need an item"),
+                catalog.validate(new Loadout(2, new long[0], Loadout.NO_ITEM, new long[]{4})).getErrors());
+    }
+
+    @Test
+    public void characterType() {
+        assertEquals(CharacterType.KILLER, catalog.characterType(1));
+        assertEquals(CharacterType.SURVIVOR, catalog.characterType(2));
+        assertEquals(null, catalog.characterType(-1));
+        assertEquals(null, catalog.characterType(Long.MAX_VALUE));
+    }
+
+    private static Character character(final long id, final CharacterType type) {
+        Character character = new Character(type, "character" + id, "");
+        character.setId(id);
+        return character;
+    }
+
+    private static Perk perk(final long id, final CharacterType type) {
+        Perk perk = new Perk(type, "perk" + id, "");
+        perk.setId(id);
+        return perk;
+    }
+
+    private static Item item(final long id, final CharacterType type) {
+        Item item = new Item(type, "item" + id, "");
+        item.setId(id);
+        return item;
+    }
+
+    private static Addon addon(final long id, final CharacterType type) {
+        Addon addon = new Addon(type, "addon" + id, "");
+        addon.setId(id);
+        return addon;
+    }
+}
@@ -0,0 +1,131 @@
+package services;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BuildCodeTest {
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void roundTrips() {
+        for(int i = 0; i < 10000; i++) {
+            Loadout loadout = randomLoadout();
+            String code = BuildCode.encode(loadout);
+            assertTrue(code.matches("[A-Za-z0-9_-]+"));
+            assertEquals(loadout, BuildCode.decode(code));
+        }
+    }
+
+    @Test
+    public void smallBuildsHaveShortCodes() {
+        Loadout loadout = new Loadout(3, new long[]{10, 20, 30, 40}, 5, new long[]{60, 70});
+        // Twelve bytes: version, header, eight one byte ids and two of checksum
+        assertEquals(16, BuildCode.encode(loadout).length());
+    }
+
+    @Test
+    public void largestIdsRoundTrip() {
+        Loadout loadout = new Loadout(Long.MAX_VALUE, new long[]{Long.MAX_VALUE, 1}, Long.MAX_VALUE, new long[]{});
+        assertEquals(loadout, BuildCode.decode(BuildCode.encode(loadout)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyPerksHaveNoCode() {
+        BuildCode.encode(new Loadout(1, new long[]{1, 2, 3, 4, 5}, Loadout.NO_ITEM, new long[]{}));
+    }
+
+    @Test
+    public void rejectsEveryChangedCharacter() {
+        String code = BuildCode.encode(new Loadout(300, new long[]{2, 3}, Loadout.NO_ITEM, new long[]{4}));
+        for(int position = 0; position < code.length(); position++) {
+            for(int c = 0; c < ALPHABET.length(); c++) {
+                if(ALPHABET.charAt(c) != code.charAt(position)) {
+                    assertInvalid(code.substring(0, position) + ALPHABET.charAt(c) + code.substring(position + 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedAndExtendedCodes() {
+        String code = BuildCode.encode(randomLoadout());
+        for(int length = 0; length < code.length(); length++) {
+            assertInvalid(code.substring(0, length));
+        }
+        assertInvalid(code + "A");
+        assertInvalid(code + "AA");
+    }
+
+    @Test
+    public void fuzzedCodesDecodeOrFailCleanly() {
+        for(int i = 0; i < 200000; i++) {
+            StringBuilder code = new StringBuilder();
+            int length = random.nextInt(40);
+            for(int c = 0; c < length; c++) {
+                // Mostly valid characters, with some outside the alphabet and outside ASCII
+                int pick = random.nextInt(70);
+                code.append(pick < 64 ? ALPHABET.charAt(pick) : pick < 68 ? "=+/ ".charAt(pick - 64) : '\u00e9');
+            }
+            try {
+                Loadout loadout = BuildCode.decode(code.toString());
+                // Anything that decodes has to be the one canonical code of its loadout
+                assertEquals(code.toString(), BuildCode.encode(loadout));
+            } catch(IllegalArgumentException e) {
+                assertEquals("The build code is invalid", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void fuzzedValidBytesDecodeOrFailCleanly() {
+        for(int i = 0; i < 50000; i++) {
+            String code = BuildCode.encode(randomLoadout());
+            char[] chars = code.toCharArray();
+            chars[random.nextInt(chars.length)] = ALPHABET.charAt(random.nextInt(64));
+            try {
+                BuildCode.decode(new String(chars));
+            } catch(IllegalArgumentException e) {
+                assertEquals("The build code is invalid", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsNull() {
+        assertInvalid(null);
+    }
+
+    private Loadout randomLoadout() {
+        long[] perks = new long[random.nextInt(BuildCatalog.PERK_SLOTS + 1)];
+        for(int i = 0; i < perks.length; i++) {
+            perks[i] = randomId();
+        }
+        long[] addons = new long[random.nextInt(BuildCatalog.ADDON_SLOTS + 1)];
+        for(int i = 0; i < addons.length; i++) {
+            addons[i] = randomId();
+        }
+        return new Loadout(randomId(), perks, random.nextBoolean() ? Loadout.NO_ITEM : randomId(), addons);
+    }
+
+    private long randomId() {
+        // Ids of every varint length
+        return 1 + (random.nextLong() >>> 1 >>> random.nextInt(63));
+    }
+
+    private static void assertInvalid(String code) {
+        try {
+            BuildCode.decode(code);
+            fail("Decoded " + code);
+        } catch(IllegalArgumentException e) {
+            assertEquals("The build code is invalid", e.getMessage());
+        }
+    }
+}
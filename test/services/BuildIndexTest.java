@@ -0,0 +1,172 @@
+package services;
+
+import models.Build;
+import org.junit.Before;
+import org.junit.Test;
+import repositories.BuildRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BuildIndexTest {
+
+    private final Random random = new Random(11);
+    private final Map<Long, Build> builds = new HashMap<>();
+    private BuildIndex index;
+
+    @Before
+    public void init() {
+        BuildRepository buildRepository = mock(BuildRepository.class);
+        when(buildRepository.subscribe(any())).thenReturn(CompletableFuture.completedFuture(null));
+        index = new BuildIndex(buildRepository);
+        for(long id = 1; id <= 2000; id++) {
+            save(randomBuild(id));
+        }
+    }
+
+    @Test
+    public void matchesScan() {
+        for(int i = 0; i < 300; i++) {
+            BuildQuery query = new BuildQuery()
+                    .require(BuildQuery.Slot.CHARACTER, ids(random.nextInt(2), 3))
+                    .require(BuildQuery.Slot.PERK, ids(random.nextInt(3), 12))
+                    .any(BuildQuery.Slot.ADDON, ids(random.nextInt(3), 8))
+                    .any(BuildQuery.Slot.ITEM, ids(random.nextInt(2), 4))
+                    .forbid(BuildQuery.Slot.PERK, ids(random.nextInt(2), 12))
+                    .forbid(BuildQuery.Slot.ADDON, ids(random.nextInt(2), 8));
+            assertEquals(scan(query), all(search(query)));
+        }
+    }
+
+    @Test
+    public void followsUpdatesAndDeletes() {
+        for(long id = 1; id <= 2000; id += 3) {
+            save(randomBuild(id));
+        }
+        for(long id = 2; id <= 2000; id += 7) {
+            index.changed(builds.remove(id), null);
+        }
+        BuildQuery query = new BuildQuery().require(BuildQuery.Slot.PERK, Collections.singletonList(1L));
+        assertEquals(scan(query), all(search(query)));
+        assertEquals(builds.size(), search(new BuildQuery()).count());
+    }
+
+    @Test
+    public void containsSavedBuilds() {
+        index.changed(builds.remove(5L), null);
+        assertTrue(index.contains(4).toCompletableFuture().join());
+        assertFalse(index.contains(5).toCompletableFuture().join());
+        assertFalse(index.contains(2001).toCompletableFuture().join());
+        assertFalse(index.contains(1L << 40).toCompletableFuture().join());
+    }
+
+    @Test
+    public void pagesInIdOrder() {
+        BuildMatches matches = search(new BuildQuery().require(BuildQuery.Slot.CHARACTER, Collections.singletonList(1L)));
+        List<Long> expected = all(matches);
+        List<Long> paged = new ArrayList<>();
+        long after = 0;
+        while(true) {
+            List<Long> page = matches.after(after, 50);
+            paged.addAll(page);
+            if(page.isEmpty() || !matches.hasAfter(page.get(page.size() - 1))) {
+                break;
+            }
+            after = page.get(page.size() - 1);
+        }
+        assertEquals(expected, paged);
+        assertEquals(expected.size(), matches.count());
+        assertFalse(matches.hasAfter(expected.get(expected.size() - 1)));
+    }
+
+    @Test
+    public void indexesIdsBeyondInt() {
+        long large = (1L << 40) + 3;
+        Build build = randomBuild(large);
+        save(build);
+        assertTrue(index.contains(large).toCompletableFuture().join());
+        assertEquals(build.getCharacter(), index.characterOf(large).toCompletableFuture().join().get().longValue());
+        BuildMatches matches = search(new BuildQuery());
+        assertTrue(matches.hasAfter(2000));
+        assertEquals(Collections.singletonList(large), matches.after(2000, 10));
+        index.changed(builds.remove(large), null);
+        assertFalse(index.contains(large).toCompletableFuture().join());
+    }
+
+    @Test
+    public void unknownRequiredIdMatchesNothing() {
+        BuildQuery query = new BuildQuery().require(BuildQuery.Slot.PERK, Collections.singletonList(999L));
+        assertEquals(0, search(query).count());
+        assertTrue(search(query).after(0, 10).isEmpty());
+    }
+
+    private void save(Build build) {
+        index.changed(builds.put(build.getId(), build), build);
+    }
+
+    private Build randomBuild(long id) {
+        List<Long> perks = ids(random.nextInt(5), 12);
+        List<Long> addons = ids(random.nextInt(3), 8);
+        Long item = random.nextBoolean() ? null : (long) (1 + random.nextInt(4));
+        Build build = new Build(1 + random.nextInt(3), perks, item, addons);
+        build.setId(id);
+        return build;
+    }
+
+    private List<Long> ids(int count, int bound) {
+        List<Long> ids = new ArrayList<>();
+        while(ids.size() < count) {
+            long id = 1 + random.nextInt(bound);
+            if(!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private BuildMatches search(BuildQuery query) {
+        return index.search(query).toCompletableFuture().join();
+    }
+
+    private static List<Long> all(BuildMatches matches) {
+        return matches.after(0, Integer.MAX_VALUE);
+    }
+
+    private List<Long> scan(BuildQuery query) {
+        List<Long> matches = new ArrayList<>();
+        for(Build build : builds.values()) {
+            if(matchesSlot(query, BuildQuery.Slot.CHARACTER, Collections.singletonList(build.getCharacter()))
+                    && matchesSlot(query, BuildQuery.Slot.PERK, build.getPerks())
+                    && matchesSlot(query, BuildQuery.Slot.ITEM,
+                        build.getItem() == null ? Collections.<Long>emptyList() : Arrays.asList(build.getItem()))
+                    && matchesSlot(query, BuildQuery.Slot.ADDON, build.getAddons())) {
+                matches.add(build.getId());
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private static boolean matchesSlot(BuildQuery query, BuildQuery.Slot slot, List<Long> used) {
+        if(!used.containsAll(query.getRequired(slot))) {
+            return false;
+        }
+        if(!query.getAny(slot).isEmpty() && Collections.disjoint(used, query.getAny(slot))) {
+            return false;
+        }
+        return Collections.disjoint(used, query.getForbidden(slot));
+    }
+}
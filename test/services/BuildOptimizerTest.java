@@ -0,0 +1,162 @@
+package services;
+
+import models.Addon;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import org.junit.Test;
+import repositories.CatalogSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BuildOptimizerTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void matchesBruteForce() throws Exception {
+        BuildCatalog catalog = catalog(14, 6, 0);
+        Random random = new Random(7);
+        ScoringProfile profile = new ScoringProfile();
+        for(long perk = 1; perk <= 14; perk++) {
+            profile.perk(perk, random.nextDouble() * 10 - 3);
+        }
+        for(long addon = 1; addon <= 6; addon++) {
+            profile.addon(addon, random.nextDouble() * 5);
+        }
+        profile.synergy(2, 3, 8).synergy(5, 9, -4).synergy(1, 14, 6);
+        OptimizerQuery query = new OptimizerQuery(1).profile(profile).k(7);
+        OptimizerResult result = BuildOptimizer.optimize(catalog, query, ForkJoinPool.commonPool())
+                .toCompletableFuture().get();
+        assertTrue(result.isComplete());
+        assertEquals(7, result.getBuilds().size());
+        List<Double> expected = bruteForce(catalog.space(1), profile, 7);
+        for(int i = 0; i < expected.size(); i++) {
+            ScoredBuild build = result.getBuilds().get(i);
+            assertEquals(expected.get(i), build.getScore(), EPSILON);
+            assertEquals(profile.score(build.getLoadout()), build.getScore(), EPSILON);
+            assertTrue(catalog.validate(build.getLoadout()).isValid());
+        }
+        assertTrue(result.getNodesPruned() > 0);
+        assertTrue(result.getNodesExpanded() < catalog.space(1).size());
+    }
+
+    @Test
+    public void requiredAndForbidden() throws Exception {
+        BuildCatalog catalog = catalog(8, 4, 0);
+        ScoringProfile profile = new ScoringProfile().perk(1, 10).perk(2, 9).perk(3, -5).addon(4, 3);
+        OptimizerQuery query = new OptimizerQuery(1).profile(profile)
+                .requirePerks(Collections.singletonList(3L))
+                .forbidPerks(Collections.singletonList(1L))
+                .requireAddons(Collections.singletonList(2L))
+                .k(1);
+        Loadout best = BuildOptimizer.optimize(catalog, query, Runnable::run).toCompletableFuture().get()
+                .getBuilds().get(0).getLoadout();
+        List<Long> perks = new ArrayList<>();
+        for(int slot = 0; slot < best.perkCount(); slot++) {
+            perks.add(best.perk(slot));
+        }
+        assertTrue(perks.contains(3L));
+        assertTrue(perks.contains(2L));
+        assertFalse(perks.contains(1L));
+        assertEquals(Arrays.asList(2L, 4L), Arrays.asList(best.addon(0), best.addon(1)));
+    }
+
+    @Test
+    public void survivorsPickTheBestItem() throws Exception {
+        BuildCatalog catalog = catalog(5, 3, 3);
+        ScoringProfile profile = new ScoringProfile().item(102, 4).item(103, 1);
+        Loadout best = BuildOptimizer.optimize(catalog, new OptimizerQuery(2).profile(profile).k(1), Runnable::run)
+                .toCompletableFuture().get().getBuilds().get(0).getLoadout();
+        assertEquals(102, best.getItem());
+        assertEquals(2, best.addonCount());
+    }
+
+    @Test
+    public void rejectsImpossibleQueries() throws Exception {
+        BuildCatalog catalog = catalog(5, 3, 0);
+        OptimizerResult unknown = BuildOptimizer.optimize(catalog, new OptimizerQuery(42), Runnable::run)
+                .toCompletableFuture().get();
+        assertFalse(unknown.getVerdict().isValid());
+        OptimizerResult both = BuildOptimizer.optimize(catalog, new OptimizerQuery(1)
+                .requirePerks(Collections.singletonList(1L)).forbidPerks(Collections.singletonList(1L)), Runnable::run)
+                .toCompletableFuture().get();
+        assertEquals("Perk 1 is both required and forbidden", both.getVerdict().getErrors().get(0));
+        OptimizerResult noItem = BuildOptimizer.optimize(catalog, new OptimizerQuery(2)
+                .requireAddons(Collections.singletonList(101L)), Runnable::run).toCompletableFuture().get();
+        assertEquals("Survivor addons need an item", noItem.getVerdict().getErrors().get(0));
+    }
+
+    @Test
+    public void returnsBestSoFarWhenTheBudgetRunsOut() throws Exception {
+        BuildCatalog catalog = catalog(300, 10, 0);
+        Random random = new Random(11);
+        ScoringProfile profile = new ScoringProfile();
+        // Dense positive synergies make the bound loose, so the search cannot finish in time
+        for(long perk = 1; perk <= 300; perk++) {
+            profile.perk(perk, random.nextDouble());
+            for(long other = perk + 1; other <= 300; other++) {
+                profile.synergy(perk, other, random.nextDouble());
+            }
+        }
+        long start = System.nanoTime();
+        OptimizerResult result = BuildOptimizer.optimize(catalog, new OptimizerQuery(1).profile(profile).k(5)
+                .budgetMillis(20), ForkJoinPool.commonPool()).toCompletableFuture().get();
+        assertTrue((System.nanoTime() - start) / 1_000_000L < 1000);
+        assertFalse(result.isComplete());
+        assertEquals(5, result.getBuilds().size());
+        assertTrue(result.getBuilds().get(0).getScore() >= result.getBuilds().get(4).getScore());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void kOutOfRange() {
+        new OptimizerQuery(1).k(OptimizerQuery.MAX_K + 1);
+    }
+
+    private static List<Double> bruteForce(final BuildSpace space, final ScoringProfile profile, final int k) {
+        List<Double> scores = new ArrayList<>();
+        space.spliterator().forEachRemaining(loadout -> scores.add(profile.score(loadout)));
+        scores.sort(Collections.reverseOrder());
+        return scores.subList(0, k);
+    }
+
+    /**
+     * Killer 1 and survivor 2. Killer perks and addons are numbered from 1, survivor perks and addons from 101,
+     * survivor items from 101 as well
+     */
+    private static BuildCatalog catalog(final int perks, final int addons, final int items) {
+        List<Perk> perkRows = new ArrayList<>();
+        List<Addon> addonRows = new ArrayList<>();
+        List<Item> itemRows = new ArrayList<>();
+        for(int i = 1; i <= perks; i++) {
+            perkRows.add(withId(new Perk(CharacterType.KILLER, "perk" + i, ""), i));
+            perkRows.add(withId(new Perk(CharacterType.SURVIVOR, "perk" + (100 + i), ""), 100 + i));
+        }
+        for(int i = 1; i <= addons; i++) {
+            addonRows.add(withId(new Addon(CharacterType.KILLER, "addon" + i, ""), i));
+            addonRows.add(withId(new Addon(CharacterType.SURVIVOR, "addon" + (100 + i), ""), 100 + i));
+        }
+        for(int i = 1; i <= items; i++) {
+            itemRows.add(withId(new Item(CharacterType.SURVIVOR, "item" + (100 + i), ""), 100 + i));
+        }
+        return new BuildCatalog(
+                CatalogSnapshot.of(Arrays.asList(withId(new Character(CharacterType.KILLER, "killer", ""), 1),
+                        withId(new Character(CharacterType.SURVIVOR, "survivor", ""), 2))),
+                CatalogSnapshot.of(perkRows), CatalogSnapshot.of(itemRows), CatalogSnapshot.of(addonRows));
+    }
+
+    private static <T extends models.CatalogEntry> T withId(final T entry, final long id) {
+        entry.setId(id);
+        return entry;
+    }
+}
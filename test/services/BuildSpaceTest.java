@@ -0,0 +1,100 @@
+package services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BuildSpaceTest {
+
+    private final BuildSpace killer = new BuildSpace(1, new long[]{1, 2, 3, 4, 5, 6}, new long[0],
+            new long[]{7, 8, 9}, false);
+    private final BuildSpace survivor = new BuildSpace(2, new long[]{1, 2}, new long[]{3, 4},
+            new long[]{5, 6, 7}, true);
+
+    @Test
+    public void size() {
+        // C(6,4) * C(3,2)
+        assertEquals(45, killer.size());
+        // C(2,2) * 2 items * C(3,2)
+        assertEquals(6, survivor.size());
+        assertEquals(1, new BuildSpace(3, new long[0], new long[0], new long[]{1}, true).size());
+    }
+
+    @Test
+    public void enumerationIsDistinctAndMatchesRanks() {
+        List<Loadout> loadouts = new ArrayList<>();
+        killer.spliterator().forEachRemaining(loadouts::add);
+        assertEquals(45, loadouts.size());
+        assertEquals(45, new HashSet<>(loadouts).size());
+        for(int rank = 0; rank < loadouts.size(); rank++) {
+            assertEquals(loadouts.get(rank), killer.get(rank));
+            assertEquals(4, loadouts.get(rank).perkCount());
+            assertEquals(2, loadouts.get(rank).addonCount());
+            assertFalse(loadouts.get(rank).hasItem());
+        }
+    }
+
+    @Test
+    public void survivorsCarryEveryItem() {
+        Set<Long> items = new HashSet<>();
+        survivor.spliterator().forEachRemaining(loadout -> items.add(loadout.getItem()));
+        assertEquals(2, items.size());
+    }
+
+    @Test
+    public void rangesResumeMidway() {
+        List<Loadout> tail = new ArrayList<>();
+        killer.spliterator(40, 100).forEachRemaining(tail::add);
+        assertEquals(5, tail.size());
+        assertEquals(killer.get(40), tail.get(0));
+        assertEquals(killer.get(44), tail.get(4));
+    }
+
+    @Test
+    public void splitsCoverTheSpace() {
+        Spliterator<Loadout> whole = killer.spliterator();
+        Spliterator<Loadout> prefix = whole.trySplit();
+        assertNotNull(prefix);
+        assertEquals(45, prefix.estimateSize() + whole.estimateSize());
+        whole.tryAdvance(loadout -> { });
+        assertNull(whole.trySplit());
+        assertEquals(45, StreamSupport.stream(killer.spliterator(), true).distinct().count());
+    }
+
+    @Test
+    public void partsSplitTheRangeInRankOrder() {
+        List<Loadout> loadouts = new ArrayList<>();
+        Iterator<Spliterator<Loadout>> parts = killer.parts(3, 43, 8);
+        while(parts.hasNext()) {
+            Spliterator<Loadout> part = parts.next();
+            assertTrue(part.estimateSize() <= 8);
+            part.forEachRemaining(loadouts::add);
+        }
+        assertEquals(40, loadouts.size());
+        for(int i = 0; i < loadouts.size(); i++) {
+            assertEquals(killer.get(3 + i), loadouts.get(i));
+        }
+        assertFalse(killer.parts(45, 50, 8).hasNext());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void tooLargeToCount() {
+        long[] ids = new long[100000];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        new BuildSpace(1, ids, new long[0], ids, false);
+    }
+}
@@ -0,0 +1,93 @@
+package services;
+
+import org.junit.Before;
+import org.junit.Test;
+import repositories.CharacterStatKey;
+import repositories.CharacterStatsRepository;
+import repositories.CharacterStatsTable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CharacterStatsCheckerTest {
+
+    private static final long KILLER = 1;
+
+    private CharacterStatsRepository characterStatsRepository;
+    private CharacterStatsChecker checker;
+
+    @Before
+    public void init() {
+        characterStatsRepository = mock(CharacterStatsRepository.class);
+        when(characterStatsRepository.recount(anyInt(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(new HashMap<>()));
+        checker = new CharacterStatsChecker(characterStatsRepository);
+    }
+
+    @Test
+    public void sumsPartsInParallel() {
+        // Each part counts perk 10 once, so the builds hold it CHECK_PARALLELISM times
+        for(int part = 0; part < CharacterStatsChecker.CHECK_PARALLELISM; part++) {
+            when(characterStatsRepository.recount(part, CharacterStatsChecker.CHECK_PARALLELISM))
+                    .thenReturn(CompletableFuture.completedFuture(counts(perk(10), 1L)));
+        }
+        when(characterStatsRepository.stored()).thenReturn(CompletableFuture.completedFuture(
+                counts(perk(10), (long) CharacterStatsChecker.CHECK_PARALLELISM)));
+        StatsCheck check = checker.check().toCompletableFuture().join();
+        assertTrue(check.isConsistent());
+        assertEquals(1, check.getChecked());
+        for(int part = 0; part < CharacterStatsChecker.CHECK_PARALLELISM; part++) {
+            verify(characterStatsRepository).recount(part, CharacterStatsChecker.CHECK_PARALLELISM);
+        }
+    }
+
+    @Test
+    public void reportsEveryDifference() {
+        Map<CharacterStatKey, Long> recounted = counts(perk(10), 3L);
+        recounted.put(perk(11), 1L);
+        recounted.put(addon(20), 2L);
+        when(characterStatsRepository.recount(0, CharacterStatsChecker.CHECK_PARALLELISM))
+                .thenReturn(CompletableFuture.completedFuture(recounted));
+        Map<CharacterStatKey, Long> stored = counts(perk(10), 3L);
+        stored.put(addon(20), 1L);
+        stored.put(addon(21), 4L);
+        when(characterStatsRepository.stored()).thenReturn(CompletableFuture.completedFuture(stored));
+        StatsCheck check = checker.check().toCompletableFuture().join();
+        assertFalse(check.isConsistent());
+        assertEquals(4, check.getChecked());
+        assertEquals(3, check.getDifferences().size());
+        // Ordered by table, character and id, a missing row counts 0
+        assertEquals(CharacterStatsTable.PERK, check.getDifferences().get(0).getTable());
+        assertEquals(11, check.getDifferences().get(0).getId());
+        assertEquals(0, check.getDifferences().get(0).getStored());
+        assertEquals(1, check.getDifferences().get(0).getRecounted());
+        assertEquals(20, check.getDifferences().get(1).getId());
+        assertEquals(1, check.getDifferences().get(1).getStored());
+        assertEquals(2, check.getDifferences().get(1).getRecounted());
+        assertEquals(21, check.getDifferences().get(2).getId());
+        assertEquals(0, check.getDifferences().get(2).getRecounted());
+    }
+
+    private static CharacterStatKey perk(final long id) {
+        return new CharacterStatKey(CharacterStatsTable.PERK, KILLER, id);
+    }
+
+    private static CharacterStatKey addon(final long id) {
+        return new CharacterStatKey(CharacterStatsTable.ADDON, KILLER, id);
+    }
+
+    private static Map<CharacterStatKey, Long> counts(final CharacterStatKey key, final long builds) {
+        Map<CharacterStatKey, Long> counts = new HashMap<>();
+        counts.put(key, builds);
+        return counts;
+    }
+}
@@ -0,0 +1,89 @@
+package services;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void neverUnderCounts() {
+        Random random = new Random(23);
+        CountMinSketch sketch = new CountMinSketch(4, 8);
+        Map<Long, Long> counts = new HashMap<>();
+        long total = 0;
+        for(int i = 0; i < 50000; i++) {
+            long key = 1 + random.nextInt(2000);
+            sketch.add(key, 1);
+            counts.merge(key, 1L, Long::sum);
+            total++;
+        }
+        int far = 0;
+        for(Map.Entry<Long, Long> count : counts.entrySet()) {
+            long estimate = sketch.estimate(count.getKey());
+            assertTrue(estimate >= count.getValue());
+            if(estimate - count.getValue() > total / 128) {
+                far++;
+            }
+        }
+        // Off by more than the bound for only a few keys
+        assertTrue(far < counts.size() / 10);
+    }
+
+    @Test
+    public void countsDown() {
+        CountMinSketch sketch = new CountMinSketch(4, 8);
+        sketch.add(5, 3);
+        assertEquals(1, sketch.add(5, -2));
+        assertEquals(1, sketch.estimate(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyRows() {
+        new CountMinSketch(9, 8);
+    }
+
+    @Test
+    public void heavyHittersFindTheMostCounted() {
+        Random random = new Random(29);
+        HeavyHitters hitters = new HeavyHitters(new CountMinSketch(4, 10), 20);
+        for(int i = 0; i < 100000; i++) {
+            // Keys 1 to 5 take half of all counts, the rest are spread over a thousand keys
+            long key = random.nextBoolean() ? 1 + random.nextInt(5) : 100 + random.nextInt(1000);
+            hitters.add(key, 1);
+        }
+        List<Long> top = hitters.top(5);
+        assertEquals(5, top.size());
+        for(long key = 1; key <= 5; key++) {
+            assertTrue(top.contains(key));
+        }
+    }
+
+    @Test
+    public void heavyHittersDropKeysCountedDownToZero() {
+        HeavyHitters hitters = new HeavyHitters(new CountMinSketch(4, 10), 4);
+        hitters.add(1, 3);
+        hitters.add(2, 1);
+        hitters.add(1, -3);
+        assertEquals(1, hitters.top(10).size());
+        assertEquals(2L, hitters.top(10).get(0).longValue());
+    }
+
+    @Test
+    public void heavyHittersIgnoreCountingDownUntrackedKeys() {
+        // Two columns, so keys never counted share estimates with the counted one
+        HeavyHitters hitters = new HeavyHitters(new CountMinSketch(1, 1), 4);
+        hitters.add(1, 10);
+        for(long key = 100; key < 110; key++) {
+            hitters.add(key, -1);
+        }
+        assertEquals(1, hitters.top(10).size());
+        assertEquals(1, (long) hitters.top(10).get(0));
+    }
+}
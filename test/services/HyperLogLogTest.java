@@ -0,0 +1,89 @@
+package services;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void sketchIsFixedSize() {
+        // Every viewed build keeps 1024 registers of 6 bits, 768 bytes however many viewers it has
+        assertEquals(768, HyperLogLog.BYTES);
+        HyperLogLog sketch = new HyperLogLog();
+        for(int i = 0; i < 100000; i++) {
+            sketch.add(HyperLogLog.hash("viewer" + i));
+        }
+        assertEquals(HyperLogLog.BYTES, sketch.toBytes().length);
+    }
+
+    @Test
+    public void estimatesWithinErrorBound() {
+        // The standard error is 1.04 / sqrt(1024), about 3.25%, the estimates stay within three of them
+        assertEquals(0.0325, HyperLogLog.STANDARD_ERROR, 0.0001);
+        Random random = new Random(11);
+        for(int distinct : new int[]{10, 100, 1000, 10000, 100000, 1000000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for(int i = 0; i < distinct; i++) {
+                final String viewer = Long.toHexString(random.nextLong());
+                sketch.add(HyperLogLog.hash(viewer));
+                // Repeated views do not count
+                sketch.add(HyperLogLog.hash(viewer));
+            }
+            double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+            assertTrue(distinct + " estimated as " + sketch.estimate(), error < 3 * HyperLogLog.STANDARD_ERROR);
+        }
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    public void repeatedValuesLeaveSketchUnchanged() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertTrue(sketch.add(HyperLogLog.hash("alice")));
+        assertFalse(sketch.add(HyperLogLog.hash("alice")));
+        assertEquals(1, sketch.estimate());
+    }
+
+    @Test
+    public void mergeEstimatesUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for(int i = 0; i < 20000; i++) {
+            final long hash = HyperLogLog.hash("viewer" + i);
+            if(i < 15000) {
+                first.add(hash);
+            }
+            if(i >= 5000) {
+                second.add(hash);
+            }
+            union.add(hash);
+        }
+        HyperLogLog merged = first.copy();
+        merged.merge(second);
+        assertEquals(union, merged);
+        assertTrue(Math.abs(merged.estimate() - 20000) < 3 * HyperLogLog.STANDARD_ERROR * 20000);
+        // Merging leaves the other sketch and the copied one unchanged
+        assertTrue(first.estimate() < merged.estimate());
+    }
+
+    @Test
+    public void roundTripsThroughBytes() {
+        HyperLogLog sketch = new HyperLogLog();
+        for(int i = 0; i < 5000; i++) {
+            sketch.add(HyperLogLog.hash("viewer" + i));
+        }
+        HyperLogLog read = HyperLogLog.of(sketch.toBytes());
+        assertEquals(sketch, read);
+        assertEquals(sketch.estimate(), read.estimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongSize() {
+        HyperLogLog.of(new byte[HyperLogLog.BYTES - 1]);
+    }
+}
@@ -0,0 +1,63 @@
+package services;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongCountMapTest {
+
+    @Test
+    public void addAndGet() {
+        LongCountMap counts = new LongCountMap();
+        assertEquals(3, counts.add(7, 3));
+        assertEquals(5, counts.add(7, 2));
+        assertEquals(5, counts.get(7));
+        assertEquals(0, counts.get(8));
+        assertEquals(1, counts.size());
+    }
+
+    @Test
+    public void countReachingZeroIsRemoved() {
+        LongCountMap counts = new LongCountMap();
+        counts.add(7, 1);
+        assertEquals(0, counts.add(7, -1));
+        assertEquals(0, counts.size());
+        assertEquals(0, counts.add(7, 0));
+        assertEquals(0, counts.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroIsNotAKey() {
+        new LongCountMap().add(0, 1);
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(5);
+        LongCountMap counts = new LongCountMap();
+        Map<Long, Long> expected = new HashMap<>();
+        for(int i = 0; i < 100000; i++) {
+            // Few keys and small deltas, so entries are removed and probe runs shifted often
+            long key = 1 + random.nextInt(300);
+            long delta = random.nextInt(5) - 2;
+            long count = expected.getOrDefault(key, 0L) + delta;
+            if(count == 0) {
+                expected.remove(key);
+            } else {
+                expected.put(key, count);
+            }
+            assertEquals(count, counts.add(key, delta));
+        }
+        assertEquals(expected.size(), counts.size());
+        for(long key = 1; key <= 300; key++) {
+            assertEquals(expected.getOrDefault(key, 0L).longValue(), counts.get(key));
+        }
+        Map<Long, Long> seen = new HashMap<>();
+        counts.forEach(seen::put);
+        assertEquals(expected, seen);
+    }
+}
@@ -0,0 +1,96 @@
+package services;
+
+import models.Addon;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import models.RatedEntry;
+import org.junit.Test;
+import repositories.CatalogSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.assertEquals;
+
+public class PackedCatalogTest {
+
+    private static final double EPSILON = 1e-9;
+
+    private final Random random = new Random(3);
+    private final CatalogSnapshot<Perk> perks =
+            CatalogSnapshot.of(rated(40, id -> new Perk(CharacterType.KILLER, "perk" + id, "")));
+    private final CatalogSnapshot<Item> items =
+            CatalogSnapshot.of(rated(10, id -> new Item(CharacterType.SURVIVOR, "item" + id, "")));
+    private final CatalogSnapshot<Addon> addons =
+            CatalogSnapshot.of(rated(20, id -> new Addon(CharacterType.KILLER, "addon" + id, "")));
+    private final BuildCatalog catalog = new BuildCatalog(
+            CatalogSnapshot.of(Collections.<Character>emptyList()), perks, items, addons);
+    private final AttributeWeights weights = new AttributeWeights().perks(0.5, 2).items(1, -1).addons(0.25, 3);
+
+    @Test
+    public void matchesObjectGraphScoring() {
+        int count = 1000;
+        long[] packed = new long[count * PackedCatalog.STRIDE];
+        for(int i = 0; i < packed.length; i++) {
+            // Includes empty slots and ids missing from the catalog
+            packed[i] = random.nextInt(45);
+        }
+        double[] scores = new double[count];
+        catalog.packed().scorer(weights).scoreAll(packed, count, scores);
+        for(int build = 0; build < count; build++) {
+            assertEquals(naiveScore(packed, build), scores[build], EPSILON);
+        }
+    }
+
+    @Test
+    public void emptyBuildScoresNothing() {
+        double[] scores = new double[]{-1};
+        catalog.packed().scorer(weights).scoreAll(new long[PackedCatalog.STRIDE], 1, scores);
+        assertEquals(0, scores[0], 0);
+    }
+
+    @Test
+    public void packedIsMemoized() {
+        assertEquals(catalog.packed(), catalog.packed());
+    }
+
+    /**
+     * Scores one build by looking every row up in the snapshots
+     */
+    private double naiveScore(final long[] packed, final int build) {
+        int offset = build * PackedCatalog.STRIDE;
+        double score = 0;
+        for(int slot = 0; slot < BuildCatalog.PERK_SLOTS; slot++) {
+            score += value(perks.get(packed[offset + slot]), weights.getPerkRarity(), weights.getPerkPotency());
+        }
+        score += value(items.get(packed[offset + PackedCatalog.ITEM_OFFSET]), weights.getItemRarity(),
+                weights.getItemPotency());
+        for(int slot = 0; slot < BuildCatalog.ADDON_SLOTS; slot++) {
+            score += value(addons.get(packed[offset + PackedCatalog.ADDON_OFFSET + slot]), weights.getAddonRarity(),
+                    weights.getAddonPotency());
+        }
+        return score;
+    }
+
+    private static double value(final Optional<? extends RatedEntry> entry, final double rarity, final double potency) {
+        return entry.map(row -> rarity * row.getRarity() + potency * row.getPotency()).orElse(0.0);
+    }
+
+    private <T extends RatedEntry> List<T> rated(final int count, final LongFunction<T> factory) {
+        List<T> rows = new ArrayList<>();
+        for(long id = 1; id <= count; id++) {
+            T row = factory.apply(id);
+            row.setId(id);
+            row.setRarity(random.nextInt(5));
+            row.setPotency(random.nextDouble() * 10);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
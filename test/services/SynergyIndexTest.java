@@ -0,0 +1,88 @@
+package services;
+
+import models.Build;
+import org.junit.Before;
+import org.junit.Test;
+import repositories.BuildRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SynergyIndexTest {
+
+    private BuildRepository buildRepository;
+    private SynergyIndex index;
+
+    @Before
+    public void init() {
+        buildRepository = mock(BuildRepository.class);
+        when(buildRepository.subscribe(any())).thenReturn(CompletableFuture.completedFuture(null));
+        index = new SynergyIndex(buildRepository);
+    }
+
+    @Test
+    public void countsPairsOfPerks() {
+        index.changed(null, build(1L, 2L, 3L));
+        index.changed(null, build(1L, 2L));
+        index.changed(null, build(1L, 4L));
+        List<Synergy> synergies = synergies(1, 10);
+        assertEquals(3, synergies.size());
+        assertEquals(2, synergies.get(0).getPerk());
+        assertEquals(2, synergies.get(0).getCount());
+        // Ties are ordered by id
+        assertEquals(3, synergies.get(1).getPerk());
+        assertEquals(4, synergies.get(2).getPerk());
+        assertEquals(3L, index.builds(1).toCompletableFuture().join().longValue());
+        assertEquals(1, synergies(4, 10).size());
+    }
+
+    @Test
+    public void keepsOnlyTopK() {
+        for(long perk = 2; perk <= 20; perk++) {
+            for(long copy = 0; copy < perk; copy++) {
+                index.changed(null, build(1L, perk));
+            }
+        }
+        List<Synergy> synergies = synergies(1, 3);
+        assertEquals(3, synergies.size());
+        assertEquals(20, synergies.get(0).getPerk());
+        assertEquals(19, synergies.get(1).getPerk());
+        assertEquals(18, synergies.get(2).getPerk());
+    }
+
+    @Test
+    public void followsUpdatesAndDeletes() {
+        Build first = build(1L, 2L);
+        index.changed(null, first);
+        Build changed = build(1L, 3L);
+        index.changed(first, changed);
+        List<Synergy> synergies = synergies(1, 10);
+        assertEquals(1, synergies.size());
+        assertEquals(3, synergies.get(0).getPerk());
+        assertTrue(synergies(2, 10).isEmpty());
+        index.changed(changed, null);
+        assertTrue(synergies(1, 10).isEmpty());
+        assertEquals(0L, index.builds(1).toCompletableFuture().join().longValue());
+    }
+
+    @Test
+    public void unknownPerkHasNoSynergies() {
+        assertTrue(synergies(42, 10).isEmpty());
+    }
+
+    private List<Synergy> synergies(long perk, int k) {
+        return index.synergies(perk, k).toCompletableFuture().join();
+    }
+
+    private static Build build(Long... perks) {
+        return new Build(1, Arrays.asList(perks), null, Collections.emptyList());
+    }
+}
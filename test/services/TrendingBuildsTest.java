@@ -0,0 +1,221 @@
+package services;
+
+import models.Addon;
+import models.Build;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import org.junit.Before;
+import org.junit.Test;
+import repositories.BuildRepository;
+import repositories.CatalogSnapshot;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class TrendingBuildsTest {
+
+    private static final long KILLER = 1;
+    private static final long SURVIVOR = 2;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private TestClock clock;
+    private TrendingBuilds trending;
+
+    @Before
+    public void init() {
+        Character killer = new Character(CharacterType.KILLER, "billy", "");
+        killer.setId(KILLER);
+        Character survivor = new Character(CharacterType.SURVIVOR, "dwight", "");
+        survivor.setId(SURVIVOR);
+        BuildCatalog catalog = new BuildCatalog(CatalogSnapshot.of(Arrays.asList(killer, survivor)),
+                CatalogSnapshot.of(Collections.<Perk>emptyList()), CatalogSnapshot.of(Collections.<Item>emptyList()),
+                CatalogSnapshot.of(Collections.<Addon>emptyList()));
+        // Stub only, so the million events are not recorded as invocations
+        BuildRepository buildRepository = mock(BuildRepository.class, withSettings().stubOnly());
+        when(buildRepository.subscribe(any())).thenReturn(CompletableFuture.completedFuture(null));
+        BuildValidator buildValidator = mock(BuildValidator.class, withSettings().stubOnly());
+        when(buildValidator.catalog()).thenReturn(CompletableFuture.completedFuture(catalog));
+        clock = new TestClock();
+        trending = new TrendingBuilds(buildRepository, buildValidator, clock);
+    }
+
+    @Test
+    public void ranksByDecayedScore() {
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(2, KILLER, TrendingBuilds.Engagement.VOTE);
+        List<TrendingBuild> now = top(null, 10);
+        assertEquals(2, now.size());
+        assertEquals(2, now.get(0).getId());
+        assertEquals(3.0, now.get(0).getScore(), 1e-9);
+        assertEquals(3.0, now.get(1).getScore(), 1e-9);
+
+        // Two half lives later the three views are worth 0.75 and one copy outranks them
+        clock.advance(2 * (long) TrendingBuilds.HALF_LIFE_HOURS * HOUR);
+        record(3, KILLER, TrendingBuilds.Engagement.COPY);
+        List<TrendingBuild> later = top(null, 10);
+        assertEquals(3, later.get(0).getId());
+        assertEquals(5.0, later.get(0).getScore(), 1e-9);
+        assertEquals(0.75, later.get(1).getScore(), 1e-9);
+        assertEquals(1, top(null, 1).size());
+
+        record(1, KILLER, TrendingBuilds.Engagement.COPY);
+        assertEquals(1, top(null, 1).get(0).getId());
+        assertEquals(5.75, top(null, 1).get(0).getScore(), 1e-9);
+    }
+
+    @Test
+    public void filtersByType() {
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(2, SURVIVOR, TrendingBuilds.Engagement.VOTE);
+        record(3, 99, TrendingBuilds.Engagement.VOTE);
+        assertEquals(1, top(CharacterType.KILLER, 10).get(0).getId());
+        assertEquals(1, top(CharacterType.KILLER, 10).size());
+        assertEquals(2, top(CharacterType.SURVIVOR, 10).get(0).getId());
+        assertEquals(2, top(null, 10).size());
+    }
+
+    @Test
+    public void followsDeletesAndCharacterChanges() {
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(2, KILLER, TrendingBuilds.Engagement.VOTE);
+        trending.changed(build(2, KILLER), build(2, SURVIVOR));
+        assertEquals(2, top(CharacterType.SURVIVOR, 10).get(0).getId());
+        assertEquals(1, top(CharacterType.KILLER, 10).size());
+
+        trending.changed(build(1, KILLER), null);
+        assertEquals(0, top(CharacterType.KILLER, 10).size());
+        assertEquals(1, trending.size());
+    }
+
+    @Test
+    public void ignoresEventsAfterDelete() {
+        // A view read the build just before it was deleted and is recorded after
+        trending.changed(build(1, KILLER), null);
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(2, KILLER, TrendingBuilds.Engagement.VIEW);
+        trending.changed(build(2, KILLER), null);
+        record(2, KILLER, TrendingBuilds.Engagement.COPY);
+        assertEquals(0, trending.size());
+        assertEquals(0, top(null, 10).size());
+    }
+
+    @Test
+    public void forgetsDeletedBuildsAfterTombstonesExpire() {
+        trending.changed(build(1, KILLER), null);
+        clock.advance(TimeUnit.MINUTES.toMillis(TrendingBuilds.TOMBSTONE_MINUTES));
+        // Expires the tombstone of the first build
+        trending.changed(build(2, KILLER), null);
+        record(1, KILLER, TrendingBuilds.Engagement.VIEW);
+        record(2, KILLER, TrendingBuilds.Engagement.VIEW);
+        assertEquals(1, trending.size());
+        assertEquals(1, top(null, 10).get(0).getId());
+    }
+
+    @Test
+    public void concurrentEventsAreAllCounted() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        for(int t = 0; t < 16; t++) {
+            pool.execute(() -> {
+                for(int i = 0; i < 1000; i++) {
+                    record(1 + i % 10, KILLER, TrendingBuilds.Engagement.VIEW);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        List<TrendingBuild> top = top(null, 100);
+        assertEquals(10, top.size());
+        for(TrendingBuild build : top) {
+            assertEquals(1600.0, build.getScore(), 1e-6);
+        }
+    }
+
+    @Test
+    public void topOfMillionBuilds() {
+        Random random = new Random(7);
+        for(long id = 1; id <= 1000000; id++) {
+            if(id % 1000 == 0) {
+                clock.advance(HOUR / 10);
+            }
+            record(id, random.nextBoolean() ? KILLER : SURVIVOR,
+                    TrendingBuilds.Engagement.values()[random.nextInt(3)]);
+        }
+        assertEquals(1000000, trending.size());
+        for(CharacterType type : Arrays.asList(null, CharacterType.KILLER)) {
+            List<TrendingBuild> top = top(type, TrendingBuilds.MAX_K);
+            assertEquals(TrendingBuilds.MAX_K, top.size());
+            Set<Long> ids = new HashSet<>();
+            for(int i = 0; i < top.size(); i++) {
+                assertTrue(i == 0 || top.get(i - 1).getScore() >= top.get(i).getScore());
+                assertTrue(ids.add(top.get(i).getId()));
+            }
+        }
+    }
+
+    private void record(final long build, final long character, final TrendingBuilds.Engagement engagement) {
+        trending.record(build, character, engagement).toCompletableFuture().join();
+    }
+
+    private List<TrendingBuild> top(final CharacterType type, final int k) {
+        return new ArrayList<>(trending.trending(type, k).toCompletableFuture().join());
+    }
+
+    private static Build build(final long id, final long character) {
+        Build build = new Build(character, new ArrayList<>(), null, new ArrayList<>());
+        build.setId(id);
+        return build;
+    }
+
+    private static final class TestClock extends Clock {
+
+        private volatile long millis = 1500000000000L;
+
+        void advance(final long by) {
+            millis += by;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package services;
+
+import models.Addon;
+import models.Build;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import repositories.BuildRepository;
+import repositories.CatalogSnapshot;
+import repositories.ViewerRepository;
+import repositories.ViewerSketch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UniqueViewersTest {
+
+    private static final long KILLER = 1;
+    private static final long OTHER_KILLER = 2;
+    private static final long SURVIVOR = 3;
+
+    private ViewerRepository viewerRepository;
+    private BuildRepository buildRepository;
+    private BuildValidator buildValidator;
+    private UniqueViewers viewers;
+
+    @Before
+    public void init() {
+        Character killer = new Character(CharacterType.KILLER, "billy", "");
+        killer.setId(KILLER);
+        Character otherKiller = new Character(CharacterType.KILLER, "nurse", "");
+        otherKiller.setId(OTHER_KILLER);
+        Character survivor = new Character(CharacterType.SURVIVOR, "dwight", "");
+        survivor.setId(SURVIVOR);
+        BuildCatalog catalog = new BuildCatalog(CatalogSnapshot.of(Arrays.asList(killer, otherKiller, survivor)),
+                CatalogSnapshot.of(Collections.<Perk>emptyList()), CatalogSnapshot.of(Collections.<Item>emptyList()),
+                CatalogSnapshot.of(Collections.<Addon>emptyList()));
+        buildValidator = mock(BuildValidator.class);
+        when(buildValidator.catalog()).thenReturn(CompletableFuture.completedFuture(catalog));
+        viewerRepository = mock(ViewerRepository.class);
+        when(viewerRepository.all()).thenReturn(CompletableFuture.completedFuture(new ArrayList<>()));
+        when(viewerRepository.flush(anyList()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.<Long>emptySet()));
+        buildRepository = mock(BuildRepository.class);
+        when(buildRepository.subscribe(any())).thenReturn(CompletableFuture.completedFuture(null));
+        viewers = new UniqueViewers(viewerRepository, buildRepository, buildValidator);
+    }
+
+    @Test
+    public void countsEachViewerOnce() {
+        assertEquals(1, view(10, KILLER, "alice"));
+        assertEquals(1, view(10, KILLER, "alice"));
+        assertEquals(2, view(10, KILLER, "bob"));
+        assertEquals(1, view(11, KILLER, "alice"));
+        assertEquals(2, (long) viewers.viewers(10).toCompletableFuture().join());
+        assertEquals(0, (long) viewers.viewers(12).toCompletableFuture().join());
+    }
+
+    @Test
+    public void mergesCharactersAndTypes() {
+        view(10, KILLER, "alice");
+        view(11, KILLER, "alice");
+        view(11, KILLER, "bob");
+        view(20, OTHER_KILLER, "bob");
+        view(20, OTHER_KILLER, "carol");
+        view(30, SURVIVOR, "dave");
+        assertEquals(2, (long) viewers.characterViewers(KILLER).toCompletableFuture().join());
+        assertEquals(2, (long) viewers.characterViewers(OTHER_KILLER).toCompletableFuture().join());
+        assertEquals(0, (long) viewers.characterViewers(99).toCompletableFuture().join());
+        // bob viewed builds of both killers and counts once
+        assertEquals(3, (long) viewers.typeViewers(CharacterType.KILLER).toCompletableFuture().join());
+        assertEquals(1, (long) viewers.typeViewers(CharacterType.SURVIVOR).toCompletableFuture().join());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flushesChangedSketchesAndLoadsThem() {
+        view(10, KILLER, "alice");
+        view(11, KILLER, "bob");
+        viewers.flush().toCompletableFuture().join();
+        ArgumentCaptor<List<ViewerSketch>> written = ArgumentCaptor.forClass(List.class);
+        verify(viewerRepository).flush(written.capture());
+        assertEquals(2, written.getValue().size());
+        assertEquals(HyperLogLog.BYTES, written.getValue().get(0).getSketch().length);
+
+        // Only builds with a new viewer are written again
+        view(10, KILLER, "alice");
+        viewers.flush().toCompletableFuture().join();
+        view(11, KILLER, "carol");
+        viewers.flush().toCompletableFuture().join();
+        verify(viewerRepository, times(2)).flush(written.capture());
+        assertEquals(1, written.getValue().size());
+        assertEquals(11, written.getValue().get(0).getBuild());
+
+        // A restarted server loads the sketches and rebuilds the character totals from them
+        List<ViewerSketch> saved = new ArrayList<>();
+        HyperLogLog first = new HyperLogLog();
+        first.add(HyperLogLog.hash("alice"));
+        saved.add(new ViewerSketch(10, KILLER, first.toBytes()));
+        HyperLogLog second = new HyperLogLog();
+        second.add(HyperLogLog.hash("bob"));
+        second.add(HyperLogLog.hash("carol"));
+        saved.add(new ViewerSketch(11, KILLER, second.toBytes()));
+        ViewerRepository restarted = mock(ViewerRepository.class);
+        when(restarted.all()).thenReturn(CompletableFuture.completedFuture(saved));
+        UniqueViewers reloaded = new UniqueViewers(restarted, buildRepository, buildValidator);
+        assertEquals(2, (long) reloaded.viewers(11).toCompletableFuture().join());
+        assertEquals(3, (long) reloaded.characterViewers(KILLER).toCompletableFuture().join());
+        assertEquals(2, reloaded.view(11, KILLER, "carol").toCompletableFuture().join().longValue());
+    }
+
+    @Test
+    public void failedFlushIsRetried() {
+        when(viewerRepository.flush(anyList())).thenReturn(failed());
+        view(10, KILLER, "alice");
+        assertTrue(viewers.flush().toCompletableFuture().isCompletedExceptionally());
+        when(viewerRepository.flush(anyList()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.<Long>emptySet()));
+        viewers.flush().toCompletableFuture().join();
+        verify(viewerRepository, times(2)).flush(anyList());
+    }
+
+    @Test
+    public void deletedBuildsDropTheirSketch() {
+        view(10, KILLER, "alice");
+        view(11, KILLER, "bob");
+        Build deleted = new Build(KILLER, Collections.emptyList(), null, Collections.emptyList());
+        deleted.setId(10);
+        viewers.changed(deleted, null);
+        assertEquals(0, (long) viewers.viewers(10).toCompletableFuture().join());
+        // The viewers of the deleted build still viewed the character's builds
+        assertEquals(2, (long) viewers.characterViewers(KILLER).toCompletableFuture().join());
+        viewers.flush().toCompletableFuture().join();
+        verify(viewerRepository).flush(argThat(rows -> rows.size() == 1 && rows.get(0).getBuild() == 11));
+    }
+
+    @Test
+    public void flushDropsSketchesOfMissingBuilds() {
+        when(viewerRepository.flush(anyList()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.singleton(10L)));
+        view(10, KILLER, "alice");
+        view(11, KILLER, "bob");
+        viewers.flush().toCompletableFuture().join();
+        assertEquals(0, (long) viewers.viewers(10).toCompletableFuture().join());
+        assertEquals(1, (long) viewers.viewers(11).toCompletableFuture().join());
+    }
+
+    @Test
+    public void concurrentViewsAreAllCounted() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        for(int t = 0; t < 16; t++) {
+            final int thread = t;
+            pool.execute(() -> {
+                for(int i = 0; i < 1000; i++) {
+                    view(1 + i % 10, KILLER, "viewer" + (thread * 1000 + i));
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        long total = viewers.characterViewers(KILLER).toCompletableFuture().join();
+        assertTrue("16000 viewers estimated as " + total,
+                Math.abs(total - 16000) < 3 * HyperLogLog.STANDARD_ERROR * 16000);
+    }
+
+    private long view(final long build, final long character, final String viewer) {
+        return viewers.view(build, character, viewer).toCompletableFuture().join();
+    }
+
+    private static <T> CompletableFuture<T> failed() {
+        CompletableFuture<T> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("database down"));
+        return failure;
+    }
+}
@@ -0,0 +1,165 @@
+package services;
+
+import models.Addon;
+import models.Build;
+import models.Character;
+import models.CharacterType;
+import models.Item;
+import models.Perk;
+import org.junit.Before;
+import org.junit.Test;
+import repositories.BuildRepository;
+import repositories.CatalogSnapshot;
+import repositories.UsageCount;
+import repositories.UsageRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UsageCountersTest {
+
+    private static final long KILLER = 1;
+    private static final long SURVIVOR = 2;
+
+    private BuildValidator buildValidator;
+    private UsageRepository usageRepository;
+    private UsageCounters counters;
+
+    @Before
+    public void init() {
+        BuildRepository buildRepository = mock(BuildRepository.class);
+        when(buildRepository.subscribe(any())).thenReturn(CompletableFuture.completedFuture(null));
+        buildValidator = mock(BuildValidator.class);
+        when(buildValidator.catalog()).thenReturn(CompletableFuture.completedFuture(catalog(CharacterType.KILLER)));
+        usageRepository = mock(UsageRepository.class);
+        when(usageRepository.flush(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        counters = new UsageCounters(buildRepository, buildValidator, usageRepository);
+    }
+
+    @Test
+    public void countsPicksByType() {
+        counters.changed(null, build(KILLER, 10L, 11L));
+        counters.changed(null, build(KILLER, 10L));
+        counters.changed(null, build(SURVIVOR, 20L));
+        List<PickCount> killerPerks = popular(CharacterType.KILLER, 10);
+        assertEquals(2, killerPerks.size());
+        assertEquals(10, killerPerks.get(0).getId());
+        assertEquals(2, killerPerks.get(0).getPicks());
+        assertEquals(11, killerPerks.get(1).getId());
+        assertEquals(1, popular(CharacterType.SURVIVOR, 10).size());
+        assertEquals(3, popular(null, 10).size());
+        assertEquals(1, popular(null, 1).size());
+    }
+
+    @Test
+    public void followsUpdatesAndDeletes() {
+        Build first = build(KILLER, 10L);
+        counters.changed(null, first);
+        Build changed = build(KILLER, 11L);
+        counters.changed(first, changed);
+        List<PickCount> perks = popular(CharacterType.KILLER, 10);
+        assertEquals(1, perks.size());
+        assertEquals(11, perks.get(0).getId());
+        counters.changed(changed, null);
+        assertTrue(popular(CharacterType.KILLER, 10).isEmpty());
+    }
+
+    @Test
+    public void countsDownFromTheTypeCountedUnder() {
+        Build first = build(KILLER, 10L);
+        first.setId(1);
+        counters.changed(null, first);
+        // The killer becomes a survivor, its saved build stays counted as a killer build until it is written
+        when(buildValidator.catalog()).thenReturn(CompletableFuture.completedFuture(catalog(CharacterType.SURVIVOR)));
+        Build changed = build(KILLER, 11L);
+        changed.setId(1);
+        counters.changed(first, changed);
+        assertTrue(popular(CharacterType.KILLER, 10).isEmpty());
+        assertEquals(11, popular(CharacterType.SURVIVOR, 10).get(0).getId());
+        counters.changed(changed, null);
+        assertTrue(popular(CharacterType.SURVIVOR, 10).isEmpty());
+        assertTrue(popular(null, 10).isEmpty());
+    }
+
+    @Test
+    public void countsIdsBeyondInt() {
+        Build build = build(KILLER, 10L);
+        build.setId(1L << 40);
+        counters.changed(null, build);
+        assertEquals(1, popular(CharacterType.KILLER, 10).get(0).getPicks());
+        counters.changed(build, null);
+        assertTrue(popular(CharacterType.KILLER, 10).isEmpty());
+    }
+
+    @Test
+    public void concurrentPicksAreAllCounted() throws Exception {
+        // Stands in for a benchmark of 32 writers on the same hot perks
+        int threads = 32;
+        int buildsPerThread = 2000;
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for(int thread = 0; thread < threads; thread++) {
+            final long own = 100 + thread;
+            done.add(CompletableFuture.runAsync(() -> {
+                for(int i = 0; i < buildsPerThread; i++) {
+                    counters.changed(null, build(KILLER, 10L, 11L, own));
+                }
+            }, writers));
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).join();
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(10, TimeUnit.SECONDS));
+        List<PickCount> perks = popular(CharacterType.KILLER, 3);
+        assertEquals(10, perks.get(0).getId());
+        assertEquals(threads * buildsPerThread, perks.get(0).getPicks());
+        assertEquals(11, perks.get(1).getId());
+        assertEquals(threads * buildsPerThread, perks.get(1).getPicks());
+        assertEquals(buildsPerThread, perks.get(2).getPicks());
+    }
+
+    @Test
+    public void flushesEveryCount() {
+        List<List<UsageCount>> flushed = new ArrayList<>();
+        when(usageRepository.flush(anyList())).thenAnswer(invocation -> {
+            flushed.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+        counters.changed(null, build(KILLER, 10L, 11L));
+        counters.flush().toCompletableFuture().join();
+        assertEquals(1, flushed.size());
+        assertEquals(2, flushed.get(0).size());
+        assertEquals("PERK", flushed.get(0).get(0).getSlot());
+        assertEquals(CharacterType.KILLER, flushed.get(0).get(0).getType());
+    }
+
+    private List<PickCount> popular(CharacterType type, int k) {
+        return counters.popular(BuildQuery.Slot.PERK, type, k).toCompletableFuture().join();
+    }
+
+    private static BuildCatalog catalog(final CharacterType killerType) {
+        Character killer = new Character(killerType, "billy", "");
+        killer.setId(KILLER);
+        Character survivor = new Character(CharacterType.SURVIVOR, "dwight", "");
+        survivor.setId(SURVIVOR);
+        return new BuildCatalog(CatalogSnapshot.of(Arrays.asList(killer, survivor)),
+                CatalogSnapshot.of(Collections.<Perk>emptyList()), CatalogSnapshot.of(Collections.<Item>emptyList()),
+                CatalogSnapshot.of(Collections.<Addon>emptyList()));
+    }
+
+    private static Build build(long character, Long... perks) {
+        return new Build(character, Arrays.asList(perks), null, Collections.emptyList());
+    }
+}
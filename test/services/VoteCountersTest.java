@@ -0,0 +1,258 @@
+package services;
+
+import models.Build;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import repositories.BuildRepository;
+import repositories.VoteRepository;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VoteCountersTest {
+
+    private static final long HOT = 1;
+    private static final long COLD = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private VoteRepository voteRepository;
+    private BuildRepository buildRepository;
+    // Totals in the mocked build_votes table
+    private Map<Long, Long> table;
+
+    @Before
+    public void init() throws Exception {
+        directory = folder.newFolder("votes").toPath();
+        table = new HashMap<>();
+        table.put(HOT, 10L);
+        voteRepository = mock(VoteRepository.class);
+        when(voteRepository.all()).thenAnswer(invocation -> CompletableFuture.completedFuture(new HashMap<>(table)));
+        when(voteRepository.apply(anyMap())).thenAnswer(invocation -> {
+            Map<Long, Long> deltas = invocation.getArgument(0);
+            synchronized(table) {
+                deltas.forEach((build, delta) -> table.merge(build, delta, Long::sum));
+            }
+            return CompletableFuture.completedFuture(Collections.<Long>emptySet());
+        });
+        buildRepository = mock(BuildRepository.class);
+        when(buildRepository.subscribe(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    public void readsMergePersistedAndPendingVotes() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        counters.vote(HOT, 1);
+        counters.vote(HOT, 1);
+        counters.vote(HOT, -1);
+        counters.vote(COLD, 1);
+
+        assertEquals(11, counters.votes(HOT).toCompletableFuture().join().longValue());
+        assertEquals(1, counters.votes(COLD).toCompletableFuture().join().longValue());
+        assertEquals(0, counters.votes(3).toCompletableFuture().join().longValue());
+
+        counters.flush().toCompletableFuture().join();
+        assertEquals(11, table.get(HOT).longValue());
+        assertEquals(1, table.get(COLD).longValue());
+        assertEquals(11, counters.votes(HOT).toCompletableFuture().join().longValue());
+        assertEquals(0, logs().size());
+    }
+
+    @Test
+    public void flushWritesEachBuildOnce() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        for(int i = 0; i < 1000; i++) {
+            counters.vote(HOT, 1);
+        }
+        counters.flush().toCompletableFuture().join();
+        Map<Long, Long> deltas = new HashMap<>();
+        deltas.put(HOT, 1000L);
+        verify(voteRepository).apply(deltas);
+    }
+
+    @Test
+    public void idleFlushWritesNothing() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        counters.flush().toCompletableFuture().join();
+        verify(voteRepository, never()).apply(anyMap());
+    }
+
+    @Test
+    public void failedFlushKeepsVotes() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        CompletableFuture<Set<Long>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("database down"));
+        when(voteRepository.apply(anyMap())).thenReturn(failed);
+        counters.vote(HOT, 1);
+        counters.vote(COLD, 1);
+
+        assertTrue(counters.flush().toCompletableFuture().isCompletedExceptionally());
+        assertEquals(11, counters.votes(HOT).toCompletableFuture().join().longValue());
+
+        CompletableFuture<Set<Long>> written = new CompletableFuture<>();
+        when(voteRepository.apply(anyMap())).thenReturn(written);
+        counters.vote(HOT, 1);
+        CompletableFuture<Void> flush = counters.flush().toCompletableFuture();
+        written.complete(Collections.emptySet());
+        flush.join();
+        Map<Long, Long> deltas = new HashMap<>();
+        deltas.put(HOT, 2L);
+        deltas.put(COLD, 1L);
+        verify(voteRepository).apply(deltas);
+        assertEquals(12, counters.votes(HOT).toCompletableFuture().join().longValue());
+    }
+
+    @Test
+    public void deletedBuildsDropTheirVotes() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        counters.vote(HOT, 1);
+        counters.flush().toCompletableFuture().join();
+        counters.vote(HOT, 1);
+        counters.vote(COLD, 1);
+
+        counters.changed(build(HOT), null);
+        assertEquals(0, counters.votes(HOT).toCompletableFuture().join().longValue());
+        assertEquals(1, counters.votes(COLD).toCompletableFuture().join().longValue());
+        counters.flush().toCompletableFuture().join();
+        Map<Long, Long> deltas = new HashMap<>();
+        deltas.put(COLD, 1L);
+        verify(voteRepository).apply(deltas);
+    }
+
+    @Test
+    public void buildDeletedDuringFlushDropsItsVotes() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        CompletableFuture<Set<Long>> written = new CompletableFuture<>();
+        when(voteRepository.apply(anyMap())).thenReturn(written);
+        counters.vote(HOT, 1);
+        CompletableFuture<Void> flush = counters.flush().toCompletableFuture();
+        counters.changed(build(HOT), null);
+        written.complete(Collections.emptySet());
+        flush.join();
+        assertEquals(0, counters.votes(HOT).toCompletableFuture().join().longValue());
+    }
+
+    @Test
+    public void flushDropsVotesOfMissingBuilds() {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        when(voteRepository.apply(anyMap())).thenReturn(CompletableFuture.completedFuture(Collections.singleton(COLD)));
+        counters.vote(HOT, 1);
+        counters.vote(COLD, 1);
+        counters.flush().toCompletableFuture().join();
+        assertEquals(11, counters.votes(HOT).toCompletableFuture().join().longValue());
+        assertEquals(0, counters.votes(COLD).toCompletableFuture().join().longValue());
+    }
+
+    @Test
+    public void recountsLogsLeftByCrash() {
+        VoteCounters crashed = new VoteCounters(voteRepository, buildRepository, directory);
+        crashed.vote(HOT, 1);
+        crashed.vote(COLD, -1);
+        crashed.flush().toCompletableFuture().join();
+        crashed.vote(HOT, 1);
+        crashed.vote(COLD, 1);
+
+        VoteCounters restarted = new VoteCounters(voteRepository, buildRepository, directory);
+        assertEquals(12, restarted.votes(HOT).toCompletableFuture().join().longValue());
+        assertEquals(0, restarted.votes(COLD).toCompletableFuture().join().longValue());
+        restarted.flush().toCompletableFuture().join();
+        assertEquals(12, table.get(HOT).longValue());
+        assertEquals(0, table.get(COLD).longValue());
+        assertEquals(0, logs().size());
+    }
+
+    @Test
+    public void ignoresRecordCutShortByCrash() throws Exception {
+        VoteCounters crashed = new VoteCounters(voteRepository, buildRepository, directory);
+        crashed.vote(HOT, 1);
+        try(FileOutputStream log = new FileOutputStream(logs().get(0), true)) {
+            log.write(new byte[VoteLog.RECORD_SIZE - 1]);
+        }
+
+        VoteCounters restarted = new VoteCounters(voteRepository, buildRepository, directory);
+        assertEquals(11, restarted.votes(HOT).toCompletableFuture().join().longValue());
+    }
+
+    // Stands in for a contention benchmark: every thread votes on one hot build while flushes run,
+    // no vote may be lost or counted twice
+    @Test
+    public void hotBuildUnderContention() throws Exception {
+        VoteCounters counters = new VoteCounters(voteRepository, buildRepository, directory);
+        int threads = 32;
+        int votesPerThread = 20000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicBoolean voting = new AtomicBoolean(true);
+        List<Long> seen = Collections.synchronizedList(new ArrayList<>());
+        Thread flusher = new Thread(() -> {
+            while(voting.get()) {
+                counters.flush().toCompletableFuture().join();
+                seen.add(counters.votes(HOT).toCompletableFuture().join());
+            }
+        });
+        flusher.start();
+        long start = System.nanoTime();
+        for(int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                for(int i = 0; i < votesPerThread; i++) {
+                    counters.vote(HOT, 1);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        voting.set(false);
+        flusher.join();
+        counters.flush().toCompletableFuture().join();
+
+        long total = 10L + (long) threads * votesPerThread;
+        assertEquals(total, counters.votes(HOT).toCompletableFuture().join().longValue());
+        assertEquals(total, table.get(HOT).longValue());
+        // Reads during flushes never go backwards, so votes are never missed while moving to the database
+        for(int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i) >= seen.get(i - 1));
+        }
+        assertTrue("votes took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms",
+                elapsed < TimeUnit.SECONDS.toNanos(60));
+    }
+
+    private static Build build(long id) {
+        Build build = new Build(1, Collections.emptyList(), null, Collections.emptyList());
+        build.setId(id);
+        return build;
+    }
+
+    private List<File> logs() {
+        List<File> logs = new ArrayList<>();
+        File[] files = directory.toFile().listFiles();
+        if(files != null) {
+            Collections.addAll(logs, files);
+        }
+        return logs;
+    }
+}